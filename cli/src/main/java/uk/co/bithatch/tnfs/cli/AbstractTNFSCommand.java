@@ -35,6 +35,7 @@ import org.slf4j.event.Level;
 
 import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import uk.co.bithatch.tnfs.client.AbstractTNFSMount;
 import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.TNFSMount;
 import uk.co.bithatch.tnfs.client.extensions.SecureMount;
@@ -197,6 +198,7 @@ public abstract class AbstractTNFSCommand {
 						}
 					}
 
+					configureMount(mntBldr);
 					return setupMount(client, mntBldr.build());
 				}
 				else {
@@ -220,6 +222,7 @@ public abstract class AbstractTNFSCommand {
 						}
 					}
 
+					configureMount(mntBldr);
 					return setupMount(client, mntBldr.build());
 				}
 			}
@@ -230,6 +233,9 @@ public abstract class AbstractTNFSCommand {
 		throw new IllegalStateException("Too many authentication attempts.");
 	}
 
+	protected void configureMount(AbstractTNFSMount.AbstractBuilder<?> mountBuilder) throws IOException {
+	}
+
 	protected void insecureWarning() {
 	}
 
@@ -24,6 +24,7 @@ import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -45,10 +46,13 @@ import me.tongfei.progressbar.InteractiveConsoleProgressBarConsumer;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
+import uk.co.bithatch.tnfs.client.ParallelDownload;
 import uk.co.bithatch.tnfs.client.TNFSFile;
 import uk.co.bithatch.tnfs.client.TNFSMount;
+import uk.co.bithatch.tnfs.client.extensions.Delta;
 import uk.co.bithatch.tnfs.lib.ByteBufferPool;
 import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.TNFS;
 import uk.co.bithatch.tnfs.lib.Util;
 
 public final class FileTransfer {
@@ -60,10 +64,24 @@ public final class FileTransfer {
 	private final char sep;
 	private final ByteBufferPool bufferPool;
 	private final Terminal terminal;
+	private final int streams;
+	private final int chunkSize;
+	private final boolean delta;
 
 	public FileTransfer(ByteBufferPool bufferPool, boolean force, boolean progress, boolean recursive, char sep, Terminal terminal) {
+		this(bufferPool, force, progress, recursive, sep, terminal, 1, TNFS.DEFAULT_DOWNLOAD_CHUNK_SIZE);
+	}
+
+	public FileTransfer(ByteBufferPool bufferPool, boolean force, boolean progress, boolean recursive, char sep, Terminal terminal, int streams, int chunkSize) {
+		this(bufferPool, force, progress, recursive, sep, terminal, streams, chunkSize, false);
+	}
+
+	public FileTransfer(ByteBufferPool bufferPool, boolean force, boolean progress, boolean recursive, char sep, Terminal terminal, int streams, int chunkSize, boolean delta) {
 		super();
 		this.terminal = terminal;
+		this.delta = delta;
+		this.streams = streams;
+		this.chunkSize = chunkSize;
 		this.bufferPool = bufferPool;
 		this.force = force;
 		this.progress = progress;
@@ -171,6 +189,27 @@ public final class FileTransfer {
 	}
 
 	private void remoteToLocal(TNFSMount mount, String remote, Path localFile, ProgressBar pb) throws IOException {
+		if(delta && Files.exists(localFile)) {
+			var read = mount.extension(Delta.class).download(remote, localFile);
+			LOG.info("Read {} bytes of {} to update {}", read, remote, localFile);
+			if(pb != null)
+				pb.stepTo(pb.getMax());
+			return;
+		}
+		
+		if(streams > 1) {
+			try (var output = FileChannel.open(localFile, getLocalWriteOpenFlags())) {
+				var bldr = new ParallelDownload.Builder(mount, remote).
+						withStreams(streams).
+						withChunkSize(chunkSize);
+				if(pb != null) {
+					bldr.withProgress(pb::stepBy);
+				}
+				bldr.build().download(output);
+			}
+			return;
+		}
+		
 		try (var output = Files.newByteChannel(localFile, getLocalWriteOpenFlags())) {
 			try (var input = mount.open(remote)) {
 				copyStreams(mount, pb, input, output);
@@ -179,6 +218,14 @@ public final class FileTransfer {
 	}
 
 	private void localToRemote(TNFSMount mount, Path localFile, String remote, ProgressBar pb) throws IOException {
+		if(delta) {
+			var sent = mount.extension(Delta.class).upload(localFile, remote);
+			LOG.info("Sent {} bytes of {} to update {}", sent, localFile, remote);
+			if(pb != null)
+				pb.stepTo(pb.getMax());
+			return;
+		}
+		
 		try (var input = Files.newByteChannel(localFile, StandardOpenOption.READ)) {
 			try (var output = mount.open(remote, getRemoteWriteOpenFlags())) {
 				copyStreams(mount, pb, input, output);
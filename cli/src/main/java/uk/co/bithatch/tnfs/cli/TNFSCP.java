@@ -37,6 +37,7 @@ import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.Spec;
+import uk.co.bithatch.tnfs.lib.TNFS;
 import uk.co.bithatch.tnfs.lib.Util;
 
 /**
@@ -69,6 +70,15 @@ public class TNFSCP extends AbstractTNFSFilesCommand implements Callable<Integer
 	@Option(names = {"-g", "--no-progress-bar"}, description = "No progress bar.")
 	private boolean noProgress = false;
 	
+	@Option(names = {"-k", "--streams"}, description = "Download each file using this many handles at once, each reading different ranges of the file.")
+	private int streams = 1;
+	
+	@Option(names = {"-K", "--chunk-size"}, description = "Size in bytes of each range of a file downloaded when using more than one stream.")
+	private int chunkSize = TNFS.DEFAULT_DOWNLOAD_CHUNK_SIZE;
+	
+	@Option(names = {"-d", "--delta"}, description = "Only transfer the parts of each file that differ from an existing target, as rsync does. Requires server support for BLOCKSUMS extension.")
+	private boolean delta;
+	
 	@Parameters(arity = "2..*",  paramLabel = "<sources>... <target>", description = {
 	        "The source file(s) or directory, either a local path or a TFNS Path URI.",
 	        "The target file or directory, either a local path or a TFNS Path URI."
@@ -142,7 +152,7 @@ public class TNFSCP extends AbstractTNFSFilesCommand implements Callable<Integer
 		}
 				
 		
-		new FileTransfer(mount.client().bufferPool(), force, !noProgress, recursive, getSeparator(isWindowsParsing()), null).
+		new FileTransfer(mount.client().bufferPool(), force, !noProgress, recursive, getSeparator(isWindowsParsing()), null, 1, chunkSize, delta).
 			localToRemote(mount, local, destPath);
 	}
 
@@ -158,7 +168,7 @@ public class TNFSCP extends AbstractTNFSFilesCommand implements Callable<Integer
 			local = local.resolve(Util.basename(remotePath));
 		}
 		
-		new FileTransfer(mount.client().bufferPool(), force, !noProgress, recursive, getSeparator(isWindowsParsing()), null).
+		new FileTransfer(mount.client().bufferPool(), force, !noProgress, recursive, getSeparator(isWindowsParsing()), null, streams, chunkSize, delta).
 			remoteToLocal(mount, remotePath, local);
 	}
 
@@ -20,6 +20,7 @@
  */
 package uk.co.bithatch.tnfs.cli;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -37,6 +38,8 @@ import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.Spec;
+import uk.co.bithatch.tnfs.client.AbstractTNFSMount.AbstractBuilder;
+import uk.co.bithatch.tnfs.client.BlockCache;
 import uk.co.bithatch.tnfs.fuse.TNFSFUSEFileSystem;
 
 /**
@@ -64,6 +67,12 @@ public class TNFSFUSE extends AbstractTNFSFilesCommand implements Callable<Integ
 	@Option(names = {"--libpath" }, description = "The location of the libfuse library.", hidden = true)
 	protected Optional<Path> libpath;
 
+	@Option(names = {"--block-cache" }, description = "Keep a persistent cache of file blocks read in this directory.")
+	private Optional<Path> blockCacheDir;
+
+	@Option(names = {"--block-cache-size" }, description = "The maximum size in bytes of the block cache.")
+	private Optional<Long> blockCacheSize;
+
 	@Parameters(arity = "1", index = "0", description = "URI of TNFS resource to mount.")
 	protected String remotePath;
 
@@ -72,6 +81,8 @@ public class TNFSFUSE extends AbstractTNFSFilesCommand implements Callable<Integ
 
 	@Spec 
 	private CommandSpec spec;
+	
+	private BlockCache blockCache;
 
 	@Override
 	public Integer call() throws Exception {
@@ -107,6 +118,13 @@ public class TNFSFUSE extends AbstractTNFSFilesCommand implements Callable<Integ
 					fuse.close();
 				} catch (TimeoutException e) {
 				}
+				if(blockCache != null) {
+					try {
+						blockCache.close();
+					} catch (IOException e) {
+						log.warn("Failed to close block cache.", e);
+					}
+				}
 			}));
 			
 			log.info("Mounting {} at {}...", remotePath, mountPoint);
@@ -118,6 +136,18 @@ public class TNFSFUSE extends AbstractTNFSFilesCommand implements Callable<Integ
 		} 
 	}
 
+	@Override
+	protected void configureMount(AbstractBuilder<?> mountBuilder) throws IOException {
+		if(blockCacheDir.isPresent()) {
+			if(blockCache == null) {
+				var bldr = new BlockCache.Builder(blockCacheDir.get());
+				blockCacheSize.ifPresent(bldr::withMaximumSize);
+				blockCache = bldr.build();
+			}
+			mountBuilder.withBlockCache(blockCache);
+		}
+	}
+
 	@Override
 	public CommandSpec getSpec() {
 		return spec;
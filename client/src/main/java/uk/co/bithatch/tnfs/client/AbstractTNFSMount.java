@@ -27,8 +27,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -39,6 +41,10 @@ import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -48,14 +54,20 @@ import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.co.bithatch.tnfs.client.TNFSClient.ReplyDecoder;
 import uk.co.bithatch.tnfs.lib.Command;
 import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.Command.FreeResult;
 import uk.co.bithatch.tnfs.lib.Command.HandleResult;
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Command.Result;
 import uk.co.bithatch.tnfs.lib.Command.SeekType;
+import uk.co.bithatch.tnfs.lib.Command.SizeResult;
 import uk.co.bithatch.tnfs.lib.Command.StatResult;
 import uk.co.bithatch.tnfs.lib.DirEntryFlag;
 import uk.co.bithatch.tnfs.lib.DirOptionFlag;
 import uk.co.bithatch.tnfs.lib.DirSortFlag;
+import uk.co.bithatch.tnfs.lib.Encodeable;
 import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.ModeFlag;
 import uk.co.bithatch.tnfs.lib.OpenFlag;
@@ -139,6 +151,12 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 		final String path;
 		private final TNFSClient client;
 		private int maxEntries = 0;
+		private int readAhead = TNFS.DEFAULT_READ_AHEAD;
+		private int writeBehind = TNFS.DEFAULT_WRITE_BEHIND;
+		private Duration attributeCache = Duration.ZERO;
+		private Duration negativeAttributeCache = Duration.ZERO;
+		private Duration directoryCache = Duration.ZERO;
+		private Optional<BlockCache> blockCache = Optional.empty();
 		private Optional<String> username = Optional.empty();
 		private Optional<char[]> password = Optional.empty();
 
@@ -200,9 +218,157 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 			this.maxEntries = maxEntries;
 			return (BLDR)this;
 		}
+
+		/**
+		 * Maximum number of {@link Command.Read} requests that may be kept in flight 
+		 * ahead of the caller when a file is read sequentially. This is also limited 
+		 * by the client's maximum requests in flight. A value of <code>zero</code>
+		 * disables read-ahead. The default is {@link TNFS#DEFAULT_READ_AHEAD}. 
+		 * Read-ahead is only used over TCP.
+		 *
+		 * @param readAhead maximum reads ahead
+		 * @return this for chaining
+		 */
+		@SuppressWarnings("unchecked")
+		public final BLDR withReadAhead(int readAhead) {
+			if(readAhead < 0) {
+				throw new IllegalArgumentException("Read-ahead may not be negative.");
+			}
+			this.readAhead = readAhead;
+			return (BLDR)this;
+		}
+
+		/**
+		 * Do not read ahead of the caller when a file is read sequentially.
+		 *
+		 * @return this for chaining
+		 */
+		public final BLDR withoutReadAhead() {
+			return withReadAhead(0);
+		}
+
+		/**
+		 * Maximum number of {@link Command.Write} requests that may be kept in flight 
+		 * without waiting for their replies. Data is buffered until there is enough for
+		 * a full packet, and any errors are reported by the next write, or when the 
+		 * channel is flushed or closed. This is also limited by the client's maximum 
+		 * requests in flight. A value of <code>zero</code> disables write-behind. The 
+		 * default is {@link TNFS#DEFAULT_WRITE_BEHIND}. Write-behind is only used over TCP.
+		 *
+		 * @param writeBehind maximum writes in flight
+		 * @return this for chaining
+		 */
+		@SuppressWarnings("unchecked")
+		public final BLDR withWriteBehind(int writeBehind) {
+			if(writeBehind < 0) {
+				throw new IllegalArgumentException("Write-behind may not be negative.");
+			}
+			this.writeBehind = writeBehind;
+			return (BLDR)this;
+		}
+
+		/**
+		 * Wait for each {@link Command.Write} to complete before returning from a write.
+		 *
+		 * @return this for chaining
+		 */
+		public final BLDR withoutWriteBehind() {
+			return withWriteBehind(0);
+		}
+
+		/**
+		 * Remember the attributes returned by {@link TNFSMount#stat(String)} for this 
+		 * long. Changes made through this mount are seen straight away, but changes made
+		 * by other clients may not be seen until the time has passed. The default is
+		 * {@link Duration#ZERO}, i.e. no caching.
+		 *
+		 * @param ttl how long to cache attributes for
+		 * @return this for chaining
+		 */
+		@SuppressWarnings("unchecked")
+		public final BLDR withAttributeCache(Duration ttl) {
+			if(ttl.isNegative()) {
+				throw new IllegalArgumentException("Attribute cache time may not be negative.");
+			}
+			this.attributeCache = ttl;
+			return (BLDR)this;
+		}
+
+		/**
+		 * Remember that a path does not exist for this long, so repeated tests for
+		 * the same missing path (as made by many file browsers) cost nothing. 
+		 * The default is {@link Duration#ZERO}, i.e. no caching.
+		 *
+		 * @param ttl how long to remember a missing path
+		 * @return this for chaining
+		 */
+		@SuppressWarnings("unchecked")
+		public final BLDR withNegativeAttributeCache(Duration ttl) {
+			if(ttl.isNegative()) {
+				throw new IllegalArgumentException("Negative attribute cache time may not be negative.");
+			}
+			this.negativeAttributeCache = ttl;
+			return (BLDR)this;
+		}
+
+		/**
+		 * Remember the results of {@link TNFSMount#directory(String)} and friends for this 
+		 * long. Changes made through this mount are seen straight away, but changes made
+		 * by other clients may not be seen until the time has passed. The default is
+		 * {@link Duration#ZERO}, i.e. no caching.
+		 * <p>
+		 * Whether or not listings are cached, when there is an attribute cache it is filled
+		 * from the entries of every listing.
+		 *
+		 * @param ttl how long to cache directory listings for
+		 * @return this for chaining
+		 */
+		@SuppressWarnings("unchecked")
+		public final BLDR withDirectoryCache(Duration ttl) {
+			if(ttl.isNegative()) {
+				throw new IllegalArgumentException("Directory cache time may not be negative.");
+			}
+			this.directoryCache = ttl;
+			return (BLDR)this;
+		}
+
+		/**
+		 * Read files that are opened only for reading through a persistent {@link BlockCache}, 
+		 * so that blocks already read, including before a restart, are not read from
+		 * the server again while the file's size and modification time are unchanged.
+		 * Closing the mount does not close the cache.
+		 *
+		 * @param blockCache block cache
+		 * @return this for chaining
+		 */
+		@SuppressWarnings("unchecked")
+		public final BLDR withBlockCache(BlockCache blockCache) {
+			this.blockCache = Optional.of(blockCache);
+			return (BLDR)this;
+		}
+
+		/**
+		 * Do not cache attributes at all, always asking the server.
+		 *
+		 * @return this for chaining
+		 */
+		public final BLDR withoutAttributeCache() {
+			withNegativeAttributeCache(Duration.ZERO);
+			return withAttributeCache(Duration.ZERO);
+		}
+
+		/**
+		 * Mount using this builders configuration.
+		 *
+		 * @return mount
+		 * @throws IOException on error
+		 */
+		public abstract TNFSMount build() throws IOException;
 	}
 
 	protected final int maxEntries;
+	protected final int readAhead;
+	protected final int writeBehind;
 	protected final TNFSClient client;
 	protected final String mountPath;
 	protected Optional<String> username;
@@ -211,18 +377,35 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 	private final List<TNFSClientPacketProcessor> outProcessors = new ArrayList<>();
 	
 	private final Map<Class<? extends TNFSMountExtension>, TNFSMountExtension> extensions;
+	private final TNFSPositionalExtension positionalExtension;
+	private final AttributeCache attributes;
+	private final DirectoryCache directories;
+	private final BlockCache blockCache;
+	private final AsyncView async = new AsyncView();
 
 	protected AbstractTNFSMount(AbstractBuilder<?> bldr) throws  IOException {
 		
 		client = bldr.client;
 		mountPath = bldr.path;
 		maxEntries = bldr.maxEntries;
+		readAhead = bldr.readAhead;
+		writeBehind = bldr.writeBehind;
 		username = bldr.username;
 		password = bldr.password;
+		attributes = bldr.attributeCache.isZero() && bldr.negativeAttributeCache.isZero() 
+				? null 
+				: new AttributeCache(bldr.attributeCache, bldr.negativeAttributeCache);
+		directories = bldr.directoryCache.isZero() ? null : new DirectoryCache(bldr.directoryCache);
+		blockCache = bldr.blockCache.orElse(null);
 
 		extensions = ServiceLoader.load(TNFSMountExtension.class).stream().map(p -> p.get()).peek(ext -> {
 			ext.init(this);
 		}).collect(Collectors.toMap(TNFSMountExtension::getClass, Function.identity()));
+		
+		positionalExtension = extensions.values().stream().
+				filter(TNFSPositionalExtension.class::isInstance).
+				map(TNFSPositionalExtension.class::cast).
+				findFirst().orElse(null);
 	}
 
 	@Override
@@ -232,20 +415,12 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 
 	@Override
 	public long free() throws IOException {
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Requesting free at `{}`", mountPath);
-		}
-		return client.sendMessage(this, Command.FREE, Message.of(sessionId(), Command.FREE, new Command.Free()), mountPath()).free();
+		return TNFSClient.await(async.freeAsync());
 	}
 
-
 	@Override
 	public long size() throws IOException {
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Requesting size at `{}`", mountPath);
-		}
-		
-		return client.sendMessage(this, Command.SIZE, Message.of(sessionId(), Command.SIZE, new Command.Size()), mountPath()).size();
+		return TNFSClient.await(async.sizeAsync());
 	}
 
 	@Override
@@ -273,6 +448,26 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 	 */
 	@Override
 	public TNFSDirectory directory(int maxResults, String path, String wildcard, DirOptionFlag[] dirOptions, DirSortFlag[] sortOptions) throws IOException {
+		if(directories == null) {
+			return directoryUncached(maxResults, path, wildcard, dirOptions, sortOptions);
+		}
+		
+		var key = new DirectoryCache.Key(path, wildcard, maxResults, dirOptions, sortOptions);
+		var entries = directories.get(key);
+		if(entries == null) {
+			var generation = directories.generation();
+			try(var dir = directoryUncached(maxResults, path, wildcard, dirOptions, sortOptions)) {
+				entries = dir.stream().toList();
+			}
+			directories.put(key, entries, generation);
+		}
+		else if(LOG.isDebugEnabled()) {
+			LOG.debug("Cached directory `{}` at `{}`", path, mountPath);
+		}
+		return DirectoryCache.directory(entries);
+	}
+	
+	private TNFSDirectory directoryUncached(int maxResults, String path, String wildcard, DirOptionFlag[] dirOptions, DirSortFlag[] sortOptions) throws IOException {
 		if(LOG.isDebugEnabled()) {
 			LOG.debug("Open directory `{}` at `{}` for max results `{}`, wildcard of `{}` and `{}` options", path, mountPath, maxResults,  wildcard, String.join(", ", Arrays.asList(dirOptions).stream().map(d -> d.name()).toList()));
 		}
@@ -281,16 +476,9 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 			
 			var dirOpts = Arrays.asList(dirOptions);
 			var sortOpts = Arrays.asList(sortOptions);
-			var dir = list(path);
 
 			/* Filter */
-			var stream = dir.filter(s -> !s.equals(".") && !s.equals("..")).map(s ->  {
-				try {
-					return stat((path.equals("/") ? "" : "/") + s).toEntry(s);
-				} catch (IOException e) {
-					throw new UncheckedIOException(e);
-				}
-			}).filter(entry -> {
+			var stream = DirectoryFallback.stream(async(), path, client.maxInFlight()).filter(entry -> {
 				var flgs = Arrays.asList(entry.flags());
 
 				if (flgs.contains(DirEntryFlag.HIDDEN)) {
@@ -368,6 +556,7 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 	
 
 	private TNFSDirectory directoryExtended(int maxResults, String path, String wildcard, DirOptionFlag[] dirOptions, DirSortFlag[] sortOptions) throws IOException {	
+		var generation = attributes == null ? 0 : attributes.generation();
 		var dir = client.sendMessage(this, Command.OPENDIRX, Message.of(sessionId(), Command.OPENDIRX, new Command.OpenDirX(dirOptions, sortOptions, maxResults, wildcard, path)), path);
 		var it = new Iterator<Entry>() {
 
@@ -385,6 +574,9 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 				if(next == null) {
 					try {
 						var readDirXReply = client.sendMessage(AbstractTNFSMount.this, Command.READDIRX, Message.of(sessionId(), Command.READDIRX, new Command.ReadDirX(dir.handle(), maxEntries)), path);
+						if(attributes != null) {
+							attributes.seed(path, readDirXReply.entries(), generation);
+						}
 						next = Arrays.asList(readDirXReply.entries()).iterator();
 					}
 					catch(EOFException eof) {
@@ -463,159 +655,550 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 
 	@Override
 	public SeekableByteChannel open(String path, ModeFlag[] mode, OpenFlag... flags) throws IOException {
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Open file `{}` at `{}`, mode `{}` and `{}` options", path, mountPath, 
-					String.join(", ", Arrays.asList(mode).stream().map(d -> d.name()).toList()),
-					String.join(", ", Arrays.asList(flags).stream().map(d -> d.name()).toList()));
+		if(blockCache != null && flags.length > 0 && Arrays.stream(flags).allMatch(OpenFlag.READ::equals)) {
+			var attrs = partialStat(path);
+			if(!attrs.isDirectory()) {
+				return new CachedChannel(this, blockCache, path, attrs, mode, flags);
+			}
 		}
+		return openUncached(path, mode, flags);
+	}
+	
+	SeekableByteChannel openUncached(String path, ModeFlag[] mode, OpenFlag... flags) throws IOException {
+		var handle = TNFSClient.await(async.open(path, mode, flags));
+		return new FileHandleChannel(handle, path, Arrays.asList(flags).contains(OpenFlag.WRITE));
+	}
+
+	/**
+	 * A channel on an open file handle. When the mount has a {@link TNFSPositionalExtension}
+	 * that the server supports, all reads and writes carry their own position, and the
+	 * server's file position is never used. Otherwise, the server's position is kept
+	 * in step with this channel's using {@link Command#LSEEK}.
+	 */
+	private final class FileHandleChannel implements TNFSChannel {
+
+		private final int handle;
+		private final String path;
+		private final TNFSPositionalExtension positional;
+		private final ReadAhead window;
+		private final WriteBehind behind;
+		
+		private boolean open = true;
+		private boolean dirty;
+		private long position;
 		
-		var fh = client.sendMessage(this, Command.OPEN, Message.of(sessionId(), Command.OPEN, new Command.Open(flags, mode, path)), path);
-		return new SeekableByteChannel() {
+		private FileHandleChannel(int handle, String path, boolean writable) throws IOException {
+			this.handle = handle;
+			this.path = path;
+			this.dirty = writable;
+			
+			positional = positionalExtension == null || !positionalExtension.available(handle, path) ? null : positionalExtension;
+			window = new ReadAhead(AbstractTNFSMount.this, handle, path, readAhead, positional);
+			behind = new WriteBehind(AbstractTNFSMount.this, handle, path, writeBehind, positional);
+		}
 
-			boolean open = true;
-			long position;
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			behind.flush();
+			var r = window.read(dst, position);
+			if(r > 0) {
+				position += r;
+			}
+			return r;
+		}
 
-			@Override
-			public int read(ByteBuffer dst) throws IOException {
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			if(positional == null) {
+				var was = this.position;
+				position(position);
 				try {
-					var max = client.size() - Message.HEADER_SIZE - 3;
-					if(dst.remaining() < max) {
-						max = dst.remaining();
-					}
-					var rd = client.sendMessage(AbstractTNFSMount.this, Command.READ, Message.of(sessionId(), Command.READ, new Command.Read(fh.handle(), max)), path);
-					dst.put(rd.data());
-					var r = rd.read();
-					position += r;
-					return r;
+					return read(dst);
 				}
-				catch(EOFException eofe) {
-					return -1;
+				finally {
+					position(was);
 				}
 			}
-
-			@Override
-			public boolean isOpen() {
-				return open;
+			
+			behind.flush();
+			try {
+				var was = dst.position();
+				TNFSClient.await(positional.readAt(handle, position, dst, path));
+				return dst.position() - was;
+			}
+			catch(EOFException eofe) {
+				return -1;
 			}
+		}
 
-			@Override
-			public void close() throws IOException {
-				if(open) {
-	        		if(LOG.isDebugEnabled()) {
-	        			LOG.debug("Closing close `{}` at `{}`", path, mountPath);
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(open) {
+        		if(LOG.isDebugEnabled()) {
+        			LOG.debug("Closing close `{}` at `{}`", path, mountPath);
+        		}
+        		try {
+        			behind.flush();
+        		}
+        		finally {
+	        		window.discard();
+	        		try {
+	        			client.sendMessage(AbstractTNFSMount.this, Command.CLOSE, Message.of(sessionId(), Command.CLOSE, new Command.CloseHandle(handle)), path);
 	        		}
-					client.sendMessage(AbstractTNFSMount.this, Command.CLOSE, Message.of(sessionId(), Command.CLOSE, new Command.CloseHandle(fh.handle())), path);
-					open = false;
-				}
+	        		finally {
+	        			open = false;
+	        			if(dirty) {
+	        				changed(path);
+	        			}
+	        		}
+        		}
 			}
+		}
 
-			@Override
-			public int write(ByteBuffer src) throws IOException {
-				var max = client.size() - Message.HEADER_SIZE - 3;
-				var waslimit = -1;
-				if(src.remaining() > max) {
-					waslimit = src.limit();
-					src.limit(src.position() + max);
+		@Override
+		public void flush() throws IOException {
+			behind.flush();
+			if(dirty) {
+				/* Size and modification time may now differ to anything cached */
+				dirty = false;
+				changed(path);
+			}
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if(window.discard()) {
+				seek(position);
+			}
+			
+			dirty = true;
+			var w = behind.write(src, position);
+			position += w;
+			changed(path);
+			return w;
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			if(positional != null) {
+				window.discard();
+				dirty = true;
+				var w = 0;
+				while(src.hasRemaining()) {
+					w += behind.write(src, position + w);
 				}
-				
-				
-				var w = client.sendMessage(AbstractTNFSMount.this,
-						Command.WRITE, Message.of(sessionId(), Command.WRITE, 
-										new Command.Write(fh.handle(), src)), path).written();
-				position += w;
-				if(waslimit > -1) {
-					src.limit(waslimit);
+				changed(path);
+				return w;
+			}
+			
+			var was = this.position;
+			position(position);
+			try {
+				var w = 0;
+				while(src.hasRemaining()) {
+					w += write(src);
 				}
 				return w;
 			}
-
-			@Override
-			public long position() throws IOException {
-				return position;
+			finally {
+				position(was);
 			}
+		}
 
-			@Override
-			public SeekableByteChannel position(long newPosition) throws IOException {
-        		if(LOG.isDebugEnabled()) {
-        			LOG.debug("Seek `{}` at `{}` to `{}`", path, mountPath, newPosition);
-        		}
-				client.sendMessage(AbstractTNFSMount.this, Command.LSEEK, Message.of(sessionId(), Command.LSEEK, new Command.LSeek(fh.handle(), SeekType.SEEK_SET, newPosition)), path);
-				position = newPosition;
-				return this;
-			}
+		@Override
+		public long position() throws IOException {
+			return position;
+		}
 
-			@Override
-			public long size() throws IOException {
-				return stat(path).size();
+		@Override
+		public SeekableByteChannel position(long newPosition) throws IOException {
+    		if(newPosition == position) {
+    			/* Nothing to do, and writes may carry on behind */
+    			return this;
+    		}
+    		if(LOG.isDebugEnabled()) {
+    			LOG.debug("Seek `{}` at `{}` to `{}`", path, mountPath, newPosition);
+    		}
+    		behind.flush();
+			if(!window.skip(newPosition - position)) {
+				window.discard();
+				if(positional == null) {
+					seek(newPosition);
+				}
 			}
+			position = newPosition;
+			return this;
+		}
 
-			@Override
-			public SeekableByteChannel truncate(long size) throws IOException {
-        		if(LOG.isDebugEnabled()) {
-        			LOG.debug("Truncate `{}` at `{}` to `{}`", path, mountPath, size);
-        		}
-				throw new UnsupportedOperationException();
-			}
+		@Override
+		public long size() throws IOException {
+			flush();
+			return stat(path).size();
+		}
 
-		};
+		@Override
+		public SeekableByteChannel truncate(long size) throws IOException {
+    		if(LOG.isDebugEnabled()) {
+    			LOG.debug("Truncate `{}` at `{}` to `{}`", path, mountPath, size);
+    		}
+			throw new UnsupportedOperationException();
+		}
+		
+		private void seek(long newPosition) throws IOException {
+			client.send(AbstractTNFSMount.this, Message.of(sessionId(), Command.LSEEK, new Command.LSeek(handle, SeekType.SEEK_SET, newPosition)), ReplyDecoder.ignore(), path);
+		}
 	}
 
 	@Override
 	public void unlink(String path) throws IOException {
-
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Unlink `{}` at `{}` to `{}`", path, mountPath);
-		}
-		
-		client.sendMessage(this, Command.UNLINK, Message.of(sessionId(), Command.UNLINK, new Command.Unlink(path)), path);
+		TNFSClient.await(async.unlinkAsync(path));
 	}
 
 	@Override
 	public void rename(String path, String targetPath) throws IOException {
-
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Rename `{}` to `{}` at `{}` to `{}`", path, targetPath, mountPath);
-		}
-		
-		client.sendMessage(this, Command.RENAME, Message.of(sessionId(), Command.RENAME, new Command.Rename(path, targetPath)), path);
+		TNFSClient.await(async.renameAsync(path, targetPath));
 	}
 
 	@Override
 	public void mkdir(String path) throws IOException {
-
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Mkdir `{}` at `{}`", path, mountPath);
-		}
-		
-		client.sendMessage(this, Command.MKDIR, Message.of(sessionId(), Command.MKDIR, new Command.MkDir(path)), path);
+		TNFSClient.await(async.mkdirAsync(path));
 	}
 
 	@Override
 	public StatResult stat(String path) throws IOException {
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Stat `{}` at `{}`", path, mountPath);
+		return TNFSClient.await(async.statAsync(path));
+	}
+	
+	/**
+	 * Get the attributes of a path when only its type, size and times are needed. These
+	 * may come from a directory listing, so the mode may only have the type, and the
+	 * owner will be unknown.
+	 * 
+	 * @param path path
+	 * @return attributes
+	 * @throws IOException on error
+	 */
+	StatResult partialStat(String path) throws IOException {
+		return TNFSClient.await(async.statAsync(path, true));
+	}
+
+	@Override
+	public boolean exists(String path) throws IOException {
+		try {
+			partialStat(path);
+			return true;
+		}
+		catch(NoSuchFileException nsfe) {
+			return false;
 		}
-		return client.sendMessage(this, Command.STAT, Message.of(sessionId(), Command.STAT, new Command.Stat(path)), path);
 	}
 
 	@Override
 	public void chmod(String path, ModeFlag... modes) throws IOException {
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Chmod `{}` at `{}`, to `{}`", path, mountPath, 
-					String.join(", ", Arrays.asList(modes).stream().map(d -> d.name()).toList()));
-		}
-		
-		client.sendMessage(this, Command.CHMOD, Message.of(sessionId(), Command.CHMOD, new Command.Chmod(modes, path)), path);
+		TNFSClient.await(async.chmodAsync(path, modes));
 	}
 
 	@Override
 	public void rmdir(String path) throws IOException {
+		TNFSClient.await(async.rmdirAsync(path));
+	}
+	
+	@Override
+	public final AsyncTNFSMount async() {
+		return async;
+	}
+	
+	/**
+	 * The asynchronous view of this mount, which most of the synchronous methods 
+	 * wait on.
+	 */
+	private final class AsyncView implements AsyncTNFSMount {
+		
+		private final Map<Integer, String> writable = new ConcurrentHashMap<>();
 
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("Rkdir `{}` at `{}`", path, mountPath);
+		@Override
+		public TNFSMount mount() {
+			return AbstractTNFSMount.this;
+		}
+
+		@Override
+		public CompletableFuture<StatResult> statAsync(String path) {
+			return statAsync(path, false);
+		}
+		
+		private CompletableFuture<StatResult> statAsync(String path, boolean partial) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Stat `{}` at `{}`", path, mountPath);
+			}
+			if(attributes == null) {
+				return call(Command.STAT, new Command.Stat(path), path);
+			}
+			
+			try {
+				var attrs = attributes.get(path, partial);
+				if(attrs != null) {
+					if(LOG.isDebugEnabled()) {
+						LOG.debug("Cached stat `{}` at `{}`", path, mountPath);
+					}
+					return CompletableFuture.completedFuture(attrs);
+				}
+			}
+			catch(NoSuchFileException nsfe) {
+				return CompletableFuture.failedFuture(nsfe);
+			}
+			
+			var generation = attributes.generation();
+			return call(Command.STAT, new Command.Stat(path), path).whenComplete((attrs, ex) -> {
+				if(ex == null) {
+					attributes.put(path, attrs, generation);
+				}
+				else if(cause(ex) instanceof NoSuchFileException) {
+					attributes.missing(path, generation);
+				}
+			});
+		}
+
+		@Override
+		public CompletableFuture<List<Entry>> directoryAsync(String path) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Async directory `{}` at `{}`", path, mountPath);
+			}
+			
+			var dirOptions = new DirOptionFlag[0];
+			var sortOptions = new DirSortFlag[0];
+			var key = directories == null ? null : new DirectoryCache.Key(path, "", 0, dirOptions, sortOptions);
+			if(key != null) {
+				var entries = directories.get(key);
+				if(entries != null) {
+					return CompletableFuture.completedFuture(entries);
+				}
+			}
+			
+			var dirGeneration = key == null ? 0 : directories.generation();
+			var attrGeneration = attributes == null ? 0 : attributes.generation();
+			CompletableFuture<List<Entry>> listing;
+			if(serverVersion().lt(TNFS.READ_DIRX_REQUIRES_VERSION)) {
+				var entries = new ArrayList<Entry>();
+				listing = new DirectoryFallback(this, path, client.maxInFlight(), entries::add).start().thenApply(v -> 
+					entries.stream().
+						filter(entry -> !DirEntryFlag.isHidden(entry.flags()) && !DirEntryFlag.isSpecial(entry.flags())).
+						toList()
+				);
+			}
+			else {
+				listing = call(Command.OPENDIRX, new Command.OpenDirX(dirOptions, sortOptions, 0, "", path), path).
+					thenCompose(dir -> closingDir(dir.handle(), path, readDirX(dir.handle(), dir.entries(), path, attrGeneration, new ArrayList<>())));
+			}
+			
+			if(key != null) {
+				listing = listing.whenComplete((entries, ex) -> {
+					if(ex == null) {
+						directories.put(key, entries, dirGeneration);
+					}
+				});
+			}
+			return listing;
+		}
+
+		@Override
+		public CompletableFuture<Integer> openAsync(String path, ModeFlag[] mode, OpenFlag... flags) {
+			return open(path, mode, flags).thenApply(handle -> {
+				if(Arrays.asList(flags).contains(OpenFlag.WRITE)) {
+					writable.put(handle, path);
+				}
+				return handle;
+			});
+		}
+
+		@Override
+		public CompletableFuture<ByteBuffer> readAsync(int handle, int size) {
+			var max = Math.min(size, client.size() - Message.HEADER_SIZE - 3);
+			return call(Command.READ, new Command.Read(handle, max), null).thenApply(ReadResult::data);
+		}
+
+		@Override
+		public CompletableFuture<Integer> writeAsync(int handle, ByteBuffer data) {
+			return write(handle, data, 0).whenComplete((w, ex) -> {
+				var path = writable.get(handle);
+				if(path != null) {
+					changed(path);
+				}
+			});
+		}
+
+		@Override
+		public CompletableFuture<Void> seekAsync(int handle, long position) {
+			return call(Command.LSEEK, new Command.LSeek(handle, SeekType.SEEK_SET, position), null).thenAccept(res -> {});
+		}
+
+		@Override
+		public CompletableFuture<Void> closeAsync(int handle) {
+			return call(Command.CLOSE, new Command.CloseHandle(handle), null).whenComplete((res, ex) -> {
+				var path = writable.remove(handle);
+				if(path != null) {
+					changed(path);
+				}
+			}).thenAccept(res -> {});
+		}
+
+		@Override
+		public CompletableFuture<Void> unlinkAsync(String path) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Unlink `{}` at `{}`", path, mountPath);
+			}
+			return call(Command.UNLINK, new Command.Unlink(path), path).whenComplete((res, ex) -> changed(path)).thenAccept(res -> {});
+		}
+
+		@Override
+		public CompletableFuture<Void> renameAsync(String path, String targetPath) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Rename `{}` to `{}` at `{}`", path, targetPath, mountPath);
+			}
+			return call(Command.RENAME, new Command.Rename(path, targetPath), path).whenComplete((res, ex) -> {
+				changedTree(path);
+				changedTree(targetPath);
+			}).thenAccept(res -> {});
+		}
+
+		@Override
+		public CompletableFuture<Void> mkdirAsync(String path) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Mkdir `{}` at `{}`", path, mountPath);
+			}
+			return call(Command.MKDIR, new Command.MkDir(path), path).whenComplete((res, ex) -> changed(path)).thenAccept(res -> {});
+		}
+
+		@Override
+		public CompletableFuture<Void> rmdirAsync(String path) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Rmdir `{}` at `{}`", path, mountPath);
+			}
+			return call(Command.RMDIR, new Command.RmDir(path), path).whenComplete((res, ex) -> changedTree(path)).thenAccept(res -> {});
+		}
+
+		@Override
+		public CompletableFuture<Void> chmodAsync(String path, ModeFlag... modes) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Chmod `{}` at `{}`, to `{}`", path, mountPath, 
+						String.join(", ", Arrays.asList(modes).stream().map(d -> d.name()).toList()));
+			}
+			return call(Command.CHMOD, new Command.Chmod(modes, path), path).whenComplete((res, ex) -> changed(path)).thenAccept(res -> {});
+		}
+
+		@Override
+		public Flow.Publisher<ByteBuffer> readPublisher(String path) {
+			return new FilePublisher(this, path);
+		}
+
+		@Override
+		public WriteSubscriber writeSubscriber(String path, OpenFlag... flags) {
+			return new FileSubscriber(this, path, flags);
+		}
+
+		@Override
+		public Flow.Publisher<Entry> directoryPublisher(String path) {
+			/* Cached listings are complete already, and older servers must stat every entry */
+			var extended = directories == null && !serverVersion().lt(TNFS.READ_DIRX_REQUIRES_VERSION);
+			return new DirectoryPublisher(this, path, maxEntries, attributes, extended);
+		}
+
+		@Override
+		public CompletableFuture<Long> freeAsync() {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Requesting free at `{}`", mountPath);
+			}
+			return call(Command.FREE, new Command.Free(), mountPath).thenApply(FreeResult::free);
+		}
+
+		@Override
+		public CompletableFuture<Long> sizeAsync() {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Requesting size at `{}`", mountPath);
+			}
+			return call(Command.SIZE, new Command.Size(), mountPath).thenApply(SizeResult::size);
+		}
+		
+		private CompletableFuture<Integer> open(String path, ModeFlag[] mode, OpenFlag... flags) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Open file `{}` at `{}`, mode `{}` and `{}` options", path, mountPath, 
+						String.join(", ", Arrays.asList(mode).stream().map(d -> d.name()).toList()),
+						String.join(", ", Arrays.asList(flags).stream().map(d -> d.name()).toList()));
+			}
+			
+			var fut = call(Command.OPEN, new Command.Open(flags, mode, path), path);
+			if(Arrays.asList(flags).contains(OpenFlag.WRITE)) {
+				/* May have been created or truncated */
+				fut = fut.whenComplete((res, ex) -> changed(path));
+			}
+			return fut.thenApply(HandleResult::handle);
+		}
+		
+		private CompletableFuture<Integer> write(int handle, ByteBuffer data, int written) {
+			if(!data.hasRemaining()) {
+				return CompletableFuture.completedFuture(written);
+			}
+			var start = data.position();
+			var chunk = data.slice(start, Math.min(data.remaining(), client.size() - Message.HEADER_SIZE - 3));
+			data.position(start + chunk.remaining());
+			return call(Command.WRITE, new Command.Write(handle, chunk), null).thenCompose(res -> {
+				data.position(start + res.written());
+				if(res.written() == 0) {
+					return CompletableFuture.completedFuture(written);
+				}
+				return write(handle, data, written + res.written());
+			});
+		}
+		
+		private CompletableFuture<List<Entry>> readDirX(int handle, int total, String path, long generation, List<Entry> entries) {
+			if(entries.size() >= total) {
+				return CompletableFuture.completedFuture(entries);
+			}
+			return call(Command.READDIRX, new Command.ReadDirX(handle, maxEntries), path).handle((res, ex) -> {
+				if(ex == null) {
+					if(attributes != null) {
+						attributes.seed(path, res.entries(), generation);
+					}
+					if(res.entries().length == 0) {
+						return CompletableFuture.completedFuture(entries);
+					}
+					entries.addAll(Arrays.asList(res.entries()));
+					return readDirX(handle, total, path, generation, entries);
+				}
+				else if(cause(ex) instanceof EOFException) {
+					return CompletableFuture.completedFuture(entries);
+				}
+				else {
+					return CompletableFuture.<List<Entry>>failedFuture(cause(ex));
+				}
+			}).thenCompose(Function.identity());
 		}
 		
-		client.sendMessage(this, Command.RMDIR, Message.of(sessionId(), Command.RMDIR, new Command.RmDir(path)), path);
+		private <T> CompletableFuture<T> closingDir(int handle, String path, CompletableFuture<T> listing) {
+			return listing.handle((res, ex) -> 
+				call(Command.CLOSEDIR, new Command.CloseHandle(handle), path).handle((cres, cex) -> {
+					if(ex != null) {
+						throw ex instanceof CompletionException ce ? ce : new CompletionException(ex);
+					}
+					if(cex != null) {
+						throw cex instanceof CompletionException ce ? ce : new CompletionException(cex);
+					}
+					return res;
+				})
+			).thenCompose(Function.identity());
+		}
+		
+		private <REQ extends Encodeable, RESULT extends Result> CompletableFuture<RESULT> call(Command<REQ, RESULT> op, REQ req, String path) {
+			return client.sendAsync(AbstractTNFSMount.this, Message.of(sessionId(), op, req), op::decodeResult, path);
+		}
+	}
+	
+	private static Throwable cause(Throwable ex) {
+		return ex instanceof CompletionException ce && ce.getCause() != null ? ce.getCause() : ex;
 	}
 
 	@Override
@@ -641,6 +1224,30 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 	protected void beforeClose() throws IOException {
 	}
 	
+	/**
+	 * Forget any cached attributes for a path that has been changed by this client,
+	 * along with those of its parent directory and the listing of its parent directory.
+	 * 
+	 * @param path path
+	 */
+	public final void changed(String path) {
+		if(attributes != null) {
+			attributes.changed(path);
+		}
+		if(directories != null) {
+			directories.changed(path);
+		}
+	}
+	
+	private void changedTree(String path) {
+		if(attributes != null) {
+			attributes.changedTree(path);
+		}
+		if(directories != null) {
+			directories.changedTree(path);
+		}
+	}
+	
 	protected void onClose() throws IOException {
 	}
 	
@@ -663,7 +1270,7 @@ public abstract class AbstractTNFSMount implements TNFSMount {
 	 */
 	@Override
 	public FileVisitResult visit(String path, FileVisitor<TNFSFile> visitor) throws IOException {
-		var attrs = stat(path);
+		var attrs = partialStat(path);
 		var name = Util.basename(path);
 		var file = new TNFSFile(path, attrs.toEntry(name));
 		if (attrs.isDirectory()) {
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+
+/**
+ * An asynchronous view of a {@link TNFSMount}, obtained using {@link TNFSMount#async()}.
+ * Rather than blocking, each method sends its request(s) and returns a future that 
+ * is completed when the reply arrives, so many operations may be in flight from a 
+ * single thread. Futures are completed exceptionally with the same exceptions the
+ * synchronous methods would throw, wrapped in a {@link CompletionException}.
+ * <p>
+ * Futures are completed on the thread that receives replies, so dependent stages
+ * must not block or use the synchronous API. 
+ * <p>
+ * File operations work directly on the server's file handles, and {@link #readAsync(int, int)}
+ * and {@link #writeAsync(int, ByteBuffer)} use the handle's position on the server.
+ * <p>
+ * Whole files and directories may also be streamed using {@link Flow} publishers and 
+ * subscribers, where the demand signalled decides how many requests are in flight.
+ */
+public interface AsyncTNFSMount {
+	
+	/**
+	 * A {@link Flow.Subscriber} that writes everything it receives to a file, obtained 
+	 * using {@link AsyncTNFSMount#writeSubscriber(String, OpenFlag...)}. The file is 
+	 * opened when subscribed, and closed when the publisher completes. Buffers are 
+	 * written as they are, so must not be changed once passed to {@link #onNext(Object)}.
+	 */
+	public interface WriteSubscriber extends Flow.Subscriber<ByteBuffer> {
+		
+		/**
+		 * Get a future that is completed with the total number of bytes written once
+		 * the file has been closed, or completed exceptionally if opening or writing 
+		 * fails, or the publisher signals an error.
+		 * 
+		 * @return future bytes written
+		 */
+		CompletableFuture<Long> completion();
+	}
+
+	/**
+	 * Get the synchronous mount this is a view of.
+	 * 
+	 * @return mount
+	 */
+	TNFSMount mount();
+
+	/**
+	 * Get the attributes of a path.
+	 * 
+	 * @param path path
+	 * @return future attributes
+	 */
+	CompletableFuture<StatResult> statAsync(String path);
+
+	/**
+	 * Test if a path exists.
+	 * 
+	 * @param path path
+	 * @return future exists
+	 */
+	default CompletableFuture<Boolean> existsAsync(String path) {
+		return statAsync(path).handle((stat, ex) -> {
+			if(ex == null) {
+				return true;
+			}
+			var cause = ex instanceof CompletionException ce ? ce.getCause() : ex;
+			if(cause instanceof NoSuchFileException) {
+				return false;
+			}
+			throw ex instanceof CompletionException ce ? ce : new CompletionException(ex);
+		});
+	}
+
+	/**
+	 * List all the entries in a directory, excluding hidden entries.
+	 * 
+	 * @param path path
+	 * @return future entries
+	 */
+	CompletableFuture<List<Entry>> directoryAsync(String path);
+
+	/**
+	 * Open a file, returning the handle. This should be closed using {@link #closeAsync(int)}.
+	 * 
+	 * @param path path
+	 * @param mode mode of any created file
+	 * @param flags flags
+	 * @return future handle
+	 */
+	CompletableFuture<Integer> openAsync(String path, ModeFlag[] mode, OpenFlag... flags);
+
+	/**
+	 * Open a file, returning the handle. This should be closed using {@link #closeAsync(int)}.
+	 * 
+	 * @param path path
+	 * @param flags flags
+	 * @return future handle
+	 */
+	default CompletableFuture<Integer> openAsync(String path, OpenFlag... flags) {
+		return openAsync(
+			path, 
+			Arrays.asList(flags).contains(OpenFlag.CREATE) 
+				? ModeFlag.DEFAULT_WRITABLE_FLAGS 
+				: ModeFlag.DEFAULT_FLAGS, 
+			flags
+		);
+	}
+
+	/**
+	 * Read up to a single packet of data from a file handle's current position. At
+	 * end of file, the future is completed with an {@link java.io.EOFException}.
+	 * 
+	 * @param handle handle
+	 * @param size maximum number of bytes to read 
+	 * @return future data
+	 */
+	CompletableFuture<ByteBuffer> readAsync(int handle, int size);
+
+	/**
+	 * Write all of the remaining data in a buffer at a file handle's current position,
+	 * completing with the number of bytes written.
+	 * 
+	 * @param handle handle
+	 * @param data data
+	 * @return future bytes written
+	 */
+	CompletableFuture<Integer> writeAsync(int handle, ByteBuffer data);
+
+	/**
+	 * Move a file handle's position.
+	 * 
+	 * @param handle handle
+	 * @param position position
+	 * @return future 
+	 */
+	CompletableFuture<Void> seekAsync(int handle, long position);
+
+	/**
+	 * Close a file handle.
+	 * 
+	 * @param handle handle
+	 * @return future 
+	 */
+	CompletableFuture<Void> closeAsync(int handle);
+
+	/**
+	 * Delete a file.
+	 * 
+	 * @param path path
+	 * @return future 
+	 */
+	CompletableFuture<Void> unlinkAsync(String path);
+
+	/**
+	 * Rename a file or directory.
+	 * 
+	 * @param path path
+	 * @param targetPath target path
+	 * @return future 
+	 */
+	CompletableFuture<Void> renameAsync(String path, String targetPath);
+
+	/**
+	 * Create a directory.
+	 * 
+	 * @param path path
+	 * @return future 
+	 */
+	CompletableFuture<Void> mkdirAsync(String path);
+
+	/**
+	 * Remove an empty directory.
+	 * 
+	 * @param path path
+	 * @return future 
+	 */
+	CompletableFuture<Void> rmdirAsync(String path);
+
+	/**
+	 * Change the mode of a file or directory.
+	 * 
+	 * @param path path
+	 * @param modes modes
+	 * @return future 
+	 */
+	CompletableFuture<Void> chmodAsync(String path, ModeFlag... modes);
+
+	/**
+	 * Get the free space on the mount.
+	 * 
+	 * @return future free space
+	 */
+	CompletableFuture<Long> freeAsync();
+
+	/**
+	 * Get the size of the mount.
+	 * 
+	 * @return future size
+	 */
+	CompletableFuture<Long> sizeAsync();
+
+	/**
+	 * Get a publisher of the contents of a file. Each subscriber opens the file, and
+	 * each buffer published is the data from a single {@link uk.co.bithatch.tnfs.lib.Command#READ},
+	 * with one request in flight for each item of outstanding demand, up to the client's 
+	 * maximum requests in flight. Over UDP, only one request is ever in flight.
+	 * 
+	 * @param path path
+	 * @return publisher
+	 */
+	Flow.Publisher<ByteBuffer> readPublisher(String path);
+
+	/**
+	 * Get a subscriber that writes everything published to it to a file, creating
+	 * the file or truncating it if it exists.
+	 * 
+	 * @param path path
+	 * @return subscriber
+	 */
+	default WriteSubscriber writeSubscriber(String path) {
+		return writeSubscriber(path, OpenFlag.WRITE, OpenFlag.CREATE, OpenFlag.TRUNCATE);
+	}
+
+	/**
+	 * Get a subscriber that writes everything published to it to a file. Items are
+	 * only requested from the publisher while fewer than the client's maximum requests 
+	 * are in flight, so a slow server slows the publisher. Over UDP, only one request 
+	 * is ever in flight.
+	 * 
+	 * @param path path
+	 * @param flags flags to open the file with, which must include {@link OpenFlag#WRITE}
+	 * @return subscriber
+	 */
+	WriteSubscriber writeSubscriber(String path, OpenFlag... flags);
+
+	/**
+	 * Get a publisher of the entries in a directory, excluding hidden entries. Each
+	 * subscriber opens the directory, and further entries are only read while there is 
+	 * outstanding demand.
+	 * 
+	 * @param path path
+	 * @return publisher
+	 */
+	Flow.Publisher<Entry> directoryPublisher(String path);
+}
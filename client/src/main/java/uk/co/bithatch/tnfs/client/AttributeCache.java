@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.DirEntryFlag;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+
+/**
+ * Remembers the results of {@link TNFSMount#stat(String)} for a short time, so
+ * callers that check a path exists, then stat it, then open it and ask its size
+ * only cost one round trip. Paths that do not exist may also be remembered, for
+ * a separate (usually shorter) time.
+ * <p>
+ * Directory listings also fill the cache, so walking a tree needs no STAT at all. A 
+ * listing only carries the type, size and times of each entry though, so these entries
+ * are partial, and are only used by callers that need no more than that. 
+ * <p>
+ * Only changes made through the same mount are seen, so a path is forgotten when
+ * it (or its parent directory) is changed by this client. Changes made by other
+ * clients are seen once the entry expires.
+ */
+final class AttributeCache {
+	
+	private final static int MAX_ENTRIES = 4096;
+	
+	private record Cached(StatResult attrs, long expires, boolean partial) {}
+
+	private final long ttl;
+	private final long negativeTtl;
+	private final Map<String, Cached> entries;
+	
+	private long generation;
+	
+	@SuppressWarnings("serial")
+	AttributeCache(Duration ttl, Duration negativeTtl) {
+		this.ttl = ttl.toNanos();
+		this.negativeTtl = negativeTtl.toNanos();
+		
+		entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+	
+	/**
+	 * Get the cached attributes for a path.
+	 * 
+	 * @param path path
+	 * @param partial whether partial attributes from a directory listing will do, i.e. only the type, size and times are needed
+	 * @return attributes, or <code>null</code> if not cached 
+	 * @throws NoSuchFileException if the path is known not to exist
+	 */
+	synchronized StatResult get(String path, boolean partial) throws NoSuchFileException {
+		var key = key(path);
+		var cached = entries.get(key);
+		if(cached == null) {
+			return null;
+		}
+		if(System.nanoTime() - cached.expires >= 0) {
+			entries.remove(key);
+			return null;
+		}
+		if(cached.attrs == null) {
+			throw new NoSuchFileException(path);
+		}
+		return cached.partial && !partial ? null : cached.attrs;
+	}
+	
+	/**
+	 * Get a token to pass to {@link #put(String, StatResult, long)} or {@link #missing(String, long)}
+	 * when their results arrive. Taken before asking the server, this prevents a
+	 * reply that raced with a change from being cached.
+	 * 
+	 * @return generation
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+	
+	/**
+	 * Remember the attributes of a path.
+	 * 
+	 * @param path path
+	 * @param attrs attributes
+	 * @param generation generation when the attributes were requested
+	 */
+	synchronized void put(String path, StatResult attrs, long generation) {
+		if(ttl > 0 && generation == this.generation) {
+			entries.put(key(path), new Cached(attrs, System.nanoTime() + ttl, false));
+		}
+	}
+	
+	/**
+	 * Remember that a path does not exist, if negative caching is enabled.
+	 * 
+	 * @param path path
+	 * @param generation generation when the attributes were requested
+	 */
+	synchronized void missing(String path, long generation) {
+		if(negativeTtl > 0 && generation == this.generation) {
+			entries.put(key(path), new Cached(null, System.nanoTime() + negativeTtl, false));
+		}
+	}
+	
+	/**
+	 * Forget a path and its parent, whose modification time and perhaps
+	 * size will have changed along with it.
+	 * 
+	 * @param path path
+	 */
+	synchronized void changed(String path) {
+		var key = key(path);
+		generation++;
+		entries.remove(key);
+		entries.remove(parent(key));
+	}
+	
+	/**
+	 * Forget a path, its parent and anything beneath it, for when a directory
+	 * is renamed or removed.
+	 * 
+	 * @param path path
+	 */
+	synchronized void changedTree(String path) {
+		changed(path);
+		var prefix = key(path) + "/";
+		entries.keySet().removeIf(k -> k.startsWith(prefix));
+	}
+	
+	/**
+	 * Remember the attributes of the entries in a directory listing. The
+	 * listing only carries the type, size and times of each entry, so these
+	 * are remembered as partial attributes.
+	 * 
+	 * @param dir directory path
+	 * @param listing entries
+	 * @param generation generation when the listing was requested
+	 */
+	synchronized void seed(String dir, Entry[] listing, long generation) {
+		if(ttl > 0 && generation == this.generation) {
+			var now = System.nanoTime();
+			var dirKey = key(dir);
+			for(var entry : listing) {
+				var name = entry.name();
+				if(name.equals(".") || name.equals("..")) {
+					continue;
+				}
+				var key = dirKey.isEmpty() ? name : dirKey + "/" + name;
+				var was = entries.get(key);
+				if(was == null || was.partial || was.attrs == null || now - was.expires >= 0) {
+					/* Never replace the full attributes from a STAT */
+					entries.put(key, new Cached(fromEntry(entry), now + ttl, true));
+				}
+			}
+		}
+	}
+	
+	static String key(String path) {
+		var start = 0;
+		var end = path.length();
+		while(start < end && path.charAt(start) == '/') {
+			start++;
+		}
+		while(end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return path.substring(start, end);
+	}
+	
+	static String parent(String key) {
+		var idx = key.lastIndexOf('/');
+		return idx == -1 ? "" : key.substring(0, idx);
+	}
+	
+	private static StatResult fromEntry(Entry entry) {
+		/* Only the type is known, not the permissions or owner */
+		return new StatResult(
+				ResultCode.SUCCESS, 
+				new ModeFlag[] { DirEntryFlag.isDirectory(entry.flags()) ? ModeFlag.IFDIR : ModeFlag.IFREG }, 
+				0, 0, 
+				entry.size(), 
+				entry.mtime(), entry.mtime(), entry.ctime(), 
+				"", "");
+	}
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent cache of file blocks, kept in a local directory so that it
+ * survives restarts. Enable it for a mount using {@link AbstractTNFSMount.AbstractBuilder#withBlockCache(BlockCache)},
+ * and files opened only for reading will then be read a block at a time, with 
+ * blocks that are already cached never being asked for again. The same cache
+ * may be used by many mounts, and blocks are kept by server, mount, path and 
+ * position in the file.
+ * <p>
+ * Blocks are stored in fixed size slots in memory-mapped segment files. Every
+ * block remembers the size and modification time of its file when it was read,
+ * and is only used while these are unchanged. When the cache is full, the least
+ * recently used block is replaced.
+ * <p>
+ * The index of blocks is written to a new file which then replaces the old one,
+ * after the segment files have been written out. This is done when the cache is closed, 
+ * and in the background every {@link Builder#withCheckpointInterval(Duration)} if anything
+ * has changed, never while blocks are being read. Each block also carries a 
+ * checksum, checked the first time it is used after loading, so a crash at any point 
+ * at most loses the blocks cached since the index was last written.
+ */
+public final class BlockCache implements Closeable {
+	
+	private final static Logger LOG = LoggerFactory.getLogger(BlockCache.class);
+
+	public final static int DEFAULT_BLOCK_SIZE = 65536;
+	public final static long DEFAULT_MAXIMUM_SIZE = 256l * 1024l * 1024l;
+	public final static Duration DEFAULT_CHECKPOINT_INTERVAL = Duration.ofMinutes(1);
+	
+	private final static int SEGMENT_SLOTS = 256;
+	private final static int INDEX_MAGIC = 0x544e4243;
+	private final static int INDEX_VERSION = 1;
+	private final static String INDEX_NAME = "index";
+	private final static String LOCK_NAME = "lock";
+	
+	private final static ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+		var t = new Thread(r, "TNFSBlockCacheCheckpoint");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public final static class Builder {
+		private final Path directory;
+		private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+		private int blockSize = DEFAULT_BLOCK_SIZE;
+		private Duration checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+		
+		/**
+		 * Construct a new block cache builder.
+		 * 
+		 * @param directory directory to keep the cache in, which is created if it does not exist
+		 */
+		public Builder(Path directory) {
+			this.directory = directory;
+		}
+
+		/**
+		 * Maximum size of all cached blocks. The default is {@link BlockCache#DEFAULT_MAXIMUM_SIZE}.
+		 * 
+		 * @param maximumSize maximum size in bytes
+		 * @return this for chaining
+		 */
+		public Builder withMaximumSize(long maximumSize) {
+			if(maximumSize < 1) {
+				throw new IllegalArgumentException("Maximum size must be at least one byte.");
+			}
+			this.maximumSize = maximumSize;
+			return this;
+		}
+
+		/**
+		 * Size of each block. Changing this for an existing cache directory discards 
+		 * everything in it. The default is {@link BlockCache#DEFAULT_BLOCK_SIZE}.
+		 * 
+		 * @param blockSize block size in bytes
+		 * @return this for chaining
+		 */
+		public Builder withBlockSize(int blockSize) {
+			if(blockSize < 1 || blockSize > Integer.MAX_VALUE / SEGMENT_SLOTS) {
+				throw new IllegalArgumentException("Block size must be between 1 and " + ( Integer.MAX_VALUE / SEGMENT_SLOTS ) + " bytes.");
+			}
+			this.blockSize = blockSize;
+			return this;
+		}
+		
+		/**
+		 * How often to write the index in the background if any blocks have been cached or
+		 * discarded since it was last written. A zero interval only writes it when the cache is
+		 * closed or {@link BlockCache#checkpoint()} is called. The default is {@link BlockCache#DEFAULT_CHECKPOINT_INTERVAL}.
+		 * 
+		 * @param checkpointInterval checkpoint interval
+		 * @return this for chaining
+		 */
+		public Builder withCheckpointInterval(Duration checkpointInterval) {
+			if(checkpointInterval.isNegative()) {
+				throw new IllegalArgumentException("Checkpoint interval may not be negative.");
+			}
+			this.checkpointInterval = checkpointInterval;
+			return this;
+		}
+		
+		/**
+		 * Open the cache using this builders configuration. Only one cache may use
+		 * a directory at a time.
+		 * 
+		 * @return cache
+		 * @throws IOException on error
+		 */
+		public BlockCache build() throws IOException {
+			return new BlockCache(this);
+		}
+	}
+	
+	record Key(String server, String mount, String path, long block) {}
+	
+	private final static class Slot {
+		private final int index;
+		private int length;
+		private int crc;
+		private long size;
+		private long mtime;
+		private boolean verified;
+		
+		private Slot(int index) {
+			this.index = index;
+		}
+	}
+	
+	private final Path directory;
+	private final int blockSize;
+	private final int slots;
+	private final MappedByteBuffer[] segments;
+	private final LinkedHashMap<Key, Slot> blocks = new LinkedHashMap<>(16, 0.75f, true);
+	private final Deque<Integer> free = new ArrayDeque<>();
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private final ScheduledFuture<?> checkpointTask;
+	
+	private int changes;
+	private boolean closed;
+
+	private BlockCache(Builder bldr) throws IOException {
+		directory = bldr.directory;
+		blockSize = bldr.blockSize;
+		slots = (int)Math.max(1, Math.min(Integer.MAX_VALUE, bldr.maximumSize / blockSize));
+		segments = new MappedByteBuffer[( slots + SEGMENT_SLOTS - 1 ) / SEGMENT_SLOTS];
+		
+		Files.createDirectories(directory);
+		lockChannel = FileChannel.open(directory.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		lock = lockChannel.tryLock();
+		if(lock == null) {
+			lockChannel.close();
+			throw new IOException("Block cache " + directory + " is in use by another process.");
+		}
+		
+		load();
+		
+		var interval = bldr.checkpointInterval.toMillis();
+		checkpointTask = interval == 0 ? null : checkpointer.scheduleWithFixedDelay(this::checkpointIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Get the size of each block.
+	 * 
+	 * @return block size
+	 */
+	public int blockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * Get how many blocks are currently cached.
+	 * 
+	 * @return blocks
+	 */
+	public synchronized int blocks() {
+		return blocks.size();
+	}
+	
+	/**
+	 * Write the index so that everything cached so far will be used after a restart.
+	 * 
+	 * @throws IOException on error
+	 */
+	public synchronized void checkpoint() throws IOException {
+		checkClosed();
+		for(var segment : segments) {
+			if(segment != null) {
+				segment.force();
+			}
+		}
+		
+		var tmp = directory.resolve(INDEX_NAME + ".tmp");
+		try(var ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(blockSize);
+			out.writeInt(blocks.size());
+			/* Least recently used first, so the order is the same when loaded */
+			for(var en : blocks.entrySet()) {
+				var key = en.getKey();
+				var slot = en.getValue();
+				out.writeUTF(key.server());
+				out.writeUTF(key.mount());
+				out.writeUTF(key.path());
+				out.writeLong(key.block());
+				out.writeInt(slot.index);
+				out.writeInt(slot.length);
+				out.writeInt(slot.crc);
+				out.writeLong(slot.size);
+				out.writeLong(slot.mtime);
+			}
+			out.flush();
+			ch.force(true);
+		}
+		
+		var index = directory.resolve(INDEX_NAME);
+		try {
+			Files.move(tmp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException amnse) {
+			Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING);
+		}
+		changes = 0;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(!closed) {
+			if(checkpointTask != null) {
+				checkpointTask.cancel(false);
+			}
+			try {
+				checkpoint();
+			}
+			finally {
+				closed = true;
+				try {
+					lock.release();
+				}
+				finally {
+					lockChannel.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get a copy of a cached block, if there is one that was read when its file had
+	 * the given size and modification time.
+	 * 
+	 * @param key key
+	 * @param size current size of file
+	 * @param mtime current modification time of file
+	 * @return block data or <code>null</code> if not cached
+	 * @throws IOException on error
+	 */
+	synchronized ByteBuffer get(Key key, long size, long mtime) throws IOException {
+		checkClosed();
+		var slot = blocks.get(key);
+		if(slot == null) {
+			return null;
+		}
+		if(slot.size != size || slot.mtime != mtime) {
+			/* File has changed since this was cached */
+			release(key);
+			return null;
+		}
+		
+		var data = ByteBuffer.allocate(slot.length);
+		data.put(0, segment(slot.index), offset(slot.index), slot.length);
+		if(!slot.verified) {
+			if(crc(data) != slot.crc) {
+				LOG.warn("Discarding corrupt block {} of `{}` in block cache.", key.block(), key.path());
+				release(key);
+				return null;
+			}
+			slot.verified = true;
+		}
+		return data;
+	}
+	
+	/**
+	 * Cache a block, replacing the least recently used block if the cache is full.
+	 * 
+	 * @param key key
+	 * @param size current size of file
+	 * @param mtime current modification time of file
+	 * @param data data, at most a block in size
+	 * @throws IOException on error
+	 */
+	synchronized void put(Key key, long size, long mtime, ByteBuffer data) throws IOException {
+		checkClosed();
+		if(data.remaining() > blockSize) {
+			throw new IllegalArgumentException("Block may be at most " + blockSize + " bytes.");
+		}
+		
+		var slot = blocks.remove(key);
+		if(slot == null) {
+			var index = free.poll();
+			if(index == null) {
+				var eldest = blocks.entrySet().iterator();
+				slot = eldest.next().getValue();
+				eldest.remove();
+			}
+			else {
+				slot = new Slot(index);
+			}
+		}
+		
+		slot.length = data.remaining();
+		slot.crc = crc(data);
+		slot.size = size;
+		slot.mtime = mtime;
+		slot.verified = true;
+		segment(slot.index).put(offset(slot.index), data, data.position(), slot.length);
+		blocks.put(key, slot);
+		changes++;
+	}
+	
+	private synchronized void checkpointIfChanged() {
+		if(!closed && changes > 0) {
+			try {
+				checkpoint();
+			}
+			catch(IOException ioe) {
+				LOG.warn("Failed to checkpoint block cache {}.", directory, ioe);
+			}
+		}
+	}
+	
+	private void release(Key key) {
+		var slot = blocks.remove(key);
+		if(slot != null) {
+			free.add(slot.index);
+			changes++;
+		}
+	}
+	
+	private void load() throws IOException {
+		var used = new boolean[slots];
+		var index = directory.resolve(INDEX_NAME);
+		if(Files.exists(index)) {
+			try(var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+				if(in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION || in.readInt() != blockSize) {
+					LOG.info("Block cache index in {} is not compatible, starting again.", directory);
+				}
+				else {
+					var count = in.readInt();
+					for(int i = 0 ; i < count ; i++) {
+						var key = new Key(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+						var slot = new Slot(in.readInt());
+						slot.length = in.readInt();
+						slot.crc = in.readInt();
+						slot.size = in.readLong();
+						slot.mtime = in.readLong();
+						if(slot.index >= 0 && slot.index < slots && !used[slot.index] && slot.length <= blockSize) {
+							used[slot.index] = true;
+							blocks.put(key, slot);
+						}
+					}
+				}
+			}
+			catch(IOException ioe) {
+				LOG.warn("Failed to read block cache index in {}, starting again.", directory, ioe);
+				blocks.clear();
+				used = new boolean[slots];
+			}
+		}
+		
+		for(int i = 0 ; i < slots ; i++) {
+			if(!used[i]) {
+				free.add(i);
+			}
+		}
+		
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("Block cache {} has {} of {} blocks of {} bytes used.", directory, blocks.size(), slots, blockSize);
+		}
+	}
+	
+	private MappedByteBuffer segment(int slot) throws IOException {
+		var idx = slot / SEGMENT_SLOTS;
+		var segment = segments[idx];
+		if(segment == null) {
+			var size = (long)Math.min(SEGMENT_SLOTS, slots - idx * SEGMENT_SLOTS) * blockSize;
+			try(var ch = FileChannel.open(directory.resolve("segment-" + idx), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				/* The mapping stays valid after the channel is closed */
+				segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			segments[idx] = segment;
+		}
+		return segment;
+	}
+	
+	private int offset(int slot) {
+		return ( slot % SEGMENT_SLOTS ) * blockSize;
+	}
+	
+	private void checkClosed() throws IOException {
+		if(closed) {
+			throw new IOException("Block cache is closed.");
+		}
+	}
+	
+	private static int crc(ByteBuffer data) {
+		var crc = new CRC32();
+		crc.update(data.duplicate());
+		return (int)crc.getValue();
+	}
+}
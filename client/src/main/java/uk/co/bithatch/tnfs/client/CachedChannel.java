@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+
+/**
+ * A read-only channel on a file that reads whole blocks through a {@link BlockCache}.
+ * The file is only opened on the server when a block is needed that is not
+ * cached, so reading a file that is entirely cached never reads from the server.
+ */
+final class CachedChannel implements TNFSChannel {
+	
+	private final AbstractTNFSMount mount;
+	private final BlockCache cache;
+	private final String server;
+	private final String path;
+	private final ModeFlag[] mode;
+	private final OpenFlag[] flags;
+	private final long size;
+	private final long mtime;
+	private final int blockSize;
+	
+	private SeekableByteChannel channel;
+	private ByteBuffer current;
+	private long currentBlock = -1;
+	private long position;
+	private boolean open = true;
+
+	CachedChannel(AbstractTNFSMount mount, BlockCache cache, String path, StatResult attrs, ModeFlag[] mode, OpenFlag... flags) {
+		this.mount = mount;
+		this.cache = cache;
+		this.path = path;
+		this.mode = mode;
+		this.flags = flags;
+		this.size = attrs.size();
+		this.mtime = attrs.mtime().toMillis();
+		
+		var client = mount.client();
+		var address = client.address();
+		server = client.protocol() + "://" + address.getHostString() + ":" + address.getPort();
+		blockSize = cache.blockSize();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		var r = read(dst, position);
+		if(r > 0) {
+			position += r;
+		}
+		return r;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		checkOpen();
+		if(position >= size) {
+			return -1;
+		}
+		
+		var block = position / blockSize;
+		var data = block(block);
+		var off = (int)(position - block * blockSize);
+		if(off >= data.limit()) {
+			/* File was shorter than expected */
+			return -1;
+		}
+		
+		var n = Math.min(dst.remaining(), data.limit() - off);
+		dst.put(dst.position(), data, off, n);
+		dst.position(dst.position() + n);
+		return n;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		checkOpen();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException {
+		checkOpen();
+		if(newPosition < 0) {
+			throw new IllegalArgumentException("Position may not be negative.");
+		}
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		checkOpen();
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void flush() throws IOException {
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(open) {
+			open = false;
+			current = null;
+			if(channel != null) {
+				channel.close();
+			}
+		}
+	}
+	
+	private ByteBuffer block(long block) throws IOException {
+		if(block != currentBlock) {
+			var key = new BlockCache.Key(server, mount.mountPath(), path, block);
+			var data = cache.get(key, size, mtime);
+			if(data == null) {
+				var start = block * blockSize;
+				var expected = (int)Math.min(blockSize, size - start);
+				data = fetch(start, expected);
+				if(data.limit() == expected) {
+					cache.put(key, size, mtime, data.duplicate());
+				}
+			}
+			current = data;
+			currentBlock = block;
+		}
+		return current;
+	}
+	
+	private ByteBuffer fetch(long start, int length) throws IOException {
+		if(channel == null) {
+			channel = mount.openUncached(path, mode, flags);
+		}
+		channel.position(start);
+		
+		var buf = ByteBuffer.allocate(length);
+		while(buf.hasRemaining()) {
+			if(channel.read(buf) == -1) {
+				break;
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+	
+	private void checkOpen() throws IOException {
+		if(!open) {
+			throw new ClosedChannelException();
+		}
+	}
+}
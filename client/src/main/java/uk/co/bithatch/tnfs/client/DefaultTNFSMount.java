@@ -22,6 +22,7 @@ package uk.co.bithatch.tnfs.client;
 
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Set;
 
@@ -58,6 +59,7 @@ public final class DefaultTNFSMount extends AbstractTNFSMount {
 
 	private final int sessionId;
 	private final Version serverVersion;
+	private final Duration retryTime;
 	private final boolean authenticated;
 
 	private DefaultTNFSMount(Builder bldr) throws IOException {
@@ -68,6 +70,7 @@ public final class DefaultTNFSMount extends AbstractTNFSMount {
 			MountResult res = rep.result();
 			sessionId = rep.message().connectionId();
 			serverVersion = res.version();
+			retryTime = res.retryTime();
 		}
 		catch(SocketTimeoutException ste) {
 			throw new IOException("No TNFS service responded to request.");
@@ -94,4 +97,9 @@ public final class DefaultTNFSMount extends AbstractTNFSMount {
 		return serverVersion;
 	}
 
+	@Override
+	public Duration retryTime() {
+		return retryTime;
+	}
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.DirOptionFlag;
+import uk.co.bithatch.tnfs.lib.DirSortFlag;
+import uk.co.bithatch.tnfs.lib.TNFSDirectory;
+
+/**
+ * Remembers recent directory listings for a short time, so that repeatedly
+ * listing the same directory (as file browsers, FUSE and WebDAV clients tend to)
+ * only costs one listing. As with {@link AttributeCache}, only changes made through
+ * the same mount are seen straight away.
+ */
+final class DirectoryCache {
+	
+	private final static int MAX_LISTINGS = 256;
+
+	record Key(String dir, String wildcard, int maxResults, List<DirOptionFlag> dirOptions, List<DirSortFlag> sortOptions) {
+		Key(String dir, String wildcard, int maxResults, DirOptionFlag[] dirOptions, DirSortFlag[] sortOptions) {
+			this(AttributeCache.key(dir), wildcard, maxResults, Arrays.asList(dirOptions), Arrays.asList(sortOptions));
+		}
+	}
+	
+	private record Cached(List<Entry> entries, long expires) {}
+
+	private final long ttl;
+	private final Map<Key, Cached> listings;
+	
+	private long generation;
+	
+	@SuppressWarnings("serial")
+	DirectoryCache(Duration ttl) {
+		this.ttl = ttl.toNanos();
+		
+		listings = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+				return size() > MAX_LISTINGS;
+			}
+		};
+	}
+	
+	/**
+	 * Get a cached listing.
+	 * 
+	 * @param key key
+	 * @return entries, or <code>null</code> if not cached
+	 */
+	synchronized List<Entry> get(Key key) {
+		var cached = listings.get(key);
+		if(cached == null) {
+			return null;
+		}
+		if(System.nanoTime() - cached.expires >= 0) {
+			listings.remove(key);
+			return null;
+		}
+		return cached.entries;
+	}
+	
+	/**
+	 * Get a token to pass to {@link #put(Key, List, long)}. Taken before listing 
+	 * the directory, this prevents a listing that raced with a change from 
+	 * being cached.
+	 * 
+	 * @return generation
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+	
+	/**
+	 * Remember a listing.
+	 * 
+	 * @param key key
+	 * @param entries entries
+	 * @param generation generation when the listing was requested
+	 */
+	synchronized void put(Key key, List<Entry> entries, long generation) {
+		if(generation == this.generation) {
+			listings.put(key, new Cached(entries, System.nanoTime() + ttl));
+		}
+	}
+	
+	/**
+	 * Forget listings of the directory a path is in, and of the path itself 
+	 * should it be a directory.
+	 * 
+	 * @param path path
+	 */
+	synchronized void changed(String path) {
+		var key = AttributeCache.key(path);
+		var parent = AttributeCache.parent(key);
+		generation++;
+		listings.keySet().removeIf(k -> k.dir.equals(key) || k.dir.equals(parent));
+	}
+	
+	/**
+	 * Forget listings of the directory a path is in, the path itself and anything
+	 * beneath it.
+	 * 
+	 * @param path path
+	 */
+	synchronized void changedTree(String path) {
+		var key = AttributeCache.key(path);
+		var parent = AttributeCache.parent(key);
+		var prefix = key + "/";
+		generation++;
+		listings.keySet().removeIf(k -> k.dir.equals(key) || k.dir.equals(parent) || k.dir.startsWith(prefix));
+	}
+	
+	/**
+	 * Get a {@link TNFSDirectory} over a cached listing. The position used by 
+	 * {@link TNFSDirectory#seek(long)} and {@link TNFSDirectory#tell()} is the
+	 * index of the next entry.
+	 * 
+	 * @param entries entries
+	 * @return directory
+	 */
+	static TNFSDirectory directory(List<Entry> entries) {
+		var it = new Iterator<Entry>() {
+			int position;
+
+			@Override
+			public boolean hasNext() {
+				return position < entries.size();
+			}
+
+			@Override
+			public Entry next() {
+				if(position >= entries.size()) {
+					throw new NoSuchElementException();
+				}
+				return entries.get(position++);
+			}
+		};
+		
+		var str = StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED), false);
+		
+		return new TNFSDirectory() {
+			
+			@Override
+			public Stream<Entry> stream() {
+				return str;
+			}
+			
+			@Override
+			public long tell() throws IOException {
+				return it.position;
+			}
+			
+			@Override
+			public void seek(long position) throws IOException {
+				it.position = (int)Math.min(entries.size(), Math.max(0, position));
+			}
+			
+			@Override
+			public void close() throws IOException {
+				str.close();
+			}
+		};
+	}
+}
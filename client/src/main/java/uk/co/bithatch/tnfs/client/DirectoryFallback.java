@@ -0,0 +1,308 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import uk.co.bithatch.tnfs.client.TNFSClient.ReplyDecoder;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.Command.HandleResult;
+import uk.co.bithatch.tnfs.lib.Command.ReadDirResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.Util;
+
+/**
+ * Lists a directory on servers older than {@link TNFS#READ_DIRX_REQUIRES_VERSION}. These
+ * have no {@link Command#READDIRX}, so only return names, and each entry must then be 
+ * {@link Command#STAT}ed. Rather than waiting for each reply before sending the next request,
+ * a window of requests is kept in flight. {@link Command#READDIR} requests are sent until 
+ * the end of the directory is reached, while each name is STATed as soon as it arrives. 
+ * Entries are passed on as their STAT replies arrive.
+ * <p>
+ * Names that vanish before they can be STATed are skipped.
+ */
+final class DirectoryFallback {
+	
+	private final static ReplyDecoder<HandleResult> HANDLE_RESULT = Command.OPENDIR::decodeResult;
+	private final static ReplyDecoder<ReadDirResult> READDIR_RESULT = Command.READDIR::decodeResult;
+	private final static Object END = new Object();
+
+	private final AsyncTNFSMount async;
+	private final TNFSMount mount;
+	private final String path;
+	private final int window;
+	private final Consumer<Entry> sink;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private final Deque<String> names = new ArrayDeque<>();
+	
+	private int handle = -1;
+	private int inFlight;
+	private boolean exhausted;
+	private boolean finished;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param async mount
+	 * @param path path of directory
+	 * @param window maximum number of requests to have in flight
+	 * @param sink receives each entry, while holding this listing's lock
+	 */
+	DirectoryFallback(AsyncTNFSMount async, String path, int window, Consumer<Entry> sink) {
+		this.async = async;
+		this.mount = async.mount();
+		this.path = path;
+		this.window = Math.max(1, window);
+		this.sink = sink;
+	}
+	
+	/**
+	 * Get a blocking stream of the entries in a directory. Closing the stream closes
+	 * the directory, even if not all entries have been read.
+	 * 
+	 * @param async mount
+	 * @param path path of directory
+	 * @param window maximum number of requests to have in flight
+	 * @return stream of entries
+	 */
+	static Stream<Entry> stream(AsyncTNFSMount async, String path, int window) {
+		var queue = new LinkedBlockingQueue<Object>();
+		var listing = new DirectoryFallback(async, path, window, queue::add);
+		listing.start().whenComplete((v, ex) -> queue.add(ex == null ? END : ex));
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new EntryIterator(queue), Spliterator.NONNULL), false).
+				onClose(() -> {
+					try {
+						TNFSClient.await(listing.close());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+	
+	/**
+	 * Open the directory and start listing it.
+	 * 
+	 * @return future completed once every entry has been passed on and the directory is closed
+	 */
+	CompletableFuture<Void> start() {
+		mount.client().sendAsync(mount, Message.of(mount.sessionId(), Command.OPENDIR, new Command.OpenDir(path)), HANDLE_RESULT, path).whenComplete((res, ex) -> {
+			if(ex == null) {
+				boolean closing;
+				synchronized(this) {
+					handle = res.handle();
+					closing = finished;
+				}
+				if(closing) {
+					/* Closed while opening */
+					closeDir(res.handle(), null);
+				}
+				else {
+					pump();
+				}
+			}
+			else {
+				synchronized(this) {
+					finished = true;
+				}
+				completion.completeExceptionally(cause(ex));
+			}
+		});
+		return completion;
+	}
+	
+	/**
+	 * Stop listing and close the directory. 
+	 * 
+	 * @return future completed when the directory is closed
+	 */
+	CompletableFuture<Void> close() {
+		finish(null);
+		return completion;
+	}
+	
+	private void pump() {
+		while(true) {
+			String name;
+			int dirHandle;
+			synchronized(this) {
+				if(finished || inFlight >= window) {
+					return;
+				}
+				else if(exhausted && names.isEmpty()) {
+					if(inFlight > 0) {
+						return;
+					}
+					name = null;
+					dirHandle = -1;
+				}
+				else {
+					name = names.poll();
+					dirHandle = handle;
+					inFlight++;
+				}
+			}
+			
+			if(dirHandle == -1) {
+				finish(null);
+				return;
+			}
+			else if(name == null) {
+				readDir(dirHandle);
+			}
+			else {
+				stat(name);
+			}
+		}
+	}
+	
+	private void readDir(int dirHandle) {
+		mount.client().sendAsync(mount, Message.of(mount.sessionId(), Command.READDIR, new Command.ReadDir(dirHandle)), READDIR_RESULT, path).whenComplete((res, ex) -> {
+			var eof = ex != null && cause(ex) instanceof EOFException;
+			synchronized(this) {
+				inFlight--;
+				if(ex == null) {
+					var name = res.entry();
+					if(!name.equals(".") && !name.equals("..")) {
+						names.add(name);
+					}
+				}
+				else if(eof) {
+					/* Any other READDIRs in flight will get the same */
+					exhausted = true;
+				}
+			}
+			if(ex == null || eof) {
+				pump();
+			}
+			else {
+				finish(ex);
+			}
+		});
+	}
+	
+	private void stat(String name) {
+		async.statAsync(Util.concatenatePaths(path, name, TNFS.UNIX_SEPARATOR)).whenComplete((res, ex) -> {
+			synchronized(this) {
+				inFlight--;
+				if(ex == null && !finished) {
+					sink.accept(res.toEntry(name));
+				}
+			}
+			if(ex == null || cause(ex) instanceof NoSuchFileException) {
+				pump();
+			}
+			else {
+				finish(ex);
+			}
+		});
+	}
+	
+	private void finish(Throwable ex) {
+		int dirHandle;
+		synchronized(this) {
+			if(finished) {
+				return;
+			}
+			finished = true;
+			dirHandle = handle;
+		}
+		/* If not yet open, it will be closed once it is */
+		if(dirHandle != -1) {
+			closeDir(dirHandle, ex);
+		}
+	}
+	
+	private void closeDir(int dirHandle, Throwable ex) {
+		mount.client().sendAsync(mount, Message.of(mount.sessionId(), Command.CLOSEDIR, new Command.CloseHandle(dirHandle)), ReplyDecoder.ignore(), path).whenComplete((res, cex) -> {
+			var err = ex == null ? cex : ex;
+			if(err == null) {
+				completion.complete(null);
+			}
+			else {
+				completion.completeExceptionally(cause(err));
+			}
+		});
+	}
+	
+	private static Throwable cause(Throwable ex) {
+		return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+	}
+	
+	private final static class EntryIterator implements Iterator<Entry> {
+		
+		private final BlockingQueue<Object> queue;
+		private Object next;
+		
+		private EntryIterator(BlockingQueue<Object> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(next == null) {
+				try {
+					next = queue.take();
+				} catch (InterruptedException e) {
+					throw new UncheckedIOException(new InterruptedIOException());
+				}
+			}
+			if(next instanceof IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+			else if(next instanceof RuntimeException re) {
+				throw re;
+			}
+			else if(next instanceof Throwable t) {
+				throw new UncheckedIOException(new IOException("Failed to list directory.", t));
+			}
+			return next != END;
+		}
+
+		@Override
+		public Entry next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			var entry = (Entry)next;
+			next = null;
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.EOFException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.DirOptionFlag;
+import uk.co.bithatch.tnfs.lib.DirSortFlag;
+import uk.co.bithatch.tnfs.lib.Message;
+
+/**
+ * Publishes the entries of a directory. With servers that support {@link Command#READDIRX},
+ * a further batch of entries is only read when the subscriber has asked for more than 
+ * have already been read. Otherwise, or when listings are being cached, the whole 
+ * listing is obtained using {@link AsyncTNFSMount#directoryAsync(String)} and then 
+ * published as it is asked for.
+ */
+final class DirectoryPublisher implements Flow.Publisher<Entry> {
+	
+	private final AsyncTNFSMount async;
+	private final String path;
+	private final int maxEntries;
+	private final AttributeCache attributes;
+	private final boolean extended;
+	
+	DirectoryPublisher(AsyncTNFSMount async, String path, int maxEntries, AttributeCache attributes, boolean extended) {
+		this.async = async;
+		this.path = path;
+		this.maxEntries = maxEntries;
+		this.attributes = attributes;
+		this.extended = extended;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Entry> subscriber) {
+		Objects.requireNonNull(subscriber);
+		subscriber.onSubscribe(new DirectorySubscription(subscriber));
+	}
+	
+	private final class DirectorySubscription implements Flow.Subscription {
+		
+		private final Flow.Subscriber<? super Entry> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger work = new AtomicInteger();
+		private final Deque<Entry> entries = new ArrayDeque<>();
+		
+		private volatile boolean cancelled;
+		private volatile IllegalArgumentException invalid;
+		
+		/* Only used while draining */
+		private CompletableFuture<Integer> handle;
+		private CompletableFuture<List<Entry>> reading;
+		private long generation;
+		private int remaining;
+		private boolean opened;
+		private boolean exhausted;
+		private boolean done;
+
+		private DirectorySubscription(Flow.Subscriber<? super Entry> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if(n <= 0) {
+				invalid = new IllegalArgumentException("Must request a positive number of items, not " + n + ".");
+			}
+			else {
+				demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			drain();
+		}
+		
+		/**
+		 * As with {@link FilePublisher}, only one thread at a time does any work.
+		 */
+		private void drain() {
+			if(work.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				drainOnce();
+			}
+			while(work.decrementAndGet() != 0);
+		}
+		
+		private void drainOnce() {
+			while(!done) {
+				if(cancelled) {
+					finish();
+					return;
+				}
+				if(invalid != null) {
+					finish();
+					subscriber.onError(invalid);
+					return;
+				}
+				
+				if(reading == null && handle == null) {
+					if(demand.get() == 0) {
+						return;
+					}
+					if(extended) {
+						handle = open();
+						reading = handle.thenApply(h -> List.<Entry>of());
+					}
+					else {
+						exhausted = true;
+						reading = async.directoryAsync(path);
+					}
+					reading.whenComplete((res, ex) -> drain());
+				}
+				
+				if(reading != null) {
+					if(!reading.isDone()) {
+						return;
+					}
+					var read = reading;
+					reading = null;
+					try {
+						var batch = read.join();
+						entries.addAll(batch);
+						if(extended) {
+							if(opened && batch.isEmpty()) {
+								exhausted = true;
+							}
+							opened = true;
+							remaining -= batch.size();
+							if(remaining <= 0) {
+								exhausted = true;
+							}
+						}
+					}
+					catch(CompletionException ce) {
+						var ex = ce.getCause() == null ? ce : ce.getCause();
+						if(ex instanceof EOFException) {
+							exhausted = true;
+						}
+						else {
+							finish();
+							subscriber.onError(ex);
+							return;
+						}
+					}
+				}
+				
+				while(demand.get() > 0 && !entries.isEmpty()) {
+					demand.decrementAndGet();
+					subscriber.onNext(entries.poll());
+					if(cancelled) {
+						finish();
+						return;
+					}
+				}
+				
+				if(entries.isEmpty()) {
+					if(exhausted) {
+						finish();
+						subscriber.onComplete();
+						return;
+					}
+					if(demand.get() > 0) {
+						reading = read();
+						reading.whenComplete((res, ex) -> drain());
+						continue;
+					}
+				}
+				return;
+			}
+		}
+		
+		private CompletableFuture<Integer> open() {
+			var mount = async.mount();
+			generation = attributes == null ? 0 : attributes.generation();
+			return mount.client().sendAsync(mount, Command.OPENDIRX, Message.of(mount.sessionId(), Command.OPENDIRX, 
+					new Command.OpenDirX(new DirOptionFlag[0], new DirSortFlag[0], 0, "", path)), path).thenApply(res -> {
+				remaining = res.result().entries();
+				return res.result().handle();
+			});
+		}
+		
+		private CompletableFuture<List<Entry>> read() {
+			var mount = async.mount();
+			return mount.client().sendAsync(mount, Command.READDIRX, Message.of(mount.sessionId(), Command.READDIRX, 
+					new Command.ReadDirX(handle.join(), maxEntries)), path).thenApply(res -> {
+				var batch = res.result().entries();
+				if(attributes != null) {
+					attributes.seed(path, batch, generation);
+				}
+				return Arrays.asList(batch);
+			});
+		}
+		
+		private void finish() {
+			done = true;
+			entries.clear();
+			if(handle != null) {
+				var mount = async.mount();
+				handle.thenAccept(h -> mount.client().sendAsync(mount, Command.CLOSEDIR, Message.of(mount.sessionId(), Command.CLOSEDIR, new Command.CloseHandle(h)), path));
+			}
+		}
+	}
+}
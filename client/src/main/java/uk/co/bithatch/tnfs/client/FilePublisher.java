@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.Protocol;
+
+/**
+ * Publishes the contents of a file, keeping one {@link uk.co.bithatch.tnfs.lib.Command#READ}
+ * in flight for each item the subscriber has asked for, so back-pressure from
+ * the subscriber is back-pressure on the server. As with {@link ReadAhead}, 
+ * READ uses the server's file position, so more than one request is only kept
+ * in flight over TCP.
+ */
+final class FilePublisher implements Flow.Publisher<ByteBuffer> {
+	
+	private final AsyncTNFSMount async;
+	private final String path;
+	
+	FilePublisher(AsyncTNFSMount async, String path) {
+		this.async = async;
+		this.path = path;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+		Objects.requireNonNull(subscriber);
+		subscriber.onSubscribe(new FileSubscription(subscriber));
+	}
+	
+	private final class FileSubscription implements Flow.Subscription {
+		
+		private final Flow.Subscriber<? super ByteBuffer> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger work = new AtomicInteger();
+		private final Deque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+		private final int maxDepth;
+		
+		private volatile boolean cancelled;
+		private volatile IllegalArgumentException invalid;
+		
+		/* Only used while draining */
+		private CompletableFuture<Integer> handle;
+		private boolean done;
+
+		private FileSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+			this.subscriber = subscriber;
+			
+			var client = async.mount().client();
+			maxDepth = client.protocol() == Protocol.TCP ? client.maxInFlight() : 1;
+		}
+
+		@Override
+		public void request(long n) {
+			if(n <= 0) {
+				invalid = new IllegalArgumentException("Must request a positive number of items, not " + n + ".");
+			}
+			else {
+				demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			drain();
+		}
+		
+		/**
+		 * Signals may come from the subscriber, or from the thread that receives replies, 
+		 * but only one thread at a time does any work, and it carries on until there is 
+		 * no more work to do.
+		 */
+		private void drain() {
+			if(work.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				drainOnce();
+			}
+			while(work.decrementAndGet() != 0);
+		}
+		
+		private void drainOnce() {
+			if(done) {
+				return;
+			}
+			if(cancelled) {
+				finish();
+				return;
+			}
+			if(invalid != null) {
+				finish();
+				subscriber.onError(invalid);
+				return;
+			}
+			
+			if(handle == null) {
+				if(demand.get() == 0) {
+					/* Do not open until something is wanted */
+					return;
+				}
+				handle = async.openAsync(path, OpenFlag.READ);
+				handle.whenComplete((h, ex) -> drain());
+			}
+			if(!handle.isDone()) {
+				return;
+			}
+			if(handle.isCompletedExceptionally()) {
+				done = true;
+				subscriber.onError(cause(handle));
+				return;
+			}
+			
+			/* Deliver replies in the order the requests were sent */
+			while(!pending.isEmpty() && pending.peek().isDone()) {
+				var next = pending.poll();
+				if(next.isCompletedExceptionally()) {
+					var ex = cause(next);
+					finish();
+					if(ex instanceof EOFException) {
+						subscriber.onComplete();
+					}
+					else {
+						subscriber.onError(ex);
+					}
+					return;
+				}
+				
+				var data = next.join();
+				if(!data.hasRemaining()) {
+					finish();
+					subscriber.onComplete();
+					return;
+				}
+				
+				demand.decrementAndGet();
+				subscriber.onNext(data);
+				if(cancelled) {
+					finish();
+					return;
+				}
+			}
+			
+			var fh = handle.join();
+			while(pending.size() < Math.min(demand.get(), maxDepth)) {
+				var next = async.readAsync(fh, Integer.MAX_VALUE);
+				pending.add(next);
+				next.whenComplete((data, ex) -> drain());
+			}
+		}
+		
+		private void finish() {
+			done = true;
+			pending.clear();
+			if(handle != null) {
+				/* Replies to anything still in flight are just ignored */
+				handle.thenAccept(async::closeAsync);
+			}
+		}
+	}
+	
+	private static Throwable cause(CompletableFuture<?> future) {
+		try {
+			future.join();
+			throw new IllegalStateException("Not completed exceptionally.");
+		}
+		catch(CompletionException ce) {
+			return ce.getCause() == null ? ce : ce.getCause();
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+import uk.co.bithatch.tnfs.client.TNFSClient.MessageResult;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.WriteResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.Protocol;
+
+/**
+ * Writes everything published to it to a file, splitting buffers into packet sized 
+ * {@link Command#WRITE} requests. Another item is only requested from the publisher 
+ * when everything received so far has been sent and fewer than the maximum number 
+ * of requests are in flight. As with {@link WriteBehind}, WRITE uses the server's 
+ * file position, so more than one request is only kept in flight over TCP.
+ */
+final class FileSubscriber implements AsyncTNFSMount.WriteSubscriber {
+	
+	private final AsyncTNFSMount async;
+	private final String path;
+	private final OpenFlag[] flags;
+	private final int maxDepth;
+	private final CompletableFuture<Long> completion = new CompletableFuture<>();
+	private final Deque<ByteBuffer> queued = new ArrayDeque<>();
+	
+	private Flow.Subscription subscription;
+	private Integer handle;
+	private int inFlight;
+	private long written;
+	private boolean requested;
+	private boolean complete;
+	private boolean done;
+	
+	FileSubscriber(AsyncTNFSMount async, String path, OpenFlag... flags) {
+		this.async = async;
+		this.path = path;
+		this.flags = flags;
+		
+		var client = async.mount().client();
+		maxDepth = client.protocol() == Protocol.TCP ? client.maxInFlight() : 1;
+	}
+
+	@Override
+	public CompletableFuture<Long> completion() {
+		return completion;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		Objects.requireNonNull(subscription);
+		synchronized(this) {
+			if(this.subscription != null || done) {
+				/* Only one publisher may write to the file */
+				subscription.cancel();
+				return;
+			}
+			this.subscription = subscription;
+		}
+		
+		async.openAsync(path, flags).whenComplete((h, ex) -> {
+			if(ex != null) {
+				fail(ex, true);
+				return;
+			}
+			
+			boolean failed;
+			synchronized(this) {
+				handle = h;
+				failed = done;
+			}
+			if(failed) {
+				/* The publisher failed while the file was being opened */
+				async.closeAsync(h);
+			}
+			else {
+				pump();
+			}
+		});
+	}
+
+	@Override
+	public void onNext(ByteBuffer item) {
+		Objects.requireNonNull(item);
+		synchronized(this) {
+			requested = false;
+			if(done) {
+				return;
+			}
+			
+			var chunk = async.mount().client().size() - Message.HEADER_SIZE - 3;
+			while(item.hasRemaining()) {
+				var n = Math.min(chunk, item.remaining());
+				queued.add(item.slice(item.position(), n));
+				item.position(item.position() + n);
+			}
+		}
+		pump();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		Objects.requireNonNull(throwable);
+		fail(throwable, false);
+	}
+
+	@Override
+	public void onComplete() {
+		synchronized(this) {
+			complete = true;
+		}
+		pump();
+	}
+	
+	/**
+	 * Send as much as is allowed, then either ask for more, or close the file if
+	 * the publisher has finished and everything has been written.
+	 */
+	private void pump() {
+		var request = false;
+		var close = false;
+		synchronized(this) {
+			if(done || handle == null) {
+				return;
+			}
+			
+			while(!queued.isEmpty() && inFlight < maxDepth) {
+				var data = queued.poll();
+				var expected = data.remaining();
+				inFlight++;
+				send(data).whenComplete((res, ex) -> onWritten(expected, res, ex));
+			}
+			
+			if(queued.isEmpty() && inFlight == 0 && complete) {
+				done = true;
+				close = true;
+			}
+			else if(queued.isEmpty() && inFlight < maxDepth && !requested && !complete) {
+				requested = true;
+				request = true;
+			}
+		}
+		
+		if(close) {
+			async.closeAsync(handle).whenComplete((v, ex) -> {
+				if(ex == null) {
+					completion.complete(written);
+				}
+				else {
+					completion.completeExceptionally(ex instanceof CompletionException ce && ce.getCause() != null ? ce.getCause() : ex);
+				}
+			});
+		}
+		else if(request) {
+			subscription.request(1);
+		}
+	}
+	
+	private void onWritten(int expected, MessageResult<WriteResult> res, Throwable ex) {
+		if(ex == null && res.result().written() != expected) {
+			ex = new IOException("Short write to " + path + ", expected " + expected + " but wrote " + res.result().written() + ".");
+		}
+		synchronized(this) {
+			inFlight--;
+			if(ex == null) {
+				written += expected;
+			}
+		}
+		if(ex == null) {
+			pump();
+		}
+		else {
+			fail(ex, true);
+		}
+	}
+	
+	private void fail(Throwable ex, boolean cancel) {
+		Integer fh;
+		synchronized(this) {
+			if(done) {
+				return;
+			}
+			done = true;
+			queued.clear();
+			fh = handle;
+		}
+		if(cancel) {
+			subscription.cancel();
+		}
+		if(fh != null) {
+			async.closeAsync(fh);
+		}
+		completion.completeExceptionally(ex instanceof CompletionException ce && ce.getCause() != null ? ce.getCause() : ex);
+	}
+	
+	private CompletableFuture<MessageResult<WriteResult>> send(ByteBuffer data) {
+		var mount = async.mount();
+		return mount.client().sendAsync(mount, Command.WRITE, Message.of(mount.sessionId(), Command.WRITE, new Command.Write(handle, data)), path);
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.TNFSException;
+
+/**
+ * Downloads a single file using several handles at once. Each open handle has
+ * its own position on the server, so while reads on one handle are served in
+ * turn, reads on different handles are not. The file is divided into chunks, 
+ * and each handle repeatedly takes the next chunk, reads it (reading ahead as usual)
+ * and writes it at the same position in the local file.
+ * <p>
+ * If the server will not open as many handles as asked for, the download carries
+ * on with those that it did open.
+ */
+public final class ParallelDownload {
+	
+	private final static Logger LOG = LoggerFactory.getLogger(ParallelDownload.class);
+	
+	public final static class Builder {
+		private final TNFSMount mount;
+		private final String path;
+		private int streams = TNFS.DEFAULT_DOWNLOAD_STREAMS;
+		private int chunkSize = TNFS.DEFAULT_DOWNLOAD_CHUNK_SIZE;
+		private Optional<LongConsumer> progress = Optional.empty();
+		
+		/**
+		 * Construct a new download builder.
+		 * 
+		 * @param mount mount
+		 * @param path path of remote file
+		 */
+		public Builder(TNFSMount mount, String path) {
+			this.mount = mount;
+			this.path = path;
+		}
+
+		/**
+		 * Maximum number of handles to open and read with at once. The default is
+		 * {@link TNFS#DEFAULT_DOWNLOAD_STREAMS}.
+		 * 
+		 * @param streams streams
+		 * @return this for chaining
+		 */
+		public Builder withStreams(int streams) {
+			if(streams < 1) {
+				throw new IllegalArgumentException("Must have at least one stream.");
+			}
+			this.streams = streams;
+			return this;
+		}
+
+		/**
+		 * Size of each range of the file read by a single handle. The default is
+		 * {@link TNFS#DEFAULT_DOWNLOAD_CHUNK_SIZE}.
+		 * 
+		 * @param chunkSize chunk size
+		 * @return this for chaining
+		 */
+		public Builder withChunkSize(int chunkSize) {
+			if(chunkSize < 1) {
+				throw new IllegalArgumentException("Chunk size must be at least one byte.");
+			}
+			this.chunkSize = chunkSize;
+			return this;
+		}
+
+		/**
+		 * Callback invoked with the number of bytes each time some are written to 
+		 * the local file. This may be invoked from several threads at once.
+		 * 
+		 * @param progress progress
+		 * @return this for chaining
+		 */
+		public Builder withProgress(LongConsumer progress) {
+			this.progress = Optional.of(progress);
+			return this;
+		}
+		
+		/**
+		 * Create the download from this builders configuration.
+		 * 
+		 * @return download
+		 */
+		public ParallelDownload build() {
+			return new ParallelDownload(this);
+		}
+	}
+
+	private final TNFSMount mount;
+	private final String path;
+	private final int streams;
+	private final int chunkSize;
+	private final Optional<LongConsumer> progress;
+	
+	private ParallelDownload(Builder bldr) {
+		this.mount = bldr.mount;
+		this.path = bldr.path;
+		this.streams = bldr.streams;
+		this.chunkSize = bldr.chunkSize;
+		this.progress = bldr.progress;
+	}
+	
+	/**
+	 * Download the file, writing it at the same positions in a local file. The local 
+	 * file's own position is not used or changed. 
+	 * 
+	 * @param target local file
+	 * @return number of bytes downloaded
+	 * @throws IOException on error
+	 */
+	public long download(FileChannel target) throws IOException {
+		var size = mount.stat(path).size();
+		var chunks = (int)Math.min(Integer.MAX_VALUE, ( size + chunkSize - 1 ) / chunkSize);
+		var wanted = Math.max(1, Math.min(streams, chunks));
+		
+		var channels = new ArrayList<SeekableByteChannel>();
+		try {
+			open(channels, wanted);
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Downloading `{}` ({} bytes) using {} handles in {} chunks", path, size, channels.size(), chunks);
+			}
+			
+			if(channels.size() == 1) {
+				return copy(channels.get(0), target, new AtomicInteger(), chunks, size);
+			}
+			
+			var next = new AtomicInteger();
+			var executor = Executors.newFixedThreadPool(channels.size(), r -> {
+				var t = new Thread(r, "TNFSDownload-" + path);
+				t.setDaemon(true);
+				return t;
+			});
+			try {
+				var futures = new ArrayList<Future<Long>>();
+				for(var channel : channels) {
+					futures.add(executor.submit(() -> copy(channel, target, next, chunks, size)));
+				}
+				var total = 0l;
+				for(var future : futures) {
+					total += result(future);
+				}
+				return total;
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		finally {
+			close(channels);
+		}
+	}
+	
+	private void open(List<SeekableByteChannel> channels, int wanted) throws IOException {
+		while(channels.size() < wanted) {
+			try {
+				channels.add(mount.open(path, OpenFlag.READ));
+			}
+			catch(TNFSException tnfse) {
+				if(channels.isEmpty() || ( tnfse.code() != ResultCode.MFILE && tnfse.code() != ResultCode.NFILE )) {
+					throw tnfse;
+				}
+				LOG.info("Server would only open {} of {} handles for `{}`", channels.size(), wanted, path);
+				return;
+			}
+		}
+	}
+	
+	private long copy(SeekableByteChannel channel, FileChannel target, AtomicInteger next, int chunks, long size) throws IOException {
+		var client = mount.client();
+		var total = 0l;
+		try(var lease = client.bufferPool().acquire(client.size())) {
+			var buf = lease.buffer();
+			int chunk;
+			while((chunk = next.getAndIncrement()) < chunks) {
+				var position = (long)chunk * chunkSize;
+				var end = Math.min(size, position + chunkSize);
+				channel.position(position);
+				while(position < end) {
+					if(Thread.interrupted()) {
+						throw new InterruptedIOException();
+					}
+					
+					buf.clear();
+					buf.limit((int)Math.min(buf.capacity(), end - position));
+					if(channel.read(buf) == -1) {
+						/* Shorter than when the download started */
+						return total;
+					}
+					
+					buf.flip();
+					var n = buf.remaining();
+					while(buf.hasRemaining()) {
+						position += target.write(buf, position);
+					}
+					total += n;
+					progress.ifPresent(p -> p.accept(n));
+				}
+			}
+		}
+		return total;
+	}
+	
+	private static long result(Future<Long> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch(InterruptedException ie) {
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException ee) {
+			var cause = ee.getCause();
+			if(cause instanceof IOException ioe) {
+				throw ioe;
+			}
+			else if(cause instanceof RuntimeException re) {
+				throw re;
+			}
+			else if(cause instanceof Error err) {
+				throw err;
+			}
+			else {
+				throw new IOException("Download failed.", cause);
+			}
+		}
+	}
+	
+	private static void close(List<SeekableByteChannel> channels) throws IOException {
+		IOException first = null;
+		for(var channel : channels) {
+			try {
+				channel.close();
+			}
+			catch(IOException ioe) {
+				if(first == null) {
+					first = ioe;
+				}
+			}
+		}
+		if(first != null) {
+			throw first;
+		}
+	}
+}
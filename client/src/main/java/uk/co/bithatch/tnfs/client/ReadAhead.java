@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+import uk.co.bithatch.tnfs.client.TNFSClient.ReplyDecoder;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.Protocol;
+
+/**
+ * Reads ahead of the caller when a file is being read sequentially. Once a few
+ * reads in a row have been made without seeking, a window of READ requests is
+ * kept in flight, doubling in size with each further read up to a maximum. 
+ * <p>
+ * READ has no offset and reads from the file's current position, so the server
+ * must handle requests in the order they were sent. This is only true for TCP, 
+ * as UDP requests may be lost and sent again out of order. When the mount has a 
+ * {@link TNFSPositionalExtension}, each request instead carries its own position, 
+ * so the window may be used over UDP too, and the server's file position is 
+ * never moved.
+ */
+final class ReadAhead {
+	
+	private final static int SEQUENTIAL_THRESHOLD = 2;
+	
+	private final static ReplyDecoder<ReadResult> READ_RESULT = Command.READ::decodeResult;
+	
+	private record Pending(long position, int size, CompletableFuture<ReadResult> future) {}
+	
+	private final TNFSMount mount;
+	private final int handle;
+	private final String path;
+	private final TNFSPositionalExtension positional;
+	private final int maxDepth;
+	private final Deque<Pending> pending = new ArrayDeque<>();
+	
+	private ByteBuffer current;
+	private int sequential;
+	private boolean eof;
+	private long next;
+	
+	ReadAhead(TNFSMount mount, int handle, String path, int maxReadAhead, TNFSPositionalExtension positional) {
+		this.mount = mount;
+		this.handle = handle;
+		this.path = path;
+		this.positional = positional;
+		
+		var client = mount.client();
+		this.maxDepth = positional != null || client.protocol() == Protocol.TCP ? Math.min(maxReadAhead, client.maxInFlight()) : 0;
+	}
+	
+	/**
+	 * Read from the file, from the window if there is one.
+	 * 
+	 * @param dst destination
+	 * @param position the callers position in the file
+	 * @return bytes read or -1 at end of file
+	 * @throws IOException on error
+	 */
+	int read(ByteBuffer dst, long position) throws IOException {
+		if(current == null || !current.hasRemaining()) {
+			sequential++;
+			var depth = depth();
+			if(pending.isEmpty()) {
+				if(depth == 0) {
+					return readDirect(dst, position);
+				}
+				next = position;
+			}
+			
+			fill(depth);
+			if(!next()) {
+				return -1;
+			}
+		}
+		
+		var n = Math.min(dst.remaining(), current.remaining());
+		dst.put(dst.position(), current, current.position(), n);
+		dst.position(dst.position() + n);
+		current.position(current.position() + n);
+		return n;
+	}
+	
+	/**
+	 * Move forward through the window without returning the data, if the
+	 * new position is within it.
+	 * 
+	 * @param bytes number of bytes to skip
+	 * @return whether the new position was within the window
+	 * @throws IOException on error
+	 */
+	boolean skip(long bytes) throws IOException {
+		if(bytes < 0 || bytes > (current == null ? 0 : current.remaining()) + (long)pending.size() * chunk()) {
+			return false;
+		}
+		while(bytes > 0) {
+			if(current == null || !current.hasRemaining()) {
+				if(!next()) {
+					return false;
+				}
+			}
+			var n = (int)Math.min(bytes, current.remaining());
+			current.position(current.position() + n);
+			bytes -= n;
+		}
+		return true;
+	}
+	
+	/**
+	 * Discard the window, for example before a seek or write.
+	 * 
+	 * @return whether the server's file position is now ahead of the caller's 
+	 */
+	boolean discard() {
+		var ahead = positional == null && ( !pending.isEmpty() || ( current != null && current.hasRemaining() ) );
+		pending.clear();
+		current = null;
+		sequential = 0;
+		eof = false;
+		return ahead;
+	}
+	
+	private int depth() {
+		if(maxDepth == 0 || sequential <= SEQUENTIAL_THRESHOLD) {
+			return 0;
+		}
+		return Math.min(maxDepth, 1 << Math.min(16, sequential - SEQUENTIAL_THRESHOLD - 1));
+	}
+	
+	private int chunk() {
+		return positional == null ? mount.client().size() - Message.HEADER_SIZE - 3 : positional.maxRead();
+	}
+	
+	private void fill(int depth) {
+		var chunk = chunk();
+		while(!eof && pending.size() < depth) {
+			pending.add(new Pending(next, chunk, request(next, chunk)));
+			next += chunk;
+		}
+	}
+	
+	private CompletableFuture<ReadResult> request(long position, int size) {
+		if(positional == null) {
+			return mount.client().sendAsync(mount, Message.of(mount.sessionId(), Command.READ, new Command.Read(handle, size)), READ_RESULT, path);
+		}
+		else {
+			return positional.readAt(handle, position, size, path);
+		}
+	}
+	
+	private boolean next() throws IOException {
+		var head = pending.poll();
+		if(head == null) {
+			return false;
+		}
+		try {
+			current = TNFSClient.await(head.future()).data();
+			if(positional != null && current.remaining() < head.size()) {
+				/* A short read, so the requests after it would leave a gap. Start again from here */ 
+				pending.clear();
+				next = head.position() + current.remaining();
+			}
+			fill(depth());
+			return true;
+		}
+		catch(EOFException eofe) {
+			/* Anything after this will be end of file too */
+			eof = true;
+			pending.clear();
+			return false;
+		}
+	}
+	
+	private int readDirect(ByteBuffer dst, long position) throws IOException {
+		/* Nothing is read ahead, so the reply may be copied straight into the callers buffer */
+		var was = dst.position();
+		try {
+			if(positional == null) {
+				var max = Math.min(chunk(), dst.remaining());
+				mount.client().send(mount, Message.of(mount.sessionId(), Command.READ, new Command.Read(handle, max)), ReplyDecoder.readInto(dst), path);
+			}
+			else {
+				TNFSClient.await(positional.readAt(handle, position, dst, path));
+			}
+			return dst.position() - was;
+		}
+		catch(EOFException eofe) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the round trip time to a server and the retransmission timeout (RTO)
+ * that should be used for UDP requests, as described in RFC 6298. Only replies
+ * to requests that have been sent exactly once should be sampled (Karn's algorithm).
+ */
+final class RttEstimator {
+	
+	private final static long INITIAL_RTO = TimeUnit.SECONDS.toNanos(1);
+	private final static long MIN_RTO = TimeUnit.MILLISECONDS.toNanos(200);
+	private final static long MAX_RTO = TimeUnit.SECONDS.toNanos(60);
+	private final static long GRANULARITY = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private long srtt = -1;
+	private long rttvar;
+	private long rto = INITIAL_RTO;
+	
+	/**
+	 * Add a round trip time measurement.
+	 * 
+	 * @param rtt round trip time in nanoseconds
+	 */
+	synchronized void sample(long rtt) {
+		if(srtt == -1) {
+			srtt = rtt;
+			rttvar = rtt / 2;
+		}
+		else {
+			rttvar = ( 3 * rttvar + Math.abs(srtt - rtt) ) / 4;
+			srtt = ( 7 * srtt + rtt ) / 8;
+		}
+		rto = clamp(srtt + Math.max(GRANULARITY, 4 * rttvar));
+	}
+	
+	/**
+	 * Double the timeout after a retransmission timer expires.
+	 */
+	synchronized void backoff() {
+		rto = clamp(rto * 2);
+	}
+	
+	/**
+	 * Get the current retransmission timeout.
+	 * 
+	 * @return timeout in nanoseconds
+	 */
+	synchronized long rto() {
+		return rto;
+	}
+	
+	private static long clamp(long rto) {
+		return Math.min(MAX_RTO, Math.max(MIN_RTO, rto));
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A channel on a file open on a {@link TNFSMount}. As well as being a 
+ * {@link SeekableByteChannel}, this can read and write at a given position 
+ * without changing the channel's position, and is {@link Flushable}, which waits 
+ * for any writes that are still in flight.
+ */
+public interface TNFSChannel extends SeekableByteChannel, Flushable {
+
+	/**
+	 * Read from the given position, without changing this channel's position. 
+	 * 
+	 * @param dst destination
+	 * @param position position
+	 * @return bytes read or -1 at end of file
+	 * @throws IOException on error
+	 */
+	int read(ByteBuffer dst, long position) throws IOException;
+
+	/**
+	 * Write at the given position, without changing this channel's position. 
+	 * 
+	 * @param src source
+	 * @param position position
+	 * @return bytes written
+	 * @throws IOException on error
+	 */
+	int write(ByteBuffer src, long position) throws IOException;
+}
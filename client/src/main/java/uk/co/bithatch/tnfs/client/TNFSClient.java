@@ -23,11 +23,17 @@ package uk.co.bithatch.tnfs.client;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.StandardSocketOptions;
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.AbstractSelectableChannel;
 import java.nio.file.AccessDeniedException;
@@ -38,9 +44,19 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.ReadOnlyFileSystemException;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -53,7 +69,8 @@ import uk.co.bithatch.tnfs.lib.ByteBufferPool;
 import uk.co.bithatch.tnfs.lib.Command;
 import uk.co.bithatch.tnfs.lib.Command.Result;
 import uk.co.bithatch.tnfs.lib.Debug;
-import uk.co.bithatch.tnfs.lib.Interrupt;
+import uk.co.bithatch.tnfs.lib.FrameDecoder;
+import uk.co.bithatch.tnfs.lib.FrameDecoder.FrameProcessor;
 import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.Protocol;
 import uk.co.bithatch.tnfs.lib.ResultCode;
@@ -67,6 +84,7 @@ public final class TNFSClient implements Closeable {
 	public static class Builder extends AbstractBuilder<Builder> {
 		
 		private Optional<Duration> timeout  = Optional.of(Duration.ofSeconds(TNFS.DEFAULT_TIMEOUT_SECONDS));
+		private int maxInFlight = TNFS.DEFAULT_MAX_IN_FLIGHT;
 		
 		public Builder withTimeout(Duration timeout) {
 			this.timeout = Optional.of(timeout);
@@ -78,35 +96,214 @@ public final class TNFSClient implements Closeable {
 			return this;
 		}
 		
+		/**
+		 * Set the maximum number of requests that may be awaiting a reply at any one
+		 * time. Any further requests are queued until a reply arrives. A value of 
+		 * <code>1</code> gives the strict one request, one reply behaviour of a
+		 * basic TNFS client. The default is {@link TNFS#DEFAULT_MAX_IN_FLIGHT}.
+		 * 
+		 * @param maxInFlight maximum requests in flight
+		 * @return this for chaining
+		 */
+		public Builder withMaxInFlight(int maxInFlight) {
+			if(maxInFlight < 1 || maxInFlight > TNFS.MAX_IN_FLIGHT) {
+				throw new IllegalArgumentException("Maximum requests in flight must be between 1 and " + TNFS.MAX_IN_FLIGHT);
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+		
 		/**
 		 * Create the client from this builders configuration.
 		 * 
 		 * @return client
 		 */
 		public TNFSClient build() throws IOException {
-			return new TNFSClient(port, size, protocol, hostname, timeout, bufferPool);
+			return new TNFSClient(port, size, protocol, hostname, timeout, maxInFlight, bufferPool);
 		}
 	}
 	
 	public record MessageResult<RESULT extends Result>(Message message, RESULT result) {}
 	
+	/**
+	 * Decodes the payload of a successful reply straight from the buffer it was received 
+	 * into, rather than from a copy of the whole reply. This is called by the thread that 
+	 * receives replies, with the buffer positioned at the start of the payload, which is 
+	 * the result code, so {@link Command#decodeResult(ByteBuffer)} may be used. The buffer 
+	 * is reused as soon as it returns, so anything needed from it must be copied, ideally 
+	 * into something that already exists, such as the caller's own buffer.
+	 *
+	 * @param <T> type of decoded result
+	 */
+	@FunctionalInterface
+	public interface ReplyDecoder<T> {
+		/**
+		 * Decode the payload.
+		 * 
+		 * @param payload payload
+		 * @return decoded result
+		 */
+		T decode(ByteBuffer payload);
+		
+		/**
+		 * Get a decoder for the reply to {@link Command#READ}, or any other command with 
+		 * the same reply, that copies the data read straight into a buffer rather than 
+		 * into a new one. The buffer must have room for as much as was asked for, and
+		 * is returned as the decoded reply with its position after the data.
+		 * 
+		 * @param dst destination
+		 * @return decoder
+		 */
+		static ReplyDecoder<ByteBuffer> readInto(ByteBuffer dst) {
+			return payload -> {
+				payload.get();
+				var len = Short.toUnsignedInt(payload.getShort());
+				dst.put(dst.position(), payload, payload.position(), len);
+				dst.position(dst.position() + len);
+				return dst;
+			};
+		}
+		
+		/**
+		 * Get a decoder for when only whether the request succeeded is of interest.
+		 * 
+		 * @param <T> type
+		 * @return decoder that always decodes to <code>null</code>
+		 */
+		@SuppressWarnings("unchecked")
+		static <T> ReplyDecoder<T> ignore() {
+			return (ReplyDecoder<T>)IGNORE;
+		}
+	}
+	
+	private final static ReplyDecoder<?> IGNORE = payload -> null;
+	
+	/**
+	 * Receives messages the server pushes without being asked, rather than as the reply
+	 * to a request. This is called by the thread that receives replies, with the buffer
+	 * positioned at the start of the payload, so must not block, and anything needed from 
+	 * the buffer must be copied.
+	 */
+	@FunctionalInterface
+	public interface PushHandler {
+		/**
+		 * Handle a pushed message.
+		 * 
+		 * @param payload payload
+		 */
+		void pushed(ByteBuffer payload);
+	}
+	
+	/**
+	 * A request that has either been queued, or sent and is awaiting its reply. Without 
+	 * a decoder, the reply is the decoded {@link Message}.
+	 */
+	private final static class Request<T> {
+		private final Message message;
+		private final TNFSMount mount;
+		private final ReplyDecoder<T> decoder;
+		private final String path;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private int seq = -1;
+		private ByteBufferPool.Lease encoded;
+		private long deadline;
+		private long sent;
+		private long resendAt;
+		private int transmissions;
+		private boolean retry;
+		
+		private Request(Message message, TNFSMount mount, ReplyDecoder<T> decoder, String path) {
+			this.message = message;
+			this.mount = mount;
+			this.decoder = decoder;
+			this.path = path;
+		}
+		
+		/**
+		 * When this request next needs attention, either to be sent again or to time out, 
+		 * or <code>0</code> if never.
+		 */
+		private long due() {
+			if(deadline == 0) {
+				return resendAt;
+			}
+			else if(resendAt == 0) {
+				return deadline;
+			}
+			else {
+				return resendAt - deadline < 0 ? resendAt : deadline;
+			}
+		}
+		
+		private boolean matches(byte command, int connectionId) {
+			return command == message.command().code() &&
+				   ( message.connectionId() == 0 || message.connectionId() == connectionId );
+		}
+		
+		@SuppressWarnings("unchecked")
+		private void complete(ByteBuffer reply) {
+			if(decoder == null) {
+				future.complete((T)Message.decode(reply));
+				return;
+			}
+			
+			reply.position(reply.position() + Message.HEADER_SIZE);
+			var res = ResultCode.fromValue(Byte.toUnsignedInt(reply.get(reply.position())));
+			if(res.isOk()) {
+				future.complete(decoder.decode(reply));
+			}
+			else {
+				future.completeExceptionally(exception(res, path));
+			}
+		}
+		
+		private void release() {
+			synchronized(this) {
+				if(encoded != null) {
+					encoded.close();
+					encoded = null;
+				}
+			}
+		}
+	}
+	
 	final AbstractSelectableChannel channel;
 	
 	private final InetSocketAddress address;
 	private final Protocol protocol;
 	private final Optional<Duration> timeout;
-	private byte seq = 0;
+	private final long timeoutNanos;
 	private final Map<Class<? extends TNFSClientExtension>, TNFSClientExtension> extensions;
+	private final Map<Integer, PushHandler> pushHandlers = new ConcurrentHashMap<>();
 	private final Object lock = new Object();
+	private final Object writeLock = new Object();
 	private final ByteBufferPool bufferPool;
+	private final int maxInFlight;
+	/* Indexed by sequence number. These are used strictly in order, so all requests 
+	 * in flight are in the window of the last maximum in flight number used */
+	private final Request<?>[] inFlight = new Request<?>[TNFS.MAX_SEQ + 1];
+	private final Deque<Request<?>> queue = new ArrayDeque<>();
+	private final Map<Integer, TNFSMount> mounts = new HashMap<>();
+	private final Selector selector;
+	private final Thread reader;
+	private final RttEstimator rtt = new RttEstimator();
 	
+	private int seq = 0;
+	private int inFlightCount;
 	private int size;
+	private IOException failure;
+	private Selector writeSelector;
+	private long wakeAt;
+	private boolean idle = true;
+	private volatile boolean closed;
 
 	private TNFSClient(Optional<Integer> port, Optional<Integer> size, Protocol protocol,
-			Optional<String> hostname, Optional<Duration> timeout, Optional<ByteBufferPool> bufferPool)  throws  IOException {
+			Optional<String> hostname, Optional<Duration> timeout, int maxInFlight, Optional<ByteBufferPool> bufferPool)  throws  IOException {
 		
 		this.protocol = protocol;
 		this.timeout = timeout;
+		this.timeoutNanos = timeout.map(Duration::toNanos).orElse(0l);
+		this.maxInFlight = maxInFlight;
 		this.bufferPool = bufferPool.orElseGet(() -> new ByteBufferPool(TNFS.DEFAULT_CLIENT_BUFFERS, ByteBufferPool.DIRECT));
 		
 		address = new InetSocketAddress(hostname.orElse("localhost"), port.orElse(TNFS.DEFAULT_PORT));
@@ -122,6 +319,16 @@ public final class TNFSClient implements Closeable {
 			size(size.orElse(TNFS.DEFAULT_TCP_MESSAGE_SIZE));
 		}
 		
+		/* All I/O is non-blocking. Replies are read and request timeouts are expired by a 
+		 * single thread waiting on a selector, so timeouts cost nothing per request */
+		channel.configureBlocking(false);
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+		
+		reader = new Thread(this::receive, "TNFSClientReader-" + address);
+		reader.setDaemon(true);
+		reader.start();
+		
 		extensions = ServiceLoader.load(TNFSClientExtension.class).stream().map(p -> p.get()).peek(ext -> {
 			ext.init(this);
 		}).collect(Collectors.toMap(TNFSClientExtension::getClass, Function.identity()));
@@ -136,17 +343,6 @@ public final class TNFSClient implements Closeable {
 		return (EXT)ext;
 	}
 
-	private int nextSeq() {
-		try {
-			return Byte.toUnsignedInt(seq);
-		}
-		finally {
-			seq++;
-			if(seq > 250)
-				seq = 0;
-		}
-	}
-
 	public <RESULT extends Result> RESULT sendMessage(TNFSMount mount, Command<?, RESULT> op, Message pkt) throws IOException {
 		return send(mount, op, pkt).result;
 	}
@@ -160,179 +356,143 @@ public final class TNFSClient implements Closeable {
 	}
 
 	public <RESULT extends Result> MessageResult<RESULT> send(TNFSMount mount, Command<?, RESULT> op, Message pkt, String path) throws IOException {
-		return send(mount, op, pkt, Optional.of(path));
+		checkNotReader();
+		return result(await(this.<Message>submit(pkt, mount, null, path)), path);
 	}
 	
 	public <RESULT extends Result> MessageResult<RESULT> send(TNFSMount mount, Command<?, RESULT> op, Message pkt, Optional<String> path) throws IOException {
-//		System.out.println("MG: " + op.name());
-		synchronized(lock) {
-			pkt = pkt.withSeq(nextSeq());
-
-			if(LOG.isDebugEnabled()) {
-				LOG.debug("Sending message {} [{}]", pkt.command().name(), Byte.toUnsignedInt(pkt.command().code()));
-			}
-			
-			var reply = write(pkt, mount);
-			RESULT res = reply.resultPayload();
-			if(res.result().isOk()) {
-				return new MessageResult<>(reply, res);
-			}
-			else if(res.result() == ResultCode.EOF) {
-				throw new EOFException();
-			}
-			else if(res.result() == ResultCode.IO) {
-				throw new IOException(path.map( s-> "I/O Error on " + s).orElse("I/O Error."));
-			}
-			else if(res.result() == ResultCode.NOENT) {
-				throw new NoSuchFileException(path.orElse("Path Unknown"));
-			}
-			else if(res.result() == ResultCode.EXIST) {
-				throw new FileAlreadyExistsException(path.orElse("Path Unknown"));
-			}
-			else if(res.result() == ResultCode.INVAL) {
-				throw new IllegalArgumentException("Invalid argument");
-			}
-			else if(res.result() == ResultCode.NOBUFS) {
-				throw new BufferUnderflowException();
-			}
-			else if(res.result() == ResultCode.LOOP) {
-				throw new FileSystemLoopException(path.orElse("Path Unknown"));
-			}
-			else if(res.result() == ResultCode.ACCESS) {
-				throw new AccessDeniedException(path.orElse("Access denied"));
-			}
-			else if(res.result() == ResultCode.NOMEM) {
-				throw new OutOfMemoryError("Server reported out of memory.");
-			}
-			else if(res.result() == ResultCode.NOTEMPTY) {
-				throw new DirectoryNotEmptyException(path.orElse("Path unknown"));
+		return send(mount, op, pkt, path.orElse(null));
+	}
+	
+	/**
+	 * Send a message and wait for its reply, returning the result whatever its 
+	 * {@link ResultCode}, rather than throwing an exception if it is an error.
+	 * 
+	 * @param <RESULT> type of result
+	 * @param mount mount (or <code>null</code> if none)
+	 * @param op command
+	 * @param pkt message
+	 * @param path path to use in exception messages, or <code>null</code>
+	 * @return result
+	 * @throws IOException on error other than that reported by the result
+	 */
+	public <RESULT extends Result> RESULT sendForResult(TNFSMount mount, Command<?, RESULT> op, Message pkt, String path) throws IOException {
+		checkNotReader();
+		return await(this.<Message>submit(pkt, mount, null, path)).resultPayload();
+	}
+	
+	/**
+	 * Send a message and wait for its reply, decoding the reply with a {@link ReplyDecoder}.
+	 * 
+	 * @param <T> type of decoded reply
+	 * @param mount mount (or <code>null</code> if none)
+	 * @param pkt message
+	 * @param decoder decoder
+	 * @param path path to use in exception messages, or <code>null</code>
+	 * @return decoded reply
+	 * @throws IOException on error
+	 */
+	public <T> T send(TNFSMount mount, Message pkt, ReplyDecoder<T> decoder, String path) throws IOException {
+		checkNotReader();
+		return await(submit(pkt, mount, decoder, path));
+	}
+	
+	/**
+	 * Wait for a future reply, throwing the same exceptions the synchronous methods would.
+	 * 
+	 * @param <T> type of reply
+	 * @param future future
+	 * @return reply
+	 * @throws IOException on error
+	 */
+	static <T> T await(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch(InterruptedException ie) {
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException ee) {
+			var cause = ee.getCause();
+			if(cause instanceof IOException ioe) {
+				throw ioe;
 			}
-			else if(res.result() == ResultCode.ROFS) {
-				throw new ReadOnlyFileSystemException();
+			else if(cause instanceof RuntimeException re) {
+				throw re;
 			}
-			else if(res.result() == ResultCode.NOTDIR) {
-				throw new NotDirectoryException(path.orElse("Path Unknown"));
+			else if(cause instanceof Error err) {
+				throw err;
 			}
-			else if(res.result() == ResultCode.NOSYS) {
-				throw new UnsupportedOperationException("The server does not implement this function.");
+			else {
+				throw new IOException("Request failed.", cause);
 			}
-			else
-				throw new TNFSException(res.result(), String.format("Unexpected result code 0x%04x (%d) [%s].", res.result().value(), res.result().value(), res.result().name()));
 		}
 	}
+	
+	/**
+	 * Send a message without waiting for the reply. Up to the configured maximum number 
+	 * of requests may be in flight at any one time, with further requests being queued
+	 * until replies arrive. The returned future will be completed with the reply, or
+	 * completed exceptionally with the same exceptions as the synchronous methods would throw.
+	 * <p>
+	 * Dependent stages may be run on the thread that receives replies, so must not block
+	 * or make synchronous requests.
+	 * 
+	 * @param <RESULT> type of result
+	 * @param mount mount (or <code>null</code> if none)
+	 * @param op command
+	 * @param pkt message
+	 * @param path path to use in exception messages
+	 * @return future reply
+	 */
+	public <RESULT extends Result> CompletableFuture<MessageResult<RESULT>> sendAsync(TNFSMount mount, Command<?, RESULT> op, Message pkt, Optional<String> path) {
+		return sendAsync(mount, op, pkt, path.orElse(null));
+	}
+	
+	public <RESULT extends Result> CompletableFuture<MessageResult<RESULT>> sendAsync(TNFSMount mount, Command<?, RESULT> op, Message pkt) {
+		return sendAsync(mount, op, pkt, (String)null);
+	}
 
-	Message write(Message pkt, TNFSMount mount) throws IOException, EOFException {
-		try(var buflease = bufferPool.acquire(size)) {
-			var buf  = buflease.buffer();
-			pkt.encode(buf);
-			buf.flip();
-			PacketContext ctx;
-			
-			if(mount != null) {
-				ctx = new PacketContext() {
-					@Override
-					public TNFSMount session() {
-						return mount;
-					}
-				};
-				for(var proc : mount.outProcessors()) {
-					proc.accept(ctx, buf);
-				}
+	public <RESULT extends Result> CompletableFuture<MessageResult<RESULT>> sendAsync(TNFSMount mount, Command<?, RESULT> op, Message pkt, String path) {
+		return this.<Message>submit(pkt, mount, null, path).thenApply(reply -> {
+			try {
+				return result(reply, path);
 			}
-			else {
-				ctx = null;
-			}
-			
-			if(LOG.isDebugEnabled()) {
-				LOG.debug(">: [{}] {}", buf.remaining(), Debug.dump(buf));
+			catch(IOException ioe) {
+				throw new CompletionException(ioe);
 			}
-			
-			if(channel instanceof DatagramChannel dchannel) {
-				
-				var wrtn = dchannel.send(buf, address);
-				
-				
-				buf.clear();
-				
-				if(timeout.isPresent())
-					Interrupt.ioInterrupt(() -> dchannel.receive(buf), timeout.get());
-				else
-					dchannel.receive(buf);
-				
-				buf.flip();
-				
-				if(LOG.isDebugEnabled()) {
-					LOG.debug("<: [{}] {}", buf.remaining(), Debug.dump(buf));
-				}
-				
-				if(buf.hasRemaining()) {
-					
-					if(ctx != null) {
-						for(var proc : mount.inProcessors()) {
-							proc.accept(ctx, buf);
-						}
-					}
-					
-					var msg = Message.decode(buf);
-					if(msg.seq() == pkt.seq()) {
-						return msg;
-					}
-					else {
-						throw new IllegalStateException(String.format("Out of sequence (newer) response, lost a message. Expected %d, got %d", pkt.seq(), msg.seq()));
-					}
-				}
-				else {
-					throw new SocketTimeoutException();
-				}
-			}
-			else if(channel instanceof SocketChannel tchannel) {
-				var wrtn = tchannel.write(buf);
-				
-				if(LOG.isDebugEnabled()) {
-					LOG.debug("Written {} byte to TCP", wrtn);
-				}
-				buf.clear();
-				
-				while(true) {
-					
-					var rd = timeout.isPresent() 
-							? Interrupt.ioCall(() -> tchannel.read(buf), timeout.get())
-							: tchannel.read(buf);
-					if(rd == -1)
-						throw new EOFException();
-					
-					if(rd == 0)
-						Thread.yield();
-					else {
-					
-						buf.flip();
+		});
+	}
 	
-						if(LOG.isDebugEnabled()) {
-							LOG.debug("<: [{}] {}", buf.remaining(), Debug.dump(buf));
-						}
-						
-						if(ctx != null) {
-							for(var proc : mount.inProcessors()) {
-								proc.accept(ctx, buf);
-							}
-						}
-						
-						var msg = Message.decode(buf);
-						if(msg.seq() == pkt.seq()) {
-							return msg;
-						}
-						else {
-							throw new IllegalStateException(String.format("Out of sequence (newer) response, lost a message. Expected %d, got %d", pkt.seq(), msg.seq()));
-						}
-					}
-				}
-			}
-			else {
-				throw new UnsupportedOperationException();
-			}
-		}
+	/**
+	 * Send a message without waiting for the reply, decoding the reply with a
+	 * {@link ReplyDecoder}. This avoids copying the reply, and creating a 
+	 * {@link Message} and result for it, so is used for the most frequent requests, 
+	 * such as reading and writing files. Otherwise, this is the same as
+	 * {@link #sendAsync(TNFSMount, Command, Message, String)}, and the future is 
+	 * completed exceptionally with the same exceptions if the result is not 
+	 * {@link ResultCode#SUCCESS}.
+	 * 
+	 * @param <T> type of decoded reply
+	 * @param mount mount (or <code>null</code> if none)
+	 * @param pkt message
+	 * @param decoder decoder
+	 * @param path path to use in exception messages, or <code>null</code>
+	 * @return future decoded reply
+	 */
+	public <T> CompletableFuture<T> sendAsync(TNFSMount mount, Message pkt, ReplyDecoder<T> decoder, String path) {
+		return submit(pkt, mount, decoder, path);
 	}
 	
+	/**
+	 * Get the maximum number of requests that may be awaiting a reply at any one time.
+	 * 
+	 * @return maximum requests in flight
+	 */
+	public int maxInFlight() {
+		return maxInFlight;
+	}
+
 	/**
 	 * Create a new mount builder for the default mount.
 	 * 
@@ -354,17 +514,46 @@ public final class TNFSClient implements Closeable {
 
 	@Override
 	public void close() throws IOException {
+		closed = true;
 		try {
 			for(var x : extensions.values()) {
 				x.close();
 			}
 		}
 		finally {
-			channel.close();
+			try {
+				channel.close();
+			}
+			finally {
+				selector.wakeup();
+				synchronized(writeLock) {
+					if(writeSelector != null) {
+						writeSelector.close();
+					}
+				}
+			}
 		}
 	}
 
 
+	/**
+	 * Set the handler for messages with a command the server pushes to a mount without 
+	 * being asked.
+	 * 
+	 * @param mount mount
+	 * @param command command of pushed messages
+	 * @param handler handler, or <code>null</code> to remove
+	 */
+	public void pushHandler(TNFSMount mount, Command<?, ?> command, PushHandler handler) {
+		var key = mount.sessionId() << 8 | Byte.toUnsignedInt(command.code());
+		if(handler == null) {
+			pushHandlers.remove(key);
+		}
+		else {
+			pushHandlers.put(key, handler);
+		}
+	}
+
 	public int size() {
 		return size;
 	}
@@ -373,13 +562,16 @@ public final class TNFSClient implements Closeable {
 		if(size != this.size) {
 			this.size = size;
 			
+			/* Socket buffers must be able to hold every reply that may be in flight. The
+			 * kernel charges each packet at well over its payload size, so allow for that too */
+			var bufferSize = this.size * maxInFlight * 4;
 			if(protocol == Protocol.UDP) {
-				((DatagramChannel)channel).setOption(StandardSocketOptions.SO_SNDBUF, this.size);
-				((DatagramChannel)channel).setOption(StandardSocketOptions.SO_RCVBUF, this.size);
+				((DatagramChannel)channel).setOption(StandardSocketOptions.SO_SNDBUF, bufferSize);
+				((DatagramChannel)channel).setOption(StandardSocketOptions.SO_RCVBUF, bufferSize);
 			}
 			else {
-				((SocketChannel)channel).setOption(StandardSocketOptions.SO_SNDBUF, this.size);
-				((SocketChannel)channel).setOption(StandardSocketOptions.SO_RCVBUF, this.size);
+				((SocketChannel)channel).setOption(StandardSocketOptions.SO_SNDBUF, bufferSize);
+				((SocketChannel)channel).setOption(StandardSocketOptions.SO_RCVBUF, bufferSize);
 			}
 		}
 	}
@@ -388,11 +580,600 @@ public final class TNFSClient implements Closeable {
 		return protocol;
 	}
 
+	public Optional<Duration> timeout() {
+		return timeout;
+	}
+
+	/**
+	 * Get the current retransmission timeout, i.e. how long to wait for a reply before 
+	 * deciding a request or its reply was lost. This follows the measured round trip time 
+	 * to the server, which is only measured for UDP.
+	 * 
+	 * @return retransmission timeout
+	 */
+	public Duration retransmissionTimeout() {
+		return Duration.ofNanos(rtt.rto());
+	}
+
 	public InetSocketAddress address() {
 		return address;
 	}
 
 	public ByteBufferPool bufferPool() {
 		return bufferPool;
-	}	
+	}
+	
+	/**
+	 * Throw the exception the synchronous methods would throw for a result that is an 
+	 * error, for results obtained some other way, such as with 
+	 * {@link #sendForResult(TNFSMount, Command, Message, String)}.
+	 * 
+	 * @param <RESULT> type of result
+	 * @param res result
+	 * @param path path to use in exception messages, or <code>null</code>
+	 * @return result if not an error
+	 * @throws IOException on error
+	 */
+	public static <RESULT extends Result> RESULT checked(RESULT res, String path) throws IOException {
+		if(res.result().isOk()) {
+			return res;
+		}
+		var exception = exception(res.result(), path);
+		if(exception instanceof IOException ioe) {
+			throw ioe;
+		}
+		else if(exception instanceof Error err) {
+			throw err;
+		}
+		throw (RuntimeException)exception;
+	}
+	
+	private <RESULT extends Result> MessageResult<RESULT> result(Message reply, String path) throws IOException {
+		return new MessageResult<>(reply, checked(reply.<RESULT>resultPayload(), path));
+	}
+	
+	private static Throwable exception(ResultCode res, String path) {
+		if(res == ResultCode.EOF) {
+			return new EOFException();
+		}
+		else if(res == ResultCode.IO) {
+			return new IOException(path == null ? "I/O Error." : "I/O Error on " + path);
+		}
+		else if(res == ResultCode.NOENT) {
+			return new NoSuchFileException(path == null ? "Path Unknown" : path);
+		}
+		else if(res == ResultCode.EXIST) {
+			return new FileAlreadyExistsException(path == null ? "Path Unknown" : path);
+		}
+		else if(res == ResultCode.INVAL) {
+			return new IllegalArgumentException("Invalid argument");
+		}
+		else if(res == ResultCode.NOBUFS) {
+			return new BufferUnderflowException();
+		}
+		else if(res == ResultCode.LOOP) {
+			return new FileSystemLoopException(path == null ? "Path Unknown" : path);
+		}
+		else if(res == ResultCode.ACCESS) {
+			return new AccessDeniedException(path == null ? "Access denied" : path);
+		}
+		else if(res == ResultCode.NOMEM) {
+			return new OutOfMemoryError("Server reported out of memory.");
+		}
+		else if(res == ResultCode.NOTEMPTY) {
+			return new DirectoryNotEmptyException(path == null ? "Path unknown" : path);
+		}
+		else if(res == ResultCode.ROFS) {
+			return new ReadOnlyFileSystemException();
+		}
+		else if(res == ResultCode.NOTDIR) {
+			return new NotDirectoryException(path == null ? "Path Unknown" : path);
+		}
+		else if(res == ResultCode.NOSYS) {
+			return new UnsupportedOperationException("The server does not implement this function.");
+		}
+		else
+			return new TNFSException(res, String.format("Unexpected result code 0x%04x (%d) [%s].", res.value(), res.value(), res.name()));
+	}
+	
+	private void checkNotReader() {
+		if(Thread.currentThread() == reader) {
+			throw new IllegalStateException("Synchronous requests may not be made from a reply callback, use sendAsync().");
+		}
+	}
+
+	private <T> CompletableFuture<T> submit(Message pkt, TNFSMount mount, ReplyDecoder<T> decoder, String path) {
+		var request = new Request<>(pkt, mount, decoder, path);
+		synchronized(lock) {
+			if(failure != null) {
+				return CompletableFuture.failedFuture(failure);
+			}
+			if(mount != null && mount.sessionId() != 0 && mounts.get(mount.sessionId()) != mount) {
+				mounts.put(mount.sessionId(), mount);
+			}
+			queue.add(request);
+		}
+		pump();
+		return request.future;
+	}
+	
+	/**
+	 * Complete a request, and send whatever may now be sent in its place. The reply must be 
+	 * decoded before anything more is sent, as the request's future may not yet be complete.
+	 */
+	private void done(Request<?> request, ByteBuffer reply, Throwable exception) {
+		synchronized(lock) {
+			removeInFlight(request);
+		}
+		
+		if(exception == null) {
+			try {
+				request.complete(reply);
+			}
+			catch(RuntimeException re) {
+				request.future.completeExceptionally(re);
+			}
+			if(request.message.command() == Command.UMOUNT && request.future.isDone() && !request.future.isCompletedExceptionally()) {
+				synchronized(lock) {
+					mounts.remove(request.message.connectionId());
+				}
+			}
+		}
+		else {
+			request.future.completeExceptionally(exception);
+		}
+		
+		/* Only once complete, so a UDP request being written right now won't keep its buffer */
+		request.release();
+		pump();
+	}
+	
+	private void removeInFlight(Request<?> request) {
+		if(request.seq != -1 && inFlight[request.seq] == request) {
+			inFlight[request.seq] = null;
+			inFlightCount--;
+		}
+	}
+	
+	private void pump() {
+		while(true) {
+			/* Taking a request from the queue and writing it happen under the write lock,
+			 * so requests reach the wire in the order they were queued. READ and WRITE use 
+			 * the server's file position, so this order matters for requests on a handle */
+			synchronized(writeLock) {
+				Request<?> next;
+				boolean wake;
+				synchronized(lock) {
+					if(queue.isEmpty() || !windowOpen()) {
+						return;
+					}
+					next = queue.poll();
+					next.seq = nextSeq();
+					
+					var now = System.nanoTime();
+					next.sent = now;
+					next.transmissions = 1;
+					next.deadline = timeoutNanos == 0 ? 0 : now + timeoutNanos;
+					next.resendAt = protocol == Protocol.UDP ? now + rtt.rto() : 0;
+					
+					/* Only wake the reader if this request needs attention before it would next wake anyway */
+					var due = next.due();
+					wake = due != 0 && ( idle || due - wakeAt < 0 );
+					inFlight[next.seq] = next;
+					inFlightCount++;
+				}
+				
+				if(wake) {
+					selector.wakeup();
+				}
+				
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Sending message {} [{}]", next.message.command().name(), Byte.toUnsignedInt(next.message.command().code()));
+				}
+				
+				try {
+					write(next);
+				}
+				catch(IOException | RuntimeException e) {
+					synchronized(lock) {
+						removeInFlight(next);
+					}
+					next.future.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sequence numbers are used strictly in order, and the oldest request still in 
+	 * flight may be no more than the maximum in flight behind the next one. This lets 
+	 * the server tell a UDP request that is sent again from a new one.
+	 */
+	private boolean windowOpen() {
+		return inFlightCount == 0 || inFlight[Math.floorMod(seq - maxInFlight, inFlight.length)] == null;
+	}
+	
+	/**
+	 * Get a request in flight by its age, where the newest is <code>1</code> and the 
+	 * oldest that may be in flight is the maximum in flight.
+	 */
+	private Request<?> inFlight(int age) {
+		return inFlight[Math.floorMod(seq - age, inFlight.length)];
+	}
+
+	private int nextSeq() {
+		var next = seq;
+		seq = seq == TNFS.MAX_SEQ ? 0 : seq + 1;
+		return next;
+	}
+
+	private void write(Request<?> request) throws IOException {
+		var buflease = bufferPool.acquire(size + TNFS.MAX_PACKET_OVERHEAD);
+		try {
+			var buf  = buflease.buffer();
+			request.message.encode(buf, request.seq);
+			buf.flip();
+			
+			synchronized(writeLock) {
+				var mount = request.mount;
+				if(mount != null) {
+					process(mount, mount.outProcessors(), buf);
+				}
+				
+				transmit(buf.duplicate());
+			}
+			
+			/* Requests may need to be sent again exactly as they were first sent, UDP ones 
+			 * if lost and any if the server replies AGAIN. The message itself cannot just be 
+			 * encoded again, as that consumes any payload */
+			synchronized(request) {
+				if(!request.future.isDone()) {
+					request.encoded = buflease;
+					buflease = null;
+				}
+			}
+		}
+		finally {
+			if(buflease != null) {
+				buflease.close();
+			}
+		}
+	}
+	
+	private void resend(Request<?> request) throws IOException {
+		synchronized(writeLock) {
+			synchronized(request) {
+				if(request.encoded != null) {
+					transmit(request.encoded.buffer().duplicate());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write a complete packet. Must be called while holding the write lock.
+	 */
+	private void transmit(ByteBuffer buf) throws IOException {
+		if(LOG.isDebugEnabled()) {
+			LOG.debug(">: [{}] {}", buf.remaining(), Debug.dump(buf));
+		}
+		
+		while(buf.hasRemaining()) {
+			int wrtn;
+			if(channel instanceof DatagramChannel dchannel) {
+				wrtn = dchannel.send(buf, address);
+			}
+			else if(channel instanceof SocketChannel tchannel) {
+				wrtn = tchannel.write(buf);
+			}
+			else {
+				throw new UnsupportedOperationException();
+			}
+			
+			if(wrtn == 0) {
+				awaitWritable();
+			}
+			else if(LOG.isDebugEnabled()) {
+				LOG.debug("Written {} bytes", wrtn);
+			}
+		}
+	}
+	
+	/**
+	 * Wait for the socket to have room for more output. Must be called while holding
+	 * the write lock.
+	 */
+	private void awaitWritable() throws IOException {
+		if(writeSelector == null) {
+			writeSelector = Selector.open();
+			channel.register(writeSelector, SelectionKey.OP_WRITE);
+		}
+		if(writeSelector.select(timeout.map(Duration::toMillis).orElse(0l)) == 0 && !closed && timeout.isPresent()) {
+			throw new SocketTimeoutException("Timeout waiting to send.");
+		}
+		writeSelector.selectedKeys().clear();
+		if(closed) {
+			throw new AsynchronousCloseException();
+		}
+	}
+	
+	private void receive() {
+		var maxSize = protocol == Protocol.UDP ? TNFS.MAX_UDP_MESSAGE_SIZE : TNFS.MAX_TCP_MESSAGE_SIZE;
+		try(var buflease = bufferPool.acquire(maxSize + TNFS.MAX_PACKET_OVERHEAD)) {
+			var buf = buflease.buffer();
+			var decoder = protocol == Protocol.TCP ? new FrameDecoder<TNFSMount>(buf, true, this::mount, new FrameProcessor<>() {
+				@Override
+				public void process(TNFSMount mount, ByteBuffer frame) {
+					TNFSClient.this.process(mount, frame);
+				}
+
+				@Override
+				public int minimumPacketSize(TNFSMount mount) {
+					return TNFSClient.this.minimumPacketSize(mount);
+				}
+
+				@Override
+				public int packetSize(TNFSMount mount, ByteBuffer frame) {
+					return TNFSClient.this.packetSize(mount, frame);
+				}
+			}, (mount, frame) -> dispatch(frame)) : null;
+			
+			while(!closed) {
+				selector.select(delay());
+				selector.selectedKeys().clear();
+				
+				if(channel instanceof DatagramChannel dchannel) {
+					while(true) {
+						buf.clear();
+						if(dchannel.receive(buf) == null) {
+							break;
+						}
+						buf.flip();
+						
+						if(LOG.isDebugEnabled()) {
+							LOG.debug("<: [{}] {}", buf.remaining(), Debug.dump(buf));
+						}
+						
+						if(buf.remaining() >= Message.HEADER_SIZE) {
+							var mount = mount(buf);
+							if(mount != null) {
+								process(mount, buf);
+							}
+							dispatch(buf);
+						}
+					}
+				}
+				else if(decoder.read((SocketChannel)channel) == -1) {
+					throw new EOFException();
+				}
+				
+				expire();
+			}
+			fail(new AsynchronousCloseException());
+		}
+		catch(IOException ioe) {
+			fail(closed ? new AsynchronousCloseException() : ioe);
+		}
+		catch(RuntimeException re) {
+			fail(closed ? new AsynchronousCloseException() : new IOException("Failed to decode reply.", re));
+		}
+		finally {
+			try {
+				selector.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+	
+	/**
+	 * How long to wait for replies before the next request must be sent again or 
+	 * times out, in milliseconds, or <code>0</code> to wait indefinitely.
+	 */
+	private long delay() {
+		var now = System.nanoTime();
+		var wait = Long.MAX_VALUE;
+		synchronized(lock) {
+			for(var i = 1; i <= maxInFlight && inFlightCount > 0; i++) {
+				var req = inFlight(i);
+				var due = req == null ? 0 : req.due();
+				if(due != 0) {
+					wait = Math.min(wait, due - now);
+				}
+			}
+			idle = wait == Long.MAX_VALUE;
+			if(idle) {
+				return 0;
+			}
+			wakeAt = now + wait;
+		}
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + 999_999));
+	}
+	
+	/**
+	 * Fail any requests whose deadline has passed, and send again any whose 
+	 * retransmission timeout has passed or that the server asked us to retry.
+	 */
+	private void expire() {
+		List<Request<?>> expired = null;
+		List<Request<?>> resend = null;
+		var now = System.nanoTime();
+		synchronized(lock) {
+			if(idle) {
+				return;
+			}
+			
+			var lost = false;
+			for(var i = maxInFlight; i > 0 && inFlightCount > 0; i--) {
+				var req = inFlight(i);
+				if(req == null) {
+					continue;
+				}
+				if(req.deadline != 0 && now - req.deadline >= 0) {
+					expired = add(expired, req);
+				}
+				else if(req.resendAt != 0 && now - req.resendAt >= 0) {
+					resend = add(resend, req);
+					lost |= !req.retry;
+				}
+			}
+			
+			if(resend == null) {
+				/* Nothing more to do unless something has expired, which is rare */
+				if(expired == null) {
+					return;
+				}
+				resend = List.of();
+			}
+			
+			/* Back off once for each round of loss, not once per request lost */
+			if(lost) {
+				rtt.backoff();
+			}
+			
+			for(var req : resend) {
+				req.retry = false;
+				req.sent = now;
+				req.transmissions++;
+				req.resendAt = protocol == Protocol.UDP ? now + rtt.rto() : 0;
+			}
+		}
+		
+		for(var req : resend) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Sending {} [{}] again, attempt {}", req.message.command().name(), req.seq, req.transmissions);
+			}
+			try {
+				resend(req);
+			}
+			catch(IOException | RuntimeException e) {
+				done(req, null, e);
+			}
+		}
+		
+		if(expired != null) {
+			expired.forEach(req -> done(req, null, 
+				new SocketTimeoutException("Timeout waiting for reply to " + req.message.command().name())));
+		}
+	}
+	
+	private static List<Request<?>> add(List<Request<?>> list, Request<?> request) {
+		if(list == null) {
+			list = new ArrayList<>();
+		}
+		list.add(request);
+		return list;
+	}
+	
+	private void dispatch(ByteBuffer buf) {
+		var again = buf.remaining() > Message.HEADER_SIZE && 
+				Byte.toUnsignedInt(buf.get(buf.position() + Message.HEADER_SIZE)) == ResultCode.AGAIN.value();
+		var connectionId = Short.toUnsignedInt(buf.getShort(buf.position()));
+		var replySeq = Byte.toUnsignedInt(buf.get(buf.position() + 2));
+		var command = buf.get(buf.position() + 3);
+		if(!pushHandlers.isEmpty()) {
+			var handler = pushHandlers.get(connectionId << 8 | Byte.toUnsignedInt(command));
+			if(handler != null) {
+				buf.position(buf.position() + Message.HEADER_SIZE);
+				handler.pushed(buf);
+				return;
+			}
+		}
+		Request<?> request;
+		synchronized(lock) {
+			request = replySeq < inFlight.length ? inFlight[replySeq] : null;
+			if(request == null || !request.matches(command, connectionId)) {
+				/* Includes duplicate replies to requests that were sent more than once */
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Discarding unexpected reply {} for sequence {}.", Command.get(command).name(), replySeq);
+				}
+				return;
+			}
+			
+			if(again) {
+				/* Server is busy, try again no sooner than it asked us to */
+				var retryTime = request.mount == null ? null : request.mount.retryTime();
+				var wait = Math.max(rtt.rto(), retryTime == null ? 0 : retryTime.toNanos());
+				request.retry = true;
+				request.resendAt = System.nanoTime() + wait;
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Server asked to try {} [{}] again.", request.message.command().name(), replySeq);
+				}
+				return;
+			}
+			
+			if(request.transmissions == 1 && protocol == Protocol.UDP) {
+				rtt.sample(System.nanoTime() - request.sent);
+			}
+		}
+		
+		done(request, buf, null);
+	}
+	
+	private TNFSMount mount(ByteBuffer buf) {
+		var connId = Short.toUnsignedInt(buf.getShort(buf.position()));
+		synchronized(lock) {
+			return connId == 0 ? null : mounts.get(connId);
+		}
+	}
+	
+	private int minimumPacketSize(TNFSMount mount) {
+		var min = 0;
+		for(var proc : mount.inProcessors()) {
+			min = Math.max(min, proc.minimumPacketSize());
+		}
+		return min;
+	}
+	
+	private int packetSize(TNFSMount mount, ByteBuffer frame) {
+		for(var proc : mount.inProcessors()) {
+			var sz = proc.packetSize(frame);
+			if(sz != 0) {
+				return sz;
+			}
+		}
+		return 0;
+	}
+	
+	private void process(TNFSMount mount, ByteBuffer buf) {
+		process(mount, mount.inProcessors(), buf);
+	}
+	
+	private void process(TNFSMount mount, List<TNFSClientPacketProcessor> processors, ByteBuffer buf) {
+		if(processors.isEmpty()) {
+			/* Most mounts have none, so avoid creating the context */
+			return;
+		}
+		var ctx = new PacketContext() {
+			@Override
+			public TNFSMount session() {
+				return mount;
+			}
+		};
+		for(var proc : processors) {
+			proc.accept(ctx, buf);
+		}
+	}
+	
+	private void fail(IOException ioe) {
+		var failed = new ArrayList<Request<?>>();
+		synchronized(lock) {
+			failure = closed ? new ClosedChannelException() : ioe;
+			for(var i = 0; i < inFlight.length; i++) {
+				if(inFlight[i] != null) {
+					failed.add(inFlight[i]);
+					inFlight[i] = null;
+				}
+			}
+			inFlightCount = 0;
+			failed.addAll(queue);
+			queue.clear();
+		}
+		if(!closed) {
+			LOG.error("Client connection failed.", ioe);
+		}
+		failed.forEach(req -> {
+			req.release();
+			req.future.completeExceptionally(ioe);
+		});
+	}
 }
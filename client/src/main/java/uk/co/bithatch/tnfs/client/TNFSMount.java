@@ -27,6 +27,7 @@ import java.nio.file.FileVisitor;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -133,11 +134,19 @@ public interface TNFSMount extends TNFSFileAccess {
 			flgs.contains(OpenFlag.CREATE) 
 				? ModeFlag.DEFAULT_WRITABLE_FLAGS 
 				: ModeFlag.DEFAULT_FLAGS, 
-			flags
+			flags.length == 0 ? new OpenFlag[] { OpenFlag.READ } : flags
 		);
 	}
 
 	<EXT extends TNFSMountExtension> EXT extension(Class<EXT> extension);
+	
+	/**
+	 * Get an asynchronous view of this mount, whose methods return futures rather 
+	 * than waiting for replies. 
+	 * 
+	 * @return asynchronous mount
+	 */
+	AsyncTNFSMount async();
 
 	/**
 	 * Recursively visit all all entries at the specified path.
@@ -223,6 +232,14 @@ public interface TNFSMount extends TNFSFileAccess {
 	 * @return version
 	 */
 	Version serverVersion();
+	
+	/**
+	 * Get the minimum time the server asked clients to wait before retrying a
+	 * request it could not service straight away.
+	 * 
+	 * @return retry time
+	 */
+	Duration retryTime();
 
 	int sessionId();
 	
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Command.WriteResult;
+
+/**
+ * A {@link TNFSMountExtension} that can read and write at a given position in an
+ * open file, without using or changing the file's current position on the server.
+ * When installed and supported by the server, file channels use this instead of 
+ * {@link uk.co.bithatch.tnfs.lib.Command#LSEEK} followed by a read or write, which
+ * also lets them read ahead and write behind over UDP. 
+ */
+public interface TNFSPositionalExtension extends TNFSMountExtension {
+
+	/**
+	 * Get whether the server supports positional reads and writes. This may need to 
+	 * ask the server the first time it is called, using the given open file handle.
+	 * 
+	 * @param handle open file handle 
+	 * @param path path of file
+	 * @return supported
+	 * @throws IOException on error
+	 */
+	boolean available(int handle, String path) throws IOException;
+	
+	/**
+	 * Get the maximum number of bytes that may be read in a single request.
+	 * 
+	 * @return maximum read size
+	 */
+	int maxRead();
+	
+	/**
+	 * Get the maximum number of bytes that may be written in a single request.
+	 * 
+	 * @return maximum write size
+	 */
+	int maxWrite();
+
+	/**
+	 * Read from a position in a file.
+	 * 
+	 * @param handle open file handle
+	 * @param position position to read from
+	 * @param size maximum number of bytes to read
+	 * @param path path of file
+	 * @return future result
+	 */
+	CompletableFuture<ReadResult> readAt(int handle, long position, int size, String path);
+
+	/**
+	 * Read from a position in a file straight into a buffer, for example by decoding
+	 * the reply with {@link TNFSClient.ReplyDecoder#readInto(ByteBuffer)}.
+	 * 
+	 * @param handle open file handle
+	 * @param position position to read from
+	 * @param dst destination, reading no more than its remaining space or {@link #maxRead()}
+	 * @param path path of file
+	 * @return future destination, with its position after the data read
+	 */
+	CompletableFuture<ByteBuffer> readAt(int handle, long position, ByteBuffer dst, String path);
+
+	/**
+	 * Write to a position in a file. Encoding the request consumes the data.
+	 * 
+	 * @param handle open file handle
+	 * @param position position to write at
+	 * @param data data
+	 * @param path path of file
+	 * @return future result
+	 */
+	CompletableFuture<WriteResult> writeAt(int handle, long position, ByteBuffer data, String path);
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import uk.co.bithatch.tnfs.client.TNFSClient.ReplyDecoder;
+import uk.co.bithatch.tnfs.lib.ByteBufferPool;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.WriteResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.Protocol;
+
+/**
+ * Buffers written data and sends it as full packet {@link Command.Write} requests 
+ * without waiting for each reply, keeping up to a maximum number in flight. Any 
+ * error from a request that has been sent is reported by the next write, or 
+ * when the channel is flushed or closed.
+ * <p>
+ * WRITE has no offset and writes at the file's current position, so as with 
+ * {@link ReadAhead}, this is only used over TCP unless the mount has a 
+ * {@link TNFSPositionalExtension}.
+ */
+final class WriteBehind {
+	
+	private final TNFSMount mount;
+	private final int handle;
+	private final String path;
+	private final TNFSPositionalExtension positional;
+	private final int maxDepth;
+	private final static ReplyDecoder<WriteResult> WRITE_RESULT = Command.WRITE::decodeResult;
+	
+	private final Deque<CompletableFuture<WriteResult>> pending = new ArrayDeque<>();
+	
+	private ByteBufferPool.Lease current;
+	private long currentPosition;
+	private long end;
+	private Exception failure;
+	
+	WriteBehind(TNFSMount mount, int handle, String path, int maxWriteBehind, TNFSPositionalExtension positional) {
+		this.mount = mount;
+		this.handle = handle;
+		this.path = path;
+		this.positional = positional;
+		
+		var client = mount.client();
+		this.maxDepth = positional != null || client.protocol() == Protocol.TCP ? Math.min(maxWriteBehind, client.maxInFlight()) : 0;
+	}
+	
+	/**
+	 * Write to the file. If writing behind, all of the source is accepted, otherwise
+	 * at most a single packet is written.
+	 * 
+	 * @param src source
+	 * @param position the callers position in the file
+	 * @return bytes written
+	 * @throws IOException on error, including any from earlier writes
+	 */
+	int write(ByteBuffer src, long position) throws IOException {
+		reap();
+		checkFailure();
+		
+		if(maxDepth == 0) {
+			return writeDirect(src, position);
+		}
+		
+		if(position != end) {
+			/* Not following on from the last write, which may overlap this one */
+			flush();
+		}
+		
+		var wrtn = 0;
+		while(src.hasRemaining()) {
+			if(current == null) {
+				current = mount.client().bufferPool().acquire(chunk());
+				currentPosition = position + wrtn;
+			}
+			var buf = current.buffer();
+			var n = Math.min(src.remaining(), buf.remaining());
+			buf.put(buf.position(), src, src.position(), n);
+			buf.position(buf.position() + n);
+			src.position(src.position() + n);
+			wrtn += n;
+			
+			if(!buf.hasRemaining()) {
+				send();
+			}
+		}
+		end = position + wrtn;
+		return wrtn;
+	}
+	
+	/**
+	 * Send anything buffered and wait for all outstanding writes to complete.
+	 * 
+	 * @throws IOException on error, including any from earlier writes
+	 */
+	void flush() throws IOException {
+		if(current != null) {
+			if(current.buffer().position() == 0) {
+				current.close();
+				current = null;
+			}
+			else {
+				send();
+			}
+		}
+		while(!pending.isEmpty()) {
+			complete(pending.poll());
+		}
+		checkFailure();
+	}
+	
+	private void send() throws IOException {
+		var lease = current;
+		current = null;
+		
+		var buf = lease.buffer();
+		buf.flip();
+		var expected = buf.remaining();
+		
+		/* Encoding the message consumes the buffer, so it may only be returned to the pool once the request is done with */
+		var fut = request(currentPosition, buf);
+		fut.whenComplete((res, ex) -> lease.close());
+		pending.add(fut.thenApply(res -> {
+			if(res.written() != expected) {
+				throw new CompletionException(new IOException("Short write to " + path + ", expected " + expected + " but wrote " + res.written() + "."));
+			}
+			return res;
+		}));
+		
+		while(pending.size() > maxDepth) {
+			complete(pending.poll());
+		}
+	}
+	
+	private void reap() {
+		while(!pending.isEmpty() && pending.peek().isDone()) {
+			complete(pending.poll());
+		}
+	}
+	
+	private void complete(CompletableFuture<WriteResult> fut) {
+		try {
+			TNFSClient.await(fut);
+		}
+		catch(IOException | RuntimeException e) {
+			if(failure == null) {
+				failure = e;
+			}
+		}
+	}
+	
+	private void checkFailure() throws IOException {
+		if(failure != null) {
+			var f = failure;
+			failure = null;
+			if(f instanceof IOException ioe) {
+				throw ioe;
+			}
+			throw (RuntimeException)f;
+		}
+	}
+	
+	private int chunk() {
+		return positional == null ? mount.client().size() - Message.HEADER_SIZE - 3 : positional.maxWrite();
+	}
+	
+	private CompletableFuture<WriteResult> request(long position, ByteBuffer data) {
+		if(positional == null) {
+			return mount.client().sendAsync(mount, Message.of(mount.sessionId(), Command.WRITE, new Command.Write(handle, data)), WRITE_RESULT, path);
+		}
+		else {
+			return positional.writeAt(handle, position, data, path);
+		}
+	}
+	
+	private int writeDirect(ByteBuffer src, long position) throws IOException {
+		var max = chunk();
+		var waslimit = -1;
+		if(src.remaining() > max) {
+			waslimit = src.limit();
+			src.limit(src.position() + max);
+		}
+		try {
+			return TNFSClient.await(request(position, src)).written();
+		}
+		finally {
+			if(waslimit > -1) {
+				src.limit(waslimit);
+			}
+		}
+	}
+}
@@ -20,10 +20,16 @@
  */
 import uk.co.bithatch.tnfs.client.TNFSClientExtension;
 import uk.co.bithatch.tnfs.client.TNFSMountExtension;
+import uk.co.bithatch.tnfs.client.extensions.BulkStat;
+import uk.co.bithatch.tnfs.client.extensions.Compound;
+import uk.co.bithatch.tnfs.client.extensions.Compress;
 import uk.co.bithatch.tnfs.client.extensions.Copy;
+import uk.co.bithatch.tnfs.client.extensions.Delta;
 import uk.co.bithatch.tnfs.client.extensions.Mounts;
 import uk.co.bithatch.tnfs.client.extensions.PktSz;
+import uk.co.bithatch.tnfs.client.extensions.ReadWriteAt;
 import uk.co.bithatch.tnfs.client.extensions.SecureMount;
+import uk.co.bithatch.tnfs.client.extensions.StreamRead;
 import uk.co.bithatch.tnfs.client.extensions.Sum;
 
 module uk.co.bithatch.tnfs.client.extensions {
@@ -33,5 +39,6 @@ module uk.co.bithatch.tnfs.client.extensions {
 	exports uk.co.bithatch.tnfs.client.extensions;
 	
 	provides TNFSClientExtension with Mounts, SecureMount;
-	provides TNFSMountExtension with Sum, Copy, PktSz;
+	provides TNFSMountExtension with Sum, Copy, PktSz, ReadWriteAt, Compound, BulkStat, Compress,
+											StreamRead, Delta;
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client.extensions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+
+/**
+ * Stats many paths using as few requests as possible. Paths are packed into as few 
+ * {@link Extensions#BULKSTAT} requests as fit in the packet size, and any the server 
+ * did not have room to reply to are asked for again. If the server does not support 
+ * the extension, each path is stat'd with {@link Command#STAT} instead.
+ * <p>
+ * Unlike {@link Command#STAT}, the user and group names of results are empty when the
+ * extension is used.
+ */
+public class BulkStat extends AbstractTNFSMountExtension {
+	
+	private Boolean available;
+
+	/**
+	 * Stat paths. A result is returned for every path, in the same order. Paths that
+	 * could not be stat'd have a result with an error code rather than causing an
+	 * exception.
+	 * 
+	 * @param paths paths
+	 * @return results
+	 * @throws IOException on error
+	 */
+	public StatResult[] stat(String... paths) throws IOException {
+		var results = new StatResult[paths.length];
+		var client = mount.client();
+		var idx = 0;
+		
+		while(idx < paths.length) {
+			if(Boolean.FALSE.equals(available)) {
+				results[idx] = client.sendForResult(mount, Command.STAT, Message.of(mount.sessionId(), Command.STAT, new Command.Stat(paths[idx])), paths[idx]);
+				idx++;
+				continue;
+			}
+			
+			/* Pack as many paths as will fit in one request, but always at least one */
+			var space = client.size() - Message.HEADER_SIZE - 1;
+			var batch = new ArrayList<String>();
+			for(var i = idx; i < paths.length && batch.size() < 255; i++) {
+				var sz = paths[i].getBytes(StandardCharsets.UTF_8).length + 1;
+				if(sz > space && !batch.isEmpty()) {
+					break;
+				}
+				space -= sz;
+				batch.add(paths[i]);
+			}
+			
+			Extensions.BulkStatResult res;
+			try {
+				res = client.sendMessage(mount, Extensions.BULKSTAT, Message.of(mount.sessionId(), Extensions.BULKSTAT, 
+						new Extensions.BulkStat(batch.toArray(new String[0]))));
+				available = true;
+			}
+			catch(UnsupportedOperationException uoe) {
+				if(Boolean.TRUE.equals(available)) {
+					throw uoe;
+				}
+				available = false;
+				continue;
+			}
+			
+			if(res.stats().length == 0) {
+				throw new IOException("Server returned no results for " + batch);
+			}
+			System.arraycopy(res.stats(), 0, results, idx, res.stats().length);
+			idx += res.stats().length;
+		}
+		
+		return results;
+	}
+}
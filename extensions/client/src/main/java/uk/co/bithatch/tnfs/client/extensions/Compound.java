@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client.extensions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bithatch.tnfs.client.TNFSClient;
+import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Encodeable;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Operation;
+
+/**
+ * Runs several operations in a single request, for example opening, reading and closing
+ * a small file in one round trip. Operations that take a handle may use the one returned
+ * by the most recent earlier operation that returned one, such as {@link Command#OPEN}.
+ * Operations run in order and stop at the first error, other than {@link ResultCode#EOF}.
+ * <p>
+ * If the server does not support {@link Extensions#COMPOUND}, the operations are sent 
+ * one at a time instead, with the same results.
+ */
+public class Compound extends AbstractTNFSMountExtension {
+	
+	/**
+	 * Overhead of a {@link Command#READ} reply inside a compound reply, i.e. header, 
+	 * compound result code and count, and the operation result code, length, read 
+	 * result code and size.
+	 */
+	private final static int READ_OVERHEAD = Message.HEADER_SIZE + 2 + 3 + 3;
+	
+	private final static int CLOSE_OVERHEAD = 3 + 1;
+	
+	private final static int OPEN_OVERHEAD = 3 + 2;
+	
+	private Boolean available;
+
+	/**
+	 * A set of operations to run together.
+	 */
+	public final class Request {
+		private final List<Operation> operations = new ArrayList<>();
+		private final List<String> changes = new ArrayList<>();
+		
+		private Request() {
+		}
+
+		public Request open(String path, OpenFlag... flags) {
+			return open(path, Arrays.asList(flags).contains(OpenFlag.CREATE) 
+					? ModeFlag.DEFAULT_WRITABLE_FLAGS 
+					: ModeFlag.DEFAULT_FLAGS, flags);
+		}
+
+		public Request open(String path, ModeFlag[] mode, OpenFlag... flags) {
+			if(Arrays.asList(flags).contains(OpenFlag.CREATE) || Arrays.asList(flags).contains(OpenFlag.TRUNCATE)) {
+				changes.add(path);
+			}
+			return add(new Operation(Command.OPEN, false, new Command.Open(flags, mode, path)));
+		}
+
+		/**
+		 * Read from the current handle.
+		 * 
+		 * @param size maximum number of bytes to read
+		 * @return this for chaining
+		 */
+		public Request read(int size) {
+			return add(new Operation(Command.READ, true, new Command.Read(0, size)));
+		}
+
+		/**
+		 * Write to the current handle.
+		 * 
+		 * @param data data to write
+		 * @return this for chaining
+		 */
+		public Request write(ByteBuffer data) {
+			return add(new Operation(Command.WRITE, true, new Command.Write(0, data)));
+		}
+
+		/**
+		 * Close the current handle.
+		 * 
+		 * @return this for chaining
+		 */
+		public Request close() {
+			return add(new Operation(Command.CLOSE, true, new Command.CloseHandle(0)));
+		}
+
+		public Request stat(String path) {
+			return add(new Operation(Command.STAT, false, new Command.Stat(path)));
+		}
+
+		public Request mkdir(String path) {
+			changes.add(path);
+			return add(new Operation(Command.MKDIR, false, new Command.MkDir(path)));
+		}
+		
+		public Request add(Operation operation) {
+			if(operations.size() == 255) {
+				throw new IllegalStateException("Too many operations.");
+			}
+			operations.add(operation);
+			return this;
+		}
+
+		/**
+		 * Run the operations, returning a result for each that was run. This may be fewer
+		 * than the number of operations if one failed, in which case the last result
+		 * is the error.
+		 * 
+		 * @return results
+		 * @throws IOException on error
+		 */
+		public List<Result> execute() throws IOException {
+			try {
+				if(!Boolean.FALSE.equals(available)) {
+					try {
+						var res = mount.client().sendMessage(mount, Extensions.COMPOUND, Message.of(mount.sessionId(), Extensions.COMPOUND, 
+								new Extensions.Compound(operations.toArray(new Operation[0]))));
+						available = true;
+						return Arrays.asList(res.operationResults());
+					}
+					catch(UnsupportedOperationException uoe) {
+						if(Boolean.TRUE.equals(available)) {
+							throw uoe;
+						}
+						available = false;
+					}
+				}
+				return executeEach();
+			}
+			finally {
+				changes.forEach(mount::changed);
+			}
+		}
+		
+		private List<Result> executeEach() throws IOException {
+			var client = mount.client();
+			var results = new ArrayList<Result>();
+			var handle = -1;
+			var buf = ByteBuffer.allocate(client.size()).order(ByteOrder.LITTLE_ENDIAN);
+			for(var op : operations) {
+				Result result;
+				if(op.currentHandle() && handle == -1) {
+					result = new Command.HeaderOnlyResult(ResultCode.BADF);
+				}
+				else {
+					Encodeable request = op.request();
+					if(op.currentHandle()) {
+						buf.clear();
+						request.encode(buf);
+						buf.flip();
+						buf.put(0, (byte)handle);
+						request = op.command().decode(buf);
+					}
+					result = client.sendForResult(mount, op.command(), Message.of(mount.sessionId(), op.command(), request), null);
+				}
+				results.add(result);
+				if(result.result().isError() && result.result() != ResultCode.EOF) {
+					break;
+				}
+				var opHandle = Extensions.Compound.handle(result);
+				if(opHandle != -1) {
+					handle = opHandle;
+				}
+			}
+			return Collections.unmodifiableList(results);
+		}
+	}
+	
+	/**
+	 * Start a new set of operations.
+	 * 
+	 * @return request
+	 */
+	public Request request() {
+		return new Request();
+	}
+	
+	/**
+	 * Read the whole of a file. Small files are opened, read and closed in a single round 
+	 * trip. The rest of larger files is read as usual.
+	 * 
+	 * @param path path
+	 * @return file content
+	 * @throws IOException on error
+	 */
+	public ByteBuffer readFile(String path) throws IOException {
+		var max = mount.client().size() - READ_OVERHEAD - OPEN_OVERHEAD - CLOSE_OVERHEAD;
+		var results = request().
+				open(path, OpenFlag.READ).
+				read(max).
+				close().
+				execute();
+		
+		TNFSClient.checked(results.get(0), path);
+		
+		var read = results.size() > 1 ? results.get(1) : null;
+		if(read == null || ( read.result().isError() && read.result() != ResultCode.EOF )) {
+			if(results.size() < 3) {
+				closeQuietly(results);
+			}
+			TNFSClient.checked(read == null ? new Command.HeaderOnlyResult(ResultCode.IO) : read, path);
+		}
+		
+		var data = read.result() == ResultCode.EOF ? ByteBuffer.allocate(0) : ((ReadResult)read).data();
+		if(data.remaining() < max) {
+			return data;
+		}
+		
+		/* There may be more */
+		var out = new ByteArrayOutputStream();
+		var buf = ByteBuffer.allocate(max);
+		buf.put(data);
+		out.write(buf.array(), 0, buf.position());
+		try(var chan = mount.open(path, OpenFlag.READ)) {
+			chan.position(out.size());
+			while(true) {
+				buf.clear();
+				try {
+					if(chan.read(buf) == -1) {
+						break;
+					}
+				}
+				catch(EOFException eofe) {
+					break;
+				}
+				out.write(buf.array(), 0, buf.position());
+			}
+		}
+		return ByteBuffer.wrap(out.toByteArray());
+	}
+
+	private void closeQuietly(List<Result> results) {
+		var handle = Extensions.Compound.handle(results.get(0));
+		if(handle != -1) {
+			try {
+				mount.client().sendForResult(mount, Command.CLOSE, Message.of(mount.sessionId(), Command.CLOSE, new Command.CloseHandle(handle)), null);
+			}
+			catch(IOException ioe) {
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client.extensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import uk.co.bithatch.tnfs.client.TNFSClientPacketProcessor;
+import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Compression;
+import uk.co.bithatch.tnfs.lib.extensions.PacketCompression;
+
+/**
+ * Negotiates compression of packets in both directions. Once negotiated, each packet is 
+ * compressed only if that makes it smaller, so this costs little when content does not
+ * compress. Compression cannot be used on a mount that already has packet processors, 
+ * such as one made using {@link SecureMount}.
+ * <p>
+ * This should be done immediately after mounting, before any other requests are made.
+ */
+public class Compress extends AbstractTNFSMountExtension {
+	
+	private Optional<Compression> algorithm = Optional.empty();
+
+	/**
+	 * Ask the server to compress packets, offering all algorithms in the default order 
+	 * of preference.
+	 * 
+	 * @return algorithm chosen by the server, or empty if the server or mount does not support compression
+	 * @throws IOException on error
+	 */
+	public Optional<Compression> compress() throws IOException {
+		return compress(Compression.values());
+	}
+
+	/**
+	 * Ask the server to compress packets, offering algorithms in order of preference.
+	 * 
+	 * @param algorithms algorithms
+	 * @return algorithm chosen by the server, or empty if the server or mount does not support compression
+	 * @throws IOException on error
+	 */
+	public Optional<Compression> compress(Compression... algorithms) throws IOException {
+		if(algorithm.isPresent()) {
+			return algorithm;
+		}
+		if(!mount.inProcessors().isEmpty() || !mount.outProcessors().isEmpty()) {
+			return Optional.empty();
+		}
+		
+		/* The server may compress its reply to this request */
+		var inbound = new PacketCompression(algorithms[0]);
+		var processor = new TNFSClientPacketProcessor() {
+			@Override
+			public int packetSize(ByteBuffer packet) {
+				return PacketCompression.packetSize(packet);
+			}
+			
+			@Override
+			public void accept(PacketContext ctx, ByteBuffer packet) {
+				inbound.decompress(packet);
+			}
+		};
+		mount.inProcessors().add(processor);
+		
+		try {
+			var res = mount.client().sendMessage(mount, Extensions.COMPRESS, Message.of(mount.sessionId(), Extensions.COMPRESS, 
+					new Extensions.Compress(algorithms)));
+			var outbound = new PacketCompression(res.algorithm());
+			mount.outProcessors().add((ctx, packet) -> outbound.compress(packet));
+			algorithm = Optional.of(res.algorithm());
+			return algorithm;
+		}
+		catch(UnsupportedOperationException uoe) {
+			mount.inProcessors().remove(processor);
+			return Optional.empty();
+		}
+		catch(IOException | RuntimeException e) {
+			mount.inProcessors().remove(processor);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Get the algorithm that was negotiated.
+	 * 
+	 * @return algorithm, or empty if not compressing
+	 */
+	public Optional<Compression> algorithm() {
+		return algorithm;
+	}
+}
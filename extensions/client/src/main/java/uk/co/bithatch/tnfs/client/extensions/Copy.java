@@ -20,16 +20,247 @@
  */
 package uk.co.bithatch.tnfs.client.extensions;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
 
+import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
 import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
 import uk.co.bithatch.tnfs.lib.extensions.CopyFlag;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions;
 
+/**
+ * Copies files, or parts of files, on the server without the data passing through
+ * the client. Large copies run in the background on the server, and may be waited for,
+ * polled for progress or cancelled using the returned {@link Job}.
+ * <p>
+ * If the server does not support {@link Extensions#COPYRANGE}, whole files are copied with
+ * {@link Extensions#COPY}, and parts of files are copied through the client.
+ */
 public class Copy extends AbstractTNFSMountExtension {
+	
+	private final static Duration POLL_INTERVAL = Duration.ofMillis(250);
+	
+	/**
+	 * A copy, which may still be running on the server.
+	 */
+	public final class Job {
+		private final int id;
+		private final String path;
+		private final long length;
+		
+		private long copied;
+		private boolean done;
+		private boolean cancelled;
+		
+		private Job(int id, String path, long copied, long length, boolean done) {
+			this.id = id;
+			this.path = path;
+			this.copied = copied;
+			this.length = length;
+			this.done = done;
+		}
+
+		/**
+		 * Get the ID of the job on the server, or zero if the copy was done before it
+		 * was started.
+		 * 
+		 * @return job ID
+		 */
+		public int id() {
+			return id;
+		}
+		
+		/**
+		 * Get the number of bytes copied as of the last {@link #poll()}.
+		 * 
+		 * @return bytes copied
+		 */
+		public long copied() {
+			return copied;
+		}
+		
+		/**
+		 * Get the number of bytes to copy.
+		 * 
+		 * @return length
+		 */
+		public long length() {
+			return length;
+		}
+		
+		public boolean done() {
+			return done;
+		}
+		
+		/**
+		 * Get whether the copy was cancelled before it could finish, leaving
+		 * only {@link #copied()} bytes copied.
+		 * 
+		 * @return cancelled
+		 */
+		public boolean cancelled() {
+			return cancelled;
+		}
+		
+		/**
+		 * Ask the server for the progress of the copy.
+		 * 
+		 * @return whether the copy is done 
+		 * @throws IOException if the copy failed
+		 */
+		public boolean poll() throws IOException {
+			return stat(false);
+		}
+		
+		/**
+		 * Wait for the copy to finish.
+		 * 
+		 * @return bytes copied
+		 * @throws IOException if the copy failed
+		 */
+		public long await() throws IOException {
+			while(!poll()) {
+				try {
+					Thread.sleep(POLL_INTERVAL.toMillis());
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			return copied;
+		}
+		
+		/**
+		 * Stop the copy, leaving whatever has been copied so far.
+		 * 
+		 * @throws IOException on error
+		 */
+		public void cancel() throws IOException {
+			stat(true);
+			done = true;
+		}
+		
+		private boolean stat(boolean cancel) throws IOException {
+			if(done) {
+				return true;
+			}
+			var res = mount.client().sendForResult(mount, Extensions.COPYSTAT, Message.of(mount.sessionId(), Extensions.COPYSTAT, new Extensions.CopyStat(id, cancel)), path);
+			copied = res.copied();
+			cancelled = res.cancelled();
+			if(res.running() && !cancel) {
+				return false;
+			}
+			done = true;
+			TNFSClient.checked(res, path);
+			return true;
+		}
+	}
+	
+	private Boolean available;
+
+	public void copy(String path, String targetPath, CopyFlag... flags) throws IOException {
+		if(!Boolean.FALSE.equals(available)) {
+			var job = start(path, 0, Long.MAX_VALUE, targetPath, 0, flags);
+			if(job != null) {
+				job.await();
+				return;
+			}
+		}
+		mount.client().sendMessage(mount, Extensions.COPY, Message.of(mount.sessionId(), Extensions.COPY, new Extensions.Copy(path, targetPath, flags)), path);
+	}
 
-	public void copy(String path, String targetPath) throws IOException {
-		mount.client().sendMessage(mount, Extensions.COPY, Message.of(mount.sessionId(), Extensions.COPY, new Extensions.Copy(path, targetPath, new CopyFlag[0])), path);
+	/**
+	 * Copy part of a file to a position in another, waiting for the copy to finish.
+	 * 
+	 * @param path source path
+	 * @param offset offset in source to copy from
+	 * @param length maximum number of bytes to copy
+	 * @param targetPath target path
+	 * @param targetOffset offset in target to copy to
+	 * @param flags flags
+	 * @return bytes copied, which will be less than the length if the end of the source is reached
+	 * @throws IOException on error
+	 */
+	public long copy(String path, long offset, long length, String targetPath, long targetOffset, CopyFlag... flags) throws IOException {
+		return copyRange(path, offset, length, targetPath, targetOffset, flags).await();
+	}
+
+	/**
+	 * Start copying part of a file to a position in another. Small copies will already
+	 * be done when this returns, large ones will be running on the server.
+	 * 
+	 * @param path source path
+	 * @param offset offset in source to copy from
+	 * @param length maximum number of bytes to copy
+	 * @param targetPath target path
+	 * @param targetOffset offset in target to copy to
+	 * @param flags flags
+	 * @return job
+	 * @throws IOException on error
+	 */
+	public Job copyRange(String path, long offset, long length, String targetPath, long targetOffset, CopyFlag... flags) throws IOException {
+		if(!Boolean.FALSE.equals(available)) {
+			var job = start(path, offset, length, targetPath, targetOffset, flags);
+			if(job != null) {
+				return job;
+			}
+		}
+		return new Job(0, path, copyThroughClient(path, offset, length, targetPath, targetOffset, flags), length, true);
+	}
+	
+	private Job start(String path, long offset, long length, String targetPath, long targetOffset, CopyFlag... flags) throws IOException {
+		try {
+			var res = mount.client().sendMessage(mount, Extensions.COPYRANGE, Message.of(mount.sessionId(), Extensions.COPYRANGE, 
+					new Extensions.CopyRange(path, targetPath, offset, length, targetOffset, flags)), path);
+			available = true;
+			return res.job() == 0 
+					? new Job(0, path, res.length(), res.length(), true)
+					: new Job(res.job(), path, 0, res.length(), false);
+		}
+		catch(UnsupportedOperationException uoe) {
+			if(Boolean.TRUE.equals(available)) {
+				throw uoe;
+			}
+			available = false;
+			return null;
+		}
+	}
+	
+	private long copyThroughClient(String path, long offset, long length, String targetPath, long targetOffset, CopyFlag... flags) throws IOException {
+		var flgs = Arrays.asList(flags);
+		try(var in = mount.open(path, OpenFlag.READ)) {
+			try(var out = mount.open(targetPath, flgs.contains(CopyFlag.PRESERVE_MODE) ? mount.stat(path).mode() : ModeFlag.DEFAULT_WRITABLE_FLAGS, flgs.contains(CopyFlag.OVERWRITE) 
+					? new OpenFlag[] { OpenFlag.WRITE, OpenFlag.TRUNCATE, OpenFlag.CREATE } 
+					: new OpenFlag[] { OpenFlag.WRITE, OpenFlag.CREATE })) {
+				in.position(offset);
+				out.position(targetOffset);
+				var buf = ByteBuffer.allocate(mount.client().size());
+				var copied = 0l;
+				while(copied < length) {
+					buf.clear();
+					buf.limit((int)Math.min(buf.capacity(), length - copied));
+					try {
+						if(in.read(buf) == -1) {
+							break;
+						}
+					}
+					catch(EOFException eofe) {
+						break;
+					}
+					buf.flip();
+					copied += buf.remaining();
+					while(buf.hasRemaining()) {
+						out.write(buf);
+					}
+				}
+				return copied;
+			}
+		}
 	}
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client.extensions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.extensions.BlockChecksums;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BlockSum;
+
+/**
+ * Transfers only the parts of a file that differ, in the manner of rsync. The server
+ * provides the {@link Extensions#BLOCKSUMS} of the remote file, and the local file is 
+ * scanned for those blocks at any offset. 
+ * <p>
+ * To download, blocks found locally are copied from the local file, and only the rest
+ * are read from the server. To upload, blocks found in the local file are copied from
+ * the remote file on the server with {@link Copy}, and only the rest are written. In both
+ * cases a new file is built alongside the old one, then replaces it. As the server will 
+ * not rename over an existing file, on upload the old file is renamed aside first and is 
+ * only removed once the new one is in its place, and the new file is given its mode.
+ * <p>
+ * If there is no file to compare with, or the server does not support 
+ * {@link Extensions#BLOCKSUMS}, the whole file is transferred.
+ */
+public class Delta extends AbstractTNFSMountExtension {
+	
+	private final static String SUFFIX = ".tnfsdelta";
+	private final static String OLD_SUFFIX = ".tnfsdelta-old";
+	
+	/**
+	 * The checksums of every block of a file.
+	 */
+	public record Signature(long size, int blockSize, List<BlockSum> sums) {
+		
+		/**
+		 * Get the length of the last block, which may be shorter than the others.
+		 * 
+		 * @return length of last block
+		 */
+		public long lastLength() {
+			var rem = size % blockSize;
+			return rem == 0 && size > 0 ? blockSize : rem;
+		}
+		
+		public long offset(int block) {
+			return (long)block * blockSize;
+		}
+		
+		public long length(int block) {
+			return Math.min(blockSize, size - offset(block));
+		}
+	}
+	
+	private Boolean available;
+
+	/**
+	 * Get the checksums of every block of a remote file, using a block size suited to 
+	 * its size.
+	 * 
+	 * @param path path
+	 * @return signature
+	 * @throws IOException on error
+	 * @throws UnsupportedOperationException if the server does not support {@link Extensions#BLOCKSUMS}
+	 */
+	public Signature signature(String path) throws IOException {
+		return signature(path, BlockChecksums.blockSize(mount.stat(path).size()));
+	}
+
+	/**
+	 * Get the checksums of every block of a remote file.
+	 * 
+	 * @param path path
+	 * @param blockSize block size
+	 * @return signature
+	 * @throws IOException on error
+	 * @throws UnsupportedOperationException if the server does not support {@link Extensions#BLOCKSUMS}
+	 */
+	public Signature signature(String path, int blockSize) throws IOException {
+		var sums = new ArrayList<BlockSum>();
+		var offset = 0l;
+		long size;
+		do {
+			var res = mount.client().sendMessage(mount, Extensions.BLOCKSUMS, Message.of(mount.sessionId(), Extensions.BLOCKSUMS, 
+					new Extensions.BlockSums(path, offset, Long.MAX_VALUE, blockSize)), path);
+			size = res.size();
+			sums.addAll(Arrays.asList(res.sums()));
+			offset += (long)res.sums().length * blockSize;
+			if(res.sums().length == 0) {
+				break;
+			}
+		} while(offset < size);
+		return new Signature(size, blockSize, sums);
+	}
+
+	/**
+	 * Upload a local file, sending only the blocks that are not already in the 
+	 * remote file.
+	 * 
+	 * @param local local file
+	 * @param path remote path
+	 * @return number of bytes sent
+	 * @throws IOException on error
+	 */
+	public long upload(Path local, String path) throws IOException {
+		var sig = remoteSignature(path);
+		if(sig == null) {
+			try(var in = FileChannel.open(local, StandardOpenOption.READ)) {
+				try(var out = mount.open(path, OpenFlag.WRITE, OpenFlag.CREATE, OpenFlag.TRUNCATE)) {
+					return transfer(in, 0, in.size(), out, 0);
+				}
+			}
+		}
+		
+		/* Where each remote block may be found in the local file */
+		var found = new ArrayList<long[]>();
+		try(var in = FileChannel.open(local, StandardOpenOption.READ)) {
+			new BlockChecksums().scan(in, sig.blockSize(), sig.sums(), sig.lastLength(), (offset, block) -> found.add(new long[] { offset, block }));
+		}
+		
+		var copy = mount.extension(Copy.class);
+		var tmp = path + SUFFIX;
+		var mode = mount.stat(path).mode();
+		var sent = 0l;
+		try(var in = FileChannel.open(local, StandardOpenOption.READ)) {
+			try(var out = mount.open(tmp, mode, OpenFlag.WRITE, OpenFlag.CREATE, OpenFlag.TRUNCATE)) {
+				var pos = 0l;
+				for(var i = 0; i < found.size(); ) {
+					var offset = found.get(i)[0];
+					var block = (int)found.get(i)[1];
+					if(offset > pos) {
+						sent += transfer(in, pos, offset - pos, out, pos);
+					}
+					
+					/* Runs of blocks that are also together in the remote file are copied at once */
+					var length = sig.length(block);
+					for(i++; i < found.size() && found.get(i)[0] == offset + length && found.get(i)[1] == block + (length / sig.blockSize()); i++) {
+						length += sig.length((int)found.get(i)[1]);
+					}
+					copy.copy(path, sig.offset(block), length, tmp, offset);
+					pos = offset + length;
+				}
+				if(pos < in.size()) {
+					sent += transfer(in, pos, in.size() - pos, out, pos);
+				}
+			}
+		}
+		
+		replace(tmp, path);
+		return sent;
+	}
+	
+	private void replace(String tmp, String path) throws IOException {
+		var old = path + OLD_SUFFIX;
+		mount.rename(path, old);
+		try {
+			mount.rename(tmp, path);
+		}
+		catch(IOException | RuntimeException e) {
+			try {
+				mount.rename(old, path);
+			}
+			catch(IOException | RuntimeException e2) {
+				e.addSuppressed(e2);
+			}
+			throw e;
+		}
+		mount.unlink(old);
+	}
+
+	/**
+	 * Download a remote file, reading only the blocks that are not already in the 
+	 * local file.
+	 * 
+	 * @param path remote path
+	 * @param local local file
+	 * @return number of bytes read
+	 * @throws IOException on error
+	 */
+	public long download(String path, Path local) throws IOException {
+		var sig = Files.exists(local) ? remoteSignature(path) : null;
+		if(sig == null) {
+			try(var in = mount.open(path, OpenFlag.READ)) {
+				try(var out = FileChannel.open(local, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					return transfer(in, 0, Long.MAX_VALUE, out, 0);
+				}
+			}
+		}
+		
+		/* Where each remote block may be found in the local file. Identical remote blocks may 
+		 * all be found in the same place */
+		var found = new HashMap<BlockSum, Long>();
+		try(var in = FileChannel.open(local, StandardOpenOption.READ)) {
+			new BlockChecksums().scan(in, sig.blockSize(), sig.sums(), sig.lastLength(), (offset, block) -> found.putIfAbsent(sig.sums().get(block), offset));
+		}
+		
+		var tmp = local.resolveSibling(local.getFileName().toString() + SUFFIX);
+		var read = 0l;
+		try(var in = FileChannel.open(local, StandardOpenOption.READ)) {
+			try(var out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				SeekableByteChannel remote = null;
+				try {
+					var sums = sig.sums();
+					for(var i = 0; i < sums.size(); ) {
+						var offset = sig.offset(i);
+						var at = found.get(sums.get(i));
+						if(at == null) {
+							/* Runs of missing blocks are read at once */
+							var length = sig.length(i);
+							for(i++; i < sums.size() && !found.containsKey(sums.get(i)); i++) {
+								length += sig.length(i);
+							}
+							if(remote == null) {
+								remote = mount.open(path, OpenFlag.READ);
+							}
+							read += transfer(remote, offset, length, out, offset);
+						}
+						else {
+							transfer(in, at, sig.length(i), out, offset);
+							i++;
+						}
+					}
+				}
+				finally {
+					if(remote != null) {
+						remote.close();
+					}
+				}
+			}
+		}
+		
+		Files.move(tmp, local, StandardCopyOption.REPLACE_EXISTING);
+		return read;
+	}
+	
+	private Signature remoteSignature(String path) throws IOException {
+		if(Boolean.FALSE.equals(available)) {
+			return null;
+		}
+		try {
+			var sig = signature(path);
+			available = true;
+			return sig;
+		}
+		catch(NoSuchFileException nsfe) {
+			return null;
+		}
+		catch(UnsupportedOperationException uoe) {
+			if(Boolean.TRUE.equals(available)) {
+				throw uoe;
+			}
+			available = false;
+			return null;
+		}
+	}
+	
+	private long transfer(SeekableByteChannel in, long position, long length, SeekableByteChannel out, long targetPosition) throws IOException {
+		var buf = ByteBuffer.allocate(mount.client().size());
+		in.position(position);
+		out.position(targetPosition);
+		var total = 0l;
+		while(total < length) {
+			buf.clear();
+			buf.limit((int)Math.min(buf.capacity(), length - total));
+			try {
+				if(in.read(buf) == -1) {
+					break;
+				}
+			}
+			catch(EOFException eofe) {
+				break;
+			}
+			buf.flip();
+			total += buf.remaining();
+			while(buf.hasRemaining()) {
+				out.write(buf);
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client.extensions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import uk.co.bithatch.tnfs.client.TNFSClient.ReplyDecoder;
+import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
+import uk.co.bithatch.tnfs.client.TNFSPositionalExtension;
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Command.WriteResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.TNFSException;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+
+public class ReadWriteAt extends AbstractTNFSMountExtension implements TNFSPositionalExtension {
+	
+	private final static ReplyDecoder<ReadResult> READ_RESULT = Extensions.READAT::decodeResult;
+	private final static ReplyDecoder<WriteResult> WRITE_RESULT = Extensions.WRITEAT::decodeResult;
+	
+	private Boolean available;
+
+	@Override
+	public synchronized boolean available(int handle, String path) throws IOException {
+		if(available == null) {
+			/* An empty read is enough to find out if the server knows the command */
+			try {
+				mount.client().sendMessage(mount, Extensions.READAT, Message.of(mount.sessionId(), Extensions.READAT, new Extensions.ReadAt(handle, 0, 0)), path);
+				available = true;
+			}
+			catch(UnsupportedOperationException uoe) {
+				available = false;
+			}
+			catch(EOFException | TNFSException e) {
+				/* Any other reply, such as the handle not being open for reading, means it does */
+				available = true;
+			}
+		}
+		return available;
+	}
+
+	@Override
+	public int maxRead() {
+		/* Reply is the same as READ, the result code, length and data */
+		return mount.client().size() - Message.HEADER_SIZE - 3;
+	}
+
+	@Override
+	public int maxWrite() {
+		/* Handle, position, length and data */
+		return mount.client().size() - Message.HEADER_SIZE - 7;
+	}
+
+	@Override
+	public CompletableFuture<ReadResult> readAt(int handle, long position, int size, String path) {
+		return mount.client().sendAsync(mount, Message.of(mount.sessionId(), Extensions.READAT, new Extensions.ReadAt(handle, position, size)), READ_RESULT, path);
+	}
+
+	@Override
+	public CompletableFuture<ByteBuffer> readAt(int handle, long position, ByteBuffer dst, String path) {
+		var size = Math.min(maxRead(), dst.remaining());
+		return mount.client().sendAsync(mount, Message.of(mount.sessionId(), Extensions.READAT, new Extensions.ReadAt(handle, position, size)), ReplyDecoder.readInto(dst), path);
+	}
+
+	@Override
+	public CompletableFuture<WriteResult> writeAt(int handle, long position, ByteBuffer data, String path) {
+		return mount.client().sendAsync(mount, Message.of(mount.sessionId(), Extensions.WRITEAT, new Extensions.WriteAt(handle, position, data)), WRITE_RESULT, path);
+	}
+}
@@ -21,12 +21,12 @@
 package uk.co.bithatch.tnfs.client.extensions;
 
 import java.io.IOException;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.Set;
@@ -41,6 +41,8 @@ import uk.co.bithatch.tnfs.client.AbstractTNFSMount;
 import uk.co.bithatch.tnfs.client.AbstractTNFSMount.AbstractBuilder;
 import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.TNFSClientExtension.AbstractTNFSClientExtension;
+import uk.co.bithatch.tnfs.client.TNFSClientPacketProcessor;
+import uk.co.bithatch.tnfs.client.TNFSClientPacketProcessor.PacketContext;
 import uk.co.bithatch.tnfs.lib.Command;
 import uk.co.bithatch.tnfs.lib.Debug;
 import uk.co.bithatch.tnfs.lib.Message;
@@ -48,17 +50,27 @@ import uk.co.bithatch.tnfs.lib.TNFS;
 import uk.co.bithatch.tnfs.lib.Version;
 import uk.co.bithatch.tnfs.lib.extensions.Crypto;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CipherSuite;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions.SecureMountResult;
 import uk.co.bithatch.tnfs.lib.extensions.SpeckEngine;
+import uk.co.bithatch.tnfs.lib.extensions.PacketCipher;
 
 public class SecureMount extends AbstractTNFSClientExtension {
 	
 	private final static Logger LOG = LoggerFactory.getLogger(SecureMount.class);
 	
+	/**
+	 * A ticket issued by the server that may be used once to resume a secure session
+	 * without a new key exchange. See {@link Builder#withTicket(Ticket)}.
+	 */
+	public record Ticket(byte[] ticket, byte[] secret) {}
+	
 	public static class Builder extends AbstractBuilder<Builder> {
 		
 		private int blockSize = SpeckEngine.SPECK_128;
 		private Optional<Integer> keySize = Optional.empty();
+		private CipherSuite[] ciphers = { CipherSuite.AES_GCM, CipherSuite.CHACHA20_POLY1305, CipherSuite.SPECK };
+		private Optional<Ticket> ticket = Optional.empty();
 
 		/**
 		 * Construct a new mount builder.
@@ -91,6 +103,32 @@ public class SecureMount extends AbstractTNFSClientExtension {
 			return  this;
 		}
 		
+		/**
+		 * Set the ciphers that may be used, in order of preference. The server will use
+		 * the first it supports. By default, AES-GCM is preferred, then ChaCha20-Poly1305
+		 * and then Speck.
+		 * 
+		 * @param ciphers ciphers
+		 * @return this for chaining
+		 */
+		public Builder withCiphers(CipherSuite... ciphers) {
+			this.ciphers = ciphers;
+			return  this;
+		}
+		
+		/**
+		 * Resume the session a ticket was issued for, usually from {@link SecureTNFSMount#ticket()}
+		 * of an earlier mount, skipping the key exchange. If the server no longer accepts the
+		 * ticket, a new key exchange happens as normal. Each ticket may only be used once.
+		 * 
+		 * @param ticket ticket
+		 * @return this for chaining
+		 */
+		public Builder withTicket(Ticket ticket) {
+			this.ticket = Optional.of(ticket);
+			return  this;
+		}
+		
 		/**
 		 * Set the key size in bits. If not set, default is twice the key size.
 		 * 
@@ -126,8 +164,12 @@ public class SecureMount extends AbstractTNFSClientExtension {
 
 		private final int sessionId;
 		private final Version serverVersion;
+		private final Duration retryTime;
 		private final int blockSize;
 		private final int keySize;
+		private final CipherSuite cipher;
+		private final boolean resumed;
+		private final Optional<Ticket> ticket;
 		
 		private boolean authenticated;
 
@@ -158,39 +200,56 @@ public class SecureMount extends AbstractTNFSClientExtension {
 		        // 2. Send opening message and receive server public key, session ID and server version
 				var serverResult= client().send(this, 
 						Extensions.SECMNT, Message.of(0, Extensions.SECMNT, 
-								new Extensions.SecureMount(TNFS.PROTOCOL_VERSION, keySize, blockSize, clientPubEnc)));
+								new Extensions.SecureMount(TNFS.PROTOCOL_VERSION, keySize, blockSize, clientPubEnc, 
+										bldr.ticket.map(Ticket::ticket).orElse(new byte[0]), bldr.ciphers)));
 				SecureMountResult serverReply = serverResult.result();
 				sessionId = serverResult.message().connectionId();
 				serverVersion = serverReply.version();
+				retryTime = serverReply.retryTime();
+				cipher = serverReply.cipher();
+				resumed = serverReply.resumed();
 				
-				var serverPubEnc = serverReply.key();
-
-		        if(LOG.isDebugEnabled()) {
-		        	LOG.debug("Server public key: {}", Base64.getEncoder().encodeToString(serverPubEnc));
-		        }
+				byte[] derivedKey;
+				byte[] resumptionSecret;
+				if(resumed) {
+					// 3. Server accepted our ticket, so derive from it and both nonces instead
+					var material = Crypto.resumptionMaterial(bldr.ticket.get().secret(), clientPubEnc, serverReply.key());
+					derivedKey = Crypto.deriveKey(material, keySize);
+					resumptionSecret = Crypto.resumptionSecret(material);
+				}
+				else {
+					var serverPubEnc = serverReply.key();
+	
+			        if(LOG.isDebugEnabled()) {
+			        	LOG.debug("Server public key: {}", Base64.getEncoder().encodeToString(serverPubEnc));
+			        }
+					
+			        // 3. Rebuild server public key
+			        var kf = KeyFactory.getInstance("DH");
+			        var x509KeySpec = new X509EncodedKeySpec(serverPubEnc);
+			        var serverPubKey = kf.generatePublic(x509KeySpec);
+			        
+			        // 4. Perform key agreement
+			        var ka = KeyAgreement.getInstance("DH");
+			        ka.init(clientKp.getPrivate());
+			        ka.doPhase(serverPubKey, true);
+			        var sharedSecret = ka.generateSecret();
+	
+			        if(LOG.isTraceEnabled()) {
+			        	LOG.trace("Shared secret: {}", Base64.getEncoder().encodeToString(sharedSecret));
+			        }
+			        
+			        // 5. Derive symmetric key of desired size
+			        derivedKey = Crypto.deriveKey(sharedSecret, keySize);
+			        resumptionSecret = Crypto.resumptionSecret(sharedSecret);
+				}
 				
-		        // 3. Rebuild server public key
-		        var kf = KeyFactory.getInstance("DH");
-		        var x509KeySpec = new X509EncodedKeySpec(serverPubEnc);
-		        var serverPubKey = kf.generatePublic(x509KeySpec);
-		        
-		        // 4. Perform key agreement
-		        var ka = KeyAgreement.getInstance("DH");
-		        ka.init(clientKp.getPrivate());
-		        ka.doPhase(serverPubKey, true);
-		        var sharedSecret = ka.generateSecret();
-
-		        if(LOG.isTraceEnabled()) {
-		        	LOG.trace("Shared secret: {}", Base64.getEncoder().encodeToString(sharedSecret));
-		        }
-		        
-		        // 5. Derive symmetric key of desired size
-		        var derivedKey = Crypto.deriveKey(sharedSecret, keySize);
+				ticket = serverReply.ticket().length == 0 ? Optional.empty() : Optional.of(new Ticket(serverReply.ticket(), resumptionSecret));
 
 		        if(LOG.isTraceEnabled()) {
 		        	LOG.trace("Derived key: {}", Base64.getEncoder().encodeToString(derivedKey));
 		        }
-				setupEncryption(derivedKey, blockSize);
+				setupEncryption(derivedKey, blockSize, cipher);
 				
 				// 6. Send original mount command but with a sessionId
 				authenticated = username.isPresent();
@@ -198,9 +257,9 @@ public class SecureMount extends AbstractTNFSClientExtension {
 						Command.MOUNT, Message.of(sessionId, Command.MOUNT, 
 								new Command.Mount(mountPath, username, password)));
 				
-				LOG.info("Securely mounted {}", mountPath);
+				LOG.info("Securely {} {} using {}", resumed ? "resumed" : "mounted", mountPath, cipher);
 			}
-			catch(NoSuchAlgorithmException | InvalidKeySpecException | InvalidKeyException nsae) {
+			catch(GeneralSecurityException nsae) {
 				throw new IOException("Failed to start encryption.", nsae);
 			}
 		}
@@ -222,6 +281,30 @@ public class SecureMount extends AbstractTNFSClientExtension {
 		public int keySize() {
 			return keySize;
 		}
+		
+		public CipherSuite cipher() {
+			return cipher;
+		}
+		
+		/**
+		 * Get whether this mount resumed an earlier session using a {@link Ticket}, rather
+		 * than completing a new key exchange.
+		 * 
+		 * @return resumed
+		 */
+		public boolean resumed() {
+			return resumed;
+		}
+		
+		/**
+		 * Get the ticket the server issued that may be used once to resume this session
+		 * with {@link Builder#withTicket(Ticket)}, for example after reconnecting.
+		 * 
+		 * @return ticket
+		 */
+		public Optional<Ticket> ticket() {
+			return ticket;
+		}
 
 		@Override
 		public int sessionId() {
@@ -232,66 +315,48 @@ public class SecureMount extends AbstractTNFSClientExtension {
 		public Version serverVersion() {
 			return serverVersion;
 		}
+
+		@Override
+		public Duration retryTime() {
+			return retryTime;
+		}
 		
-		private void setupEncryption(byte[] key, int blockSz) {
+		private void setupEncryption(byte[] key, int blockSz, CipherSuite suite) throws GeneralSecurityException {
 			/* Decryption */
-	        
-			var decEngine = new SpeckEngine(blockSz);
-	        decEngine.init(false, key);
-			inProcessors().add((ctx, bufin) -> {
+			var inbound = PacketCipher.create(suite, blockSz, key, true);
+			inProcessors().add(new TNFSClientPacketProcessor() {
+				@Override
+				public int minimumPacketSize() {
+					return PacketCipher.ENVELOPE;
+				}
 
-				if(LOG.isTraceEnabled()) {
-					LOG.trace("Decrypting {} bytes", bufin.remaining());
-					LOG.trace("  " + Debug.dump(bufin));
+				@Override
+				public int packetSize(ByteBuffer packet) {
+					return PacketCipher.packetSize(packet);
 				}
-				
-				var sz = bufin.remaining() - 2;
-				var thisblkSz = sz;
-				if(thisblkSz < blockSz / 8) {
+
+				@Override
+				public void accept(PacketContext ctx, ByteBuffer bufin) {
 
 					if(LOG.isTraceEnabled()) {
-						LOG.trace("Short block of {}, increasing to {}", thisblkSz, blockSz / 8);
+						LOG.trace("Decrypting {} bytes", bufin.remaining());
+						LOG.trace("  " + Debug.dump(bufin));
 					}
-					
-					thisblkSz = blockSz / 8;
-					
-					bufin.limit(2 + thisblkSz);
-				}
 				
-				var work  = new byte[thisblkSz];
-				bufin.get(2, work, 0, sz);
-				decEngine.processBlock(work, 0, work, 0);
-				bufin.put(2, work, 0, thisblkSz);
+					inbound.decrypt(bufin);
+				}
 			});
 			
 			/* Encryption */
-	        var encEngine = new SpeckEngine(blockSz);
-	        encEngine.init(true, key);
-			outProcessors().add((ctx, bufin) -> {	
+			var outbound = PacketCipher.create(suite, blockSz, key, true);
+			outProcessors().add((ctx, bufin) -> {
 
 				if(LOG.isTraceEnabled()) {
 					LOG.trace("Encrypting {} bytes", bufin.remaining());
 					LOG.trace("  " + Debug.dump(bufin));
 				}
-				
-				var sz = bufin.remaining() - 2;
-				var thisblkSz = sz;
-				if(thisblkSz < blockSz / 8) {
-					
-					if(LOG.isTraceEnabled()) {
-						LOG.trace("Short block of {}, increasing to {}", thisblkSz, blockSz / 8);
-					}
-					
-					thisblkSz = blockSz / 8;
-					
-					bufin.limit(2 + thisblkSz);
-				}
-				
-				var work  = new byte[thisblkSz];
-				bufin.get(2, work, 0, sz);
-				encEngine.processBlock(work, 0, work, 0);
-				
-				bufin.put(2, work, 0, thisblkSz);
+			
+				outbound.encrypt(bufin);
 			});
 		}
 		
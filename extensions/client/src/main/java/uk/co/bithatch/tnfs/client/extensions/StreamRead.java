@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.client.extensions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.bithatch.tnfs.client.TNFSMountExtension.AbstractTNFSMountExtension;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+
+/**
+ * Downloads files by having the server push them as a stream of numbered blocks, rather 
+ * than asking for each block. The server sends no more than a window of blocks that have
+ * not been acknowledged, and blocks are acknowledged every half window. If blocks stop
+ * arriving for longer than the client's retransmission timeout, for example because one 
+ * was lost, the server is asked to go back to the first one missing, as with TFTP's window 
+ * size option (RFC 7440). 
+ * <p>
+ * If the server does not support {@link Extensions#STREAMREAD}, the file is read as usual.
+ */
+public class StreamRead extends AbstractTNFSMountExtension {
+	
+	public final static int DEFAULT_WINDOW = 32;
+	
+	private final static Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+	
+	private final static class Stream {
+		private final BlockingQueue<ByteBuffer> blocks = new LinkedBlockingQueue<>();
+		private volatile int received;
+	}
+	
+	private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+	
+	private int window = DEFAULT_WINDOW;
+	private int nextId;
+	private boolean listening;
+	private Boolean available;
+	
+	/**
+	 * Set the number of blocks the server may push before they are acknowledged. Servers
+	 * allow no more than {@link TNFS#MAX_IN_FLIGHT}.
+	 * 
+	 * @param window window
+	 */
+	public void window(int window) {
+		if(window < 1 || window > TNFS.MAX_IN_FLIGHT) {
+			throw new IllegalArgumentException("Window must be between 1 and " + TNFS.MAX_IN_FLIGHT + ".");
+		}
+		this.window = window;
+	}
+	
+	public int window() {
+		return window;
+	}
+
+	/**
+	 * Read the whole of a file, writing it to a channel.
+	 * 
+	 * @param path path
+	 * @param out channel to write to
+	 * @return bytes read
+	 * @throws IOException on error
+	 */
+	public long read(String path, WritableByteChannel out) throws IOException {
+		return read(path, 0, 0xffffffffl, out);
+	}
+
+	/**
+	 * Read part of a file, writing it to a channel.
+	 * 
+	 * @param path path
+	 * @param offset offset to start at
+	 * @param length maximum number of bytes to read
+	 * @param out channel to write to
+	 * @return bytes read, which will be less than the length if the end of the file is reached
+	 * @throws IOException on error
+	 */
+	public long read(String path, long offset, long length, WritableByteChannel out) throws IOException {
+		if(!Boolean.FALSE.equals(available)) {
+			var client = mount.client();
+			var handle = client.sendMessage(mount, Command.OPEN, Message.of(mount.sessionId(), Command.OPEN, 
+					new Command.Open(new OpenFlag[] { OpenFlag.READ }, ModeFlag.DEFAULT_FLAGS, path)), path).handle();
+			try {
+				return stream(handle, path, offset, length, out);
+			}
+			catch(UnsupportedOperationException uoe) {
+				if(Boolean.TRUE.equals(available)) {
+					throw uoe;
+				}
+				available = false;
+			}
+			finally {
+				client.sendMessage(mount, Command.CLOSE, Message.of(mount.sessionId(), Command.CLOSE, new Command.CloseHandle(handle)), path);
+			}
+		}
+		
+		try(var in = mount.open(path, OpenFlag.READ)) {
+			in.position(offset);
+			var buf = ByteBuffer.allocate(mount.client().size());
+			var total = 0l;
+			while(total < length) {
+				buf.clear();
+				buf.limit((int)Math.min(buf.capacity(), length - total));
+				try {
+					if(in.read(buf) == -1) {
+						break;
+					}
+				}
+				catch(EOFException eofe) {
+					break;
+				}
+				buf.flip();
+				total += buf.remaining();
+				while(buf.hasRemaining()) {
+					out.write(buf);
+				}
+			}
+			return total;
+		}
+	}
+	
+	@Override
+	public void close() {
+		synchronized(streams) {
+			if(listening) {
+				mount.client().pushHandler(mount, Extensions.STREAMDATA, null);
+				listening = false;
+			}
+		}
+	}
+
+	private long stream(int handle, String path, long offset, long length, WritableByteChannel out) throws IOException {
+		var client = mount.client();
+		var stream = new Stream();
+		var id = add(stream);
+		var done = false;
+		try {
+			var res = client.sendMessage(mount, Extensions.STREAMREAD, Message.of(mount.sessionId(), Extensions.STREAMREAD, 
+					new Extensions.StreamRead(id, handle, offset, length, window)), path);
+			available = true;
+			
+			var timeout = client.timeout().orElse(DEFAULT_TIMEOUT).toNanos();
+			var total = res.length();
+			var written = 0l;
+			var consumed = 0;
+			var acked = 0;
+			var waited = 0l;
+			var delay = client.retransmissionTimeout().toNanos();
+			
+			while(written < total) {
+				ByteBuffer block;
+				try {
+					block = stream.blocks.poll(delay, TimeUnit.NANOSECONDS);
+				}
+				catch(InterruptedException ie) {
+					throw new InterruptedIOException();
+				}
+				
+				if(block == null) {
+					/* Lost a block, or the acknowledgement, so go back to the first missing */
+					waited += delay;
+					if(waited >= timeout) {
+						throw new SocketTimeoutException("Timeout waiting for stream of " + path);
+					}
+					ack(id, stream.received, true, false);
+					
+					/* Back off while nothing arrives, as a retransmission timer would */
+					delay = Math.min(delay * 2, timeout - waited);
+					continue;
+				}
+				
+				if(waited > 0) {
+					waited = 0;
+					delay = client.retransmissionTimeout().toNanos();
+				}
+				written += block.remaining();
+				while(block.hasRemaining()) {
+					out.write(block);
+				}
+				
+				consumed++;
+				if(consumed - acked >= Math.max(1, window / 2) || written >= total) {
+					ack(id, consumed, false, false);
+					acked = consumed;
+				}
+			}
+			
+			done = true;
+			return written;
+		}
+		finally {
+			streams.remove(id);
+			if(!done) {
+				ack(id, 0, false, true);
+			}
+		}
+	}
+	
+	private void ack(int id, int received, boolean resend, boolean cancel) {
+		/* Not waiting for the reply, if lost, blocks will stop and this will be sent again */
+		mount.client().sendAsync(mount, Extensions.STREAMACK, Message.of(mount.sessionId(), Extensions.STREAMACK, 
+				new Extensions.StreamAck(id, received, window, resend, cancel)));
+	}
+	
+	private int add(Stream stream) {
+		synchronized(streams) {
+			if(!listening) {
+				mount.client().pushHandler(mount, Extensions.STREAMDATA, this::pushed);
+				listening = true;
+			}
+			for(var i = 0; i < 256; i++) {
+				var id = nextId++ & 0xff;
+				if(!streams.containsKey(id)) {
+					streams.put(id, stream);
+					return id;
+				}
+			}
+		}
+		throw new IllegalStateException("Too many streams.");
+	}
+	
+	private void pushed(ByteBuffer payload) {
+		payload.get();
+		var stream = streams.get(Byte.toUnsignedInt(payload.get()));
+		if(stream == null) {
+			return;
+		}
+		
+		/* Anything out of order is dropped, and will be sent again */
+		if(payload.getInt() != stream.received) {
+			return;
+		}
+		
+		var len = Short.toUnsignedInt(payload.getShort());
+		var data = ByteBuffer.allocate(len);
+		data.put(0, payload, payload.position(), len);
+		stream.received++;
+		stream.blocks.add(data);
+	}
+}
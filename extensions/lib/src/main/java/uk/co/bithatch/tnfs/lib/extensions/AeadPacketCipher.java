@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib.extensions;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CipherSuite;
+
+/**
+ * A {@link PacketCipher} using one of the authenticated ciphers provided by the runtime,
+ * AES-GCM (which most CPUs accelerate) or ChaCha20-Poly1305. The connection ID, nonce
+ * and length are authenticated along with the encrypted packet, which is followed by
+ * a 16 byte tag.
+ */
+final class AeadPacketCipher extends PacketCipher {
+	
+	private final static int TAG_SIZE = 16;
+	
+	private final CipherSuite suite;
+	private final Cipher cipher;
+	private final SecretKey key;
+	private final byte[] iv = new byte[12];
+	private final byte[] aad = new byte[ENVELOPE];
+
+	AeadPacketCipher(CipherSuite suite, byte[] key, boolean client) throws GeneralSecurityException {
+		super(client, ENVELOPE - 2 + TAG_SIZE);
+		this.suite = suite;
+		this.key = new SecretKeySpec(key, suite == CipherSuite.AES_GCM ? "AES" : "ChaCha20");
+		
+		cipher = Cipher.getInstance(transformation(suite));
+	}
+	
+	static String transformation(CipherSuite suite) {
+		return suite == CipherSuite.AES_GCM ? "AES/GCM/NoPadding" : "ChaCha20-Poly1305";
+	}
+	
+	@Override
+	protected void seal(ByteBuffer packet, int pos, int len, long nonce) {
+		try {
+			init(Cipher.ENCRYPT_MODE, packet, pos, nonce, len + TAG_SIZE);
+			cipher.doFinal(packet.duplicate().limit(pos + 2 + len).position(pos + 2), 
+					packet.duplicate().position(pos + ENVELOPE));
+		}
+		catch(GeneralSecurityException gse) {
+			throw new IllegalStateException("Failed to encrypt packet.", gse);
+		}
+	}
+	
+	@Override
+	protected int open(ByteBuffer packet, int pos, int len, long nonce) {
+		try {
+			init(Cipher.DECRYPT_MODE, packet, pos, nonce, len);
+			return cipher.doFinal(packet.duplicate().limit(pos + ENVELOPE + len).position(pos + ENVELOPE), 
+					packet.duplicate().position(pos + 2));
+		}
+		catch(AEADBadTagException abte) {
+			throw new IllegalArgumentException("Encrypted packet failed authentication.", abte);
+		}
+		catch(GeneralSecurityException gse) {
+			throw new IllegalStateException("Failed to decrypt packet.", gse);
+		}
+	}
+	
+	private void init(int mode, ByteBuffer packet, int pos, long nonce, int encrypted) throws GeneralSecurityException {
+		for(var i = 0 ; i < 8 ; i++) {
+			iv[i] = (byte)(nonce >>> ( i * 8 ));
+		}
+		
+		/* The envelope as it is sent, which on the way out has not been written yet */
+		aad[0] = packet.get(pos);
+		aad[1] = packet.get(pos + 1);
+		System.arraycopy(iv, 0, aad, 2, 8);
+		aad[10] = (byte)encrypted;
+		aad[11] = (byte)(encrypted >> 8);
+		
+		AlgorithmParameterSpec spec = suite == CipherSuite.AES_GCM ? new GCMParameterSpec(TAG_SIZE * 8, iv) : new IvParameterSpec(iv);
+		cipher.init(mode, key, spec);
+		cipher.updateAAD(aad);
+	}
+}
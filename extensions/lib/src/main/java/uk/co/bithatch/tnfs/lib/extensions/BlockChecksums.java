@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib.extensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BlockSum;
+
+/**
+ * Checksums of fixed size blocks of a file, as used by rsync. Each block has a weak
+ * checksum that can be rolled along a file one byte at a time, so blocks may be found
+ * at any offset, and a strong hash to confirm a match.
+ */
+public final class BlockChecksums {
+	
+	public final static int MINIMUM_BLOCK_SIZE = 1024;
+	public final static int MAXIMUM_BLOCK_SIZE = 65536;
+	
+	private final static int TAGS = 65536;
+
+	/**
+	 * Receives each block found while scanning.
+	 */
+	@FunctionalInterface
+	public interface Matches {
+		/**
+		 * A block was found.
+		 * 
+		 * @param offset offset in the scanned data
+		 * @param block index of block
+		 */
+		void match(long offset, int block);
+	}
+	
+	/**
+	 * The weak checksum, which can be updated as a window moves along the data.
+	 */
+	public final static class Rolling {
+		private int a;
+		private int b;
+		private int length;
+		
+		public Rolling reset(byte[] data, int offset, int length) {
+			a = 0;
+			b = 0;
+			this.length = length;
+			for(var i = 0; i < length; i++) {
+				var v = data[offset + i] & 0xff;
+				a += v;
+				b += (length - i) * v;
+			}
+			return this;
+		}
+		
+		/**
+		 * Move the window along one byte.
+		 * 
+		 * @param out byte leaving the window
+		 * @param in byte entering the window
+		 */
+		public void roll(byte out, byte in) {
+			var o = out & 0xff;
+			a += (in & 0xff) - o;
+			b += a - length * o;
+		}
+		
+		public int value() {
+			return (a & 0xffff) | (b << 16);
+		}
+	}
+	
+	private final MessageDigest digest;
+	
+	public BlockChecksums() {
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Choose a block size for a file, about the square root of its size so the 
+	 * number of checksums grows no faster than the size of each block.
+	 * 
+	 * @param size file size
+	 * @return block size
+	 */
+	public static int blockSize(long size) {
+		var sz = Long.highestOneBit(Math.max(1, (long)Math.sqrt(size)));
+		return (int)Math.min(MAXIMUM_BLOCK_SIZE, Math.max(MINIMUM_BLOCK_SIZE, sz));
+	}
+	
+	public static int weak(byte[] data, int offset, int length) {
+		return new Rolling().reset(data, offset, length).value();
+	}
+	
+	/**
+	 * Get the strong hash of a block, the first 8 bytes of its MD5.
+	 * 
+	 * @param data data
+	 * @param offset offset of block
+	 * @param length length of block
+	 * @return strong hash
+	 */
+	public long strong(byte[] data, int offset, int length) {
+		digest.update(data, offset, length);
+		return ByteBuffer.wrap(digest.digest()).getLong();
+	}
+	
+	public BlockSum sum(byte[] data, int offset, int length) {
+		return new BlockSum(weak(data, offset, length), strong(data, offset, length));
+	}
+	
+	/**
+	 * Find blocks in some data. Blocks found do not overlap, and once a block is 
+	 * found, scanning continues from its end. All blocks but the last must be 
+	 * the block size, the last may be shorter, and is only looked for at the 
+	 * end of the data.
+	 * 
+	 * @param in data to scan
+	 * @param blockSize block size
+	 * @param sums checksums of blocks to find 
+	 * @param lastLength length of the last block
+	 * @param matches receives each block found
+	 * @throws IOException on error
+	 */
+	public void scan(ReadableByteChannel in, int blockSize, List<BlockSum> sums, long lastLength, Matches matches) throws IOException {
+		var index = new HashMap<Integer, List<Integer>>();
+		var tags = new boolean[TAGS];
+		var fullBlocks = lastLength == blockSize ? sums.size() : sums.size() - 1;
+		for(var i = 0; i < fullBlocks; i++) {
+			var weak = sums.get(i).weak();
+			tags[tag(weak)] = true;
+			index.computeIfAbsent(weak, k -> new ArrayList<>(1)).add(i);
+		}
+		
+		var data = new byte[Math.max(blockSize * 4, 262144)];
+		var buf = ByteBuffer.wrap(data);
+		var rolling = new Rolling();
+		var base = 0l;
+		var pos = 0;
+		var rolled = false;
+		
+		while(true) {
+			/* Keep at least a block after the current position */
+			if(buf.position() - pos < blockSize) {
+				/* Keep the byte before the window too, it is needed to roll */
+				var from = rolled ? pos - 1 : pos;
+				if(from > 0) {
+					System.arraycopy(data, from, data, 0, buf.position() - from);
+					buf.position(buf.position() - from);
+					base += from;
+					pos -= from;
+				}
+				while(buf.hasRemaining() && in.read(buf) != -1);
+				if(buf.position() - pos < blockSize) {
+					break;
+				}
+			}
+			
+			if(rolled) {
+				rolling.roll(data[pos - 1], data[pos + blockSize - 1]);
+			}
+			else {
+				rolling.reset(data, pos, blockSize);
+				rolled = true;
+			}
+			
+			var weak = rolling.value();
+			var block = tags[tag(weak)] ? find(index, sums, weak, data, pos, blockSize) : -1;
+			if(block == -1) {
+				pos++;
+			}
+			else {
+				matches.match(base + pos, block);
+				pos += blockSize;
+				rolled = false;
+			}
+		}
+		
+		/* Anything left over may be the short last block */
+		var left = buf.position() - pos;
+		if(fullBlocks < sums.size() && left >= lastLength && lastLength > 0) {
+			var off = pos + left - (int)lastLength;
+			var last = sums.get(fullBlocks);
+			if(weak(data, off, (int)lastLength) == last.weak() && strong(data, off, (int)lastLength) == last.strong()) {
+				matches.match(base + off, fullBlocks);
+			}
+		}
+	}
+
+	/**
+	 * A 16 bit hash of a weak checksum. Most positions in the data match no block,
+	 * so a table of these is checked first, as rsync does, without boxing the checksum
+	 * to look it up in the index.
+	 * 
+	 * @param weak weak checksum
+	 * @return tag
+	 */
+	private static int tag(int weak) {
+		return (weak ^ (weak >>> 16)) & 0xffff;
+	}
+
+	private int find(Map<Integer, List<Integer>> index, List<BlockSum> sums, int weak, byte[] data, int pos, int blockSize) {
+		var candidates = index.get(weak);
+		if(candidates != null) {
+			var strong = strong(data, pos, blockSize);
+			for(var c : candidates) {
+				if(sums.get(c).strong() == strong) {
+					return c;
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -21,13 +21,15 @@
 package uk.co.bithatch.tnfs.lib.extensions;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.channels.Channels;
-import java.security.DigestInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.zip.CRC32;
-import java.util.zip.CheckedInputStream;
 
 import uk.co.bithatch.tnfs.lib.ModeFlag;
 import uk.co.bithatch.tnfs.lib.OpenFlag;
@@ -37,26 +39,65 @@ import uk.co.bithatch.tnfs.lib.extensions.Extensions.Checksum;
 
 public class Checksums {
 
+	private final static int BUFFER_SIZE = 1024 * 1024;
+	private final static long MAP_SIZE = 64 * 1024 * 1024;
+
 	public static String sum(TNFSFileAccess mnt, String path, Checksum type) throws IOException, NoSuchAlgorithmException {
-		String checksum;
-		switch (type) {
-		case CRC32:
-			try (var in = new CheckedInputStream(
-					Channels.newInputStream(mnt.open(path, new ModeFlag[0], OpenFlag.READ)),
-					new CRC32())) {
-				in.transferTo(OutputStream.nullOutputStream());
-				checksum = String.format("%04x", in.getChecksum().getValue());
+		return sum(mnt, path, new Checksum[] { type }).get(type);
+	}
+
+	/**
+	 * Calculate any number of checksums of a file, reading it just once. Local
+	 * files are memory mapped a window at a time, anything else is read through
+	 * a single large direct buffer.
+	 *
+	 * @param mnt mount
+	 * @param path path of file
+	 * @param types checksum types
+	 * @return checksums, keyed by type
+	 * @throws IOException on error
+	 * @throws NoSuchAlgorithmException if a digest is not available
+	 */
+	public static Map<Checksum, String> sum(TNFSFileAccess mnt, String path, Checksum... types) throws IOException, NoSuchAlgorithmException {
+		var crc = Arrays.asList(types).contains(Checksum.CRC32) ? new CRC32() : null;
+		var digests = new EnumMap<Checksum, MessageDigest>(Checksum.class);
+		for(var type : types) {
+			if(type != Checksum.CRC32) {
+				digests.put(type, MessageDigest.getInstance(type.name()));
+			}
+		}
+		
+		try(var in = mnt.open(path, new ModeFlag[0], OpenFlag.READ)) {
+			if(in instanceof FileChannel fc) {
+				var size = fc.size();
+				for(long pos = 0; pos < size; pos += MAP_SIZE) {
+					update(fc.map(MapMode.READ_ONLY, pos, Math.min(MAP_SIZE, size - pos)), crc, digests);
+				}
 			}
-			break;
-		default:
-			var md = MessageDigest.getInstance(type.name());
-			try (var in = new DigestInputStream(Channels.newInputStream(
-					mnt.open(path, new ModeFlag[0], OpenFlag.READ)), md)) {
-				in.transferTo(OutputStream.nullOutputStream());
-				checksum = Util.toHexString(md.digest());
+			else {
+				var buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+				while(in.read(buf) != -1) {
+					buf.flip();
+					update(buf, crc, digests);
+					buf.clear();
+				}
 			}
-			break;
 		}
-		return checksum;
+		
+		var sums = new EnumMap<Checksum, String>(Checksum.class);
+		if(crc != null) {
+			sums.put(Checksum.CRC32, String.format("%04x", crc.getValue()));
+		}
+		digests.forEach((type, md) -> sums.put(type, Util.toHexString(md.digest())));
+		return sums;
+	}
+
+	private static void update(ByteBuffer buf, CRC32 crc, Map<Checksum, MessageDigest> digests) {
+		if(crc != null) {
+			crc.update(buf.duplicate());
+		}
+		for(var md : digests.values()) {
+			md.update(buf.duplicate());
+		}
 	}
 }
@@ -20,6 +20,7 @@
  */
 package uk.co.bithatch.tnfs.lib.extensions;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -28,6 +29,8 @@ import javax.security.auth.Subject;
 
 public final class Crypto {
 	
+	private final static byte[] RESUMPTION_LABEL = "tnfs resumption".getBytes(StandardCharsets.US_ASCII);
+	
 	public static byte[] deriveKey(byte[] sharedSecret, int keyBits) throws NoSuchAlgorithmException {
 		
         var sha256 = MessageDigest.getInstance("SHA-256");
@@ -35,5 +38,36 @@ public final class Crypto {
         var keyBytes = keyBits / 8;
         return Arrays.copyOf(digest, keyBytes);
     }
+	
+	/**
+	 * Derive the secret a session may later be resumed with from the same material its
+	 * key was derived from. A label is mixed in, so the secret is never the key itself.
+	 * 
+	 * @param material shared secret or resumption material
+	 * @return resumption secret
+	 * @throws NoSuchAlgorithmException if SHA-256 is not available
+	 */
+	public static byte[] resumptionSecret(byte[] material) throws NoSuchAlgorithmException {
+        var sha256 = MessageDigest.getInstance("SHA-256");
+        sha256.update(RESUMPTION_LABEL);
+        return sha256.digest(material);
+	}
+	
+	/**
+	 * Combine the secret of a session being resumed with fresh values from both client and
+	 * server, giving material for {@link #deriveKey(byte[], int)} and {@link #resumptionSecret(byte[])}
+	 * that is different for every resumption.
+	 * 
+	 * @param secret resumption secret
+	 * @param clientNonce client nonce
+	 * @param serverNonce server nonce
+	 * @return material
+	 */
+	public static byte[] resumptionMaterial(byte[] secret, byte[] clientNonce, byte[] serverNonce) {
+		var material = Arrays.copyOf(secret, secret.length + clientNonce.length + serverNonce.length);
+		System.arraycopy(clientNonce, 0, material, secret.length, clientNonce.length);
+		System.arraycopy(serverNonce, 0, material, secret.length + clientNonce.length, serverNonce.length);
+		return material;
+	}
 
 }
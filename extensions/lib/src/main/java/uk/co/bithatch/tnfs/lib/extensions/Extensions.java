@@ -21,13 +21,21 @@
 package uk.co.bithatch.tnfs.lib.extensions;
 
 import java.nio.ByteBuffer;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.HandleResult;
 import uk.co.bithatch.tnfs.lib.Command.HeaderOnlyResult;
+import uk.co.bithatch.tnfs.lib.Command.OpenDirXResult;
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
 import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.Command.WriteResult;
 import uk.co.bithatch.tnfs.lib.Encodeable;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
 import uk.co.bithatch.tnfs.lib.ResultCode;
 import uk.co.bithatch.tnfs.lib.Version;
 
@@ -36,12 +44,47 @@ public class Extensions {
 	public enum Checksum {
 		CRC32, MD2, MD5, SHA, SHA256, SHA384, SHA512
 	}
+	
+	public enum Compression {
+		LZ4, DEFLATE;
+		
+		/**
+		 * Get the algorithm a code sent by the other side refers to.
+		 * 
+		 * @param code code
+		 * @return algorithm
+		 * @throws IllegalArgumentException if the algorithm is not known
+		 */
+		public static Compression decode(byte code) {
+			var algos = values();
+			var idx = Byte.toUnsignedInt(code);
+			if(idx >= algos.length) {
+				throw new IllegalArgumentException("Unsupported compression algorithm " + idx + ".");
+			}
+			return algos[idx];
+		}
+	}
+	
+	public enum CipherSuite {
+		SPECK, AES_GCM, CHACHA20_POLY1305
+	}
 
 	public final static Command<Sum,SumResult> SUM = new Command<>(0x90, "SUM", Sum::decode, Sum::encode, SumResult::decode);
 	public final static Command<Copy,HeaderOnlyResult> COPY = new Command<>(0x91, "COPY", Copy::decode, Copy::encode, HeaderOnlyResult::decode);
 	public final static Command<Mounts,MountsResult> MOUNTS = new Command<>(0x92, "MOUNTS", Mounts::decode, Mounts::encode, MountsResult::decode);
 	public final static Command<PktSize,PktSizeResult> PKTSZ = new Command<>(0x93, "PKTSZ", PktSize::decode, PktSize::encode, PktSizeResult::decode);
 	public final static Command<SecureMount,SecureMountResult> SECMNT= new Command<>(0x94, "SECMNT", SecureMount::decode, SecureMount::encode, SecureMountResult::decode);
+	public final static Command<ReadAt,ReadResult> READAT = new Command<>(0x95, "READAT", ReadAt::decode, ReadAt::encode, ReadResult::decode);
+	public final static Command<WriteAt,WriteResult> WRITEAT = new Command<>(0x96, "WRITEAT", WriteAt::decode, WriteAt::encode, WriteResult::decode);
+	public final static Command<Compound,CompoundResult> COMPOUND = new Command<>(0x97, "COMPOUND", Compound::decode, Compound::encode, CompoundResult::decode);
+	public final static Command<BulkStat,BulkStatResult> BULKSTAT = new Command<>(0x98, "BULKSTAT", BulkStat::decode, BulkStat::encode, BulkStatResult::decode);
+	public final static Command<Compress,CompressResult> COMPRESS = new Command<>(0x99, "COMPRESS", Compress::decode, Compress::encode, CompressResult::decode);
+	public final static Command<StreamRead,StreamReadResult> STREAMREAD = new Command<>(0x9b, "STREAMREAD", StreamRead::decode, StreamRead::encode, StreamReadResult::decode);
+	public final static Command<Encodeable,StreamData> STREAMDATA = new Command<>(0x9c, "STREAMDATA", null, null, StreamData::decode);
+	public final static Command<StreamAck,HeaderOnlyResult> STREAMACK = new Command<>(0x9d, "STREAMACK", StreamAck::decode, StreamAck::encode, HeaderOnlyResult::decode);
+	public final static Command<CopyRange,CopyJobResult> COPYRANGE = new Command<>(0x9e, "COPYRANGE", CopyRange::decode, CopyRange::encode, CopyJobResult::decode);
+	public final static Command<CopyStat,CopyStatResult> COPYSTAT = new Command<>(0x9f, "COPYSTAT", CopyStat::decode, CopyStat::encode, CopyStatResult::decode);
+	public final static Command<BlockSums,BlockSumsResult> BLOCKSUMS = new Command<>(0xa0, "BLOCKSUMS", BlockSums::decode, BlockSums::encode, BlockSumsResult::decode);
 
 	public record ServerCaps() implements Encodeable {
 		
@@ -57,9 +100,10 @@ public class Extensions {
 
 	public record SumResult(ResultCode result, String sum) implements Result  {
 		public static SumResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
 			return new SumResult(
-				Result.decodeResult(buf), 
-				Encodeable.cString(buf)
+				res, 
+				res.isOk() ? Encodeable.cString(buf) : ""
 			);
 		}
 
@@ -87,7 +131,7 @@ public class Extensions {
 		public static MountsResult decode(ByteBuffer buf) {
 			var res = Result.decodeResult(buf);
 			var mounts = new ArrayList<String>();
-			var sz = Byte.toUnsignedInt(buf.get());
+			var sz = res.isOk() ? Byte.toUnsignedInt(buf.get()) : 0;
 			for(var i = 0 ; i < sz; i++) {
 				mounts.add(Encodeable.cString(buf));
 			}
@@ -162,7 +206,7 @@ public class Extensions {
 			var res = Result.decodeResult(buf);
 			return new PktSizeResult(
 				res, 
-				buf.remaining() > 1 ? Short.toUnsignedInt(buf.getShort()) : 0
+				res.isOk() ? Short.toUnsignedInt(buf.getShort()) : 0
 			);
 		}
 
@@ -173,14 +217,29 @@ public class Extensions {
 		}
 	}
 	
-	public record SecureMount(Version version, int derivedKeyBits, int blockSize, byte[] key) implements Encodeable {
+	/**
+	 * Start a secure mount. The <code>key</code> is always the client's DH public key. If
+	 * <code>ticket</code> is not empty, it is a ticket from an earlier secure mount the
+	 * client would like to resume instead of completing a new key exchange.
+	 */
+	public record SecureMount(Version version, int derivedKeyBits, int blockSize, byte[] key, byte[] ticket, CipherSuite... ciphers) implements Encodeable {
 		public static SecureMount decode(ByteBuffer buf) {
-			return new SecureMount(
-				Version.decode(buf),
-				Short.toUnsignedInt(buf.getShort()),
-				Short.toUnsignedInt(buf.getShort()),
-				Encodeable.byteArray(buf)
-			);
+			var version = Version.decode(buf);
+			var derivedKeyBits = Short.toUnsignedInt(buf.getShort());
+			var blockSize = Short.toUnsignedInt(buf.getShort());
+			var key = Encodeable.byteArray(buf);
+			var ticket = Encodeable.byteArray(buf);
+			var count = Byte.toUnsignedInt(buf.get());
+			var ciphers = new ArrayList<CipherSuite>(count);
+			var known = CipherSuite.values();
+			for(var i = 0 ; i < count; i++) {
+				/* Newer clients may offer ciphers this side does not know, which are skipped */
+				var cipher = Byte.toUnsignedInt(buf.get());
+				if(cipher < known.length) {
+					ciphers.add(known[cipher]);
+				}
+			}
+			return new SecureMount(version, derivedKeyBits, blockSize, key, ticket, ciphers.toArray(new CipherSuite[0]));
 		}
 
 		@Override
@@ -189,14 +248,33 @@ public class Extensions {
 			buf.putShort((short)derivedKeyBits);
 			buf.putShort((short)blockSize);
 			Encodeable.byteArray(buf, key);
+			Encodeable.byteArray(buf, ticket);
+			buf.put((byte)ciphers.length);
+			for(var cipher : ciphers) {
+				buf.put((byte)cipher.ordinal());
+			}
 			return buf;
 		}
 	}
 
-	public record SecureMountResult(ResultCode result, Version version, Duration retryTime, byte[] key) implements Result  {
+	/**
+	 * Reply to {@link SecureMount}. If <code>resumed</code> is set, the client's ticket was
+	 * accepted and <code>key</code> is a random nonce from the server rather than its DH public
+	 * key. <code>ticket</code> may be used to resume this session once.
+	 */
+	public record SecureMountResult(ResultCode result, Version version, Duration retryTime, byte[] key, CipherSuite cipher, boolean resumed, byte[] ticket) implements Result  {
 
 		public SecureMountResult(ResultCode result, Version version) {
-			this(result, version, Duration.ofMillis(0), new byte[0]);
+			this(result, version, Duration.ofMillis(0), new byte[0], null, false, new byte[0]);
+		}
+		
+		private static CipherSuite chosenCipher(byte code) {
+			var known = CipherSuite.values();
+			var cipher = Byte.toUnsignedInt(code);
+			if(cipher >= known.length) {
+				throw new IllegalArgumentException("Server chose cipher suite " + cipher + ", which this client does not support.");
+			}
+			return known[cipher];
 		}
 		
 		public static SecureMountResult decode(ByteBuffer buf) {
@@ -208,6 +286,9 @@ public class Extensions {
 					res,
 					ver,
 					Duration.ofMillis(Short.toUnsignedInt(buf.getShort())),
+					Encodeable.byteArray(buf),
+					chosenCipher(buf.get()),
+					buf.get() == 1,
 					Encodeable.byteArray(buf)
 				);
 			}
@@ -221,8 +302,595 @@ public class Extensions {
 		@Override
 		public ByteBuffer encodeResult(ByteBuffer buf) {
 			version.encode(buf);
-			buf.putShort((short)retryTime.toMillis());
-			Encodeable.byteArray(buf, key);
+			if(result.isOk()) {
+				buf.putShort((short)retryTime.toMillis());
+				Encodeable.byteArray(buf, key);
+				buf.put((byte)cipher.ordinal());
+				buf.put((byte)(resumed ? 1 : 0));
+				Encodeable.byteArray(buf, ticket);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * As {@link Command.Read}, but reads from the given position rather than the 
+	 * file's current position, which is left unchanged.
+	 */
+	public record ReadAt(int handle, long position, int size) implements Encodeable {
+		public static ReadAt decode(ByteBuffer buf) {
+			return new ReadAt(
+					Byte.toUnsignedInt(buf.get()),
+					Integer.toUnsignedLong(buf.getInt()),
+					Short.toUnsignedInt(buf.getShort()));
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)handle);
+			buf.putInt((int)position);
+			buf.putShort((short)size);
+			return buf;
+		}
+	}
+	
+	/**
+	 * As {@link Command.Write}, but writes at the given position rather than the 
+	 * file's current position, which is left unchanged.
+	 */
+	public record WriteAt(int handle, long position, ByteBuffer data) implements Encodeable {
+		public static WriteAt decode(ByteBuffer buf) {
+			return new WriteAt(
+				Byte.toUnsignedInt(buf.get()),
+				Integer.toUnsignedLong(buf.getInt()),
+				Encodeable.shortLPByteBuffer(buf)
+			);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)handle);
+			buf.putInt((int)position);
+			Encodeable.shortLPByteBuffer(data, buf);
+			return buf;
+		}
+	}
+	
+	/**
+	 * Several operations to be run in turn by a single request. Processing stops after
+	 * the first operation that fails, other than with {@link ResultCode#EOF}, so an 
+	 * OPEN, READ and CLOSE of a small file still closes it when there is nothing to read.
+	 */
+	public record Compound(Operation... operations) implements Encodeable {
+		
+		public static Compound decode(ByteBuffer buf) {
+			var ops = new Operation[Byte.toUnsignedInt(buf.get())];
+			for(var i = 0 ; i < ops.length; i++) {
+				ops[i] = Operation.decode(buf);
+			}
+			return new Compound(ops);
+		}
+		
+		/**
+		 * Get the handle returned by an operation, such as {@link Command#OPEN} or 
+		 * {@link Command#OPENDIR}, that following operations may use.
+		 * 
+		 * @param result result
+		 * @return handle or -1 if the result has none
+		 */
+		public static int handle(Result result) {
+			if(result.result().isError()) {
+				return -1;
+			}
+			else if(result instanceof HandleResult hres) {
+				return hres.handle();
+			}
+			else if(result instanceof OpenDirXResult dres) {
+				return dres.handle();
+			}
+			else {
+				return -1;
+			}
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)operations.length);
+			for(var op : operations) {
+				op.encode(buf);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * One operation of a {@link Compound}. When <code>currentHandle</code> is set, the
+	 * first byte of the request, which must be a handle, is replaced by the handle 
+	 * returned by the most recent earlier operation that returned one. Decoded requests
+	 * are left {@link Encoded} until the handle has been replaced.
+	 */
+	public record Operation(Command<?, ?> command, boolean currentHandle, Encodeable request) implements Encodeable {
+		
+		public static Operation decode(ByteBuffer buf) {
+			var command = Command.get(buf.get());
+			var currentHandle = buf.get() != 0;
+			return new Operation(command, currentHandle, new Encoded(Encodeable.shortLPByteBuffer(buf).order(buf.order())));
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put(command.code());
+			buf.put((byte)(currentHandle ? 1 : 0));
+			var at = buf.position();
+			buf.putShort((short)0);
+			request.encode(buf);
+			buf.putShort(at, (short)(buf.position() - at - 2));
+			return buf;
+		}
+	}
+	
+	/**
+	 * A request that is already encoded.
+	 */
+	public record Encoded(ByteBuffer data) implements Encodeable {
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put(data.duplicate());
+			return buf;
+		}
+	}
+
+	/**
+	 * The results of a {@link Compound}, one for each operation that was run.
+	 */
+	public record CompoundResult(ResultCode result, OperationResult... results) implements Result  {
+		
+		public static CompoundResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			var results = new OperationResult[res.isOk() ? Byte.toUnsignedInt(buf.get()) : 0];
+			for(var i = 0 ; i < results.length; i++) {
+				results[i] = OperationResult.decode(buf);
+			}
+			return new CompoundResult(res, results);
+		}
+		
+		public Result[] operationResults() {
+			return Arrays.stream(results).map(OperationResult::result).toArray(Result[]::new);
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			buf.put((byte)results.length);
+			for(var res : results) {
+				res.encode(buf);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * The result of one operation of a {@link Compound}.
+	 */
+	public record OperationResult(Command<?, ?> command, Result result) implements Encodeable {
+		
+		public static OperationResult decode(ByteBuffer buf) {
+			var command = Command.get(buf.get());
+			var len = Short.toUnsignedInt(buf.getShort());
+			var data = buf.slice(buf.position(), len).order(buf.order());
+			buf.position(buf.position() + len);
+			return new OperationResult(command, command.decodeResult(data));
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put(command.code());
+			var at = buf.position();
+			buf.putShort((short)0);
+			result.encode(buf);
+			buf.putShort(at, (short)(buf.position() - at - 2));
+			return buf;
+		}
+	}
+	
+	/**
+	 * Stat many paths at once. The server replies with as many results as fit in a
+	 * packet, in the same order as the paths, so the remainder must be asked for again.
+	 */
+	public record BulkStat(String... paths) implements Encodeable {
+		
+		public static BulkStat decode(ByteBuffer buf) {
+			var paths = new String[Byte.toUnsignedInt(buf.get())];
+			for(var i = 0 ; i < paths.length; i++) {
+				paths[i] = Encodeable.cString(buf);
+			}
+			return new BulkStat(paths);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)paths.length);
+			for(var path : paths) {
+				Encodeable.cString(path, buf);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * The results of a {@link BulkStat}. Each is either just an error code, or a
+	 * compact stat record that has the same fields as {@link StatResult}, except for 
+	 * the user and group names, which are always empty.
+	 */
+	public record BulkStatResult(ResultCode result, StatResult... stats) implements Result  {
+		
+		/**
+		 * Size of an encoded successful stat record.
+		 */
+		public final static int RECORD_SIZE = 23;
+		
+		public static BulkStatResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			var stats = new StatResult[res.isOk() ? Byte.toUnsignedInt(buf.get()) : 0];
+			for(var i = 0 ; i < stats.length; i++) {
+				var code = Result.decodeResult(buf);
+				if(code.isError()) {
+					stats[i] = new StatResult(code, null, 0, 0, 0, null, null, null, "", "");
+				}
+				else {
+					stats[i] = new StatResult(
+						code, 
+						ModeFlag.decode(Short.toUnsignedInt(buf.getShort())), 
+						Short.toUnsignedInt(buf.getShort()), 
+						Short.toUnsignedInt(buf.getShort()), 
+						Integer.toUnsignedLong(buf.getInt()),
+						FileTime.fromMillis(Integer.toUnsignedLong(buf.getInt()) * 1000),
+						FileTime.fromMillis(Integer.toUnsignedLong(buf.getInt()) * 1000),
+						FileTime.fromMillis(Integer.toUnsignedLong(buf.getInt()) * 1000),
+						"",
+						""
+					);
+				}
+			}
+			return new BulkStatResult(res, stats);
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			buf.put((byte)stats.length);
+			for(var stat : stats) {
+				buf.put((byte)stat.result().value());
+				if(stat.result().isOk()) {
+					buf.putShort((short)ModeFlag.encode(stat.mode()));
+					buf.putShort((short)stat.uid());
+					buf.putShort((short)stat.gid());
+					buf.putInt((int)stat.size());
+					buf.putInt((int)(stat.atime().toMillis() / 1000));
+					buf.putInt((int)(stat.mtime().toMillis() / 1000));
+					buf.putInt((int)(stat.ctime().toMillis() / 1000));
+				}
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * Ask for packets to be compressed, offering algorithms in order of preference.
+	 */
+	public record Compress(Compression... algorithms) implements Encodeable {
+		
+		public static Compress decode(ByteBuffer buf) {
+			var count = Byte.toUnsignedInt(buf.get());
+			var algos = new ArrayList<Compression>(count);
+			var known = Compression.values();
+			for(var i = 0 ; i < count; i++) {
+				/* Newer clients may offer algorithms this side does not know, which are skipped */
+				var algo = Byte.toUnsignedInt(buf.get());
+				if(algo < known.length) {
+					algos.add(known[algo]);
+				}
+			}
+			return new Compress(algos.toArray(new Compression[0]));
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)algorithms.length);
+			for(var algo : algorithms) {
+				buf.put((byte)algo.ordinal());
+			}
+			return buf;
+		}
+	}
+	
+	public record CompressResult(ResultCode result, Compression algorithm) implements Result  {
+		
+		public static CompressResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			return new CompressResult(res, res.isOk() ? Compression.decode(buf.get()) : null);
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			if(result.isOk()) {
+				buf.put((byte)algorithm.ordinal());
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * Ask the server to push part of a file as a numbered sequence of {@link StreamData}
+	 * packets, without a request for each. No more than <code>window</code> blocks are
+	 * pushed that have not been acknowledged with a {@link StreamAck}. The stream ID is
+	 * chosen by the client, and must not be in use by another stream on the same mount.
+	 */
+	public record StreamRead(int stream, int handle, long offset, long length, int window) implements Encodeable {
+		
+		public static StreamRead decode(ByteBuffer buf) {
+			return new StreamRead(
+				Byte.toUnsignedInt(buf.get()),
+				Byte.toUnsignedInt(buf.get()),
+				Integer.toUnsignedLong(buf.getInt()),
+				Integer.toUnsignedLong(buf.getInt()),
+				Short.toUnsignedInt(buf.getShort())
+			);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)stream);
+			buf.put((byte)handle);
+			buf.putInt((int)offset);
+			buf.putInt((int)Math.min(length, 0xffffffffl));
+			buf.putShort((short)window);
+			return buf;
+		}
+	}
+	
+	/**
+	 * The result of a {@link StreamRead}, with the number of bytes that will be pushed,
+	 * which may be less than asked for if the file is shorter.
+	 */
+	public record StreamReadResult(ResultCode result, long length) implements Result  {
+		
+		public static StreamReadResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			return new StreamReadResult(res, res.isOk() ? Integer.toUnsignedLong(buf.getInt()) : 0);
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			if(result.isOk()) {
+				buf.putInt((int)length);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * One block of a {@link StreamRead}, pushed by the server.
+	 */
+	public record StreamData(ResultCode result, int stream, int block, ByteBuffer data) implements Result  {
+		
+		public static StreamData decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			return new StreamData(
+				res,
+				Byte.toUnsignedInt(buf.get()),
+				buf.getInt(),
+				Encodeable.shortLPByteBuffer(buf)
+			);
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			buf.put((byte)stream);
+			buf.putInt(block);
+			Encodeable.shortLPByteBuffer(data, buf);
+			return buf;
+		}
+	}
+	
+	/**
+	 * Acknowledge the blocks of a {@link StreamRead} received so far, i.e. the number
+	 * received in order. This may also change the window, ask for blocks from the first
+	 * missing one to be pushed again, or cancel the stream.
+	 */
+	public record StreamAck(int stream, int received, int window, boolean resend, boolean cancel) implements Encodeable {
+		
+		public static StreamAck decode(ByteBuffer buf) {
+			var stream = Byte.toUnsignedInt(buf.get());
+			var received = buf.getInt();
+			var window = Short.toUnsignedInt(buf.getShort());
+			var flags = buf.get();
+			return new StreamAck(stream, received, window, (flags & 1) != 0, (flags & 2) != 0);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.put((byte)stream);
+			buf.putInt(received);
+			buf.putShort((short)window);
+			buf.put((byte)((resend ? 1 : 0) | (cancel ? 2 : 0)));
+			return buf;
+		}
+	}
+	
+	/**
+	 * As {@link Copy}, but copies only part of the file, to a position in the target. 
+	 * Offsets and lengths are 64 bit, so may be used for files of any size.
+	 */
+	public record CopyRange(String path, String targetPath, long offset, long length, long targetOffset, CopyFlag... flags) implements Encodeable {
+		public static CopyRange decode(ByteBuffer buf) {
+			return new CopyRange(
+				Encodeable.cString(buf),
+				Encodeable.cString(buf),
+				buf.getLong(),
+				buf.getLong(),
+				buf.getLong(),
+				CopyFlag.decode(Byte.toUnsignedInt(buf.get()))
+			);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			Encodeable.cString(path, buf);
+			Encodeable.cString(targetPath, buf);
+			buf.putLong(offset);
+			buf.putLong(length);
+			buf.putLong(targetOffset);
+			buf.put((byte)CopyFlag.encode(flags));
+			return buf;
+		}
+	}
+	
+	/**
+	 * The reply to a {@link CopyRange}. If the copy has already been done, the job is zero
+	 * and the length is the number of bytes copied. Otherwise the copy is running in the 
+	 * background, and its progress may be polled with {@link CopyStat}.
+	 */
+	public record CopyJobResult(ResultCode result, int job, long length) implements Result  {
+		
+		public static CopyJobResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			return res.isOk() 
+					? new CopyJobResult(res, buf.getInt(), buf.getLong())
+					: new CopyJobResult(res, 0, 0);
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			if(result.isOk()) {
+				buf.putInt(job);
+				buf.putLong(length);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * Get the progress of a background copy, optionally cancelling it.
+	 */
+	public record CopyStat(int job, boolean cancel) implements Encodeable {
+		
+		public static CopyStat decode(ByteBuffer buf) {
+			return new CopyStat(buf.getInt(), buf.get() != 0);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			buf.putInt(job);
+			buf.put((byte)(cancel ? 1 : 0));
+			return buf;
+		}
+	}
+	
+	/**
+	 * The progress of a background copy. Once the copy is no longer running, the result
+	 * is the result of the copy, and progress is only included if that succeeded. A copy
+	 * that was cancelled before it finished succeeds, but is marked as cancelled.
+	 */
+	public record CopyStatResult(ResultCode result, boolean running, boolean cancelled, long copied, long length) implements Result  {
+		
+		private final static byte DONE = 0;
+		private final static byte RUNNING = 1;
+		private final static byte CANCELLED = 2;
+		
+		public static CopyStatResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			if(res.isOk()) {
+				var state = buf.get();
+				return new CopyStatResult(res, state == RUNNING, state == CANCELLED, buf.getLong(), buf.getLong());
+			}
+			else {
+				return new CopyStatResult(res, false, false, 0, 0);
+			}
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			if(result.isOk()) {
+				buf.put(running ? RUNNING : (cancelled ? CANCELLED : DONE));
+				buf.putLong(copied);
+				buf.putLong(length);
+			}
+			return buf;
+		}
+	}
+	
+	/**
+	 * Get the {@link BlockChecksums} of each block of
+	 * part of a file. The reply will contain as many as fit in a message, so the client
+	 * asks again from the offset of the next block.
+	 */
+	public record BlockSums(String path, long offset, long length, int blockSize) implements Encodeable {
+		public static BlockSums decode(ByteBuffer buf) {
+			return new BlockSums(
+				Encodeable.cString(buf),
+				buf.getLong(),
+				buf.getLong(),
+				buf.getInt()
+			);
+		}
+
+		@Override
+		public ByteBuffer encode(ByteBuffer buf) {
+			Encodeable.cString(path, buf);
+			buf.putLong(offset);
+			buf.putLong(length);
+			buf.putInt(blockSize);
+			return buf;
+		}
+	}
+	
+	/**
+	 * The weak rolling checksum and strong hash of one block.
+	 */
+	public record BlockSum(int weak, long strong) {
+	}
+	
+	/**
+	 * The reply to a {@link BlockSums}, with the size of the whole file and the checksums
+	 * of as many blocks as would fit.
+	 */
+	public record BlockSumsResult(ResultCode result, long size, BlockSum... sums) implements Result  {
+		
+		/**
+		 * Size of the reply without any blocks.
+		 */
+		public final static int OVERHEAD = 1 + 8 + 2;
+		
+		/**
+		 * Size of each block.
+		 */
+		public final static int RECORD_SIZE = 12;
+		
+		public static BlockSumsResult decode(ByteBuffer buf) {
+			var res = Result.decodeResult(buf);
+			if(res.isOk()) {
+				var size = buf.getLong();
+				var sums = new BlockSum[Short.toUnsignedInt(buf.getShort())];
+				for(var i = 0 ; i < sums.length; i++) {
+					sums[i] = new BlockSum(buf.getInt(), buf.getLong());
+				}
+				return new BlockSumsResult(res, size, sums);
+			}
+			else {
+				return new BlockSumsResult(res, 0);
+			}
+		}
+
+		@Override
+		public ByteBuffer encodeResult(ByteBuffer buf) {
+			if(result.isOk()) {
+				buf.putLong(size);
+				buf.putShort((short)sums.length);
+				for(var sum : sums) {
+					buf.putInt(sum.weak());
+					buf.putLong(sum.strong());
+				}
+			}
 			return buf;
 		}
 	}
@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib.extensions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A small, fast compressor producing the LZ4 block format. This favours speed over ratio,
+ * finding matches with a single hash table probe, and works directly on buffers (heap
+ * or direct) without copying them to arrays first.
+ * <p>
+ * Instances hold the hash table, so are not thread safe.
+ */
+public final class Lz4 {
+	
+	private final static int MIN_MATCH = 4;
+	private final static int LAST_LITERALS = 5;
+	private final static int MF_LIMIT = 12;
+	private final static int HASH_LOG = 12;
+	private final static int MAX_OFFSET = 65535;
+	
+	private final int[] table = new int[1 << HASH_LOG];
+	
+	/**
+	 * Compress the remaining content of one buffer into another. Neither buffer's
+	 * position is changed.
+	 * 
+	 * @param src source
+	 * @param dst destination
+	 * @return number of bytes written to the destination, or -1 if they would not fit 
+	 */
+	public int compress(ByteBuffer src, ByteBuffer dst) {
+		var base = src.position();
+		var end = src.limit();
+		var out = dst.position();
+		var outEnd = dst.limit();
+		var anchor = base;
+		
+		if(end - base > MF_LIMIT) {
+			Arrays.fill(table, -1);
+			var matchLimit = end - MF_LIMIT;
+			var ip = base;
+			while(ip < matchLimit) {
+				var seq = src.getInt(ip);
+				var h = (seq * -1640531535) >>> (32 - HASH_LOG);
+				var ref = table[h];
+				table[h] = ip - base;
+				
+				if(ref == -1 || ip - base - ref > MAX_OFFSET || src.getInt(base + ref) != seq) {
+					ip++;
+					continue;
+				}
+				ref += base;
+				
+				while(ip > anchor && ref > base && src.get(ip - 1) == src.get(ref - 1)) {
+					ip--;
+					ref--;
+				}
+				
+				var mlen = MIN_MATCH;
+				var limit = end - LAST_LITERALS;
+				while(ip + mlen < limit && src.get(ip + mlen) == src.get(ref + mlen)) {
+					mlen++;
+				}
+				
+				var lit = ip - anchor;
+				if(out + 1 + lit + lit / 255 + 1 + 2 + (mlen - MIN_MATCH) / 255 + 1 > outEnd) {
+					return -1;
+				}
+				
+				var tokenAt = out++;
+				out = length(dst, out, lit);
+				dst.put(out, src, anchor, lit);
+				out += lit;
+				dst.put(out++, (byte)(ip - ref));
+				dst.put(out++, (byte)((ip - ref) >> 8));
+				out = length(dst, out, mlen - MIN_MATCH);
+				dst.put(tokenAt, (byte)((Math.min(lit, 15) << 4) | Math.min(mlen - MIN_MATCH, 15)));
+				
+				ip += mlen;
+				anchor = ip;
+			}
+		}
+		
+		var lit = end - anchor;
+		if(out + 1 + lit + lit / 255 + 1 > outEnd) {
+			return -1;
+		}
+		dst.put(out++, (byte)(Math.min(lit, 15) << 4));
+		out = length(dst, out, lit);
+		dst.put(out, src, anchor, lit);
+		out += lit;
+		
+		return out - dst.position();
+	}
+	
+	/**
+	 * Decompress the remaining content of one buffer into another. Neither buffer's
+	 * position is changed.
+	 * 
+	 * @param src source
+	 * @param dst destination
+	 * @return number of bytes written to the destination
+	 * @throws IllegalArgumentException if the source is corrupt or the destination too small
+	 */
+	public static int decompress(ByteBuffer src, ByteBuffer dst) {
+		var ip = src.position();
+		var end = src.limit();
+		var start = dst.position();
+		var op = start;
+		var outEnd = dst.limit();
+		
+		try {
+			while(ip < end) {
+				var token = Byte.toUnsignedInt(src.get(ip++));
+				
+				var lit = token >>> 4;
+				if(lit == 15) {
+					int b;
+					do {
+						b = Byte.toUnsignedInt(src.get(ip++));
+						lit += b;
+					} while(b == 255);
+				}
+				if(op + lit > outEnd || ip + lit > end) {
+					throw new IllegalArgumentException("Corrupt or oversized LZ4 block.");
+				}
+				dst.put(op, src, ip, lit);
+				op += lit;
+				ip += lit;
+				if(ip == end) {
+					break;
+				}
+				
+				var offset = Byte.toUnsignedInt(src.get(ip)) | Byte.toUnsignedInt(src.get(ip + 1)) << 8;
+				ip += 2;
+				var mlen = token & 15;
+				if(mlen == 15) {
+					int b;
+					do {
+						b = Byte.toUnsignedInt(src.get(ip++));
+						mlen += b;
+					} while(b == 255);
+				}
+				mlen += MIN_MATCH;
+				if(offset == 0 || op - offset < start || op + mlen > outEnd) {
+					throw new IllegalArgumentException("Corrupt or oversized LZ4 block.");
+				}
+				
+				/* Matches may overlap what they are copying, so byte at a time */
+				var ref = op - offset;
+				for(var i = 0; i < mlen; i++) {
+					dst.put(op++, dst.get(ref++));
+				}
+			}
+		}
+		catch(IndexOutOfBoundsException ioobe) {
+			throw new IllegalArgumentException("Corrupt LZ4 block.", ioobe);
+		}
+		
+		return op - start;
+	}
+
+	private static int length(ByteBuffer dst, int out, int len) {
+		if(len >= 15) {
+			len -= 15;
+			while(len >= 255) {
+				dst.put(out++, (byte)255);
+				len -= 255;
+			}
+			dst.put(out++, (byte)len);
+		}
+		return out;
+	}
+}
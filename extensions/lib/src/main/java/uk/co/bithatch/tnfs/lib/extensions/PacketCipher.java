@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib.extensions;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CipherSuite;
+
+/**
+ * Encrypts and decrypts whole packets in place, for use by packet processors once 
+ * {@link Extensions#SECMNT} has agreed a {@link CipherSuite}. Everything after the 
+ * connection ID is encrypted, and is preceded by the packet's nonce and the length 
+ * of the encrypted part, so a packet may be decrypted without knowing anything about 
+ * those before it, and found in a stream of several.
+ * <p>
+ * Nonces count up from a random start, and their lowest bit is the direction, so the
+ * same key may be used both ways. A cipher that can only use part of the nonce limits
+ * how many packets may be encrypted, after which a new key must be agreed.
+ * <p>
+ * Instances are thread safe, but only one packet is processed at a time, so each 
+ * direction should have its own instance.
+ */
+public abstract class PacketCipher {
+	
+	/**
+	 * Size of the unencrypted start of a packet, the connection ID, nonce and length.
+	 */
+	public final static int ENVELOPE = 12;
+	
+	private final int direction;
+	private final int overhead;
+	private final long maximumPackets;
+	
+	private long nonce;
+	private long packets;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client whether packets are encrypted by the client or the server
+	 * @param overhead extra bytes an encrypted packet has, must be no more than {@link TNFS#MAX_PACKET_OVERHEAD}
+	 */
+	protected PacketCipher(boolean client, int overhead) {
+		this(client, overhead, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client whether packets are encrypted by the client or the server
+	 * @param overhead extra bytes an encrypted packet has, must be no more than {@link TNFS#MAX_PACKET_OVERHEAD}
+	 * @param maximumPackets most packets that may be encrypted before a nonce would be repeated
+	 */
+	protected PacketCipher(boolean client, int overhead, long maximumPackets) {
+		this.direction = client ? 0 : 1;
+		this.overhead = overhead;
+		this.maximumPackets = maximumPackets;
+		
+		nonce = new SecureRandom().nextLong() & ~1l;
+	}
+	
+	/**
+	 * Create a cipher for a suite.
+	 * 
+	 * @param suite suite
+	 * @param blockSize block size in bits, only used by {@link CipherSuite#SPECK}
+	 * @param key key
+	 * @param client whether packets are encrypted by the client or the server
+	 * @return cipher
+	 * @throws GeneralSecurityException if the suite is not available or the key is not suitable
+	 */
+	public static PacketCipher create(CipherSuite suite, int blockSize, byte[] key, boolean client) throws GeneralSecurityException {
+		switch(suite) {
+		case SPECK:
+			return new SpeckPacketCipher(blockSize, key, client);
+		default:
+			return new AeadPacketCipher(suite, key, client);
+		}
+	}
+	
+	/**
+	 * Get whether a suite may be used with a key of a particular size in this runtime.
+	 * 
+	 * @param suite suite
+	 * @param keyBits key size in bits
+	 * @return supported
+	 */
+	public static boolean isSupported(CipherSuite suite, int keyBits) {
+		switch(suite) {
+		case AES_GCM:
+			return ( keyBits == 128 || keyBits == 192 || keyBits == 256 ) && isAvailable(AeadPacketCipher.transformation(suite));
+		case CHACHA20_POLY1305:
+			return keyBits == 256 && isAvailable(AeadPacketCipher.transformation(suite));
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Get the size a packet at the start of a buffer takes as it was received.
+	 * 
+	 * @param packet buffer containing the packet and anything following it
+	 * @return size, or <code>-1</code> if more is needed
+	 */
+	public static int packetSize(ByteBuffer packet) {
+		if(packet.remaining() < ENVELOPE) {
+			return -1;
+		}
+		var at = packet.position() + 10;
+		return ENVELOPE + ( Byte.toUnsignedInt(packet.get(at)) | Byte.toUnsignedInt(packet.get(at + 1)) << 8 );
+	}
+	
+	/**
+	 * Get the extra bytes an encrypted packet has.
+	 * 
+	 * @return overhead
+	 */
+	public final int overhead() {
+		return overhead;
+	}
+	
+	/**
+	 * Encrypt the packet between the buffers position and limit in place. The limit is 
+	 * adjusted to the new end of the packet, so the buffer must have the capacity for 
+	 * another {@link #overhead()} bytes.
+	 * 
+	 * @param packet packet
+	 * @throws IllegalStateException if the most packets this key may encrypt have been encrypted
+	 */
+	public final synchronized void encrypt(ByteBuffer packet) {
+		if(packets == maximumPackets) {
+			throw new IllegalStateException("Encrypted " + packets + " packets, the most this key may be used for. The mount must be made again.");
+		}
+		
+		var pos = packet.position();
+		var len = packet.limit() - pos - 2;
+		var encrypted = len + overhead - ( ENVELOPE - 2 );
+		if(pos + ENVELOPE + encrypted > packet.capacity()) {
+			throw new IllegalArgumentException("No room to encrypt packet.");
+		}
+		packet.limit(pos + ENVELOPE + encrypted);
+		
+		var thisNonce = nonce | direction;
+		nonce += 2;
+		packets++;
+		
+		seal(packet, pos, len, thisNonce);
+		
+		for(var i = 0 ; i < 8 ; i++) {
+			packet.put(pos + 2 + i, (byte)(thisNonce >>> ( i * 8 )));
+		}
+		packet.put(pos + 10, (byte)encrypted);
+		packet.put(pos + 11, (byte)(encrypted >> 8));
+	}
+	
+	/**
+	 * Decrypt the packet between the buffers position and limit in place. The limit is 
+	 * adjusted to the new end of the packet.
+	 * 
+	 * @param packet packet
+	 * @throws IllegalArgumentException if the packet is truncated, came from the wrong direction or has been tampered with
+	 */
+	public final synchronized void decrypt(ByteBuffer packet) {
+		var size = packetSize(packet);
+		if(size == -1 || size > packet.remaining() || size - ENVELOPE < overhead - ( ENVELOPE - 2 )) {
+			throw new IllegalArgumentException("Encrypted packet is truncated.");
+		}
+		
+		var pos = packet.position();
+		var thisNonce = 0l;
+		for(var i = 0 ; i < 8 ; i++) {
+			thisNonce |= Byte.toUnsignedLong(packet.get(pos + 2 + i)) << ( i * 8 );
+		}
+		if((thisNonce & 1) == direction) {
+			throw new IllegalArgumentException("Encrypted packet was sent in the wrong direction.");
+		}
+		
+		var len = open(packet, pos, size - ENVELOPE, thisNonce);
+		packet.limit(pos + 2 + len);
+	}
+
+	/**
+	 * Encrypt a packet. The plain text starts after the connection ID, and the
+	 * encrypted packet must be written after the envelope (which will be filled
+	 * in afterwards). The limit has already been set to the end of the encrypted packet.
+	 * 
+	 * @param packet packet
+	 * @param pos position of packet
+	 * @param len length of plain text
+	 * @param nonce nonce
+	 */
+	protected abstract void seal(ByteBuffer packet, int pos, int len, long nonce);
+
+	/**
+	 * Decrypt a packet. The encrypted packet starts after the envelope, and the plain
+	 * text must be written after the connection ID.
+	 * 
+	 * @param packet packet
+	 * @param pos position of packet
+	 * @param len length of encrypted packet
+	 * @param nonce nonce
+	 * @return length of plain text
+	 */
+	protected abstract int open(ByteBuffer packet, int pos, int len, long nonce);
+	
+	private static boolean isAvailable(String transformation) {
+		try {
+			Cipher.getInstance(transformation);
+			return true;
+		}
+		catch(NoSuchAlgorithmException | NoSuchPaddingException e) {
+			return false;
+		}
+	}
+}
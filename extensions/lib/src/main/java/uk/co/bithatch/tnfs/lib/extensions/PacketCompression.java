@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib.extensions;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Compression;
+
+/**
+ * Compresses and decompresses whole packets in place, for use by packet processors once
+ * {@link Extensions#COMPRESS} has been negotiated. A packet is only compressed if that
+ * makes it smaller, in which case the command in its header is replaced by {@link #MARKER},
+ * and followed by the real command, the algorithm and the length of the compressed 
+ * payload. Packets without the marker are left as they are, so each side may choose
+ * per packet.
+ * <p>
+ * Instances are thread safe, but only one packet is processed at a time.
+ */
+public final class PacketCompression {
+	
+	/**
+	 * Command code used in the header of compressed packets.
+	 */
+	public final static int MARKER = 0x9a;
+	
+	/**
+	 * Payloads smaller than this are never worth compressing.
+	 */
+	public final static int MINIMUM_PAYLOAD = 64;
+	
+	/**
+	 * Extra bytes a compressed packet has in its header.
+	 */
+	private final static int ENVELOPE = 4;
+	
+	private final Compression algorithm;
+	private final ByteBuffer work = ByteBuffer.allocate(TNFS.MAX_TCP_MESSAGE_SIZE);
+	
+	private Lz4 lz4;
+	private Deflater deflater;
+	private Inflater inflater;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param algorithm algorithm to compress with, any may be decompressed
+	 */
+	public PacketCompression(Compression algorithm) {
+		this.algorithm = algorithm;
+	}
+	
+	public Compression algorithm() {
+		return algorithm;
+	}
+	
+	/**
+	 * Get the size a packet at the start of a buffer takes as it was received, if it
+	 * is compressed.
+	 * 
+	 * @param packet buffer containing the packet and anything following it
+	 * @return size, <code>0</code> if not compressed, or <code>-1</code> if more is needed
+	 */
+	public static int packetSize(ByteBuffer packet) {
+		var pos = packet.position();
+		if(packet.remaining() < Message.HEADER_SIZE || Byte.toUnsignedInt(packet.get(pos + 3)) != MARKER) {
+			return 0;
+		}
+		else if(packet.remaining() < Message.HEADER_SIZE + ENVELOPE) {
+			return -1;
+		}
+		return Message.HEADER_SIZE + ENVELOPE + length(packet, pos + 6);
+	}
+	
+	/**
+	 * Compress the packet between the buffers position and limit in place, if that 
+	 * makes it smaller. The limit is adjusted to the new end of the packet.
+	 * 
+	 * @param packet packet
+	 */
+	public synchronized void compress(ByteBuffer packet) {
+		var pos = packet.position();
+		var payload = packet.limit() - pos - Message.HEADER_SIZE;
+		if(payload < MINIMUM_PAYLOAD) {
+			return;
+		}
+		
+		var src = packet.duplicate().position(pos + Message.HEADER_SIZE);
+		work.clear();
+		work.limit(payload - ENVELOPE - 1);
+		int len;
+		if(algorithm == Compression.LZ4) {
+			if(lz4 == null) {
+				lz4 = new Lz4();
+			}
+			len = lz4.compress(src, work);
+		}
+		else {
+			if(deflater == null) {
+				deflater = new Deflater(Deflater.BEST_SPEED);
+			}
+			deflater.reset();
+			deflater.setInput(src);
+			deflater.finish();
+			len = deflater.deflate(work);
+			if(!deflater.finished()) {
+				len = -1;
+			}
+		}
+		if(len == -1) {
+			return;
+		}
+		
+		packet.put(pos + 4, packet.get(pos + 3));
+		packet.put(pos + 3, (byte)MARKER);
+		packet.put(pos + 5, (byte)algorithm.ordinal());
+		packet.put(pos + 6, (byte)len);
+		packet.put(pos + 7, (byte)(len >> 8));
+		packet.put(pos + 8, work, 0, len);
+		packet.limit(pos + Message.HEADER_SIZE + ENVELOPE + len);
+	}
+	
+	/**
+	 * Decompress the packet between the buffers position and limit in place, if it is 
+	 * compressed. The limit is adjusted to the new end of the packet, so the buffer must 
+	 * have the capacity for the whole decompressed packet.
+	 * 
+	 * @param packet packet
+	 * @throws IllegalArgumentException if the packet is corrupt, too large or uses an unknown algorithm
+	 */
+	public synchronized void decompress(ByteBuffer packet) {
+		var pos = packet.position();
+		if(packetSize(packet) < 1) {
+			return;
+		}
+		
+		var algo = Compression.decode(packet.get(pos + 5));
+		var src = packet.slice(pos + Message.HEADER_SIZE + ENVELOPE, length(packet, pos + 6));
+		work.clear();
+		int len;
+		if(algo == Compression.LZ4) {
+			len = Lz4.decompress(src, work);
+		}
+		else {
+			if(inflater == null) {
+				inflater = new Inflater();
+			}
+			inflater.reset();
+			inflater.setInput(src);
+			try {
+				len = inflater.inflate(work);
+			} catch (DataFormatException e) {
+				throw new IllegalArgumentException("Corrupt compressed packet.", e);
+			}
+			if(!inflater.finished()) {
+				throw new IllegalArgumentException("Decompressed packet is too large.");
+			}
+		}
+		
+		if(pos + Message.HEADER_SIZE + len > packet.capacity()) {
+			throw new IllegalArgumentException("Decompressed packet is too large.");
+		}
+		packet.limit(pos + Message.HEADER_SIZE + len);
+		packet.put(pos + 3, packet.get(pos + 4));
+		packet.put(pos + Message.HEADER_SIZE, work, 0, len);
+	}
+	
+	private static int length(ByteBuffer packet, int at) {
+		return Byte.toUnsignedInt(packet.get(at)) | Byte.toUnsignedInt(packet.get(at + 1)) << 8;
+	}
+}
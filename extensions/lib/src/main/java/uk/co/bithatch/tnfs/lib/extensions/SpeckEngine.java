@@ -176,6 +176,25 @@ public class SpeckEngine
         return cipher.getBlockSize();
     }
 
+    /**
+     * Process a number of consecutive blocks, as {@link #processBlock(byte[], int, byte[], int)}
+     * would one at a time, but checking the buffers just once.
+     *
+     * @param in input
+     * @param inOff offset of first block in input
+     * @param out output, may be the same as the input
+     * @param outOff offset of first block in output
+     * @param blocks number of blocks
+     * @return number of bytes processed
+     */
+    public int processBlocks(final byte[] in, final int inOff, final byte[] out, final int outOff, final int blocks)
+        throws IllegalArgumentException,
+        IllegalStateException
+    {
+        cipher.processBlocks(in, inOff, out, outOff, blocks);
+        return cipher.getBlockSize() * blocks;
+    }
+
     public void reset()
     {
         cipher.reset();
@@ -313,6 +332,52 @@ public class SpeckEngine
             packBlock(out, outOff);
         }
 
+        public final void processBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks)
+        {
+            if (!initialised)
+            {
+                throw new IllegalStateException(getAlgorithmName() + " engine not initialised");
+            }
+
+            if ((inOff + blockSize * blocks) > in.length)
+            {
+                throw new IllegalArgumentException("input buffer too short");
+            }
+
+            if ((outOff + blockSize * blocks) > out.length)
+            {
+                throw new IllegalArgumentException("output buffer too short");
+            }
+
+            if (forEncryption)
+            {
+                encryptBlocks(in, inOff, out, outOff, blocks);
+            }
+            else
+            {
+                for (int i = 0; i < blocks; i++)
+                {
+                    unpackBlock(in, inOff + i * blockSize);
+                    decryptBlock();
+                    packBlock(out, outOff + i * blockSize);
+                }
+            }
+        }
+
+        /**
+         * Encrypts a number of consecutive blocks. Variants may override this to work on
+         * several blocks at once.
+         */
+        protected void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks)
+        {
+            for (int i = 0; i < blocks; i++)
+            {
+                unpackBlock(in, inOff + i * blockSize);
+                encryptBlock();
+                packBlock(out, outOff + i * blockSize);
+            }
+        }
+
         /**
          * Unpack a block of data into working state prior to an encrypt/decrypt operation.
          *
@@ -671,6 +736,68 @@ public class SpeckEngine
             this.y = y;
         }
 
+        /**
+         * Encrypts four blocks at a time, interleaving their rounds. Each round depends on the
+         * last, so a single block cannot make use of a CPU's ability to run several instructions
+         * at once, but independent blocks can.
+         */
+        @Override
+        protected void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks)
+        {
+            int b = 0;
+            for (; b + 4 <= blocks; b += 4)
+            {
+                int i = inOff + b * blockSize;
+                long x0 = bytesToWord(in, i), y0 = bytesToWord(in, i + wordSize);
+                long x1 = bytesToWord(in, i + blockSize), y1 = bytesToWord(in, i + blockSize + wordSize);
+                long x2 = bytesToWord(in, i + blockSize * 2), y2 = bytesToWord(in, i + blockSize * 2 + wordSize);
+                long x3 = bytesToWord(in, i + blockSize * 3), y3 = bytesToWord(in, i + blockSize * 3 + wordSize);
+
+                if (wordSizeBits == 64)
+                {
+                    // Full width words need no masking, and rotate using the intrinsics
+                    for (int r = 0; r < rounds; r++)
+                    {
+                        final long kr = k[r];
+                        x0 = (Long.rotateRight(x0, 8) + y0) ^ kr;
+                        x1 = (Long.rotateRight(x1, 8) + y1) ^ kr;
+                        x2 = (Long.rotateRight(x2, 8) + y2) ^ kr;
+                        x3 = (Long.rotateRight(x3, 8) + y3) ^ kr;
+                        y0 = Long.rotateLeft(y0, 3) ^ x0;
+                        y1 = Long.rotateLeft(y1, 3) ^ x1;
+                        y2 = Long.rotateLeft(y2, 3) ^ x2;
+                        y3 = Long.rotateLeft(y3, 3) ^ x3;
+                    }
+                }
+                else
+                {
+                    for (int r = 0; r < rounds; r++)
+                    {
+                        final long kr = k[r];
+                        x0 = mask((rotr(x0, alpha) + y0) ^ kr);
+                        x1 = mask((rotr(x1, alpha) + y1) ^ kr);
+                        x2 = mask((rotr(x2, alpha) + y2) ^ kr);
+                        x3 = mask((rotr(x3, alpha) + y3) ^ kr);
+                        y0 = mask(rotl(y0, beta) ^ x0);
+                        y1 = mask(rotl(y1, beta) ^ x1);
+                        y2 = mask(rotl(y2, beta) ^ x2);
+                        y3 = mask(rotl(y3, beta) ^ x3);
+                    }
+                }
+
+                int o = outOff + b * blockSize;
+                wordToBytes(y0, out, o + wordSize);
+                wordToBytes(x0, out, o);
+                wordToBytes(y1, out, o + blockSize + wordSize);
+                wordToBytes(x1, out, o + blockSize);
+                wordToBytes(y2, out, o + blockSize * 2 + wordSize);
+                wordToBytes(x2, out, o + blockSize * 2);
+                wordToBytes(y3, out, o + blockSize * 3 + wordSize);
+                wordToBytes(x3, out, o + blockSize * 3);
+            }
+            super.encryptBlocks(in, inOff + b * blockSize, out, outOff + b * blockSize, blocks - b);
+        }
+
         @Override
         protected void decryptBlock()
         {
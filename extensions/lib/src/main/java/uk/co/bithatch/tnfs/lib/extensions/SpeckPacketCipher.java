@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib.extensions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link PacketCipher} using {@link SpeckEngine} in counter (CTR) mode, which 
+ * small clients can manage.
+ * <p>
+ * Each block of key stream is the encryption of the block's index in the packet and the
+ * packet's nonce. The smaller block sizes have little room for the nonce, so as key stream
+ * must never be repeated, they may only encrypt a limited number of packets, see 
+ * {@link #maximumPackets(int)}. Packets are not authenticated.
+ * <p>
+ * No memory is allocated per packet.
+ */
+public final class SpeckPacketCipher extends PacketCipher {
+	
+	/**
+	 * Extra bytes an encrypted packet has, the nonce and length.
+	 */
+	public final static int OVERHEAD = ENVELOPE - 2;
+	
+	/**
+	 * Blocks of key stream generated at a time.
+	 */
+	private final static int BLOCKS = 32;
+	
+	/* So packets and key stream may be combined a long at a time, whatever the buffer */
+	private final static VarHandle BUFFER_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static VarHandle ARRAY_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	private final SpeckEngine engine;
+	private final int blockSize;
+	private final byte[] counters;
+	private final byte[] stream;
+	
+	private long counterNonce;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param blockSize block size in bits, see {@link SpeckEngine#SPECK_128} and others
+	 * @param key key
+	 * @param client whether packets are encrypted by the client or the server
+	 */
+	public SpeckPacketCipher(int blockSize, byte[] key, boolean client) {
+		super(client, OVERHEAD, maximumPackets(blockSize));
+		
+		engine = new SpeckEngine(blockSize);
+		engine.init(true, key);
+		
+		this.blockSize = engine.getBlockSize();
+		
+		counters = new byte[this.blockSize * BLOCKS];
+		stream = new byte[this.blockSize * BLOCKS];
+		counterNonce = -1;
+	}
+	
+	/**
+	 * Get the most packets that may be encrypted in one direction with a block size. Each 
+	 * counter block has two bytes for the block's index, and the rest for as much of the nonce 
+	 * as fits, one bit of which is the direction. For {@link SpeckEngine#SPECK_32} this is 
+	 * only 32768 packets.
+	 * 
+	 * @param blockSize block size in bits
+	 * @return most packets
+	 */
+	public static long maximumPackets(int blockSize) {
+		var nonceBits = Math.min(blockSize / 8 - 2, 8) * 8;
+		return nonceBits == 64 ? Long.MAX_VALUE : 1l << ( nonceBits - 1 );
+	}
+	
+	@Override
+	protected void seal(ByteBuffer packet, int pos, int len, long nonce) {
+		/* Working backwards, as the encrypted packet is moved along to make room for
+		 * the nonce and length, which would otherwise overwrite what is still to be read */
+		var chunk = blockSize * BLOCKS;
+		for(var off = ( ( len - 1 ) / chunk ) * chunk; off >= 0 ; off -= chunk) {
+			var n = Math.min(chunk, len - off);
+			keyStream(nonce, off / blockSize, n);
+			var i = n;
+			for( ; i % 8 != 0 ; i--) {
+				packet.put(pos + ENVELOPE + off + i - 1, (byte)(packet.get(pos + 2 + off + i - 1) ^ stream[i - 1]));
+			}
+			for(i -= 8 ; i >= 0 ; i -= 8) {
+				BUFFER_LONG.set(packet, pos + ENVELOPE + off + i, (long)BUFFER_LONG.get(packet, pos + 2 + off + i) ^ (long)ARRAY_LONG.get(stream, i));
+			}
+		}
+	}
+	
+	@Override
+	protected int open(ByteBuffer packet, int pos, int len, long nonce) {
+		/* Working forwards, moving the decrypted packet back over the nonce and length */
+		var chunk = blockSize * BLOCKS;
+		for(var off = 0; off < len ; off += chunk) {
+			var n = Math.min(chunk, len - off);
+			keyStream(nonce, off / blockSize, n);
+			var i = 0;
+			for( ; i + 8 <= n ; i += 8) {
+				BUFFER_LONG.set(packet, pos + 2 + off + i, (long)BUFFER_LONG.get(packet, pos + ENVELOPE + off + i) ^ (long)ARRAY_LONG.get(stream, i));
+			}
+			for( ; i < n ; i++) {
+				packet.put(pos + 2 + off + i, (byte)(packet.get(pos + ENVELOPE + off + i) ^ stream[i]));
+			}
+		}
+		return len;
+	}
+	
+	private void keyStream(long nonce, int block, int bytes) {
+		var blocks = ( bytes + blockSize - 1 ) / blockSize;
+		if(nonce != counterNonce) {
+			/* The nonce part of each counter only changes once per packet */
+			for(var b = 0 ; b < BLOCKS; b++) {
+				for(var i = 2 ; i < Math.min(blockSize, 10); i++) {
+					counters[b * blockSize + i] = (byte)(nonce >>> ( ( i - 2 ) * 8 ));
+				}
+			}
+			counterNonce = nonce;
+		}
+		for(var b = 0 ; b < blocks; b++) {
+			counters[b * blockSize] = (byte)(block + b);
+			counters[b * blockSize + 1] = (byte)(( block + b ) >> 8);
+		}
+		engine.processBlocks(counters, 0, stream, 0, blocks);
+	}
+}
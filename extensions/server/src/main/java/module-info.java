@@ -19,11 +19,21 @@
  * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.extensions.BlockSumsHandler;
+import uk.co.bithatch.tnfs.server.extensions.BulkStatHandler;
+import uk.co.bithatch.tnfs.server.extensions.CompoundHandler;
+import uk.co.bithatch.tnfs.server.extensions.CompressHandler;
 import uk.co.bithatch.tnfs.server.extensions.CopyHandler;
+import uk.co.bithatch.tnfs.server.extensions.CopyRangeHandler;
+import uk.co.bithatch.tnfs.server.extensions.CopyStatHandler;
 import uk.co.bithatch.tnfs.server.extensions.MountsHandler;
 import uk.co.bithatch.tnfs.server.extensions.PktSzHandler;
+import uk.co.bithatch.tnfs.server.extensions.ReadAtHandler;
 import uk.co.bithatch.tnfs.server.extensions.SecureMountHandler;
+import uk.co.bithatch.tnfs.server.extensions.StreamAckHandler;
+import uk.co.bithatch.tnfs.server.extensions.StreamReadHandler;
 import uk.co.bithatch.tnfs.server.extensions.SumHandler;
+import uk.co.bithatch.tnfs.server.extensions.WriteAtHandler;
 
 module uk.co.bithatch.tnfs.server.extensions {
 	exports uk.co.bithatch.tnfs.server.extensions; 
@@ -31,5 +41,9 @@ module uk.co.bithatch.tnfs.server.extensions {
 	requires transitive uk.co.bithatch.tnfs.server;
 	requires transitive org.slf4j;
 	provides TNFSMessageHandler with SumHandler, CopyHandler, MountsHandler,
-									 PktSzHandler, SecureMountHandler;
+									 PktSzHandler, SecureMountHandler,
+									 ReadAtHandler, WriteAtHandler, CompoundHandler,
+									 BulkStatHandler, CompressHandler, StreamReadHandler,
+									 StreamAckHandler, CopyRangeHandler, CopyStatHandler,
+									 BlockSumsHandler;
 }
\ No newline at end of file
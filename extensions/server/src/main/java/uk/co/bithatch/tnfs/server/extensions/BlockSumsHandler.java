@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.extensions.BlockChecksums;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BlockSum;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BlockSums;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BlockSumsResult;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+public class BlockSumsHandler implements TNFSMessageHandler {
+	public final static Logger LOG = LoggerFactory.getLogger(BlockSumsHandler.class);
+
+	@Override
+	public Result handle(Message message, HandlerContext context) {
+		BlockSums sums = message.payload();
+		return Tasks.ioCall(() -> {
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("{}. Path: {} Offset: {} Length: {} Block Size: {}", Extensions.BLOCKSUMS.name(), sums.path(), sums.offset(), sums.length(), sums.blockSize());
+			}
+			
+			if(sums.blockSize() < BlockChecksums.MINIMUM_BLOCK_SIZE || sums.blockSize() > BlockChecksums.MAXIMUM_BLOCK_SIZE || sums.offset() < 0 || sums.length() < 0) {
+				throw new IllegalArgumentException("Invalid block size or range.");
+			}
+			
+			var session = context.session();
+			try(var in = session.mount().open(sums.path(), new ModeFlag[0], OpenFlag.READ)) {
+				var size = in.size();
+				var end = Math.min(size, sums.offset() + Math.min(sums.length(), size));
+				var fit = (session.size() - Message.HEADER_SIZE - BlockSumsResult.OVERHEAD) / BlockSumsResult.RECORD_SIZE;
+				var checksums = new BlockChecksums();
+				var buf = ByteBuffer.allocate(sums.blockSize());
+				var results = new ArrayList<BlockSum>();
+				
+				in.position(sums.offset());
+				for(var pos = sums.offset(); pos < end && results.size() < fit; pos += buf.limit()) {
+					buf.clear();
+					buf.limit((int)Math.min(buf.capacity(), end - pos));
+					while(buf.hasRemaining() && in.read(buf) != -1);
+					buf.flip();
+					if(!buf.hasRemaining()) {
+						break;
+					}
+					results.add(checksums.sum(buf.array(), 0, buf.limit()));
+				}
+				
+				return new BlockSumsResult(ResultCode.SUCCESS, size, results.toArray(new BlockSum[0]));
+			}
+		});
+	}
+
+	@Override
+	public Command<?, ?> command() {
+		return Extensions.BLOCKSUMS;
+	}
+
+}
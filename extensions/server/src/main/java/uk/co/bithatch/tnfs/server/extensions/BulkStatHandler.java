@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.util.ArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BulkStat;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.BulkStatResult;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+public class BulkStatHandler implements TNFSMessageHandler {
+	public final static Logger LOG = LoggerFactory.getLogger(BulkStatHandler.class);
+
+	@Override
+	public Result handle(Message message, HandlerContext context) {
+		return Tasks.ioCall(() -> {
+			BulkStat bulk = message.payload();
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("{}. Paths: {}", Extensions.BULKSTAT.name(), bulk.paths().length);
+			}
+			
+			/* Only as many results as fit in the reply, the client asks again for the rest */
+			var space = context.session().size() - Message.HEADER_SIZE - 2;
+			var mount = context.session().mount();
+			var stats = new ArrayList<StatResult>();
+			for(var path : bulk.paths()) {
+				StatResult stat = Tasks.ioCall(() -> mount.stat(path), BulkStatHandler::error);
+				var sz = stat.result().isOk() ? BulkStatResult.RECORD_SIZE : 1;
+				if(sz > space) {
+					break;
+				}
+				space -= sz;
+				stats.add(stat);
+			}
+			
+			return new BulkStatResult(ResultCode.SUCCESS, stats.toArray(new StatResult[0]));
+		});
+	}
+
+	@Override
+	public Command<?, ?> command() {
+		return Extensions.BULKSTAT;
+	}
+	
+	private static StatResult error(ResultCode code) {
+		return new StatResult(code, null, 0, 0, 0, null, null, null, "", "");
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.TNFSFileAccess;
+import uk.co.bithatch.tnfs.lib.extensions.Checksums;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Checksum;
+import uk.co.bithatch.tnfs.server.TNFSFileSystem;
+
+/**
+ * Remembers checksums of files, keyed by real path, size, modification time and algorithm,
+ * so repeated {@link SumHandler SUM} requests for an unchanged file need not read it
+ * again. Only files with a real path (see {@link TNFSFileSystem#realPath(String)}) are
+ * cached. 
+ * <p>
+ * By default the cache is in memory only. To keep it across restarts, set the system 
+ * property <code>tnfs.checksumCache</code> to the location of an index file, which should 
+ * be in a directory only the server may write to, as anyone who can write the index can
+ * choose the checksums that are returned.
+ */
+final class ChecksumCache {
+	private final static Logger LOG = LoggerFactory.getLogger(ChecksumCache.class);
+	
+	private final static int MAXIMUM_ENTRIES = 10000;
+	
+	private final static ChecksumCache DEFAULT = new ChecksumCache(index());
+
+	private record Key(String path, Checksum type) {}
+	
+	private record Entry(long size, long mtime, String sum) {
+		
+		boolean matches(StatResult stat) {
+			return size == stat.size() && mtime == stat.mtime().toMillis();
+		}
+	}
+	
+	private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+			return size() > MAXIMUM_ENTRIES;
+		}
+	};
+	
+	private Optional<Path> index;
+	private boolean loaded;
+	private int lines;
+
+	private ChecksumCache(Optional<Path> index) {
+		this.index = index;
+	}
+	
+	static ChecksumCache get() {
+		return DEFAULT;
+	}
+
+	String sum(TNFSFileAccess mount, String path, Checksum type) throws IOException, NoSuchAlgorithmException {
+		var stat = mount.stat(path);
+		var realPath = mount instanceof TNFSFileSystem fs ? fs.realPath(path) : Optional.<Path>empty();
+		if(realPath.isEmpty()) {
+			return Checksums.sum(mount, path, type);
+		}
+		
+		var name = realPath.get().toUri().toString();
+		var types = EnumSet.of(type);
+		
+		synchronized(this) {
+			load();
+			var entry = entries.get(new Key(name, type));
+			if(entry != null && entry.matches(stat)) {
+				return entry.sum();
+			}
+			
+			/* Any other checksums asked for of this file are now stale too, so work them out in the same pass */
+			for(var other : Checksum.values()) {
+				var otherEntry = entries.get(new Key(name, other));
+				if(otherEntry != null && !otherEntry.matches(stat)) {
+					types.add(other);
+				}
+			}
+		}
+		
+		var sums = Checksums.sum(mount, path, types.toArray(new Checksum[0]));
+		
+		var after = mount.stat(path);
+		if(after.size() == stat.size() && after.mtime().equals(stat.mtime())) {
+			synchronized(this) {
+				var added = new ArrayList<String>();
+				sums.forEach((t, s) -> {
+					var entry = new Entry(stat.size(), stat.mtime().toMillis(), s);
+					entries.put(new Key(name, t), entry);
+					if(name.indexOf('\n') == -1) {
+						added.add(line(new Key(name, t), entry));
+					}
+				});
+				append(added);
+			}
+		}
+		
+		return sums.get(type);
+	}
+	
+	private void load() {
+		if(loaded)
+			return;
+		loaded = true;
+		index.filter(file -> Files.exists(file, LinkOption.NOFOLLOW_LINKS)).ifPresent(file -> {
+			try(var rdr = new BufferedReader(new InputStreamReader(Files.newInputStream(file, LinkOption.NOFOLLOW_LINKS), StandardCharsets.UTF_8))) {
+				String line;
+				while( ( line = rdr.readLine() ) != null) {
+					var fields = line.split("\t", 5);
+					if(fields.length == 5) {
+						try {
+							entries.put(new Key(fields[4], Checksum.valueOf(fields[0])), 
+									new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+						}
+						catch(IllegalArgumentException iae) {
+							LOG.debug("Skipping bad checksum index line '{}'", line);
+						}
+					}
+					lines++;
+				}
+			}
+			catch(IOException ioe) {
+				disable(ioe);
+				return;
+			}
+			
+			if(lines > entries.size() * 2) {
+				compact(file);
+			}
+		});
+	}
+	
+	private void compact(Path file) {
+		var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		var all = new ArrayList<String>();
+		entries.forEach((k, v) -> all.add(line(k, v)));
+		try {
+			Files.write(tmp, all, LinkOption.NOFOLLOW_LINKS, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			lines = all.size();
+		}
+		catch(IOException ioe) {
+			disable(ioe);
+		}
+	}
+	
+	private void append(Iterable<String> added) {
+		index.ifPresent(file -> {
+			try {
+				Files.write(file, added, LinkOption.NOFOLLOW_LINKS, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				added.forEach(l -> lines++);
+			}
+			catch(IOException ioe) {
+				disable(ioe);
+				return;
+			}
+			
+			if(lines > MAXIMUM_ENTRIES * 2) {
+				compact(file);
+			}
+		});
+	}
+	
+	private void disable(IOException ioe) {
+		LOG.warn("Failed to use checksum index {}, checksums will only be cached in memory.", index.get(), ioe);
+		index = Optional.empty();
+	}
+	
+	private static String line(Key key, Entry entry) {
+		return String.join("\t", key.type().name(), String.valueOf(entry.size()), 
+				String.valueOf(entry.mtime()), entry.sum(), key.path());
+	}
+
+	private static Optional<Path> index() {
+		var path = System.getProperty("tnfs.checksumCache", "");
+		return path.equals("") ? Optional.empty() : Optional.of(Paths.get(path));
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.HeaderOnlyResult;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Compound;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CompoundResult;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Encoded;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Operation;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.OperationResult;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+public class CompoundHandler implements TNFSMessageHandler {
+	public final static Logger LOG = LoggerFactory.getLogger(CompoundHandler.class);
+
+	@Override
+	public Result handle(Message message, HandlerContext context) {
+		return Tasks.ioCall(() -> {
+			Compound compound = message.payload();
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("{}. Operations: {}", Extensions.COMPOUND.name(), compound.operations().length);
+			}
+			
+			/* Results are encoded as they are produced, as handlers may reuse their buffers 
+			 * (for example for READ). Each must fit in what is left of the reply */
+			var space = context.session().size() - Message.HEADER_SIZE - 2;
+			var scratch = ByteBuffer.allocate(space).order(ByteOrder.LITTLE_ENDIAN);
+			var results = new ArrayList<OperationResult>();
+			var handle = -1;
+			
+			for(var op : compound.operations()) {
+				var result = execute(op, handle, message, context);
+				
+				scratch.clear();
+				scratch.limit(Math.max(0, space - 3));
+				try {
+					result.encode(scratch);
+				}
+				catch(BufferOverflowException boe) {
+					result = new HeaderOnlyResult(ResultCode.NOBUFS);
+					scratch.clear();
+					result.encode(scratch);
+				}
+				scratch.flip();
+				space -= scratch.remaining() + 3;
+				results.add(new OperationResult(op.command(), op.command().decodeResult(scratch)));
+				
+				var res = result.result();
+				if(res.isError() && res != ResultCode.EOF) {
+					break;
+				}
+				
+				var opHandle = Compound.handle(result);
+				if(opHandle != -1) {
+					handle = opHandle;
+				}
+			}
+			
+			return new CompoundResult(ResultCode.SUCCESS, results.toArray(new OperationResult[0]));
+		});
+	}
+	
+	private Result execute(Operation op, int handle, Message message, HandlerContext context) {
+		var cmd = op.command();
+		var nh = context.server().handler(cmd).orElse(null);
+		if(nh == null) {
+			return new HeaderOnlyResult(ResultCode.NOSYS);
+		}
+		else if(!nh.needsSession() || cmd == Command.UMOUNT || cmd == Extensions.COMPOUND) {
+			/* Mounting, unmounting and nesting make no sense here */
+			return new HeaderOnlyResult(ResultCode.INVAL);
+		}
+		
+		var data = ((Encoded)op.request()).data().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if(op.currentHandle()) {
+			if(handle == -1 || !data.hasRemaining()) {
+				return new HeaderOnlyResult(ResultCode.BADF);
+			}
+			data.put(0, (byte)handle);
+		}
+		
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("{}. Operation: {}", Extensions.COMPOUND.name(), cmd.name());
+		}
+		
+		return nh.handle(new Message.Builder().
+				withCommand(cmd).
+				withSessionId(message.connectionId()).
+				withPayload(data).
+				build(), context);
+	}
+
+	@Override
+	public Command<?, ?> command() {
+		return Extensions.COMPOUND;
+	}
+
+}
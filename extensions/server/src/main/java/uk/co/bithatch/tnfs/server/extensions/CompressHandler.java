@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Compress;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CompressResult;
+import uk.co.bithatch.tnfs.lib.extensions.PacketCompression;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.TNFSServerPacketProcessor;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+public class CompressHandler implements TNFSMessageHandler {
+	public final static Logger LOG = LoggerFactory.getLogger(CompressHandler.class);
+
+	@Override
+	public Result handle(Message message, HandlerContext context) {
+		Compress compress = message.payload();
+		return Tasks.ioCall(() -> {
+			var session = context.session();
+			
+			/* Encrypted packets do not compress, and must be decrypted before they can be framed */
+			if(!session.inProcessors().isEmpty() || !session.outProcessors().isEmpty()) {
+				throw new IllegalArgumentException("Compression cannot be used with other packet processors.");
+			}
+			if(compress.algorithms().length == 0) {
+				throw new IllegalArgumentException("No compression algorithms offered.");
+			}
+			
+			var algo = compress.algorithms()[0];
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("{}. Algorithm: {}", Extensions.COMPRESS.name(), algo);
+			}
+			
+			var inbound = new PacketCompression(algo);
+			session.inProcessors().add(new TNFSServerPacketProcessor() {
+				@Override
+				public int packetSize(ByteBuffer packet) {
+					return PacketCompression.packetSize(packet);
+				}
+				
+				@Override
+				public void accept(PacketContext ctx, ByteBuffer packet) {
+					inbound.decompress(packet);
+				}
+			});
+			
+			var outbound = new PacketCompression(algo);
+			session.outProcessors().add((ctx, packet) -> outbound.compress(packet));
+			
+			return new CompressResult(ResultCode.SUCCESS, algo);
+		}, code -> new CompressResult(code, null));
+	}
+
+	@Override
+	public Command<?, ?> command() {
+		return Extensions.COMPRESS;
+	}
+	
+}
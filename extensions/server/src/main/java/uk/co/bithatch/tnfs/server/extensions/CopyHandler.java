@@ -20,19 +20,13 @@
  */
 package uk.co.bithatch.tnfs.server.extensions;
 
-import java.nio.channels.Channels;
-import java.util.Arrays;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.co.bithatch.tnfs.lib.Command;
 import uk.co.bithatch.tnfs.lib.Command.Result;
 import uk.co.bithatch.tnfs.lib.Message;
-import uk.co.bithatch.tnfs.lib.ModeFlag;
-import uk.co.bithatch.tnfs.lib.OpenFlag;
 import uk.co.bithatch.tnfs.lib.ResultCode;
-import uk.co.bithatch.tnfs.lib.extensions.CopyFlag;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions.Copy;
 import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
@@ -50,14 +44,7 @@ public class CopyHandler implements TNFSMessageHandler {
 				LOG.debug("{}. Path: {} Target Path: {} Flags: {}", Extensions.COPY.name(), copy.path(), copy.targetPath(), copy.flags());
 			}
 			
-			var mount = context.session().mount();
-			var flgs = Arrays.asList(copy.flags());
-			var modes = flgs.contains(CopyFlag.PRESERVE_MODE) ? mount.stat(copy.path()).mode() : new ModeFlag[0];
-			try(var in = Channels.newInputStream(mount.open(copy.path(), new ModeFlag[0], OpenFlag.READ))) {
-				try(var out = Channels.newOutputStream(mount.open(copy.path(), modes, getOpenFlags(flgs.contains(CopyFlag.OVERWRITE))))) {
-					in.transferTo(out);
-				}	
-			}
+			CopyJob.open(context.session().mount(), copy.path(), copy.targetPath(), 0, Long.MAX_VALUE, 0, copy.flags()).copy();
 			
 			return new Command.HeaderOnlyResult(ResultCode.SUCCESS);
 		});
@@ -68,12 +55,4 @@ public class CopyHandler implements TNFSMessageHandler {
 		return Extensions.COPY;
 	}
 	
-	private OpenFlag[] getOpenFlags(boolean force) {
-		if (force)
-			return new OpenFlag[] { OpenFlag.WRITE, OpenFlag.TRUNCATE,
-					OpenFlag.CREATE };
-		else
-			return new OpenFlag[] { OpenFlag.WRITE, OpenFlag.CREATE };
-	}
-	
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.bithatch.tnfs.lib.Command.HeaderOnlyResult;
+import uk.co.bithatch.tnfs.lib.ModeFlag;
+import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.TNFSFileAccess;
+import uk.co.bithatch.tnfs.lib.extensions.CopyFlag;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.server.TNFSSession;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+/**
+ * Copies a range of one channel to another on the server. When both channels are 
+ * {@link FileChannel}s, as they are for {@link uk.co.bithatch.tnfs.server.TNFSDefaultFileSystem},
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} is used, 
+ * so the operating system may copy without the data passing through the JVM, or may
+ * share the blocks where the file system supports it. 
+ * <p>
+ * Large copies are run as a job in the background, the progress of which the client polls
+ * with {@link Extensions#COPYSTAT}. A job still running when its session is closed is
+ * cancelled, as it is stored in the session's {@link TNFSSession#state()}.
+ */
+final class CopyJob implements Runnable, AutoCloseable {
+	
+	/**
+	 * Copies up to this size are done while the client waits for the reply.
+	 */
+	final static long INLINE_LIMIT = 4 * 1024 * 1024;
+	
+	/**
+	 * Progress is updated, and cancellation checked, after each chunk.
+	 */
+	private final static long CHUNK = 8 * 1024 * 1024;
+	
+	private final static AtomicInteger ids = new AtomicInteger();
+	
+	private final static ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		var t = new Thread(r, "TNFSCopy");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	private final int id;
+	private final SeekableByteChannel in;
+	private final SeekableByteChannel out;
+	private final long offset;
+	private final long length;
+	private final long targetOffset;
+	
+	private volatile long copied;
+	private volatile ResultCode result;
+	private volatile boolean cancelled;
+
+	CopyJob(SeekableByteChannel in, SeekableByteChannel out, long offset, long length, long targetOffset) {
+		this.in = in;
+		this.out = out;
+		this.offset = offset;
+		this.length = length;
+		this.targetOffset = targetOffset;
+		
+		int id;
+		do {
+			id = ids.incrementAndGet();
+		} while(id == 0);
+		this.id = id;
+	}
+	
+	/**
+	 * Open the source and target of a copy. 
+	 * 
+	 * @param mount mount
+	 * @param path source path
+	 * @param targetPath target path
+	 * @param offset offset in source to copy from
+	 * @param length maximum number of bytes to copy
+	 * @param targetOffset offset in target to copy to
+	 * @param flags flags
+	 * @return job
+	 * @throws IOException on error
+	 */
+	static CopyJob open(TNFSFileAccess mount, String path, String targetPath, long offset, long length, long targetOffset, CopyFlag... flags) throws IOException {
+		if(offset < 0 || length < 0 || targetOffset < 0) {
+			throw new IllegalArgumentException("Negative copy range.");
+		}
+		var flgs = Arrays.asList(flags);
+		var modes = flgs.contains(CopyFlag.PRESERVE_MODE) ? mount.stat(path).mode() : new ModeFlag[0];
+		var in = mount.open(path, new ModeFlag[0], OpenFlag.READ);
+		try {
+			var out = mount.open(targetPath, modes, flgs.contains(CopyFlag.OVERWRITE) 
+					? new OpenFlag[] { OpenFlag.WRITE, OpenFlag.TRUNCATE, OpenFlag.CREATE } 
+					: new OpenFlag[] { OpenFlag.WRITE, OpenFlag.CREATE });
+			return new CopyJob(in, out, offset, Math.max(0, Math.min(length, in.size() - offset)), targetOffset);
+		}
+		catch(IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+	
+	static String key(int id) {
+		return CopyJob.class.getName() + "." + id;
+	}
+	
+	static CopyJob get(TNFSSession session, int id) {
+		return (CopyJob)session.state().get(key(id));
+	}
+	
+	int id() {
+		return id;
+	}
+	
+	long length() {
+		return length;
+	}
+	
+	long copied() {
+		return copied;
+	}
+	
+	/**
+	 * Get the result of the copy, or <code>null</code> if it is still running.
+	 * 
+	 * @return result
+	 */
+	ResultCode result() {
+		return result;
+	}
+	
+	/**
+	 * Get whether the copy has been asked to stop. It may still have finished.
+	 * 
+	 * @return cancelled
+	 */
+	boolean cancelled() {
+		return cancelled;
+	}
+	
+	void cancel() {
+		cancelled = true;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		cancel();
+		try {
+			in.close();
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	void start(TNFSSession session) {
+		session.state().put(key(id), this);
+		executor.execute(this);
+	}
+
+	@Override
+	public void run() {
+		result = Tasks.ioCall(() -> {
+			copy();
+			return new HeaderOnlyResult(ResultCode.SUCCESS);
+		}).result();
+	}
+	
+	/**
+	 * Copy while the caller waits, closing both channels when done.
+	 * 
+	 * @throws IOException on error
+	 */
+	void copy() throws IOException {
+		try(var in = this.in; var out = this.out) {
+			if(in instanceof FileChannel fin && out instanceof FileChannel fout) {
+				fout.position(targetOffset);
+				while(copied < length && !cancelled) {
+					var n = fin.transferTo(offset + copied, Math.min(CHUNK, length - copied), fout);
+					if(n == 0) {
+						break;
+					}
+					copied += n;
+				}
+			}
+			else {
+				in.position(offset);
+				out.position(targetOffset);
+				var buf = ByteBuffer.allocate(65536);
+				while(copied < length && !cancelled) {
+					buf.clear();
+					buf.limit((int)Math.min(buf.capacity(), length - copied));
+					if(in.read(buf) == -1) {
+						break;
+					}
+					buf.flip();
+					var n = buf.remaining();
+					while(buf.hasRemaining()) {
+						out.write(buf);
+					}
+					copied += n;
+				}
+			}
+		}
+	}
+}
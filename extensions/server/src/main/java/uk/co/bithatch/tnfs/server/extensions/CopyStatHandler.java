@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CopyStat;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CopyStatResult;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+public class CopyStatHandler implements TNFSMessageHandler {
+	public final static Logger LOG = LoggerFactory.getLogger(CopyStatHandler.class);
+
+	@Override
+	public Result handle(Message message, HandlerContext context) {
+		return Tasks.ioCall(() -> {
+			CopyStat stat = message.payload();
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("{}. Job: {} Cancel: {}", Extensions.COPYSTAT.name(), stat.job(), stat.cancel());
+			}
+			
+			var session = context.session();
+			var job = CopyJob.get(session, stat.job());
+			if(job == null) {
+				return new CopyStatResult(ResultCode.BADF, false, false, 0, 0);
+			}
+			
+			if(stat.cancel()) {
+				job.cancel();
+			}
+			
+			var res = job.result();
+			if(res != null || stat.cancel()) {
+				session.state().remove(CopyJob.key(job.id()));
+			}
+			var copied = job.copied();
+			if(job.cancelled() && copied < job.length()) {
+				return new CopyStatResult(ResultCode.SUCCESS, false, true, copied, job.length());
+			}
+			return new CopyStatResult(res == null ? ResultCode.SUCCESS : res, res == null, false, copied, job.length());
+		}, code -> new CopyStatResult(code, false, false, 0, 0));
+	}
+
+	@Override
+	public Command<?, ?> command() {
+		return Extensions.COPYSTAT;
+	}
+}
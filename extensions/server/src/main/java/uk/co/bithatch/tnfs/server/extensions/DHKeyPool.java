@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.spec.DHParameterSpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server DH key pairs, generated ahead of time on a background thread so a
+ * {@link SecureMountHandler SECMNT} need not wait for one. Key pairs are kept for each set
+ * of DH parameters clients have used, and each is handed out only once. If none are ready,
+ * one is generated while the client waits, and the pool is filled again in the background.
+ */
+final class DHKeyPool {
+	private final static Logger LOG = LoggerFactory.getLogger(DHKeyPool.class);
+	
+	/**
+	 * Key pairs kept ready for each set of parameters.
+	 */
+	private final static int POOL_SIZE = 8;
+	
+	/**
+	 * Parameters are chosen by clients, so only this many sets are pooled. Any others
+	 * always have their key pairs generated while the client waits.
+	 */
+	private final static int MAXIMUM_PARAMETER_SETS = 16;
+	
+	private final static Map<Params, Pool> pools = new ConcurrentHashMap<>();
+	
+	private final static ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		var t = new Thread(r, "TNFSKeyPool");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private record Params(BigInteger p, BigInteger g, int l) {
+		Params(DHParameterSpec spec) {
+			this(spec.getP(), spec.getG(), spec.getL());
+		}
+	}
+	
+	private final static class Pool {
+		private final Queue<KeyPair> keys = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean filling = new AtomicBoolean();
+		private final DHParameterSpec spec;
+		
+		private Pool(DHParameterSpec spec) {
+			this.spec = spec;
+		}
+		
+		private void fill() {
+			if(filling.compareAndSet(false, true)) {
+				executor.execute(() -> {
+					try {
+						while(keys.size() < POOL_SIZE) {
+							keys.add(generate(spec));
+						}
+					}
+					catch(GeneralSecurityException | RuntimeException e) {
+						LOG.warn("Failed to pre-generate DH key pair.", e);
+					}
+					finally {
+						filling.set(false);
+					}
+				});
+			}
+		}
+	}
+	
+	private DHKeyPool() {
+	}
+	
+	/**
+	 * Take a key pair for the given parameters, generating one now if none are ready.
+	 * 
+	 * @param spec DH parameters
+	 * @return key pair
+	 * @throws GeneralSecurityException on error
+	 */
+	static KeyPair take(DHParameterSpec spec) throws GeneralSecurityException {
+		var params = new Params(spec);
+		var pool = pools.get(params);
+		if(pool == null) {
+			if(pools.size() >= MAXIMUM_PARAMETER_SETS) {
+				return generate(spec);
+			}
+			pool = pools.computeIfAbsent(params, k -> new Pool(spec));
+		}
+		var kp = pool.keys.poll();
+		pool.fill();
+		return kp == null ? generate(spec) : kp;
+	}
+	
+	private static KeyPair generate(DHParameterSpec spec) throws GeneralSecurityException {
+		var kpg = KeyPairGenerator.getInstance("DH");
+		kpg.initialize(spec);
+		return kpg.generateKeyPair();
+	}
+}
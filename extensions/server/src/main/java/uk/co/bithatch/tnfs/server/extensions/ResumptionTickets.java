@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+
+import uk.co.bithatch.tnfs.server.TNFSServer;
+
+/**
+ * Tickets that let a client resume a secure session with a server without a new DH
+ * exchange, for example when reconnecting after losing its connection. Each ticket maps to
+ * the resumption secret of the session it was issued for, may be used only once, and
+ * expires after {@link #LIFETIME}. Tickets are only held in memory, so none survive a
+ * restart.
+ */
+final class ResumptionTickets {
+	
+	/**
+	 * Size of tickets in bytes.
+	 */
+	final static int TICKET_SIZE = 16;
+	
+	private final static Duration LIFETIME = Duration.ofHours(1);
+	
+	private final static int MAXIMUM_TICKETS = 1024;
+	
+	private final static Map<TNFSServer<?>, ResumptionTickets> servers = Collections.synchronizedMap(new WeakHashMap<>());
+	
+	private final static SecureRandom random = new SecureRandom();
+	
+	private record Entry(byte[] secret, long expires) {}
+	
+	private final Map<ByteBuffer, Entry> tickets = new LinkedHashMap<>(16, 0.75f, false) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+			return size() > MAXIMUM_TICKETS || eldest.getValue().expires < System.currentTimeMillis();
+		}
+	};
+	
+	private ResumptionTickets() {
+	}
+	
+	/**
+	 * Get the tickets issued by a server.
+	 * 
+	 * @param server server
+	 * @return tickets
+	 */
+	static ResumptionTickets of(TNFSServer<?> server) {
+		return servers.computeIfAbsent(server, k -> new ResumptionTickets());
+	}
+	
+	/**
+	 * Issue a new ticket for a session.
+	 * 
+	 * @param secret resumption secret of the session
+	 * @return ticket
+	 */
+	synchronized byte[] issue(byte[] secret) {
+		var ticket = new byte[TICKET_SIZE];
+		random.nextBytes(ticket);
+		tickets.put(ByteBuffer.wrap(ticket), new Entry(secret, System.currentTimeMillis() + LIFETIME.toMillis()));
+		return ticket;
+	}
+	
+	/**
+	 * Redeem a ticket, getting the resumption secret of the session it was issued for.
+	 * The ticket may not be used again. Nothing is returned if the ticket is unknown,
+	 * already used or has expired.
+	 * 
+	 * @param ticket ticket
+	 * @return resumption secret
+	 */
+	synchronized Optional<byte[]> redeem(byte[] ticket) {
+		if(ticket.length != TICKET_SIZE) {
+			return Optional.empty();
+		}
+		var entry = tickets.remove(ByteBuffer.wrap(ticket));
+		if(entry == null || entry.expires < System.currentTimeMillis()) {
+			return Optional.empty();
+		}
+		return Optional.of(entry.secret);
+	}
+	
+	/**
+	 * Generate a random nonce.
+	 * 
+	 * @param size size in bytes
+	 * @return nonce
+	 */
+	static byte[] nonce(int size) {
+		var nonce = new byte[size];
+		random.nextBytes(nonce);
+		return nonce;
+	}
+}
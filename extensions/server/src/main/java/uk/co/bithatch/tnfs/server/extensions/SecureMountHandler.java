@@ -22,9 +22,10 @@ package uk.co.bithatch.tnfs.server.extensions;
 
 import static uk.co.bithatch.tnfs.server.Tasks.ioCall;
 
+import java.nio.ByteBuffer;
 import java.security.KeyFactory;
-import java.security.KeyPairGenerator;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 import javax.crypto.KeyAgreement;
@@ -43,8 +44,10 @@ import uk.co.bithatch.tnfs.lib.extensions.Crypto;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions.SecureMount;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions.SecureMountResult;
-import uk.co.bithatch.tnfs.lib.extensions.SpeckEngine;
+import uk.co.bithatch.tnfs.lib.extensions.PacketCipher;
 import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.TNFSServerPacketProcessor;
+import uk.co.bithatch.tnfs.server.TNFSServerPacketProcessor.PacketContext;
 import uk.co.bithatch.tnfs.server.TNFSSession.Flag;
 
 public class SecureMountHandler implements TNFSMessageHandler {
@@ -59,7 +62,7 @@ public class SecureMountHandler implements TNFSMessageHandler {
 
 		if(LOG.isDebugEnabled()) {
 	        LOG.debug("Client public key: {}", Base64.getEncoder().encodeToString(mountmsg.key()));
-	        LOG.debug("Key size: {}, Block size: {}", mountmsg.derivedKeyBits(), mountmsg.blockSize());
+	        LOG.debug("Key size: {}, Block size: {}, Ciphers: {}", mountmsg.derivedKeyBits(), mountmsg.blockSize(), Arrays.toString(mountmsg.ciphers()));
 		}
 		
 		var res = ioCall(() -> {
@@ -74,84 +77,103 @@ public class SecureMountHandler implements TNFSMessageHandler {
 			
 			var blockSize = mountmsg.blockSize();
 			
-			 // 2. Rebuild client public key and extract DH parameters
-	        var kf = KeyFactory.getInstance("DH");
-	        X509EncodedKeySpec x509KeySpec = new X509EncodedKeySpec(mountmsg.key());
-
-			if(LOG.isDebugEnabled()) {
-				LOG.debug("Key format: {}, Algorithm: {}", x509KeySpec.getFormat(), x509KeySpec.getAlgorithm());
-			}
-	        var clientPubKey = kf.generatePublic(x509KeySpec);
-
-	        var dhParams = ((DHPublicKey) clientPubKey).getParams();
-	        
-			if(LOG.isDebugEnabled()) {
-				LOG.debug("DH Params: G={}, L={}, P={}", dhParams.getG(), dhParams.getL(), dhParams.getP());
+			/* The first cipher the client prefers that may be used */
+			var suite = Arrays.stream(mountmsg.ciphers()).
+					filter(c -> PacketCipher.isSupported(c, clientKeyBits)).
+					findFirst().
+					orElseThrow(() -> new IllegalArgumentException("None of the offered ciphers can be used with a key of " + clientKeyBits + " bits."));
+			
+			var tickets = ResumptionTickets.of(context.server());
+			var resumption = tickets.redeem(mountmsg.ticket());
+			byte[] serverKey;
+			byte[] derivedKey;
+			byte[] resumptionSecret;
+			
+			if(resumption.isPresent()) {
+				/* Resume an earlier session. The client's public key is only used as its
+				 * nonce, and there is no key exchange */
+				serverKey = ResumptionTickets.nonce(ResumptionTickets.TICKET_SIZE);
+				var material = Crypto.resumptionMaterial(resumption.get(), mountmsg.key(), serverKey);
+				derivedKey = Crypto.deriveKey(material, clientKeyBits);
+				resumptionSecret = Crypto.resumptionSecret(material);
+
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Resuming session from ticket");
+				}
 			}
-
-	        // 3. Generate server DH key pair with same parameters
-	        var kpg = KeyPairGenerator.getInstance("DH");
-	        kpg.initialize(dhParams);
-	        var serverKp = kpg.generateKeyPair();
-	        var serverPubEnc = serverKp.getPublic().getEncoded();
-
-			if(LOG.isDebugEnabled()) {
-				LOG.debug("Server public key: {}", Base64.getEncoder().encodeToString(serverPubEnc));
+			else {
+				 // 2. Rebuild client public key and extract DH parameters
+		        var kf = KeyFactory.getInstance("DH");
+		        X509EncodedKeySpec x509KeySpec = new X509EncodedKeySpec(mountmsg.key());
+	
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Key format: {}, Algorithm: {}", x509KeySpec.getFormat(), x509KeySpec.getAlgorithm());
+				}
+		        var clientPubKey = kf.generatePublic(x509KeySpec);
+	
+		        var dhParams = ((DHPublicKey) clientPubKey).getParams();
+		        
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("DH Params: G={}, L={}, P={}", dhParams.getG(), dhParams.getL(), dhParams.getP());
+				}
+	
+		        // 3. Take a server DH key pair with same parameters
+		        var serverKp = DHKeyPool.take(dhParams);
+		        serverKey = serverKp.getPublic().getEncoded();
+	
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Server public key: {}", Base64.getEncoder().encodeToString(serverKey));
+				}
+	
+		        // 4. Perform key agreement
+		        var ka = KeyAgreement.getInstance("DH");
+		        ka.init(serverKp.getPrivate());
+		        ka.doPhase(clientPubKey, true);
+		        var sharedSecret = ka.generateSecret();
+	
+				if(LOG.isTraceEnabled()) {
+					LOG.trace("Shared secret: {}", Base64.getEncoder().encodeToString(sharedSecret));
+				}
+	
+		        // 5. Derive symmetric key of client-chosen size
+		        derivedKey = Crypto.deriveKey(sharedSecret, clientKeyBits);
+		        resumptionSecret = Crypto.resumptionSecret(sharedSecret);
 			}
 
-	        // 4. Perform key agreement
-	        var ka = KeyAgreement.getInstance("DH");
-	        ka.init(serverKp.getPrivate());
-	        ka.doPhase(clientPubKey, true);
-	        var sharedSecret = ka.generateSecret();
-
 			if(LOG.isTraceEnabled()) {
-				LOG.trace("Shared secret: {}", Base64.getEncoder().encodeToString(sharedSecret));
-			}
-
-	        // 5. Derive symmetric key of client-chosen size
-	        var derivedKey = Crypto.deriveKey(sharedSecret, clientKeyBits);
-
-			if(LOG.isDebugEnabled()) {
 				LOG.trace("Derived key: {}", Base64.getEncoder().encodeToString(derivedKey));
 			}
 	        
-	        var encEngine = new SpeckEngine(blockSize);
-	        encEngine.init(true, derivedKey);
-	        
-	        var decEngine = new SpeckEngine(blockSize);
-	        decEngine.init(false, derivedKey);
+	        var inbound = PacketCipher.create(suite, blockSize, derivedKey, false);
+	        var outbound = PacketCipher.create(suite, blockSize, derivedKey, false);
 
 			if(LOG.isDebugEnabled()) {
-				LOG.debug("Encryption ready");
+				LOG.debug("Encryption ready using {}", suite);
 			}
 		        
 			
 			/* Decryption */
-			session.inProcessors().add((ctx, bufin) -> {		
+			session.inProcessors().add(new TNFSServerPacketProcessor() {
+				@Override
+				public int minimumPacketSize() {
+					return PacketCipher.ENVELOPE;
+				}
 
-				if(LOG.isTraceEnabled()) {
-					LOG.trace("Decrypting {} bytes", bufin.remaining());
-					LOG.trace("  " + Debug.dump(bufin));
+				@Override
+				public int packetSize(ByteBuffer packet) {
+					return PacketCipher.packetSize(packet);
 				}
-				
-				var sz = bufin.remaining() - 2;  // first two bytes unencrypted connection id
-				var thisblkSz = sz;
-				if(thisblkSz < blockSize / 8) {
+
+				@Override
+				public void accept(PacketContext ctx, ByteBuffer bufin) {		
 
 					if(LOG.isTraceEnabled()) {
-						LOG.trace("Short buffer of {}, increasing to {}", thisblkSz, blockSize / 8);
+						LOG.trace("Decrypting {} bytes", bufin.remaining());
+						LOG.trace("  " + Debug.dump(bufin));
 					}
-					
-					thisblkSz = blockSize / 8;
-					
-					bufin.limit(2 + thisblkSz);
-				}
 				
-				var work  = new byte[thisblkSz];
-				bufin.get(2, work, 0, sz);
-				decEngine.processBlock(work, 0, work, 0);
-				bufin.put(2, work, 0, thisblkSz);
+					inbound.decrypt(bufin);
+				}
 			});
 			
 			/* Encryption */
@@ -162,28 +184,13 @@ public class SecureMountHandler implements TNFSMessageHandler {
 					LOG.trace("  " + Debug.dump(bufin));
 				}
 
-				var sz = bufin.remaining() - 2;  // first two bytes unencrypted connection id
-				var thisblkSz = sz;
-				if(thisblkSz < blockSize / 8) {
-
-					if(LOG.isTraceEnabled()) {
-						LOG.trace("Short buffer of {}, increasing to {}", thisblkSz, blockSize / 8);
-					}
-					
-					thisblkSz = blockSize / 8;
-					
-					bufin.limit(2 + thisblkSz);
-				}
-				
-				var work  = new byte[thisblkSz];
-				bufin.get(2, work, 0, sz);
-				encEngine.processBlock(work, 0, work, 0);
-				bufin.put(2, work, 0, thisblkSz);
+				outbound.encrypt(bufin);
 			});
 			
-			/* Return out public key */
+			/* Return our public key (or nonce), and a ticket to resume this session with */
 			
-			return new SecureMountResult(ResultCode.SUCCESS, TNFS.PROTOCOL_VERSION, context.server().retryTime(), serverPubEnc);
+			return new SecureMountResult(ResultCode.SUCCESS, TNFS.PROTOCOL_VERSION, context.server().retryTime(), 
+					serverKey, suite, resumption.isPresent(), tickets.issue(resumptionSecret));
 		}
 		, code -> new SecureMountResult(code, TNFS.PROTOCOL_VERSION));
 		return res;
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.StreamData;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler.HandlerContext;
+import uk.co.bithatch.tnfs.server.TNFSSession;
+
+/**
+ * The server side of a {@link Extensions#STREAMREAD}. Blocks are pushed to the client as 
+ * long as fewer than the window are unacknowledged. When the client acknowledges, more 
+ * are pushed, and when it asks for blocks again, pushing goes back to the first it is
+ * missing, as with TFTP's window size option (RFC 7440).
+ */
+final class ServerStream {
+	
+	/**
+	 * Overhead of each data packet, i.e. header, result, stream ID, block number and
+	 * data length.
+	 */
+	private final static int OVERHEAD = Message.HEADER_SIZE + 1 + 1 + 4 + 2;
+	
+	private final int id;
+	private final SeekableByteChannel channel;
+	private final long offset;
+	private final long length;
+	private final int blockSize;
+	private final int blocks;
+	private final ByteBuffer buffer;
+	
+	private int window;
+	private int acked;
+	private int next;
+
+	ServerStream(int id, SeekableByteChannel channel, long offset, long length, int window, int packetSize) {
+		this.id = id;
+		this.channel = channel;
+		this.offset = offset;
+		this.length = length;
+		this.window = window(window);
+		
+		blockSize = packetSize - OVERHEAD;
+		blocks = (int)((length + blockSize - 1) / blockSize);
+		buffer = ByteBuffer.allocate(blockSize);
+	}
+	
+	static String key(int id) {
+		return ServerStream.class.getName() + "." + id;
+	}
+	
+	static ServerStream get(TNFSSession session, int id) {
+		return (ServerStream)session.state().get(key(id));
+	}
+	
+	long length() {
+		return length;
+	}
+	
+	/**
+	 * Acknowledge blocks the client has received, adjust the window, and optionally
+	 * go back to send again any blocks the client is missing.
+	 * 
+	 * @param received number of blocks received in order 
+	 * @param window window
+	 * @param resend whether to go back
+	 * @return whether all blocks have been received
+	 */
+	boolean ack(int received, int window, boolean resend) {
+		received = Math.min(received, blocks);
+		acked = Math.max(acked, received);
+		if(resend) {
+			next = Math.max(received, acked);
+		}
+		this.window = window(window);
+		return acked == blocks;
+	}
+	
+	/**
+	 * The window comes from the client, and pushing a window of blocks holds up the
+	 * session, so it is limited to the most requests a client may have in flight.
+	 */
+	private static int window(int window) {
+		return Math.max(1, Math.min(window, TNFS.MAX_IN_FLIGHT));
+	}
+
+	/**
+	 * Push as many blocks as the window allows.
+	 * 
+	 * @param context context
+	 * @throws IOException on error
+	 */
+	void push(HandlerContext context) throws IOException {
+		var session = context.session();
+		while(next < blocks && next < acked + window) {
+			var pos = offset + (long)next * blockSize;
+			buffer.clear();
+			buffer.limit((int)Math.min(blockSize, offset + length - pos));
+			
+			var was = channel.position();
+			channel.position(pos);
+			try {
+				while(buffer.hasRemaining()) {
+					if(channel.read(buffer) == -1) {
+						/* File shrank, send what there is */
+						break;
+					}
+				}
+			}
+			finally {
+				channel.position(was);
+			}
+			buffer.flip();
+			
+			context.push(Message.of(0, session.id(), Extensions.STREAMDATA, new StreamData(ResultCode.SUCCESS, id, next, buffer)));
+			next++;
+		}
+	}
+}
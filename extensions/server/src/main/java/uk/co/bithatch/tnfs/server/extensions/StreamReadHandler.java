@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.server.extensions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Message;
+import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.TNFSException;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.StreamRead;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.StreamReadResult;
+import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
+import uk.co.bithatch.tnfs.server.Tasks;
+
+public class StreamReadHandler implements TNFSMessageHandler {
+	public final static Logger LOG = LoggerFactory.getLogger(StreamReadHandler.class);
+
+	@Override
+	public Result handle(Message message, HandlerContext context) {
+		return Tasks.ioCall(() -> {
+			StreamRead read = message.payload();
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("{}. Stream: {}. Handle: {}. Offset: {}. Length: {}. Window: {}", 
+					Extensions.STREAMREAD.name(), 
+					read.stream(),
+					read.handle(),
+					read.offset(),
+					read.length(),
+					read.window()
+				);
+			}
+			
+			var dh = context.fileHandles().get(read.handle());
+			if(dh == null) {
+				throw new TNFSException(ResultCode.BADF);
+			}
+			
+			var session = context.session();
+			var channel = dh.channel();
+			var length = Math.max(0, Math.min(read.length(), channel.size() - read.offset()));
+			
+			/* A stream ID being used again replaces the stream that had it. Nothing is pushed 
+			 * for an empty stream, so the client will never acknowledge it */
+			if(length == 0) {
+				session.state().remove(ServerStream.key(read.stream()));
+			}
+			else {
+				var stream = new ServerStream(read.stream(), channel, read.offset(), length, read.window(), session.size());
+				session.state().put(ServerStream.key(read.stream()), stream);
+				stream.push(context);
+			}
+			
+			return new StreamReadResult(ResultCode.SUCCESS, length);
+		}, code -> new StreamReadResult(code, 0));
+	}
+
+	@Override
+	public Command<?, ?> command() {
+		return Extensions.STREAMREAD;
+	}
+
+}
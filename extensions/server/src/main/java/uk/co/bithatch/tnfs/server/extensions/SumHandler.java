@@ -27,7 +27,6 @@ import uk.co.bithatch.tnfs.lib.Command;
 import uk.co.bithatch.tnfs.lib.Command.Result;
 import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.ResultCode;
-import uk.co.bithatch.tnfs.lib.extensions.Checksums;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions.Sum;
 import uk.co.bithatch.tnfs.lib.extensions.Extensions.SumResult;
@@ -46,7 +45,7 @@ public class SumHandler implements TNFSMessageHandler {
 				LOG.debug("{}. Type: {} Path: {}", Extensions.SUM.name(), sum.type(), sum.path());
 			}
 			
-			return new SumResult(ResultCode.SUCCESS, Checksums.sum(context.session().mount(), sum.path(), sum.type()));
+			return new SumResult(ResultCode.SUCCESS, ChecksumCache.get().sum(context.session().mount(), sum.path(), sum.type()));
 
 		});
 	}
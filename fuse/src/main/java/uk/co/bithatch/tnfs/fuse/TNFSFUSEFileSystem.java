@@ -21,6 +21,7 @@
 package uk.co.bithatch.tnfs.fuse;
 
 import java.io.FileNotFoundException;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
@@ -53,7 +54,9 @@ import uk.co.bithatch.tnfs.lib.DirOptionFlag;
 import uk.co.bithatch.tnfs.lib.DirSortFlag;
 import uk.co.bithatch.tnfs.lib.ModeFlag;
 import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.TNFS;
 import uk.co.bithatch.tnfs.lib.TNFSDirectory;
+import uk.co.bithatch.tnfs.lib.Util;
 
 /**
  * A {@link FuseOperations} for accessing <em>TNFS</em> via a {@link TNFSMount}.
@@ -102,6 +105,22 @@ public class TNFSFUSEFileSystem implements FuseOperations {
 		return errno;
 	}
 
+	@Override
+	public int flush(String path, FileInfo fi) {
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("flush {}", path);
+		}
+		return flush(fi);
+	}
+
+	@Override
+	public int fsync(String path, int datasync, FileInfo fi) {
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("fsync {}", path);
+		}
+		return flush(fi);
+	}
+
 	@Override
 	public int getattr(String path, Stat stat, FileInfo fi) {
 		if(LOG.isDebugEnabled()) {
@@ -205,7 +224,8 @@ public class TNFSFUSEFileSystem implements FuseOperations {
 				try {
 					filler.fill(entry.name(), st -> {;
 						try {
-							setStat(st, mount.stat(path));
+							var name = entry.name();
+							setStat(st, mount.stat(name.equals(".") || name.equals("..") ? path : Util.concatenatePaths(path, name, TNFS.UNIX_SEPARATOR)));
 						} catch (IOException e) {
 							throw new UncheckedIOException(e);
 						}
@@ -303,6 +323,8 @@ public class TNFSFUSEFileSystem implements FuseOperations {
 			Operation.OPEN, 
 			Operation.OPEN_DIR,  
 			Operation.RELEASE,
+			Operation.FLUSH,
+			Operation.FSYNC,
 			Operation.MKDIR, 
 			Operation.CHMOD,
 			Operation.RMDIR, 
@@ -347,6 +369,20 @@ public class TNFSFUSEFileSystem implements FuseOperations {
 		});
 	}
 
+	private int flush(FileInfo fi) {
+		var fc = openFiles.get(fi.getFh());
+		if (fc == null) {
+			return -errno.ebadf();
+		}
+
+		return ioCall(() -> {
+			if(fc instanceof Flushable flushable) {
+				flushable.flush();
+			}
+			return 0;
+		});
+	}
+
 	private int ioCall(Callable<Integer> task) {
 		try {
 			return task.call();
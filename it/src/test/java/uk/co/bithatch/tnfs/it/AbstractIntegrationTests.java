@@ -27,13 +27,35 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -41,13 +63,45 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.co.bithatch.tnfs.client.AbstractTNFSMount.AbstractBuilder;
+import uk.co.bithatch.tnfs.client.BlockCache;
+import uk.co.bithatch.tnfs.client.ParallelDownload;
+import uk.co.bithatch.tnfs.client.TNFSChannel;
 import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.TNFSClient.Builder;
+import uk.co.bithatch.tnfs.client.TNFSClient.MessageResult;
 import uk.co.bithatch.tnfs.client.TNFSMount;
+import uk.co.bithatch.tnfs.client.extensions.BulkStat;
+import uk.co.bithatch.tnfs.client.extensions.Compound;
+import uk.co.bithatch.tnfs.client.extensions.Copy;
+import uk.co.bithatch.tnfs.client.extensions.Delta;
+import uk.co.bithatch.tnfs.client.extensions.SecureMount;
+import uk.co.bithatch.tnfs.client.extensions.Compress;
+import uk.co.bithatch.tnfs.client.extensions.StreamRead;
+import uk.co.bithatch.tnfs.client.extensions.Sum;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Entry;
+import uk.co.bithatch.tnfs.lib.Command.HandleResult;
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Command.StatResult;
+import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.OpenFlag;
+import uk.co.bithatch.tnfs.lib.ResultCode;
 import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.TNFSException;
+import uk.co.bithatch.tnfs.lib.Util;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Checksum;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.CipherSuite;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions.Compression;
+import uk.co.bithatch.tnfs.lib.extensions.Extensions;
+import uk.co.bithatch.tnfs.lib.extensions.PacketCompression;
+import uk.co.bithatch.tnfs.lib.extensions.SpeckEngine;
+import uk.co.bithatch.tnfs.lib.extensions.SpeckPacketCipher;
 
 public abstract class AbstractIntegrationTests {
+	private final static int ALLOCATION_OPS = 2000;
+	private final static long MAX_ALLOCATION_PER_OP = 1024;
+	
 	protected static String username;
 	protected static char[] password;
 	
@@ -69,6 +123,10 @@ public abstract class AbstractIntegrationTests {
 		void run(TNFSMount mount, TNFSClient clnt, ITNFSServer svr) throws Exception;
 	}
 	
+	interface IOOperation {
+		void run() throws IOException;
+	}
+	
 	static {
 		System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "INFO");
 		
@@ -319,6 +377,1084 @@ public abstract class AbstractIntegrationTests {
 		Assertions.assertEquals(0, e.size());
 	}
 
+	@Test
+	public void testPipelinedRequests() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			for(int i = 0 ; i < 10 ; i++) {
+				try(var out = mnt.open("file" + i, OpenFlag.CREATE, OpenFlag.WRITE)) {
+					var buf = ByteBuffer.allocate(i * 100);
+					while(buf.hasRemaining())
+						out.write(buf);
+				}
+			}
+			
+			var futures = new ArrayList<CompletableFuture<MessageResult<StatResult>>>();
+			for(int i = 0 ; i < 100 ; i++) {
+				var path = "file" + ( i % 10 );
+				futures.add(clnt.sendAsync(mnt, Command.STAT, Message.of(mnt.sessionId(), Command.STAT, new Command.Stat(path)), path));
+			}
+			var missing = clnt.sendAsync(mnt, Command.STAT, Message.of(mnt.sessionId(), Command.STAT, new Command.Stat("missing")), "missing");
+			
+			for(int i = 0 ; i < 100 ; i++) {
+				assertEquals(( i % 10 ) * 100, futures.get(i).get().result().size());
+			}
+			
+			var ee = assertThrows(ExecutionException.class, () -> missing.get());
+			assertTrue(ee.getCause() instanceof NoSuchFileException);
+		});
+	}
+
+	@Test
+	public void testReadAheadAndSeek() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var data = new byte[100000];
+			for(int i = 0 ; i < data.length ; i++) {
+				data[i] = (byte)(i % 251);
+			}
+			try(var out = mnt.open("readahead", OpenFlag.CREATE, OpenFlag.WRITE)) {
+				var buf = ByteBuffer.wrap(data);
+				while(buf.hasRemaining())
+					out.write(buf);
+			}
+			
+			try(var in = mnt.open("readahead", OpenFlag.READ)) {
+				var buf = ByteBuffer.allocate(100);
+				
+				/* Sequential, to get the window going */
+				for(int i = 0 ; i < 50 ; i++) {
+					buf.clear();
+					assertEquals(100, readFully(in, buf));
+					assertEquals(data[i * 100], buf.get(0));
+				}
+				assertEquals(5000, in.position());
+				
+				/* Forward within the window, backward, then far forward */
+				for(var pos : new long[] { 5300, 1000, 90000 }) {
+					in.position(pos);
+					buf.clear();
+					assertEquals(100, readFully(in, buf));
+					assertEquals(pos + 100, in.position());
+					for(int i = 0 ; i < 100 ; i++) {
+						assertEquals(data[(int)pos + i], buf.get(i));
+					}
+				}
+				
+				/* Read to the end */
+				in.position(99000);
+				var total = 0;
+				buf.clear();
+				int r;
+				while((r = in.read(buf)) != -1) {
+					total += r;
+					buf.clear();
+				}
+				assertEquals(1000, total);
+			}
+		});
+	}
+	
+	@Test
+	public void testWriteAfterReadAhead() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var data = new byte[100000];
+			for(int i = 0 ; i < data.length ; i++) {
+				data[i] = (byte)(i % 251);
+			}
+			try(var out = mnt.open("readahead", OpenFlag.CREATE, OpenFlag.WRITE)) {
+				var buf = ByteBuffer.wrap(data);
+				while(buf.hasRemaining())
+					out.write(buf);
+			}
+			
+			try(var in = mnt.open("readahead", OpenFlag.READ, OpenFlag.WRITE)) {
+				var buf = ByteBuffer.allocate(100);
+				for(int i = 0 ; i < 50 ; i++) {
+					buf.clear();
+					assertEquals(100, readFully(in, buf));
+				}
+				
+				/* Write after reading ahead lands at the callers position */
+				in.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+				assertEquals(5003, in.position());
+				in.position(5000);
+				buf.clear();
+				buf.limit(4);
+				assertEquals(4, readFully(in, buf));
+				assertArrayEquals(new byte[] { 1, 2, 3, data[5003] }, Arrays.copyOf(buf.array(), 4));
+			}
+		});
+	}
+	
+	@Test
+	public void testWriteBehindFlushAndErrors() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var data = new byte[50000];
+			new Random(1).nextBytes(data);
+			try(var out = mnt.open("writebehind", OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+				var buf = ByteBuffer.wrap(data);
+				while(buf.hasRemaining())
+					out.write(buf);
+				assertEquals(data.length, out.position());
+			}
+			
+			try(var in = mnt.open("writebehind", OpenFlag.READ)) {
+				var buf = ByteBuffer.allocate(data.length);
+				assertEquals(data.length, readFully(in, buf));
+				assertArrayEquals(data, buf.array());
+				
+				/* Writing to a handle that is only open for reading fails, either straight 
+				 * away or when the writes that are behind are flushed */
+				var ex = assertThrows(TNFSException.class, () -> {
+					var wbuf = ByteBuffer.wrap(data);
+					while(wbuf.hasRemaining())
+						in.write(wbuf);
+					((Flushable)in).flush();
+				});
+				assertEquals(ResultCode.BADF, ex.code());
+			}
+		});
+	}
+	
+	@Test
+	public void testPositionalReadAndWrite() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var data = new byte[20000];
+			for(int i = 0 ; i < data.length ; i++) {
+				data[i] = (byte)(i % 251);
+			}
+			try(var out = (TNFSChannel)mnt.open("positional", OpenFlag.CREATE, OpenFlag.WRITE)) {
+				var half = data.length / 2;
+				assertEquals(half, out.write(ByteBuffer.wrap(data, 0, half), 0));
+				assertEquals(half, out.write(ByteBuffer.wrap(data, half, half), half));
+				
+				/* Overlapping what has already been written */
+				assertEquals(100, out.write(ByteBuffer.wrap(data, 50, 100), 50));
+				assertEquals(0, out.position());
+			}
+			
+			try(var in = (TNFSChannel)mnt.open("positional", OpenFlag.READ)) {
+				var buf = ByteBuffer.allocate(100);
+				for(var pos : new long[] { 15000, 100, 19950 }) {
+					buf.clear();
+					var r = in.read(buf, pos);
+					assertEquals(Math.min(100, data.length - pos), r);
+					for(int i = 0 ; i < r ; i++) {
+						assertEquals(data[(int)pos + i], buf.get(i));
+					}
+				}
+				assertEquals(0, in.position());
+				buf.clear();
+				assertEquals(-1, in.read(buf, data.length));
+				
+				/* Positional reads do not disturb reading sequentially */
+				var all = ByteBuffer.allocate(data.length);
+				assertEquals(data.length, readFully(in, all));
+				assertArrayEquals(data, all.array());
+			}
+		});
+	}
+	
+	@Test
+	public void testCompound() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var compound = mnt.extension(Compound.class);
+			var data = new byte[clnt.size() * 3];
+			for(int i = 0 ; i < data.length ; i++) {
+				data[i] = (byte)(i % 251);
+			}
+			
+			/* Small file, one round trip */
+			var small = Arrays.copyOf(data, 100);
+			compound.request().
+				open("compound-small", OpenFlag.CREATE, OpenFlag.WRITE).
+				write(ByteBuffer.wrap(small)).
+				close().
+				execute();
+			assertArrayEquals(small, toArray(compound.readFile("compound-small")));
+			
+			/* Larger than fits in one reply */
+			try(var out = mnt.open("compound-large", OpenFlag.CREATE, OpenFlag.WRITE)) {
+				out.write(ByteBuffer.wrap(data));
+			}
+			assertArrayEquals(data, toArray(compound.readFile("compound-large")));
+			
+			/* Later operations use the handle of earlier ones */
+			var results = compound.request().
+				open("compound-small", OpenFlag.READ).
+				read(10).
+				read(200).
+				read(10).
+				close().
+				execute();
+			assertEquals(5, results.size());
+			assertTrue(results.get(0) instanceof HandleResult);
+			assertEquals(10, ((ReadResult)results.get(1)).read());
+			assertEquals(90, ((ReadResult)results.get(2)).read());
+			assertEquals(ResultCode.EOF, results.get(3).result());
+			assertEquals(ResultCode.SUCCESS, results.get(4).result());
+			
+			/* Stops at the first error */
+			results = compound.request().
+				stat("compound-small").
+				open("compound-missing", OpenFlag.READ).
+				read(10).
+				execute();
+			assertEquals(2, results.size());
+			assertTrue(results.get(0).result().isOk());
+			assertEquals(ResultCode.NOENT, results.get(1).result());
+			assertThrows(NoSuchFileException.class, () -> compound.readFile("compound-missing"));
+		});
+	}
+	
+	@Test
+	public void testBulkStat() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			mnt.mkdir("bulkstat");
+			
+			/* Enough paths to need several requests */
+			var paths = new ArrayList<String>();
+			for(int i = 0 ; i < 300 ; i++) {
+				var path = "bulkstat/file-with-a-fairly-long-name-" + i;
+				if(i % 7 == 0) {
+					paths.add(path + "-missing");
+				}
+				else {
+					try(var out = mnt.open(path, OpenFlag.CREATE, OpenFlag.WRITE)) {
+						out.write(ByteBuffer.allocate(i));
+					}
+					paths.add(path);
+				}
+			}
+			paths.add("bulkstat");
+			
+			var stats = mnt.extension(BulkStat.class).stat(paths.toArray(new String[0]));
+			assertEquals(paths.size(), stats.length);
+			for(int i = 0 ; i < 300 ; i++) {
+				if(i % 7 == 0) {
+					assertEquals(ResultCode.NOENT, stats[i].result());
+				}
+				else {
+					var stat = mnt.stat(paths.get(i));
+					assertEquals(ResultCode.SUCCESS, stats[i].result());
+					assertEquals(i, stats[i].size());
+					assertArrayEquals(stat.mode(), stats[i].mode());
+					assertEquals(stat.mtime().toMillis() / 1000, stats[i].mtime().toMillis() / 1000);
+				}
+			}
+			assertTrue(stats[300].isDirectory());
+		});
+	}
+	
+	@Test
+	public void testCompression() throws Exception {
+		var text = new StringBuilder();
+		for(int i = 0 ; i < 5000 ; i++) {
+			text.append("Line ").append(i).append(" of some text that compresses well.\n");
+		}
+		var textData = text.toString().getBytes();
+		var randomData = new byte[50000];
+		new Random(1).nextBytes(randomData);
+		
+		runTest((clnt, svr) -> {
+			for(var algo : Compression.values()) {
+				try(var mnt = createMountBuilder(clnt).build()) {
+					var compress = mnt.extension(Compress.class);
+					if(!mnt.inProcessors().isEmpty()) {
+						/* Secure mounts */
+						assertTrue(compress.compress(algo).isEmpty());
+						return;
+					}
+					assertEquals(algo, compress.compress(algo).get());
+					
+					for(var data : new byte[][] { textData, randomData }) {
+						try(var out = mnt.open("compressed", OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+							var buf = ByteBuffer.wrap(data);
+							while(buf.hasRemaining()) {
+								out.write(buf);
+							}
+						}
+						try(var in = mnt.open("compressed", OpenFlag.READ)) {
+							var all = ByteBuffer.allocate(data.length);
+							assertEquals(data.length, readFully(in, all));
+							assertArrayEquals(data, all.array());
+						}
+						assertEquals(data.length, mnt.stat("compressed").size());
+					}
+					
+					mnt.unlink("compressed");
+				}
+			}
+		});
+		
+		/* Packets only get smaller, and only when they compress */
+		for(var algo : Compression.values()) {
+			var codec = new PacketCompression(algo);
+			for(var data : new byte[][] { textData, randomData }) {
+				var packet = ByteBuffer.allocate(TNFS.MAX_TCP_MESSAGE_SIZE);
+				packet.put(new byte[] { 1, 0, 2, Command.WRITE.code() });
+				packet.put(data, 0, 4000);
+				packet.flip();
+				codec.compress(packet);
+				assertEquals(data == randomData, packet.remaining() == 4004);
+				assertTrue(packet.remaining() <= 4004);
+				codec.decompress(packet);
+				assertEquals(4004, packet.remaining());
+				assertEquals(Command.WRITE.code(), packet.get(3));
+				assertArrayEquals(Arrays.copyOf(data, 4000), Arrays.copyOfRange(packet.array(), 4, 4004));
+			}
+		}
+		
+		/* Algorithms this side does not know are skipped when offered, and refused otherwise */
+		var offer = Extensions.Compress.decode(ByteBuffer.wrap(new byte[] { 2, (byte)200, 0 }));
+		assertArrayEquals(new Compression[] { Compression.LZ4 }, offer.algorithms());
+		assertThrows(IllegalArgumentException.class, () -> Extensions.CompressResult.decode(ByteBuffer.wrap(new byte[] { 0, (byte)200 })));
+		
+		var packet = ByteBuffer.allocate(TNFS.MAX_TCP_MESSAGE_SIZE);
+		packet.put(new byte[] { 1, 0, 2, Command.WRITE.code() });
+		packet.put(textData, 0, 4000);
+		packet.flip();
+		new PacketCompression(Compression.LZ4).compress(packet);
+		packet.put(packet.position() + 5, (byte)200);
+		assertThrows(IllegalArgumentException.class, () -> new PacketCompression(Compression.LZ4).decompress(packet));
+	}
+	
+	@Test
+	public void testStreamRead() throws Exception {
+		var data = new byte[200000];
+		new Random(2).nextBytes(data);
+		
+		runMountTest((mnt, clnt, svr) -> {
+			try(var out = mnt.open("streamed", OpenFlag.CREATE, OpenFlag.WRITE)) {
+				var buf = ByteBuffer.wrap(data);
+				while(buf.hasRemaining()) {
+					out.write(buf);
+				}
+			}
+			
+			var stream = mnt.extension(StreamRead.class);
+			
+			var all = new ByteArrayOutputStream();
+			assertEquals(data.length, stream.read("streamed", Channels.newChannel(all)));
+			assertArrayEquals(data, all.toByteArray());
+			
+			/* A range, and a window smaller than the file */
+			stream.window(4);
+			var part = new ByteArrayOutputStream();
+			assertEquals(30000, stream.read("streamed", 12345, 30000, Channels.newChannel(part)));
+			assertArrayEquals(Arrays.copyOfRange(data, 12345, 42345), part.toByteArray());
+			
+			/* Past the end */
+			var end = new ByteArrayOutputStream();
+			assertEquals(345, stream.read("streamed", data.length - 345, 1000, Channels.newChannel(end)));
+			assertArrayEquals(Arrays.copyOfRange(data, data.length - 345, data.length), end.toByteArray());
+			
+			/* At the end */
+			var none = new ByteArrayOutputStream();
+			assertEquals(0, stream.read("streamed", data.length, 1000, Channels.newChannel(none)));
+			assertEquals(0, none.size());
+		});
+	}
+	
+	@Test
+	public void testCopyRange() throws Exception {
+		var data = new byte[65536];
+		new Random(3).nextBytes(data);
+		
+		runMountTest((mnt, clnt, svr) -> {
+			try(var out = mnt.open("copysrc", OpenFlag.CREATE, OpenFlag.WRITE)) {
+				var buf = ByteBuffer.wrap(data);
+				while(buf.hasRemaining()) {
+					out.write(buf);
+				}
+			}
+			
+			var copy = mnt.extension(Copy.class);
+			
+			/* Part of a file, to a position in another */
+			assertEquals(5000, copy.copy("copysrc", 1000, 5000, "copypart", 100));
+			try(var in = mnt.open("copypart", OpenFlag.READ)) {
+				var all = ByteBuffer.allocate(5100);
+				assertEquals(5100, readFully(in, all));
+				assertArrayEquals(new byte[100], Arrays.copyOfRange(all.array(), 0, 100));
+				assertArrayEquals(Arrays.copyOfRange(data, 1000, 6000), Arrays.copyOfRange(all.array(), 100, 5100));
+			}
+			
+			/* Grow by copying on to the end of itself, until big enough to be a background job */
+			var size = (long)data.length;
+			while(size < 16 * 1024 * 1024) {
+				assertEquals(size, copy.copy("copysrc", 0, size, "copysrc", size));
+				size *= 2;
+			}
+			assertEquals(size, mnt.stat("copysrc").size());
+			
+			/* Whole file, waiting for a background job */
+			copy.copy("copysrc", "copydst");
+			assertEquals(size, mnt.stat("copydst").size());
+			try(var in = mnt.open("copydst", OpenFlag.READ)) {
+				in.position(size - data.length);
+				var all = ByteBuffer.allocate(data.length);
+				assertEquals(data.length, readFully(in, all));
+				assertArrayEquals(data, all.array());
+			}
+			
+			/* Past the end */
+			assertEquals(10, copy.copy("copysrc", size - 10, 1000, "copypart", 0));
+			
+			/* Polled and cancelled */
+			var job = copy.copyRange("copysrc", 0, size, "copycancel", 0);
+			assertTrue(job.id() != 0);
+			assertEquals(size, job.length());
+			job.poll();
+			job.cancel();
+			assertTrue(job.done());
+			assertTrue(job.copied() <= size);
+			assertEquals(job.copied() < size, job.cancelled());
+			
+			mnt.unlink("copysrc");
+			mnt.unlink("copydst");
+			mnt.unlink("copypart");
+			mnt.unlink("copycancel");
+		});
+	}
+	
+	@Test
+	public void testDelta() throws Exception {
+		var data = new byte[300000];
+		new Random(4).nextBytes(data);
+		
+		/* Some bytes inserted near the start, so everything after moves, and some changed */
+		var changed = new byte[data.length + 100];
+		System.arraycopy(data, 0, changed, 0, 5000);
+		System.arraycopy(data, 5000, changed, 5100, data.length - 5000);
+		Arrays.fill(changed, 200000, 200010, (byte)1);
+		
+		runMountTest((mnt, clnt, svr) -> {
+			var delta = mnt.extension(Delta.class);
+			var local = Files.createTempFile("tnfs", ".dat");
+			try {
+				/* Nothing to compare with */
+				Files.write(local, data);
+				assertEquals(data.length, delta.upload(local, "delta.dat"));
+				assertArrayEquals(data, readRemote(mnt, "delta.dat"));
+				
+				var sig = delta.signature("delta.dat");
+				assertEquals(data.length, sig.size());
+				assertEquals((data.length + sig.blockSize() - 1) / sig.blockSize(), sig.sums().size());
+				
+				/* Only what changed is sent */
+				Files.write(local, changed);
+				var sent = delta.upload(local, "delta.dat");
+				assertTrue(sent > 0 && sent < data.length / 20, "Sent " + sent);
+				assertArrayEquals(changed, readRemote(mnt, "delta.dat"));
+				assertFalse(mnt.exists("delta.dat.tnfsdelta"));
+				assertFalse(mnt.exists("delta.dat.tnfsdelta-old"));
+				
+				/* And only what changed is received */
+				Files.write(local, data);
+				var read = delta.download("delta.dat", local);
+				assertTrue(read > 0 && read < data.length / 20, "Read " + read);
+				assertArrayEquals(changed, Files.readAllBytes(local));
+				
+				/* Nothing changed */
+				assertEquals(0, delta.download("delta.dat", local));
+				assertEquals(0, delta.upload(local, "delta.dat"));
+				assertArrayEquals(changed, readRemote(mnt, "delta.dat"));
+			}
+			finally {
+				Files.delete(local);
+			}
+		});
+	}
+	
+	@Test
+	public void testSum() throws Exception {
+		var data = new byte[100000];
+		new Random(5).nextBytes(data);
+		
+		runMountTest((mnt, clnt, svr) -> {
+			var sum = mnt.extension(Sum.class);
+			
+			writeRemote(mnt, "summed", data);
+			var md5 = sum.sum(Checksum.MD5, "summed");
+			assertEquals(Util.toHexString(MessageDigest.getInstance("MD5").digest(data)), md5);
+			var crc = new CRC32();
+			crc.update(data);
+			assertEquals(String.format("%04x", crc.getValue()), sum.sum("summed"));
+			
+			/* Asked again, should be the same */
+			assertEquals(md5, sum.sum(Checksum.MD5, "summed"));
+			
+			/* Changed, should not be */
+			var changed = Arrays.copyOf(data, data.length - 1);
+			writeRemote(mnt, "summed", changed);
+			assertEquals(Util.toHexString(MessageDigest.getInstance("MD5").digest(changed)), sum.sum(Checksum.MD5, "summed"));
+			assertEquals(Util.toHexString(MessageDigest.getInstance("SHA-256").digest(changed)), sum.sum(Checksum.SHA256, "summed"));
+			
+			mnt.unlink("summed");
+		});
+	}
+	
+	@Test
+	public void testSecureMountCiphers() throws Exception {
+		var data = new byte[100000];
+		new Random(6).nextBytes(data);
+		
+		runTest((clnt, svr) -> {
+			assumeTrue(createMountBuilder(clnt) instanceof SecureMount.Builder);
+			for(var suite : CipherSuite.values()) {
+				try(var mnt = ((SecureMount.Builder)createMountBuilder(clnt)).withCiphers(suite).build()) {
+					assertEquals(suite, mnt.cipher());
+					writeRemote(mnt, "secure.dat", data);
+					assertArrayEquals(data, readRemote(mnt, "secure.dat"));
+					mnt.unlink("secure.dat");
+				}
+			}
+		});
+		
+		/* A suite chosen by the server that this client does not know is a clear error */
+		var buf = ByteBuffer.allocate(256);
+		buf.put((byte)ResultCode.SUCCESS.value());
+		new Extensions.SecureMountResult(ResultCode.SUCCESS, TNFS.PROTOCOL_VERSION, Duration.ofSeconds(1), 
+				new byte[0], CipherSuite.SPECK, false, new byte[0]).encodeResult(buf);
+		buf.flip();
+		buf.put(buf.limit() - 3, (byte)200);
+		var iae = assertThrows(IllegalArgumentException.class, () -> Extensions.SecureMountResult.decode(buf));
+		assertTrue(iae.getMessage().contains("does not support"));
+	}
+	
+	@Test
+	public void testSpeckPacketLimit() throws Exception {
+		runTest((clnt, svr) -> {
+			assumeTrue(createMountBuilder(clnt) instanceof SecureMount.Builder);
+			
+			/* Speck32/64 only has room for 16 bits of nonce */
+			var key = new byte[8];
+			new Random(8).nextBytes(key);
+			var max = SpeckPacketCipher.maximumPackets(SpeckEngine.SPECK_32);
+			assertEquals(32768, max);
+			
+			var outbound = new SpeckPacketCipher(SpeckEngine.SPECK_32, key, true);
+			var inbound = new SpeckPacketCipher(SpeckEngine.SPECK_32, key, false);
+			var packet = ByteBuffer.allocate(64);
+			for(var i = 0; i < max; i++) {
+				packet.clear().putShort((short)1).putInt(i).flip();
+				outbound.encrypt(packet);
+				inbound.decrypt(packet);
+				assertEquals(i, packet.getInt(2));
+			}
+			packet.clear().putShort((short)1).putInt(0).flip();
+			assertThrows(IllegalStateException.class, () -> outbound.encrypt(packet));
+		});
+	}
+	
+	@Test
+	public void testSecureMountResume() throws Exception {
+		var data = new byte[100000];
+		new Random(7).nextBytes(data);
+		
+		runTest((clnt, svr) -> {
+			assumeTrue(createMountBuilder(clnt) instanceof SecureMount.Builder);
+			
+			SecureMount.Ticket ticket;
+			try(var mnt = ((SecureMount.Builder)createMountBuilder(clnt)).build()) {
+				assertFalse(mnt.resumed());
+				ticket = mnt.ticket().orElseThrow();
+			}
+			
+			SecureMount.Ticket next;
+			try(var mnt = ((SecureMount.Builder)createMountBuilder(clnt)).withTicket(ticket).build()) {
+				assertTrue(mnt.resumed());
+				writeRemote(mnt, "resumed.dat", data);
+				assertArrayEquals(data, readRemote(mnt, "resumed.dat"));
+				next = mnt.ticket().orElseThrow();
+			}
+			
+			/* A ticket may only be used once, after which there is a full key exchange */
+			try(var mnt = ((SecureMount.Builder)createMountBuilder(clnt)).withTicket(ticket).build()) {
+				assertFalse(mnt.resumed());
+				assertArrayEquals(data, readRemote(mnt, "resumed.dat"));
+			}
+			
+			/* Resumed sessions may be resumed again */
+			try(var mnt = ((SecureMount.Builder)createMountBuilder(clnt)).withTicket(next).build()) {
+				assertTrue(mnt.resumed());
+				assertArrayEquals(data, readRemote(mnt, "resumed.dat"));
+				mnt.unlink("resumed.dat");
+			}
+		});
+	}
+	
+	private static void writeRemote(TNFSMount mnt, String path, byte[] data) throws IOException {
+		try(var out = mnt.open(path, OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+			var buf = ByteBuffer.wrap(data);
+			while(buf.hasRemaining()) {
+				out.write(buf);
+			}
+		}
+	}
+	
+	private static byte[] readRemote(TNFSMount mnt, String path) throws IOException {
+		try(var in = mnt.open(path, OpenFlag.READ)) {
+			var all = ByteBuffer.allocate((int)mnt.stat(path).size());
+			readFully(in, all);
+			return all.array();
+		}
+	}
+	
+	private static byte[] toArray(ByteBuffer buf) {
+		var arr = new byte[buf.remaining()];
+		buf.get(arr);
+		return arr;
+	}
+	
+	@Test
+	public void testAttributeCache() throws Exception {
+		runTest((clnt, svr) -> {
+			try(var mnt = createMountBuilder(clnt).
+					withAttributeCache(Duration.ofMinutes(1)).
+					withNegativeAttributeCache(Duration.ofMinutes(1)).
+					build();
+				var other = createMountBuilder(clnt).build()) {
+				
+				assertFalse(mnt.exists("cached"));
+				assertFalse(mnt.exists("ghost"));
+				
+				/* Own writes are seen */
+				try(var out = mnt.open("cached", OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+					out.write(ByteBuffer.allocate(1000));
+					out.write(ByteBuffer.allocate(1000));
+				}
+				assertTrue(mnt.exists("cached"));
+				assertEquals(2000, mnt.stat("cached").size());
+				try(var out = mnt.open("cached", OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+					out.write(ByteBuffer.allocate(500));
+				}
+				assertEquals(500, mnt.stat("cached").size());
+				
+				/* Own namespace changes are seen */
+				mnt.rename("cached", "cached2");
+				assertFalse(mnt.exists("cached"));
+				assertEquals(500, mnt.stat("cached2").size());
+				mnt.mkdir("cacheddir");
+				assertTrue(mnt.stat("cacheddir").isDirectory());
+				mnt.rmdir("cacheddir");
+				assertFalse(mnt.exists("cacheddir"));
+				
+				/* Changes made elsewhere are not seen until the cache expires */
+				other.unlink("cached2");
+				other.newFile("ghost");
+				assertEquals(500, mnt.stat("cached2").size());
+				assertFalse(mnt.exists("ghost"));
+				assertTrue(other.exists("ghost"));
+				
+				mnt.unlink("ghost");
+				assertFalse(other.exists("ghost"));
+				assertFalse(mnt.exists("ghost"));
+			}
+		});
+	}
+	
+	@Test
+	public void testDirectoryCache() throws Exception {
+		runTest((clnt, svr) -> {
+			try(var mnt = createMountBuilder(clnt).
+					withAttributeCache(Duration.ofMinutes(1)).
+					withDirectoryCache(Duration.ofMinutes(1)).
+					build();
+				var other = createMountBuilder(clnt).build()) {
+				
+				mnt.mkdir("dircache");
+				for(var name : new String[] { "a", "b" }) {
+					try(var out = mnt.open("dircache/" + name, OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+						out.write(ByteBuffer.allocate(name.equals("a") ? 100 : 200));
+					}
+				}
+				assertEquals(Arrays.asList("a", "b"), names(mnt, "dircache"));
+				
+				/* Changes made elsewhere are not seen, but the listing filled the attribute cache,
+				 * though only for callers that need no more than the listing carries */
+				other.unlink("dircache/b");
+				assertEquals(Arrays.asList("a", "b"), names(mnt, "dircache"));
+				if(!mnt.serverVersion().lt(TNFS.READ_DIRX_REQUIRES_VERSION)) {
+					assertTrue(mnt.exists("dircache/b"));
+					assertThrows(NoSuchFileException.class, () -> mnt.stat("dircache/b"));
+				}
+				
+				/* Own changes are seen */
+				mnt.newFile("dircache/c");
+				assertEquals(Arrays.asList("a", "c"), names(mnt, "dircache"));
+				mnt.rename("dircache/c", "dircache/d");
+				assertEquals(Arrays.asList("a", "d"), names(mnt, "dircache"));
+				
+				/* Seek and tell work on a cached listing */
+				try(var dir = mnt.directory("dircache")) {
+					var it = dir.stream().iterator();
+					it.next();
+					var pos = dir.tell();
+					var next = it.next().name();
+					dir.seek(pos);
+					assertEquals(next, it.next().name());
+				}
+				
+				mnt.deleteRecursively("dircache");
+				assertFalse(other.exists("dircache"));
+			}
+		});
+	}
+	
+	@Test
+	public void testAsyncMount() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var async = mnt.async();
+			async.mkdirAsync("asyncdir").get();
+			
+			/* Create, write and close many files at once */
+			var futures = new ArrayList<CompletableFuture<Integer>>();
+			for(int i = 0 ; i < 10 ; i++) {
+				var size = 1000 + i * 100;
+				futures.add(async.openAsync("asyncdir/file" + i, OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE).
+					thenCompose(handle -> async.writeAsync(handle, ByteBuffer.allocate(size)).
+						thenCompose(written -> async.closeAsync(handle).thenApply(v -> written))));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+			for(int i = 0 ; i < 10 ; i++) {
+				assertEquals(1000 + i * 100, (int)futures.get(i).get());
+			}
+			
+			var entries = async.directoryAsync("asyncdir").get().stream().
+					filter(e -> !e.name().equals(".") && !e.name().equals("..")).toList();
+			assertEquals(10, entries.size());
+			for(var entry : entries) {
+				var i = Integer.parseInt(entry.name().substring(4));
+				assertEquals(1000 + i * 100, entry.size());
+				assertEquals(1000 + i * 100, async.statAsync("asyncdir/" + entry.name()).get().size());
+			}
+			
+			/* Read back from the server's file position */
+			var data = new byte[200];
+			new Random(2).nextBytes(data);
+			var wrtn = async.openAsync("asyncdir/file0", OpenFlag.WRITE, OpenFlag.TRUNCATE).
+				thenCompose(handle -> async.writeAsync(handle, ByteBuffer.wrap(data)).
+					thenCompose(written -> async.closeAsync(handle).thenApply(v -> written))).get();
+			assertEquals(data.length, (int)wrtn);
+			var read = async.openAsync("asyncdir/file0", OpenFlag.READ).
+				thenCompose(handle -> async.seekAsync(handle, 50).
+					thenCompose(v -> async.readAsync(handle, 100)).
+					thenCompose(buf -> async.closeAsync(handle).thenApply(v -> buf))).get();
+			var expected = Arrays.copyOfRange(data, 50, 150);
+			var actual = new byte[read.remaining()];
+			read.get(actual);
+			assertArrayEquals(expected, actual);
+			
+			assertFalse(async.existsAsync("asyncdir/missing").get());
+			var ex = assertThrows(ExecutionException.class, () -> async.statAsync("asyncdir/missing").get());
+			assertTrue(ex.getCause() instanceof NoSuchFileException);
+			
+			CompletableFuture.allOf(entries.stream().map(e -> async.unlinkAsync("asyncdir/" + e.name())).toList().toArray(new CompletableFuture[0])).get();
+			async.rmdirAsync("asyncdir").get();
+			assertFalse(mnt.exists("asyncdir"));
+		});
+	}
+	
+	@Test
+	public void testFlowStreaming() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var async = mnt.async();
+			var data = new byte[100000];
+			new Random(3).nextBytes(data);
+			
+			/* Write in uneven pieces, some bigger than a packet */
+			var out = async.writeSubscriber("flow.dat");
+			try(var pub = new SubmissionPublisher<ByteBuffer>()) {
+				pub.subscribe(out);
+				var off = 0;
+				for(var len : new int[] { 1, 70000, 29999 }) {
+					pub.submit(ByteBuffer.wrap(data, off, len));
+					off += len;
+				}
+			}
+			assertEquals(data.length, (long)out.completion().get());
+			assertEquals(data.length, mnt.stat("flow.dat").size());
+			
+			/* Read back a few packets at a time */
+			var read = new CompletableFuture<byte[]>();
+			async.readPublisher("flow.dat").subscribe(new Flow.Subscriber<ByteBuffer>() {
+				private final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				private Flow.Subscription subscription;
+				private int received;
+
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					this.subscription = subscription;
+					subscription.request(3);
+				}
+
+				@Override
+				public void onNext(ByteBuffer item) {
+					var arr = new byte[item.remaining()];
+					item.get(arr);
+					bout.writeBytes(arr);
+					if(++received % 3 == 0) {
+						subscription.request(3);
+					}
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					read.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					read.complete(bout.toByteArray());
+				}
+			});
+			assertArrayEquals(data, read.get());
+			
+			/* Missing files fail the subscriber */
+			var missing = new CompletableFuture<Void>();
+			async.readPublisher("missing.dat").subscribe(new Flow.Subscriber<ByteBuffer>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.request(1);
+				}
+
+				@Override
+				public void onNext(ByteBuffer item) {
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					missing.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					missing.complete(null);
+				}
+			});
+			var ex = assertThrows(ExecutionException.class, () -> missing.get());
+			assertTrue(ex.getCause() instanceof NoSuchFileException);
+			
+			/* Directory entries one at a time */
+			mnt.mkdir("flowdir");
+			for(int i = 0 ; i < 20 ; i++) {
+				mnt.newFile("flowdir/file" + i);
+			}
+			var listed = new CompletableFuture<List<String>>();
+			async.directoryPublisher("flowdir").subscribe(new Flow.Subscriber<Entry>() {
+				private final List<String> names = new ArrayList<>();
+				private Flow.Subscription subscription;
+
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					this.subscription = subscription;
+					subscription.request(1);
+				}
+
+				@Override
+				public void onNext(Entry item) {
+					if(!item.name().equals(".") && !item.name().equals("..")) {
+						names.add(item.name());
+					}
+					subscription.request(1);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					listed.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					listed.complete(names);
+				}
+			});
+			assertEquals(20, listed.get().size());
+			assertEquals(names(mnt, "flowdir"), listed.get().stream().sorted().toList());
+		});
+	}
+	
+	@Test
+	public void testParallelDownload() throws Exception {
+		runMountTest((mnt, clnt, svr) -> {
+			var data = new byte[300001];
+			new Random(4).nextBytes(data);
+			try(var out = mnt.open("big.dat", OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+				var buf = ByteBuffer.wrap(data);
+				while(buf.hasRemaining())
+					out.write(buf);
+			}
+			
+			var tmp = Files.createTempFile("tnfs", ".dat");
+			try {
+				var progress = new AtomicLong();
+				try(var target = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+					var total = new ParallelDownload.Builder(mnt, "big.dat").
+							withStreams(4).
+							withChunkSize(10000).
+							withProgress(progress::addAndGet).
+							build().download(target);
+					assertEquals(data.length, total);
+				}
+				assertEquals(data.length, progress.get());
+				assertArrayEquals(data, Files.readAllBytes(tmp));
+				
+				/* Use up nearly all of the server's handles, so only one more may be opened */
+				var held = new ArrayList<SeekableByteChannel>();
+				try {
+					while(true) {
+						held.add(mnt.open("big.dat", OpenFlag.READ));
+					}
+				}
+				catch(TNFSException tnfse) {
+					assertEquals(ResultCode.MFILE, tnfse.code());
+				}
+				held.remove(0).close();
+				try {
+					Files.write(tmp, new byte[0]);
+					try(var target = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+						assertEquals(data.length, new ParallelDownload.Builder(mnt, "big.dat").
+								withStreams(4).
+								withChunkSize(10000).
+								build().download(target));
+					}
+					assertArrayEquals(data, Files.readAllBytes(tmp));
+				}
+				finally {
+					for(var ch : held) {
+						ch.close();
+					}
+				}
+			}
+			finally {
+				Files.delete(tmp);
+			}
+		});
+	}
+	
+	@Test
+	public void testBlockCache() throws Exception {
+		runTest((clnt, svr) -> {
+			var dir = Files.createTempDirectory("tnfs-cache");
+			try(var other = createMountBuilder(clnt).build()) {
+				var data = new byte[10000];
+				new Random(5).nextBytes(data);
+				try(var out = other.open("cached.dat", OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+					out.write(ByteBuffer.wrap(data));
+				}
+				
+				/* First read fills the cache, 3 blocks of 4096 */
+				try(var first = new BlockCache.Builder(dir).withBlockSize(4096).build();
+					var firstMnt = createMountBuilder(clnt).withBlockCache(first).build()) {
+					assertArrayEquals(data, readAll(firstMnt, "cached.dat"));
+					assertEquals(3, first.blocks());
+					first.close();
+				
+					/* Survives a restart, and is used for random access */
+					try(var cache = new BlockCache.Builder(dir).withBlockSize(4096).build();
+						var mnt = createMountBuilder(clnt).withBlockCache(cache).build()) {
+						assertEquals(3, cache.blocks());
+						try(var in = mnt.open("cached.dat")) {
+							var buf = ByteBuffer.allocate(100);
+							in.position(5000);
+							assertEquals(100, readFully(in, buf));
+							assertArrayEquals(Arrays.copyOfRange(data, 5000, 5100), buf.array());
+							assertThrows(NonWritableChannelException.class, () -> in.write(ByteBuffer.allocate(1)));
+						}
+						
+						/* A changed file is not served from the cache */
+						var changed = new byte[5000];
+						new Random(6).nextBytes(changed);
+						try(var out = other.open("cached.dat", OpenFlag.CREATE, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+							out.write(ByteBuffer.wrap(changed));
+						}
+						assertArrayEquals(changed, readAll(mnt, "cached.dat"));
+					}
+				}
+			}
+			finally {
+				try(var s = Files.list(dir)) {
+					for(var p : s.toList()) {
+						Files.delete(p);
+					}
+				}
+				Files.delete(dir);
+			}
+		});
+	}
+	
+	@Test
+	public void testAllocationPerOperation() throws Exception {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean mx && mx.isThreadAllocatedMemorySupported());
+		runTest((clnt, svr) -> {
+			var bldr = createMountBuilder(clnt);
+			if(bldr instanceof SecureMount.Builder secure) {
+				/* The runtime's ciphers allocate for each packet, Speck should not */
+				secure.withCiphers(CipherSuite.SPECK);
+			}
+			try(var mnt = bldr.withReadAhead(0).withWriteBehind(0).build()) {
+				/* Packet processors such as compression have their own per packet costs, encryption should not */
+				assumeTrue(mnt.flags().contains(TNFSMount.Flag.ENCRYPTED) || (mnt.inProcessors().isEmpty() && mnt.outProcessors().isEmpty()));
+				
+				try(var ch = mnt.open("alloc.dat", OpenFlag.CREATE, OpenFlag.READ, OpenFlag.WRITE, OpenFlag.TRUNCATE)) {
+					var buf = ByteBuffer.allocate(1024);
+					var pos = new AtomicLong();
+					
+					/* Moving away and back again defeats the local position shortcut */
+					assertTrue(allocatedPerOperation(() -> { buf.clear(); ch.position(1); ch.position(0); ch.write(buf); }) < MAX_ALLOCATION_PER_OP);
+					assertTrue(allocatedPerOperation(() -> { buf.clear(); ch.position(1); ch.position(0); ch.read(buf); }) < MAX_ALLOCATION_PER_OP);
+					assertTrue(allocatedPerOperation(() -> mnt.stat("alloc.dat")) < MAX_ALLOCATION_PER_OP);
+					assertTrue(allocatedPerOperation(() -> ch.position(pos.getAndIncrement() % 100)) < MAX_ALLOCATION_PER_OP);
+				}
+			}
+		});
+	}
+	
+	private static long allocatedPerOperation(IOOperation op) throws IOException {
+		var mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		var ids = Thread.getAllStackTraces().keySet().stream().
+				filter(t -> t == Thread.currentThread() || t.getName().startsWith("TNFSClientReader-")).
+				mapToLong(Thread::getId).toArray();
+		var least = Long.MAX_VALUE;
+		for(var round = 0 ; round < 3; round++) {
+			var before = Arrays.stream(mx.getThreadAllocatedBytes(ids)).sum();
+			for(int i = 0 ; i < ALLOCATION_OPS ; i++) {
+				op.run();
+			}
+			least = Math.min(least, (Arrays.stream(mx.getThreadAllocatedBytes(ids)).sum() - before) / ALLOCATION_OPS);
+		}
+		Lazy.LOG.info("Allocated {} bytes per operation", least);
+		return least;
+	}
+	
+	private static byte[] readAll(TNFSMount mnt, String path) throws IOException {
+		try(var in = mnt.open(path)) {
+			var buf = ByteBuffer.allocate((int)in.size());
+			assertEquals(buf.capacity(), readFully(in, buf));
+			assertEquals(-1, in.read(ByteBuffer.allocate(1)));
+			return buf.array();
+		}
+	}
+	
+	private static List<String> names(TNFSMount mnt, String path) throws IOException {
+		try(var dir = mnt.directory(path)) {
+			return dir.stream().map(e -> e.name()).filter(n -> !n.equals(".") && !n.equals("..")).sorted().toList();
+		}
+	}
+	
+	private static int readFully(ReadableByteChannel in, ByteBuffer buf) throws IOException {
+		var total = 0;
+		while(buf.hasRemaining()) {
+			var r = in.read(buf);
+			if(r == -1) {
+				break;
+			}
+			total += r;
+		}
+		return total;
+	}
+
 	protected void testPutAndGetFile(TNFSMount mnt, TNFSClient clnt, ITNFSServer svr, String filename, long size) throws Exception {
 		Lazy.LOG.info("Test put then get of {} bytes", size);
 		var buf = ByteBuffer.allocateDirect(clnt.size());
@@ -383,12 +1519,16 @@ public abstract class AbstractIntegrationTests {
 
 	protected void runMountTest(TestMountTask task) throws Exception {
 		runTest((clnt, svr) -> {
-			try(var mnt = clnt.mount("/").build()) {
+			try(var mnt = createMountBuilder(clnt).build()) {
 				task.run(mnt, clnt, svr);
 			}
 		});
 	}
 
+	protected AbstractBuilder<?> createMountBuilder(TNFSClient clnt) {
+		return clnt.mount("/");
+	}
+
 	protected ITNFSServer createServer(TNFSJServerBuilder bldr) {
 		ITNFSServer svr = bldr.
 				build();
@@ -25,6 +25,8 @@ import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeAll;
 
+import uk.co.bithatch.tnfs.client.AbstractTNFSMount.AbstractBuilder;
+import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.lib.Protocol;
 
 public class AuthenticatedTCPIntegrationTests extends TCPIntegrationTests {
@@ -36,17 +38,10 @@ public class AuthenticatedTCPIntegrationTests extends TCPIntegrationTests {
 	}
 
 	@Override
-	protected void runMountTest(TestMountTask task) throws Exception {
-		runTest((clnt, svr) -> {
-
-			var mntBldr = clnt.mount("/").
-					withUsername(username).
-					withPassword(password);	
-			
-			try(var mnt = mntBldr.build()) {
-				task.run(mnt, clnt, svr);
-			}
-		});
+	protected AbstractBuilder<?> createMountBuilder(TNFSClient clnt) {
+		return clnt.mount("/").
+				withUsername(username).
+				withPassword(password);
 	}
 
 	@Override
@@ -32,5 +32,22 @@ public class InMemoryFSTCPIntegrationTests2 extends TCPIntegrationTests {
 				withProtocol(Protocol.TCP).
 				withHost(InetAddress.getLoopbackAddress());
 	}
-	
+
+	@Override
+	public void testWriteAfterReadAhead() throws Exception {
+		/* The in-memory file system replaces a file that is opened for writing, so 
+		 * it cannot be read and written through the same handle */
+	}
+
+	@Override
+	public void testCopyRange() throws Exception {
+		/* The in-memory file system replaces a file that is opened for writing, so 
+		 * it cannot be copied to a position in an existing file */
+	}
+
+	@Override
+	public void testDelta() throws Exception {
+		/* Uploads are built by copying to positions in a new file, see testCopyRange() */
+	}
+
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.it;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.bithatch.tnfs.lib.TNFS;
+
+/**
+ * Runs the UDP tests through a proxy that drops a proportion of datagrams in
+ * both directions, so requests (and replies) must be sent again.
+ */
+public class LossyUDPIntegrationTests extends UDPIntegrationTests {
+	
+	private final static double LOSS = 0.001;
+	
+	@Test
+	public void testMaxInFlight() throws Exception {
+		/* With the most requests in flight, requests sent again are as far behind the newest 
+		 * as they may be, often across the wrap of sequence numbers. Should any be run again,
+		 * MKDIR or RMDIR will fail */
+		try(var svr = createServer(createServerBuilder());
+			var clnt = createClientBuilder(svr).withMaxInFlight(TNFS.MAX_IN_FLIGHT).build();
+			var mnt = createMountBuilder(clnt).build()) {
+			var async = mnt.async();
+			async.mkdirAsync("inflight").get();
+			
+			var futures = new ArrayList<CompletableFuture<Void>>();
+			for(var i = 0; i < 3000; i++) {
+				futures.add(async.mkdirAsync("inflight/" + i));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+			
+			futures.clear();
+			for(var i = 0; i < 3000; i++) {
+				futures.add(async.rmdirAsync("inflight/" + i));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+			
+			async.rmdirAsync("inflight").get();
+		}
+	}
+
+	@Override
+	protected ITNFSServer createServer(TNFSJServerBuilder bldr) {
+		var svr = super.createServer(bldr);
+		try {
+			var proxy = new LossyProxy(svr);
+			var t = new Thread(proxy, "LossyProxy");
+			t.setDaemon(true);
+			t.start();
+			return proxy;
+		}
+		catch(IOException ioe) {
+			svr.close();
+			throw new UncheckedIOException(ioe);
+		}
+	}
+	
+	private final static class LossyProxy implements ITNFSServer {
+		private final ITNFSServer server;
+		private final DatagramSocket socket;
+		private final SocketAddress serverAddress;
+		private final Random random = new Random(1);
+		private SocketAddress clientAddress;
+		
+		private LossyProxy(ITNFSServer server) throws IOException {
+			this.server = server;
+			socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port());
+		}
+
+		@Override
+		public void run() {
+			var buf = new byte[65535];
+			var pkt = new DatagramPacket(buf, buf.length);
+			try {
+				while(true) {
+					pkt.setData(buf);
+					socket.receive(pkt);
+					SocketAddress to;
+					if(pkt.getSocketAddress().equals(serverAddress)) {
+						to = clientAddress;
+					}
+					else {
+						to = serverAddress;
+						clientAddress = pkt.getSocketAddress();
+					}
+					if(to != null && random.nextDouble() >= LOSS) {
+						socket.send(new DatagramPacket(buf, pkt.getLength(), to));
+					}
+				}
+			}
+			catch(IOException ioe) {
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			}
+			finally {
+				server.close();
+			}
+		}
+
+		@Override
+		public int port() {
+			return socket.getLocalPort();
+		}
+	}
+}
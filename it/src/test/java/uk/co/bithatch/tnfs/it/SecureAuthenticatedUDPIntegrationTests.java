@@ -20,22 +20,17 @@
  */
 package uk.co.bithatch.tnfs.it;
 
+import uk.co.bithatch.tnfs.client.AbstractTNFSMount.AbstractBuilder;
+import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.extensions.SecureMount;
 
 public class SecureAuthenticatedUDPIntegrationTests extends AuthenticatedUDPIntegrationTests {
 	
 	@Override
-	protected void runMountTest(TestMountTask task) throws Exception {
-		runTest((clnt, svr) -> {
-
-			var mntBldr = clnt.extension(SecureMount.class).mount("/").
-					withUsername(username).
-					withPassword(password);	
-			
-			try(var mnt = mntBldr.build()) {
-				task.run(mnt, clnt, svr);
-			}
-		});
+	protected AbstractBuilder<?> createMountBuilder(TNFSClient clnt) {
+		return clnt.extension(SecureMount.class).mount("/").
+				withUsername(username).
+				withPassword(password);
 	}
 
 
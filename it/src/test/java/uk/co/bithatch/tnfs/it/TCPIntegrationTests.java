@@ -20,8 +20,29 @@
  */
 package uk.co.bithatch.tnfs.it;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.TNFSClient.Builder;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.HeaderOnlyResult;
+import uk.co.bithatch.tnfs.lib.Command.MountResult;
+import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.Protocol;
+import uk.co.bithatch.tnfs.lib.ResultCode;
 
 public class TCPIntegrationTests extends AbstractIntegrationTests {
 
@@ -32,6 +53,70 @@ public class TCPIntegrationTests extends AbstractIntegrationTests {
 		return bldr;
 	}
 
+	@Test
+	public void testAgain() throws Exception {
+		var mkdirs = new AtomicInteger();
+		try(var ssc = ServerSocketChannel.open()) {
+			ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			
+			/* A server that is busy the first time it is asked to make a directory */
+			var svr = new Thread(() -> {
+				try(var sc = ssc.accept()) {
+					var in = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+					var out = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+					while(true) {
+						var msg = receive(sc, in);
+						Command.Result res;
+						if(msg.command() == Command.MOUNT) {
+							res = new MountResult(ResultCode.SUCCESS, Duration.ofMillis(10));
+						}
+						else if(msg.command() == Command.MKDIR && mkdirs.incrementAndGet() == 1) {
+							res = new HeaderOnlyResult(ResultCode.AGAIN);
+						}
+						else {
+							res = new HeaderOnlyResult(ResultCode.SUCCESS);
+						}
+						out.clear();
+						Message.of(msg.seq(), 1, msg.command(), res).encodeResult(out);
+						out.flip();
+						while(out.hasRemaining()) {
+							sc.write(out);
+						}
+					}
+				}
+				catch(IOException ioe) {
+				}
+			}, "AgainServer");
+			svr.start();
+			
+			try(var clnt = new TNFSClient.Builder().
+					withHost(InetAddress.getLoopbackAddress()).
+					withPort(((InetSocketAddress)ssc.getLocalAddress()).getPort()).
+					withProtocol(Protocol.TCP).
+					withTimeout(Duration.ofSeconds(10)).
+					build()) {
+				try(var mnt = clnt.mount("/").build()) {
+					mnt.mkdir("busy");
+				}
+			}
+		}
+		assertEquals(2, mkdirs.get());
+	}
+	
+	private static Message receive(SocketChannel sc, ByteBuffer in) throws IOException {
+		int size;
+		while((size = Message.frameSize(in.flip(), false)) == -1) {
+			in.compact();
+			if(sc.read(in) == -1) {
+				throw new EOFException();
+			}
+		}
+		var msg = Message.decode(in.slice(in.position(), size).order(ByteOrder.LITTLE_ENDIAN));
+		in.position(in.position() + size);
+		in.compact();
+		return msg;
+	}
+
 	@Override
 	protected TNFSJServerBuilder createServerBuilder() {
 		var svrbldr = super.createServerBuilder();
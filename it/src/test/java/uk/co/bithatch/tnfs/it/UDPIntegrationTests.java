@@ -20,8 +20,24 @@
  */
 package uk.co.bithatch.tnfs.it;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
 import uk.co.bithatch.tnfs.client.TNFSClient.Builder;
+import uk.co.bithatch.tnfs.lib.Command;
+import uk.co.bithatch.tnfs.lib.Command.Result;
+import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.Protocol;
+import uk.co.bithatch.tnfs.lib.ResultCode;
 
 public class UDPIntegrationTests extends AbstractIntegrationTests {
 
@@ -32,6 +48,54 @@ public class UDPIntegrationTests extends AbstractIntegrationTests {
 		return bldr;
 	}
 
+	@Test
+	public void testAllSequenceNumbers() throws Exception {
+		/* Other clients use every sequence number, not just those the Java client does */
+		try(var svr = new TNFSJServerBuilder().
+				withFileMounts().
+				withProtocol(Protocol.UDP).
+				withHost(InetAddress.getLoopbackAddress()).
+				build();
+			var socket = new DatagramSocket()) {
+			
+			new Thread(svr, "TNFSServer").start();
+			socket.setSoTimeout(5000);
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), svr.port()));
+			
+			var mounted = send(socket, Message.of(0, 0, Command.MOUNT, new Command.Mount("/", Optional.empty(), Optional.empty())));
+			assertEquals(ResultCode.SUCCESS, mounted.<Result>resultPayload().result());
+			var session = mounted.connectionId();
+			
+			for(var seq = 1; seq < 255; seq++) {
+				var reply = send(socket, Message.of(seq, session, Command.STAT, new Command.Stat("/")));
+				assertEquals(seq, reply.seq());
+				assertEquals(ResultCode.SUCCESS, reply.<Result>resultPayload().result());
+			}
+			
+			/* Sent again, so the first reply must be repeated rather than the directory made twice */
+			var mkdir = Message.of(255, session, Command.MKDIR, new Command.MkDir("seq255"));
+			assertEquals(ResultCode.SUCCESS, send(socket, mkdir).<Result>resultPayload().result());
+			var again = send(socket, mkdir);
+			assertEquals(255, again.seq());
+			assertEquals(ResultCode.SUCCESS, again.<Result>resultPayload().result());
+			
+			/* And wraps to zero */
+			var rmdir = send(socket, Message.of(0, session, Command.RMDIR, new Command.RmDir("seq255")));
+			assertEquals(0, rmdir.seq());
+			assertEquals(ResultCode.SUCCESS, rmdir.<Result>resultPayload().result());
+		}
+	}
+	
+	private static Message send(DatagramSocket socket, Message message) throws Exception {
+		var buf = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+		message.encode(buf);
+		socket.send(new DatagramPacket(buf.array(), buf.position()));
+		
+		var pkt = new DatagramPacket(new byte[1024], 1024);
+		socket.receive(pkt);
+		return Message.decode(ByteBuffer.wrap(pkt.getData(), 0, pkt.getLength()).order(ByteOrder.LITTLE_ENDIAN));
+	}
+
 	@Override
 	protected TNFSJServerBuilder createServerBuilder() {
 		var svrbldr = super.createServerBuilder();
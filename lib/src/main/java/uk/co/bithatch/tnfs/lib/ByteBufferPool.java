@@ -22,7 +22,6 @@ package uk.co.bithatch.tnfs.lib;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.locks.ReentrantLock;
@@ -163,9 +162,13 @@ public final class ByteBufferPool {
         lock.lock();
         try {
             if (buffers.size() < maxEntries) {
-                buffers.add(backing);
-                // Keep list roughly ordered small->large to improve future best-fit scans.
-                buffers.sort(Comparator.comparingInt(ByteBuffer::capacity));
+                // Keep list ordered small->large to improve future best-fit scans. Insert 
+                // in place rather than sorting, as this happens for every message.
+                var idx = 0;
+                while (idx < buffers.size() && buffers.get(idx).capacity() <= backing.capacity()) {
+                    idx++;
+                }
+                buffers.add(idx, backing);
             } // else: drop
         } finally {
             lock.unlock();
@@ -504,10 +504,16 @@ public class Command<CODEC extends Encodeable, RESULT extends Command.Result> {
 	
 	public record TellDirResult(ResultCode result, long position) implements Result  {
 		public static TellDirResult decode(ByteBuffer buf) {
-			return new TellDirResult(
-				Result.decodeResult(buf), 
-				Integer.toUnsignedLong(buf.getInt())
-			);
+			var res = Result.decodeResult(buf);
+			if(res.isError()) {
+				return new TellDirResult(res, 0);
+			}
+			else {
+				return new TellDirResult(
+					res, 
+					Integer.toUnsignedLong(buf.getInt())
+				);
+			}
 		}
 
 		@Override
@@ -546,7 +552,13 @@ public class Command<CODEC extends Encodeable, RESULT extends Command.Result> {
 	
 	public record ReadDirResult(ResultCode result, String entry) implements Result  {
 		public static ReadDirResult decode(ByteBuffer buf) {
-			return new ReadDirResult(Result.decodeResult(buf), Encodeable.cString(buf));
+			var res = Result.decodeResult(buf);
+			if(res.isError()) {
+				return new ReadDirResult(res, "");
+			}
+			else {
+				return new ReadDirResult(res, Encodeable.cString(buf));
+			}
 		}
 
 		@Override
@@ -699,7 +711,9 @@ public class Command<CODEC extends Encodeable, RESULT extends Command.Result> {
 		@Override
 		public ByteBuffer encodeResult(ByteBuffer buf) {
 			version.encode(buf);
-			buf.putShort((short)retryTime.toMillis());
+			if(result.isOk()) {
+				buf.putShort((short)retryTime.toMillis());
+			}
 			return buf;
 		}
 	}
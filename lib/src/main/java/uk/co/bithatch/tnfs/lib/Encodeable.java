@@ -22,6 +22,7 @@ package uk.co.bithatch.tnfs.lib;
 
 import java.lang.reflect.Array;
 import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -42,12 +43,21 @@ public interface Encodeable {
 	ByteBuffer encode(ByteBuffer buf);
 	
 	static String cString(ByteBuffer data) {
-		var nextString = data.slice();
+		var start = data.position();
 		int i;
 		for (i = 0; data.hasRemaining() && data.get() != 0x00; i++) {
 		}
-		nextString.limit(i);
-		return Default.ENCODING.decode(nextString).toString();
+		if(i == 0) {
+			return "";
+		}
+		else if(data.hasArray()) {
+			return new String(data.array(), data.arrayOffset() + start, i, Default.ENCODING);
+		}
+		else {
+			var bytes = new byte[i];
+			data.get(start, bytes);
+			return new String(bytes, Default.ENCODING);
+		}
 	}
 
 	static String paddedCString(ByteBuffer data, int len) {
@@ -84,8 +94,14 @@ public interface Encodeable {
 	}
 	
 	static ByteBuffer shortLPByteBuffer(ByteBuffer buf) {
-		var bbuf = ByteBuffer.allocateDirect(buf.getShort());
-		bbuf.put(0, buf, buf.position(), Math.min(bbuf.remaining(), buf.remaining()));
+		var len = Short.toUnsignedInt(buf.getShort());
+		if(len > buf.remaining()) {
+			/* Lets a stream tell a message whose data has not all arrived yet */
+			throw new BufferUnderflowException();
+		}
+		var bbuf = ByteBuffer.allocateDirect(len);
+		bbuf.put(0, buf, buf.position(), len);
+		buf.position(buf.position() + len);
 		return bbuf;
 	}
 
@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2025 Bithatch (brett@bithatch.co.uk)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package uk.co.bithatch.tnfs.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits a TNFS byte stream (i.e. TCP) back into messages. TNFS messages carry no 
+ * length, so a single read may return part of a message, or several messages at once.
+ * Each complete message is passed to a {@link FrameHandler}, and any partial message
+ * is kept until the rest arrives.
+ * <p>
+ * Packet processors (for example, those that decrypt) may need to be run on a
+ * message before its length can be known. These are run exactly once on each
+ * message, and any minimum (padded) message size they require is respected.
+ * <p>
+ * Instances are not thread safe, and should be used by the single thread that
+ * reads the channel.
+ *
+ * @param <S> type of session or mount that owns a connection ID
+ */
+public final class FrameDecoder<S> {
+	
+	private final static Logger LOG = LoggerFactory.getLogger(FrameDecoder.class);
+	
+	/**
+	 * Finds the session (or mount) for the connection ID at the current position
+	 * of a buffer.
+	 *
+	 * @param <S> type of session
+	 */
+	@FunctionalInterface
+	public interface SessionLocator<S> {
+		/**
+		 * Get the session for the message at the buffers position.
+		 * 
+		 * @param buffer buffer
+		 * @return session or <code>null</code> if there is none
+		 */
+		S session(ByteBuffer buffer);
+	}
+	
+	/**
+	 * Runs any packet processors for a session.
+	 *
+	 * @param <S> type of session
+	 */
+	public interface FrameProcessor<S> {
+		/**
+		 * Process the message at the start of the buffer in place.
+		 * 
+		 * @param session session
+		 * @param frame buffer containing the message and anything following it
+		 */
+		void process(S session, ByteBuffer frame);
+		
+		/**
+		 * Get the minimum size any message for this session will take in the stream.
+		 * 
+		 * @param session session
+		 * @return minimum size
+		 */
+		int minimumPacketSize(S session);
+		
+		/**
+		 * Get the size in the stream of the message at the start of the buffer, if 
+		 * processing will change its size (for example, if it is compressed). Such 
+		 * messages cannot be processed in place, so are copied before processing.
+		 * 
+		 * @param session session
+		 * @param frame buffer containing the message and anything following it
+		 * @return size, <code>0</code> if processing will not change the size, or <code>-1</code> if more of the stream is needed
+		 */
+		default int packetSize(S session, ByteBuffer frame) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Receives each complete message.
+	 *
+	 * @param <S> type of session
+	 */
+	@FunctionalInterface
+	public interface FrameHandler<S> {
+		/**
+		 * Handle a complete message. The buffer is only valid until this method
+		 * returns.
+		 * 
+		 * @param session session or <code>null</code> if none
+		 * @param frame buffer containing exactly one message 
+		 * @throws IOException on error
+		 */
+		void frame(S session, ByteBuffer frame) throws IOException;
+	}
+	
+	private final ByteBuffer buffer;
+	private final boolean result;
+	private final SessionLocator<S> locator;
+	private final FrameProcessor<S> processor;
+	private final FrameHandler<S> handler;
+	
+	private boolean processed;
+	private ByteBuffer resized;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param buffer buffer to accumulate the stream in, must be as large as the largest message
+	 * @param result whether the stream contains results (client side) or commands (server side)
+	 * @param locator finds the session for a message
+	 * @param processor runs packet processors for a session
+	 * @param handler receives each complete message
+	 */
+	public FrameDecoder(ByteBuffer buffer, boolean result, SessionLocator<S> locator, FrameProcessor<S> processor, FrameHandler<S> handler) {
+		this.buffer = buffer;
+		this.result = result;
+		this.locator = locator;
+		this.processor = processor;
+		this.handler = handler;
+		
+		buffer.clear();
+	}
+	
+	/**
+	 * Read everything currently available from a non-blocking channel, passing
+	 * on every message that is complete. When used with a blocking channel, this
+	 * will return after the first read. 
+	 * 
+	 * @param channel channel
+	 * @return number of bytes read or -1 if end of stream was reached
+	 * @throws IOException on error
+	 */
+	public int read(ReadableByteChannel channel) throws IOException {
+		var blocking = !(channel instanceof SelectableChannel sc) || sc.isBlocking();
+		var total = 0;
+		int rd;
+		while((rd = channel.read(buffer)) > 0) {
+			total += rd;
+			decode();
+			if(blocking) {
+				break;
+			}
+		}
+		return rd == -1 ? -1 : total;
+	}
+	
+	/**
+	 * Pass on all complete messages that have been added to the buffer, leaving 
+	 * the buffer ready for more of the stream to be added.
+	 * 
+	 * @throws IOException on error
+	 */
+	private void decode() throws IOException {
+		buffer.flip();
+		
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("<: [{}] {}", buffer.remaining(), Debug.dump(buffer));
+		}
+		
+		try {
+			while(buffer.remaining() >= Message.HEADER_SIZE) {
+				var start = buffer.position();
+				var session = locator.session(buffer);
+				var min = session == null ? 0 : processor.minimumPacketSize(session);
+				if(buffer.remaining() < min) {
+					break;
+				}
+				
+				var frame = Util.sliceAndOrder(buffer, start, buffer.remaining());
+				if(session != null && !processed) {
+					var wire = processor.packetSize(session, frame);
+					if(wire == -1 || wire > frame.remaining()) {
+						break;
+					}
+					else if(wire > 0) {
+						if(resized == null) {
+							resized = ByteBuffer.allocate(buffer.capacity()).order(buffer.order());
+						}
+						resized.clear();
+						resized.put(frame.limit(wire));
+						resized.flip();
+						processor.process(session, resized);
+						buffer.position(start + wire);
+						handler.frame(session, resized);
+						continue;
+					}
+					
+					processor.process(session, frame);
+					processed = true;
+				}
+				
+				var len = Message.frameSize(frame, result);
+				if(len == -1) {
+					break;
+				}
+				len = Math.max(len, min);
+				if(len > frame.capacity()) {
+					break;
+				}
+				
+				frame.limit(len);
+				buffer.position(start + len);
+				processed = false;
+				handler.frame(session, frame);
+			}
+			
+			if(buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+				throw new IOException("Message exceeds maximum size of " + buffer.capacity() + " bytes.");
+			}
+		}
+		finally {
+			buffer.compact();
+		}
+	}
+}
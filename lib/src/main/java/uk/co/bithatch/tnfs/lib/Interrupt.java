@@ -23,10 +23,26 @@ package uk.co.bithatch.tnfs.lib;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.time.Duration;
-import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Run blocking I/O with a timeout. The task runs on the calling thread, which is 
+ * interrupted if the timeout is reached. A single shared timer thread is used for
+ * all deadlines, so no thread is created per call.
+ * <p>
+ * Note that interrupting a thread that is blocked in an interruptible channel will
+ * close that channel.
+ */
 public class Interrupt {
 	
+	private final static ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		var t = new Thread(r, "InterruptTimer");
+		t.setDaemon(true);
+		return t;
+	});
+	
 	@FunctionalInterface
 	public interface IoTask {
 		void run() throws IOException;
@@ -38,67 +54,47 @@ public class Interrupt {
 	}
 
 	public static void ioInterrupt(IoTask task, Duration timeout) throws IOException {
-		var exc = new ArrayList<Exception>();
-		var t = new Thread(() -> {
-			try {
-				task.run();
-			} catch (Exception e) {
-				exc.add(e);
-			}
-		}, "InterruptableTask");
+		ioCall(() -> {
+			task.run();
+			return null;
+		}, timeout);
+	}
+	
+	public static <T> T ioCall(IoCall<T> task, Duration timeout) throws IOException {
+		var deadline = new Deadline(Thread.currentThread());
+		var future = TIMER.schedule(deadline::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
 		try {
-			t.start();
-			t.join(timeout.toMillis());
-			if(exc.isEmpty())
-				return;
-			else {
-				var ex = exc.get(0);
-				if(ex instanceof IOException ioe) {
-					throw ioe;
-				}
-				else if(ex instanceof RuntimeException re) {
-					throw re;
-				}
-				else {
-					throw new IllegalStateException("Unexpected exception.", ex);
-				}
+			return task.call();
+		}
+		finally {
+			future.cancel(false);
+			if(deadline.done()) {
+				/* The timer won, clear the interrupt it delivered */
+				Thread.interrupted();
+				throw new InterruptedIOException();
 			}
-		} catch (InterruptedException e) {
 		}
-		t.interrupt();
-		throw new InterruptedIOException();
 	}
 	
-	public static <T> T ioCall(IoCall<T> task, Duration timeout) throws IOException {
-		var exc = new ArrayList<Exception>();
-		var rslt = new ArrayList<T>();
-		var t = new Thread(() -> {
-			try {
-				rslt.add(task.call());
-			} catch (Exception e) {
-				exc.add(e);
-			}
-		}, "InterruptableTask");
-		try {
-			t.start();
-			t.join(timeout.toMillis());
-			if(exc.isEmpty())
-				return rslt.get(0);
-			else {
-				var ex = exc.get(0);
-				if(ex instanceof IOException ioe) {
-					throw ioe;
-				}
-				else if(ex instanceof RuntimeException re) {
-					throw re;
-				}
-				else {
-					throw new IllegalStateException("Unexpected exception.", ex);
-				}
+	private final static class Deadline {
+		private final Thread thread;
+		private boolean finished;
+		private boolean expired;
+		
+		private Deadline(Thread thread) {
+			this.thread = thread;
+		}
+		
+		private synchronized void expire() {
+			if(!finished) {
+				expired = true;
+				thread.interrupt();
 			}
-		} catch (InterruptedException e) {
 		}
-		t.interrupt();
-		throw new InterruptedIOException();
+		
+		private synchronized boolean done() {
+			finished = true;
+			return expired;
+		}
 	}
 }
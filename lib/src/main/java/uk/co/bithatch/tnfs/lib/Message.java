@@ -20,12 +20,18 @@
  */
 package uk.co.bithatch.tnfs.lib;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.Optional;
 
+import uk.co.bithatch.tnfs.lib.Command.ReadResult;
+import uk.co.bithatch.tnfs.lib.Command.WriteResult;
+
 public final class Message {
 
 	public static final int HEADER_SIZE = 4;
+	
+	private final static Object NOTHING = new Object();
 
 	public final static class Builder {
 		private int connectionId;
@@ -38,10 +44,6 @@ public final class Message {
 			seq = -1;
 		}
 		
-		private Builder(int seq) {
-			this.seq = seq;
-		}
-		
 		public Builder withSessionId(int connectionId) {
 			this.connectionId = connectionId;
 			return this;
@@ -71,36 +73,26 @@ public final class Message {
 			return new Message(this);
 		}
 
-		private Builder remainingAsPayload(ByteBuffer buffer) {
-			var buf = buffer.isDirect() ? ByteBuffer.allocateDirect(buffer.remaining()) : ByteBuffer.allocate(buffer.remaining());
-			buf.order(buffer.order());
-			buf.put(buffer);
-			buf.flip();
-			return withPayload(buf);
-		}
-
 	}
 
+	/* Payload and encodeable are nullable rather than optional, as a message is
+	 * created for every request and reply */
 	private final Command<? extends Encodeable, ?> command;
-	private final Optional<ByteBuffer> payload;
-	private final Optional<Encodeable> encodeable;
+	private final ByteBuffer payload;
+	private final Encodeable encodeable;
 	private final int connectionId;
 	private final int seq;
 
 	private Message(Builder bldr) {
-		this.command = bldr.command;
-		this.seq = bldr.seq;
-		this.payload = bldr.payload;
-		this.encodeable = bldr.encodeable;
-		this.connectionId = bldr.connectionId;
+		this(bldr.command, bldr.connectionId, bldr.seq, bldr.payload.orElse(null), bldr.encodeable.orElse(null));
 	}
 	
-	Message(Message message, int seq) {
-		this.command = message.command;
-		this.payload = message.payload;
-		this.encodeable = message.encodeable;
-		this.connectionId = message.connectionId;
+	private Message(Command<? extends Encodeable, ?> command, int connectionId, int seq, ByteBuffer payload, Encodeable encodeable) {
+		this.command = command;
+		this.connectionId = connectionId;
 		this.seq = seq;
+		this.payload = payload;
+		this.encodeable = encodeable;
 	}
 
 	public int connectionId() {
@@ -114,7 +106,7 @@ public final class Message {
 	}
 
 	public int size() {
-		return HEADER_SIZE + payload.map(ByteBuffer::remaining).orElse(0);
+		return HEADER_SIZE + (payload == null ? 0 : payload.remaining());
 	}
 	
 	public Command<?, ?> command() {
@@ -123,12 +115,15 @@ public final class Message {
 
 	@SuppressWarnings("unchecked")
 	public <E extends Encodeable> E payload() {
-		return (E)encodeable.orElseGet(() -> command.decode(payload.orElse(null)));
+		return (E)(encodeable == null ? command.decode(payload) : encodeable);
 	}
 
 	@SuppressWarnings("unchecked")
 	public <R extends Command.Result> R resultPayload() {
-		return (R) command.decodeResult(payload.orElseThrow(() -> new IllegalStateException("Result must have payload")));
+		if(payload == null) {
+			throw new IllegalStateException("Result must have payload");
+		}
+		return (R) command.decodeResult(payload);
 	}
 
 	public <E extends Encodeable> E payload(Class<E> clz) {
@@ -140,28 +135,128 @@ public final class Message {
 		return "Message [command=" + command + ", connectionId=" + connectionId + ", seq=" + seq + "]";
 	}
 
+	/**
+	 * Get the size of the message at the current position of a buffer that holds part
+	 * of a stream, such as one read from a TCP connection. TNFS messages carry no length, 
+	 * so the payload is decoded to find where it ends. The buffer may hold an incomplete 
+	 * message, or several messages. Its position is not changed.
+	 * 
+	 * @param buffer buffer
+	 * @param result <code>true</code> if the message is a result, <code>false</code> for a request
+	 * @return size of message including the header, or -1 if the buffer does not yet hold all of it
+	 */
+	public static int frameSize(ByteBuffer buffer, boolean result) {
+		var available = buffer.remaining() - HEADER_SIZE;
+		if(available < 0) {
+			return -1;
+		}
+		
+		var command = Command.get(buffer.get(buffer.position() + 3));
+		var payload = Util.sliceAndOrder(buffer, buffer.position() + HEADER_SIZE, available);
+		int size;
+		
+		/* The most common messages have simple layouts, and the general case would copy their data */
+		if(!result && command == Command.WRITE) {
+			size = available < 3 ? -1 : 3 + Short.toUnsignedInt(payload.getShort(1));
+		}
+		else if(!result && command == Command.READ) {
+			size = 3;
+		}
+		else if(result && command == Command.READ && available > 0 && payload.get(0) == 0) {
+			size = available < 3 ? -1 : 3 + Short.toUnsignedInt(payload.getShort(1));
+		}
+		else if(result && command == Command.LSEEK && available > 0) {
+			/* The position is optional when decoding, so is ambiguous in a stream */
+			size = payload.get(0) == 0 ? 5 : 1;
+		}
+		else if(result && command == Command.STAT && available > 0) {
+			/* Fixed fields then two strings, so the strings can be found without decoding */
+			size = payload.get(0) == 0 ? stringsEnd(payload, 23, 2) : 1;
+		}
+		else {
+			size = payloadSize(command, payload, result);
+		}
+		
+		return size == -1 || size > available ? -1 : HEADER_SIZE + size;
+	}
+
+	private static int stringsEnd(ByteBuffer payload, int offset, int count) {
+		for(var i = offset; i < payload.limit(); i++) {
+			if(payload.get(i) == 0 && --count == 0) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	private static int payloadSize(Command<?, ?> command, ByteBuffer payload, boolean result) {
+		var available = payload.limit();
+		payload.position(0);
+		var decoded = tryDecode(command, payload, result);
+		var consumed = decoded == null ? -1 : payload.position();
+		if(consumed == -1 || consumed < available || decoded instanceof ReadResult || decoded instanceof WriteResult) {
+			/* Read and write results (including those of extensions) end in a length or data, never a string */
+			return consumed;
+		}
+		else {
+			/* Everything decoded, so either the message is complete, or it ends in a string that
+			 * is not yet terminated (possibly with none of the string arrived yet). Only the latter 
+			 * will consume one more byte that can't be a string terminator */
+			var probe = ByteBuffer.allocate(available + 1).order(payload.order());
+			probe.put(0, payload, 0, available).put(available, (byte)0xff);
+			return decodedSize(command, probe, result) == available ? consumed : -1;
+		}
+	}
+	
+	private static int decodedSize(Command<?, ?> command, ByteBuffer payload, boolean result) {
+		payload.position(0);
+		return tryDecode(command, payload, result) == null ? -1 : payload.position();
+	}
+	
+	private static Object tryDecode(Command<?, ?> command, ByteBuffer payload, boolean result) {
+		try {
+			var decoded = result ? command.decodeResult(payload) : command.decode(payload);
+			return decoded == null ? NOTHING : decoded;
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
 	public static Message decode(ByteBuffer buffer) {
 		var sessionId = Short.toUnsignedInt(buffer.getShort());
-		return new Builder(Byte.toUnsignedInt(buffer.get())).
-				withSessionId(sessionId).
-				withCommand(Command.get(buffer.get())).
-				remainingAsPayload(buffer).
-				build();
+		var seq = Byte.toUnsignedInt(buffer.get());
+		var command = Command.get(buffer.get());
+		var buf = buffer.isDirect() ? ByteBuffer.allocateDirect(buffer.remaining()) : ByteBuffer.allocate(buffer.remaining());
+		buf.order(buffer.order());
+		buf.put(buffer);
+		buf.flip();
+		return new Message(command, sessionId, seq, buf, null);
 	}
 
-	@SuppressWarnings("unchecked")
 	public ByteBuffer encode(ByteBuffer buffer) {
+		return encode(buffer, seq);
+	}
+
+	/**
+	 * Encode this message with a different sequence number, without creating a new 
+	 * message as {@link #withSeq(int)} would.
+	 * 
+	 * @param buffer buffer
+	 * @param seq sequence number
+	 * @return buffer
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteBuffer encode(ByteBuffer buffer, int seq) {
 		buffer.putShort((short)connectionId);
 		buffer.put((byte)seq);
 		buffer.put(command.code());		
-		payload.ifPresentOrElse(pl -> {
-			buffer.put(pl); 
-		}, () -> {
-			encodeable.ifPresent(enc -> {
-				((Command<Encodeable, ?>)command).encode(enc, buffer);
-				
-			});
-		}); 
+		if(payload != null) {
+			buffer.put(payload); 
+		}
+		else if(encodeable != null) {
+			((Command<Encodeable, ?>)command).encode(encodeable, buffer);
+		}
 		return buffer;
 	}
 
@@ -169,21 +264,17 @@ public final class Message {
 		buffer.putShort((short)connectionId);
 		buffer.put((byte)seq);
 		buffer.put(command.code());		
-		payload.ifPresentOrElse(pl -> {
-			buffer.put(pl); 
-		}, () -> {
-			encodeable.ifPresent(enc -> {
-				enc.encode(buffer);
-			});
-		}); 
+		if(payload != null) {
+			buffer.put(payload); 
+		}
+		else if(encodeable != null) {
+			encodeable.encode(buffer);
+		}
 		return buffer;
 	}
 
 	public static <E extends Encodeable> Message of(Command<?, ?> op, E enc) {
-		return new Builder().
-				withCommand(op).
-				withPayload(enc).
-				build();
+		return of(-1, 0, op, enc);
 	}
 	
 	public static <E extends Encodeable> Message of(int sessionId, Command<?, ?> op, E enc) {
@@ -191,15 +282,11 @@ public final class Message {
 	}
 
 	public static <E extends Encodeable> Message of(int seq, int sessionId, Command<?, ?> op, E enc) {
-		return new Builder(seq).
-				withCommand(op).
-				withSessionId(sessionId).
-				withPayload(enc).
-				build();
+		return new Message(op, sessionId, seq, null, enc);
 	}
 
 	public Message withSeq(int nextSeq) {
-		return new Message(this, nextSeq);
+		return new Message(command, connectionId, nextSeq, payload, encodeable);
 	}
 	
 
@@ -38,6 +38,8 @@ public enum ModeFlag implements BitSet {
 	
 	IXOTH, IWOTH, IROTH, IXGRP, IWGRP, IRGRP, IXUSR, IWUSR, IRUSR, IRWXU, ISVTX, ISGID, ISUID, IFIFO, IFCHR, IFDIR, IFBLK, IFREG, IFLNK, IFSOCK, IFMT;
 	
+	private final static ModeFlag[] VALUES = values();
+	
 	public static ModeFlag[] DEFAULT_FLAGS = {
 		IRUSR, IXUSR, IRGRP, IXGRP
 	};
@@ -269,7 +271,21 @@ public enum ModeFlag implements BitSet {
 	}
 
 	public static ModeFlag[] decode(int val) {
-		return BitSet.decode(val, ModeFlag::values, new ModeFlag[0]);
+		/* Decoded for every STAT, so count first and fill an array of the right size */
+		var n = 0;
+		for(var t : VALUES) {
+			if((val & t.value()) != 0) {
+				n++;
+			}
+		}
+		var flags = new ModeFlag[n];
+		n = 0;
+		for(var t : VALUES) {
+			if((val & t.value()) != 0) {
+				flags[n++] = t;
+			}
+		}
+		return flags;
 	}
 
 	public static DirEntryFlag[] toDirEntryFlags(String name, ModeFlag... mode) {
@@ -28,6 +28,9 @@ public final class TNFS {
 	public static final int DEFAULT_TCP_MESSAGE_SIZE = 532;
 	public static final int MAX_TCP_MESSAGE_SIZE = 65535;
 	public static final int LARGE_MESSAGE_SIZE = 32768;
+	/* The most packet processors (such as encryption) may add to a packet, so buffers
+	 * must allow for this much more than the message size */
+	public static final int MAX_PACKET_OVERHEAD = 32;
 	
 	public static final Version PROTOCOL_VERSION = Version.fromString("1.2");
 	public static final Version READ_DIRX_REQUIRES_VERSION = Version.fromString("1.2");
@@ -37,5 +40,14 @@ public final class TNFS {
 	public static final int DEFAULT_REPLY_TIMEOUT_SECONDS = 5;
 	public static final int DEFAULT_TIMEOUT_SECONDS = 5;
 	public static final int DEFAULT_CLIENT_BUFFERS = 10;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+	public static final int MAX_SEQ = 250;
+	/* Must be less than half the number of sequence numbers, so that servers can tell
+	 * requests that are sent again from new ones */
+	public static final int MAX_IN_FLIGHT = 120;
+	public static final int DEFAULT_READ_AHEAD = 8;
+	public static final int DEFAULT_WRITE_BEHIND = 8;
+	public static final int DEFAULT_DOWNLOAD_STREAMS = 4;
+	public static final int DEFAULT_DOWNLOAD_CHUNK_SIZE = 1048576;
 	public static final int DEFAULT_SERVER_BUFFERS = 100;
 }
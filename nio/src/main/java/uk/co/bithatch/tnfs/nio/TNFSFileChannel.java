@@ -20,6 +20,7 @@
  */
 package uk.co.bithatch.tnfs.nio;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
@@ -31,6 +32,8 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import uk.co.bithatch.tnfs.client.TNFSChannel;
+
 
 public final class TNFSFileChannel extends FileChannel {
 	private final boolean deleteOnClose;
@@ -45,7 +48,13 @@ public final class TNFSFileChannel extends FileChannel {
 
 	@Override
 	public void force(boolean metaData) throws IOException {
-		// Noop?
+		if(handle instanceof Flushable flushable) {
+			try {
+				flushable.flush();
+			} catch (Exception e) {
+				throw TNFSFileSystemProvider.translateException(e);
+			}
+		}
 	}
 
 	@Override
@@ -80,6 +89,13 @@ public final class TNFSFileChannel extends FileChannel {
 
 	@Override
 	public int read(ByteBuffer dst, long position) throws IOException {
+		if(handle instanceof TNFSChannel tnfsChannel) {
+			try {
+				return tnfsChannel.read(dst, position);
+			} catch (Exception e) {
+				throw TNFSFileSystemProvider.translateException(e);
+			}
+		}
 		position(position);
 		return read(dst);
 	}
@@ -207,6 +223,13 @@ public final class TNFSFileChannel extends FileChannel {
 
 	@Override
 	public int write(ByteBuffer src, long position) throws IOException {
+		if(handle instanceof TNFSChannel tnfsChannel) {
+			try {
+				return tnfsChannel.write(src, position);
+			} catch (Exception e) {
+				throw TNFSFileSystemProvider.translateException(e);
+			}
+		}
 		position(position);
 		return write(src);
 	}
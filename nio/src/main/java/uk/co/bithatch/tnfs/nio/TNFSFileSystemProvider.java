@@ -57,6 +57,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
+import uk.co.bithatch.tnfs.client.BlockCache;
 import uk.co.bithatch.tnfs.client.TNFSClient;
 import uk.co.bithatch.tnfs.client.TNFSMount;
 import uk.co.bithatch.tnfs.lib.OpenFlag;
@@ -72,6 +73,7 @@ public class TNFSFileSystemProvider extends FileSystemProvider {
 	public final static String PORT = "port";
 	public final static String MOUNT_PATH = "mount-path";
 	public final static String TNFS_CLOSE_ON_FS_CLOSE = "tnfs-close-on-fs-close";
+	public final static String BLOCK_CACHE = "block-cache";
 
 	protected static final long TRANSFER_SIZE = 8192;
 
@@ -404,6 +406,8 @@ public class TNFSFileSystemProvider extends FileSystemProvider {
 						tnfsMountBldr.withPassword(password);
 					}
 				}
+				if (env.containsKey(BLOCK_CACHE))
+					tnfsMountBldr.withBlockCache((BlockCache) env.get(BLOCK_CACHE));
 						
 				tnfsMount = tnfsMountBldr.build();
 			} else {
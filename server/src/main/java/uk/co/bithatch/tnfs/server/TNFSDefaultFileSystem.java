@@ -33,6 +33,7 @@ import java.nio.file.attribute.DosFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -188,6 +189,13 @@ public class TNFSDefaultFileSystem extends AbstractTNFSFileSystem {
 		Files.createDirectory(rpath);
 	}
 
+	@Override
+	public Optional<Path> realPath(String path) throws IOException {
+		var rpath = resolve(path);
+		checkDescendant(rpath, path);
+		return Optional.of(rpath.toRealPath());
+	}
+
 	@Override
 	public String mountPath() {
 		return mountPath;
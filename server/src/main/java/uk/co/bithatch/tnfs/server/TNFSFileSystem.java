@@ -20,7 +20,10 @@
  */
 package uk.co.bithatch.tnfs.server;
 
+import java.io.IOException;
 import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.util.Optional;
 
 import uk.co.bithatch.tnfs.lib.TNFSFileAccess;
 
@@ -31,4 +34,16 @@ public interface TNFSFileSystem extends TNFSFileAccess {
 	 * the active {@link TNFSSession}. 
 	 */
 	void checkAccess() throws AccessDeniedException;
+
+	/**
+	 * Get where a file really is, if it is a file on a real file system, so the same
+	 * file may be recognised however it is reached, for example by caches.
+	 * 
+	 * @param path path of file in this file system
+	 * @return real path, or empty if the file system has none
+	 * @throws IOException on error
+	 */
+	default Optional<Path> realPath(String path) throws IOException {
+		return Optional.empty();
+	}
 }
@@ -270,6 +270,7 @@ public class TNFSInMemoryFileSystem extends AbstractTNFSFileSystem {
 			
 			boolean open = true;
 			ByteBuffer buf = Util.sliceAndOrder(ff.output);
+			int end = buf.limit();
 			
 			@Override
 			public boolean isOpen() {
@@ -280,11 +281,15 @@ public class TNFSInMemoryFileSystem extends AbstractTNFSFileSystem {
 			public void close() throws IOException {
 				checkClosed();
 				open = false;
-				buf.flip();
-				if(LOG.isDebugEnabled()) {
-					LOG.debug("Closing file handle {} for {} at {} bytes", hashCode(), path, buf.limit());
+				if(write) {
+					/* The end may not be the current position, after writing at a given position */
+					buf.limit(Math.max(end, buf.position()));
+					buf.position(0);
+					if(LOG.isDebugEnabled()) {
+						LOG.debug("Closing file handle {} for {} at {} bytes", hashCode(), path, buf.limit());
+					}
+					fs.put(p, new MemoryFile(p, buf, ff.mode, ff.created(),FileTime.from(Instant.now()), FileTime.from(Instant.now())));
 				}
-				fs.put(p, new MemoryFile(p, buf, ff.mode, ff.created(),FileTime.from(Instant.now()), FileTime.from(Instant.now())));
 			}
 			
 			@Override
@@ -337,6 +342,8 @@ public class TNFSInMemoryFileSystem extends AbstractTNFSFileSystem {
 					}
 				}
 
+				end = Math.max(end, buf.position());
+
 				if(LOG.isTraceEnabled()) {
 					LOG.trace("Written handle {} at {},  {} bytes to handle {} for {}", hashCode(), path, wrtn, hashCode(), path);
 				}
@@ -357,6 +364,7 @@ public class TNFSInMemoryFileSystem extends AbstractTNFSFileSystem {
 				if(size < buf.limit()) {
 					buf = Util.sliceAndOrder(buf, 0, (int)size);
 				}
+				end = Math.min(end, (int)size);
 				buf.position(Math.min(buf.limit(), wasPos));
 				return this;
 			}
@@ -427,14 +435,15 @@ public class TNFSInMemoryFileSystem extends AbstractTNFSFileSystem {
 		var stat = stat(path);
 		if(Arrays.asList(stat.mode()).contains(ModeFlag.IFDIR)) {
 			if(p.equals("/")) {
-				return fs.values().stream().
-						filter(f -> !f.path.equals("/") && f.path.startsWith("/") && f.path.indexOf('/', 1) == -1).
-						map(f -> f.path.substring(1));
+				return fs.keySet().stream().
+						filter(f -> !f.equals("/") && f.startsWith("/") && f.indexOf('/', 1) == -1).
+						map(f -> f.substring(1));
 			}
 			
-			return fs.values().stream().
-				filter(f ->  f.path.startsWith(p + "/")).
-				map(f -> f.path.substring(p.length() + 1)).
+			/* Keys rather than file paths, as a renamed file keeps its original path */
+			return fs.keySet().stream().
+				filter(f ->  f.startsWith(p + "/")).
+				map(f -> f.substring(p.length() + 1)).
 				filter(s -> s.indexOf('/') == -1);
 			
 		}
@@ -585,7 +594,7 @@ public class TNFSInMemoryFileSystem extends AbstractTNFSFileSystem {
 		}
 
 		private Entry toEntry(String path, String p) {
-			var f = fs.get(path.equals("/") ? "/" + p : path + "/" + p);
+			var f = fs.get(processPath(Util.concatenatePaths(path, p, '/'), '/'));
 			if(f == null) {
 				return new Entry(
 						new DirEntryFlag[0], 
@@ -20,6 +20,7 @@
  */
 package uk.co.bithatch.tnfs.server;
 
+import java.io.IOException;
 import java.util.Map;
 
 import uk.co.bithatch.tnfs.lib.Command;
@@ -46,6 +47,16 @@ public interface TNFSMessageHandler {
 		int nextDirHandle();
 
 		TNFSSession newSession(Version version, Flag... flags);
+		
+		/**
+		 * Send a message to the client that is not the reply to the request being
+		 * handled, for example data the client asked to be pushed to it. Such messages
+		 * are not sent again if lost, so the client must be able to ask again.
+		 * 
+		 * @param message message
+		 * @throws IOException on error
+		 */
+		void push(Message message) throws IOException;
 	}
 	
 	Command.Result handle(Message message, HandlerContext context);
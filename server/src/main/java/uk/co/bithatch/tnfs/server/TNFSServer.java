@@ -38,8 +38,11 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
@@ -51,8 +54,11 @@ import org.slf4j.LoggerFactory;
 
 import uk.co.bithatch.tnfs.lib.AbstractBuilder;
 import uk.co.bithatch.tnfs.lib.ByteBufferPool;
+import uk.co.bithatch.tnfs.lib.Command;
 import uk.co.bithatch.tnfs.lib.Command.HeaderOnlyResult;
 import uk.co.bithatch.tnfs.lib.Debug;
+import uk.co.bithatch.tnfs.lib.FrameDecoder;
+import uk.co.bithatch.tnfs.lib.FrameDecoder.FrameProcessor;
 import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.Protocol;
 import uk.co.bithatch.tnfs.lib.ResultCode;
@@ -171,17 +177,64 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 			return Protocol.TCP;
 		}
 
-		private void read(SocketChannel channel) throws IOException {
-			try(var ls = bufferPool.acquire(size())) {
-				var buffer = ls.buffer();
-				var rd = channel.read(buffer);
-				if(rd == -1) {
-					throw new EOFException();
-				} else if(rd > 0) {
-					buffer.flip();
-					decodeAndHandle(buffer, channel, channel.getRemoteAddress());
+		/**
+		 * State for each connection. A single read may return a partial message, or 
+		 * several messages at once, so anything left over is kept until the next read. 
+		 * Replies that could not be written in full are queued until the socket is
+		 * writable again.
+		 */
+		private final class Connection {
+			private final FrameDecoder<TNFSSession> in;
+			private final Deque<ByteBuffer> out = new ArrayDeque<>();
+			
+			private Connection(SocketChannel channel) throws IOException {
+				var remoteAddr = channel.getRemoteAddress();
+				in = new FrameDecoder<>(ByteBuffer.allocateDirect(size() + TNFS.MAX_PACKET_OVERHEAD).order(ByteOrder.LITTLE_ENDIAN), false, TCPTNFSServer.this::session, new FrameProcessor<>() {
+					@Override
+					public void process(TNFSSession session, ByteBuffer frame) {
+						TCPTNFSServer.this.process(session, frame);
+					}
+					
+					@Override
+					public int minimumPacketSize(TNFSSession session) {
+						return TCPTNFSServer.this.minimumPacketSize(session);
+					}
+
+					@Override
+					public int packetSize(TNFSSession session, ByteBuffer frame) {
+						return TCPTNFSServer.this.packetSize(session, frame);
+					}
+				}, (session, frame) -> {
+					/* The reply is encoded into the same buffer, so each message needs its own */
+					try(var ls = bufferPool.acquire(size() + TNFS.MAX_PACKET_OVERHEAD)) {
+						var msgbuf = ls.buffer();
+						msgbuf.put(frame);
+						msgbuf.flip();
+						dispatch(session, msgbuf, channel, remoteAddr);
+					}
+				});
+			}
+		}
+
+		private void read(SelectionKey key) throws IOException {
+			var connection = (Connection)key.attachment();
+			if(connection.in.read((SocketChannel)key.channel()) == -1) {
+				throw new EOFException();
+			}
+		}
+		
+		private void flush(SelectionKey key) throws IOException {
+			var channel = (SocketChannel)key.channel();
+			var connection = (Connection)key.attachment();
+			while(!connection.out.isEmpty()) {
+				var next = connection.out.peek();
+				channel.write(next);
+				if(next.hasRemaining()) {
+					return;
 				}
+				connection.out.poll();
 			}
+			key.interestOps(SelectionKey.OP_READ);
 		}
 
 		@Override
@@ -218,16 +271,18 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 
 						var clnt = serverChannel.accept();
 						clnt.configureBlocking(false);
-						clnt.register(selector, SelectionKey.OP_READ);
+						clnt.register(selector, SelectionKey.OP_READ, new Connection(clnt));
 
 						LOG.info("Connection Accepted: {} from {}", clnt.getLocalAddress(), clnt.getRemoteAddress());
 
-					} else if (key.isReadable()) {
+					} else {
 						var sckt = (SocketChannel) key.channel();
 						try {
-							/* TODO put responses on a queue (each thread with own buffer) */
-							read(sckt);
-			                key.interestOps(SelectionKey.OP_WRITE);
+							if (key.isReadable()) {
+								read(key);
+							} else if (key.isWritable()) {
+								flush(key);
+							}
 						}
 						catch (/* EOF */Exception eof) {
 							if(eof instanceof EOFException |  eof instanceof ClosedSelectorException |  eof instanceof CancelledKeyException) {
@@ -247,8 +302,6 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 								LOG.error("Failed to close socket.", e);
 							}
 						}
-					} else if (key.isWritable()) {
-		                key.interestOps(SelectionKey.OP_READ);
 					}
 //					keyIt.remove();
 				}
@@ -262,10 +315,22 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 
 		@Override
 		protected void write(ByteBuffer outBuffer, SocketChannel tnfsPeer, SocketAddress addr) throws IOException {
-			var written = tnfsPeer.write(outBuffer);
-
-			if(LOG.isTraceEnabled()) {
-				LOG.trace("Written {} bytes to {}", written, addr);
+			var key = tnfsPeer.keyFor(selector);
+			var connection = (Connection)key.attachment();
+			if(connection.out.isEmpty()) {
+				var written = tnfsPeer.write(outBuffer);
+	
+				if(LOG.isTraceEnabled()) {
+					LOG.trace("Written {} bytes to {}", written, addr);
+				}
+			}
+			
+			if(outBuffer.hasRemaining()) {
+				var pending = ByteBuffer.allocate(outBuffer.remaining());
+				pending.put(outBuffer);
+				pending.flip();
+				connection.out.add(pending);
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 			}
 		}
 	}
@@ -304,7 +369,7 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 
 		@Override
 		protected void doRun() throws Exception {
-			try(var ls = bufferPool.acquire(size() )) {
+			try(var ls = bufferPool.acquire(size() + TNFS.MAX_PACKET_OVERHEAD)) {
 				var buf = ls.buffer();
 	
 				while(channel().isOpen()) {
@@ -347,6 +412,8 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 		}
 	}
 	private final static Logger LOG = LoggerFactory.getLogger(TNFSServer.class);
+	private final static int CLOSED_SESSIONS = 16;
+	
 	private final InetSocketAddress address;
 
 	private final TNFSFileSystemService fileSystemService;
@@ -357,6 +424,16 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 	private final CHAN socketChannel;
 	private final Map<Integer, TNFSSession> sessions = Collections.synchronizedMap(new HashMap<>());
 	private final Map<Integer, TNFSMessageHandler> handlers = Collections.synchronizedMap(new HashMap<>());
+	
+	/* Recently closed UDP sessions, so the reply to an UMOUNT may be sent again */
+	private final Map<Integer, TNFSSession> closedSessions = Collections.synchronizedMap(new LinkedHashMap<>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, TNFSSession> eldest) {
+			return size() > CLOSED_SESSIONS;
+		}
+	});
 	private short sessionId;
 	private final Optional<Consumer<TNFSSession>> sessionDecorator;
 
@@ -458,6 +535,16 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 		return Collections.unmodifiableMap(sessions);
 	}
 
+	/**
+	 * Get the handler for a command, for handlers that run other commands.
+	 * 
+	 * @param command command
+	 * @return handler, or empty if the command is not supported
+	 */
+	public Optional<TNFSMessageHandler> handler(Command<?, ?> command) {
+		return Optional.ofNullable(handlers.get(Byte.toUnsignedInt(command.code())));
+	}
+
 	private void handle(TNFSSession session, ByteBuffer sharedBuffer, Message message, SocketChannel channel, SocketAddress addr) throws IOException {
 		
 		var cmd = message.command();
@@ -467,20 +554,36 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 		}
 
 		var code = Byte.toUnsignedInt(message.command().code());
+		
+		var replySession = session == null ? closedSessions.get(message.connectionId()) : session;
+		if(replySession != null && protocol() == Protocol.UDP) {
+			var reply = replySession.reply(message.seq(), code);
+			if(reply != null) {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Sending reply to {} [{}] again.", cmd.name(), message.seq());
+				}
+				write(reply, channel, addr);
+				return;
+			}
+		}
+		
 		var nh = handlers.get(code);
 		if(nh == null) {
-			throw new IllegalArgumentException("No handler for message with code " + Byte.toUnsignedInt(message.command().code()) + ".");
+			/* Lets clients fall back when an optional extension is not installed */
+			LOG.error("No handler for message with code {}.", code);
+			write(session, sharedBuffer, Message.of(message.seq(), message.connectionId(), message.command(), new HeaderOnlyResult(ResultCode.NOSYS)), channel, addr);
+			return;
 		}
 
 		if(session == null && nh.needsSession()) {
 			LOG.error("No session {}", message.connectionId());
-			write(session, sharedBuffer, Message.of(message.command(), new HeaderOnlyResult(ResultCode.INVALID)), channel, addr);
+			write(session, sharedBuffer, Message.of(message.seq(), message.connectionId(), message.command(), new HeaderOnlyResult(ResultCode.INVALID)), channel, addr);
 			return;
 		}
 
 		if(session != null && nh.needsAuthentication() && !session.authenticated()) {
 			LOG.error("Session {} not authenticated for message {}.", message.connectionId(), message.command().name());
-			write(session, sharedBuffer, Message.of(message.command(), new HeaderOnlyResult(ResultCode.INVALID)), channel, addr);
+			write(session, sharedBuffer, Message.of(message.seq(), message.connectionId(), message.command(), new HeaderOnlyResult(ResultCode.INVALID)), channel, addr);
 			return;
 		}
 
@@ -508,6 +611,7 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 				var mountSessionId = nextSessionId();
 				var session = new TNFSSession(mountSessionId, TNFSServer.this, version, flags);
 				sessions.put(mountSessionId, session);
+				closedSessions.remove(mountSessionId);
 				newSession.set(mountSessionId);
 				sessionDecorator.ifPresent(sd -> sd.accept(session));
 				LOG.info("New connection with id of {} [{}] in connection {}", mountSessionId, String.format("%04x", mountSessionId), address());
@@ -547,11 +651,21 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 			public boolean hasSession() {
 				return session != null;
 			}
+
+			@Override
+			public void push(Message message) throws IOException {
+				checkSession(session);
+				try(var ls = bufferPool.acquire(session.size() + TNFS.MAX_PACKET_OVERHEAD)) {
+					var outBuffer = Util.sliceAndOrder(ls.buffer(), 0, session.size() + TNFS.MAX_PACKET_OVERHEAD);
+					outBuffer.order(ByteOrder.LITTLE_ENDIAN);
+					write(session, outBuffer, message, channel, addr, false);
+				}
+			}
 		});
 		
 		/* If we have the session, we can get the message size and create a slice for
 		 * the output buffer (the session buffer will only ever be smaller or exactly the same
-		 * size as the shared buffer)
+		 * size as the shared buffer), with room for anything packet processors add
 		 */
 		ByteBuffer outBuffer;
 		if(session == null) {
@@ -559,7 +673,7 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 		}
 		else {
 			sharedBuffer.clear();
-			outBuffer = Util.sliceAndOrder(sharedBuffer, 0, session.size());
+			outBuffer = Util.sliceAndOrder(sharedBuffer, 0, Math.min(sharedBuffer.capacity(), session.size() + TNFS.MAX_PACKET_OVERHEAD));
 			outBuffer.order(ByteOrder.LITTLE_ENDIAN);
 		}
 
@@ -579,6 +693,10 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 	}
 
 	private void write(TNFSSession session, ByteBuffer sharedBuffer, Message packet, SocketChannel channel, SocketAddress addr) throws IOException {
+		write(session, sharedBuffer, packet, channel, addr, true);
+	}
+
+	private void write(TNFSSession session, ByteBuffer sharedBuffer, Message packet, SocketChannel channel, SocketAddress addr, boolean reply) throws IOException {
 		sharedBuffer.clear();
 		packet.encodeResult(sharedBuffer);
 		sharedBuffer.flip();
@@ -600,6 +718,10 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 			for(var proc : session.outProcessors()) {
 				proc.accept(ctx, sharedBuffer);
 			}
+			
+			if(reply && protocol() == Protocol.UDP) {
+				session.reply(packet.seq(), Byte.toUnsignedInt(packet.command().code()), sharedBuffer);
+			}
 		}
 		
 		write(sharedBuffer, channel, addr);
@@ -610,44 +732,67 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 	protected void onClose(SocketChannel tnfsPeer) throws IOException {}
 
 	protected void decodeAndHandle(ByteBuffer inBuffer, SocketChannel channel, SocketAddress addr) throws IOException {
+		var session = session(inBuffer);
+		if(session != null) {
+			process(session, inBuffer);
+		}
+		dispatch(session, inBuffer, channel, addr);
+	}
 
+	/**
+	 * Read just the connection ID to try and get a session up front. We may
+	 * then pass to any session attached processor. 
+	 */
+	protected TNFSSession session(ByteBuffer inBuffer) {
+		return sessions.get(Short.toUnsignedInt(inBuffer.getShort(inBuffer.position())));
+	}
+	
+	protected void process(TNFSSession session, ByteBuffer inBuffer) {
+		var ctx = new PacketContext() {
+			@Override
+			public TNFSSession session() {
+				return session;
+			}
+		};
 		
-		/* Read just the connection ID to try and get a session up front. We may
-		 * then parse to any session attached processor 
-		 */
-		var sessionId = inBuffer.getShort();
-		
-		/* Rewind */
-		inBuffer.position(inBuffer.position() - 2);
-		
-		var session = sessions.get((int)sessionId);
-		if(session == null) {
-			
-			if(LOG.isTraceEnabled()) {
-				LOG.trace("Read {} bytes from {}", inBuffer.remaining(), address());
-				LOG.trace("  " + Debug.dump(inBuffer));
+		for(var proc : session.inProcessors()) {
+			proc.accept(ctx, inBuffer);
+		}
+	}
+	
+	protected int minimumPacketSize(TNFSSession session) {
+		var min = 0;
+		if(session != null) {
+			for(var proc : session.inProcessors()) {
+				min = Math.max(min, proc.minimumPacketSize());
 			}
+		}
+		return min;
+	}
 
+	protected int packetSize(TNFSSession session, ByteBuffer frame) {
+		if(session != null) {
+			for(var proc : session.inProcessors()) {
+				var sz = proc.packetSize(frame);
+				if(sz != 0) {
+					return sz;
+				}
+			}
+		}
+		return 0;
+	}
+
+	protected void dispatch(TNFSSession session, ByteBuffer inBuffer, SocketChannel channel, SocketAddress addr) throws IOException {
+		if(LOG.isTraceEnabled()) {
+			LOG.trace("Read {} bytes from {}", inBuffer.remaining(), address());
+			LOG.trace("  " + Debug.dump(inBuffer));
+		}
+		
+		if(session == null) {
 			handle(session, inBuffer, Message.decode(inBuffer), channel, addr);
 		}
 		else {
 			TNFSSession.runAs(session, () -> {
-				var ctx = new PacketContext() {
-					@Override
-					public TNFSSession session() {
-						return session;
-					}
-				};
-				
-				for(var proc : session.inProcessors()) {
-					proc.accept(ctx, inBuffer);
-				}
-				
-				if(LOG.isTraceEnabled()) {
-					LOG.trace("Read {} bytes from {}", inBuffer.remaining(), address());
-					LOG.trace("  " + Debug.dump(inBuffer));
-				}
-
 				handle(session, inBuffer, Message.decode(inBuffer), channel, addr);
 			});
 		}
@@ -657,6 +802,9 @@ public abstract class TNFSServer<CHAN extends Channel> implements Runnable, Clos
 
 	void close(TNFSSession tnfsSession) {
 		sessions.remove(tnfsSession.id());
+		if(protocol() == Protocol.UDP) {
+			closedSessions.put(tnfsSession.id(), tnfsSession);
+		}
 	}
 
 }
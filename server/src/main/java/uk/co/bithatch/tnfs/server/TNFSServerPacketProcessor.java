@@ -32,4 +32,27 @@ public interface TNFSServerPacketProcessor extends BiConsumer<PacketContext, Byt
 		TNFSSession session();
 
 	}
+	
+	/**
+	 * The smallest packet this processor will produce. Processors that pad short
+	 * packets must return the padded size, so that packets may be found in a 
+	 * stream of several. 
+	 * 
+	 * @return minimum packet size
+	 */
+	default int minimumPacketSize() {
+		return 0;
+	}
+	
+	/**
+	 * The size of the packet at the start of the buffer as it was received, for processors
+	 * that change the size of packets, so that packets may be found in a stream of several 
+	 * before they are processed. 
+	 * 
+	 * @param packet buffer containing the packet and anything following it
+	 * @return size, <code>0</code> if this processor will not change the size, or <code>-1</code> if more is needed
+	 */
+	default int packetSize(ByteBuffer packet) {
+		return 0;
+	}
 }
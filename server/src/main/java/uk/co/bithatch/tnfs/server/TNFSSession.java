@@ -22,8 +22,10 @@ package uk.co.bithatch.tnfs.server;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,7 +35,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.co.bithatch.tnfs.lib.Protocol;
+import uk.co.bithatch.tnfs.lib.ResultCode;
 import uk.co.bithatch.tnfs.lib.TNFS;
+import uk.co.bithatch.tnfs.lib.TNFSException;
 import uk.co.bithatch.tnfs.lib.TNFSFileAccess;
 import uk.co.bithatch.tnfs.lib.Version;
 
@@ -81,6 +85,21 @@ public final class TNFSSession implements Closeable {
 			return s;
 	}
 
+	/* Sequence numbers are a byte on the wire. The Java client wraps before 255, but
+	 * others use every value */
+	private final static int SEQUENCE_NUMBERS = 256;
+	
+	/**
+	 * Sequence numbers the Java client never uses, as it wraps after {@link TNFS#MAX_SEQ}. Requests
+	 * either side of its wrap are this much further apart than they really are.
+	 */
+	private final static int WRAP_GAP = SEQUENCE_NUMBERS - ( TNFS.MAX_SEQ + 1 );
+	
+	/**
+	 * How far ahead or behind the newest request one may be.
+	 */
+	private final static int WINDOW = TNFS.MAX_IN_FLIGHT + WRAP_GAP;
+
 	private final int id;
 	
 	final Map<Integer, AbstractDirHandle<?>> dirHandles = new ConcurrentHashMap<>();
@@ -93,10 +112,13 @@ public final class TNFSSession implements Closeable {
 	private final Version version;
 
 	private final Map<String, Object> state = new ConcurrentHashMap<>();
+	private final ByteBuffer[] replies = new ByteBuffer[SEQUENCE_NUMBERS];
+	private final int[] replyCommands = new int[SEQUENCE_NUMBERS];
 	private final List<TNFSServerPacketProcessor> inProcessors = new ArrayList<>();
 	private final List<TNFSServerPacketProcessor> outProcessors = new ArrayList<>();
 	
 	private int size;
+	private int front = -1;
 	private TNFSFileSystem mount;
 	private Principal principal;
 	private Set<Flag> flags;
@@ -129,6 +151,12 @@ public final class TNFSSession implements Closeable {
 		return authenticated() && principal.equals(TNFSMounts.GUEST);
 	}
 	
+	/**
+	 * Get state kept by handlers for this session. Any values that are {@link AutoCloseable}
+	 * are closed when the session is.
+	 * 
+	 * @return state
+	 */
 	public Map<String, Object> state() {
 		return state;
 	}
@@ -191,13 +219,91 @@ public final class TNFSSession implements Closeable {
 			server.close(this);
 		}
 		finally {
-			mount.close();
+			try {
+				closeState();
+			}
+			finally {
+				mount.close();
+			}
+		}
+	}
+	
+	private void closeState() {
+		for(var value : state.values()) {
+			if(value instanceof AutoCloseable closeable) {
+				try {
+					closeable.close();
+				}
+				catch(Exception e) {
+					LOG.warn("Failed to close session state.", e);
+				}
+			}
 		}
+		state.clear();
+	}
+
+	/**
+	 * Get the reply that was last sent for a request, if the request is one the client
+	 * has sent again because it thought it was lost. The request must not be acted on
+	 * twice.
+	 * <p>
+	 * Clients use sequence numbers in order, and never have more than {@link TNFS#MAX_IN_FLIGHT}
+	 * requests outstanding. So a request a little ahead of the newest seen is new, and one 
+	 * a little behind may be a request sent again. Clients may wrap at 256 or, as the Java
+	 * client does, at {@link TNFS#MAX_SEQ}, so both are allowed for.
+	 * 
+	 * @param seq sequence number
+	 * @param command command code
+	 * @return encoded reply or <code>null</code> if the request should be handled
+	 */
+	synchronized ByteBuffer reply(int seq, int command) {
+		var seqs = SEQUENCE_NUMBERS;
+		seq = Math.floorMod(seq, seqs);
+		if(front == -1) {
+			front = seq;
+			replies[seq] = null;
+			return null;
+		}
+		
+		var ahead = Math.floorMod(seq - front, seqs);
+		if(ahead == 0 || ahead >= seqs - WINDOW) {
+			var reply = replies[seq];
+			return reply == null || replyCommands[seq] != command ? null : reply.duplicate();
+		}
+		else if(ahead > WINDOW) {
+			/* Client is not following the rules, start again */
+			Arrays.fill(replies, null);
+			front = seq;
+		}
+		else {
+			while(front != seq) {
+				front = ( front + 1 ) % seqs;
+				replies[front] = null;
+				replies[Math.floorMod(front - WINDOW, seqs)] = null;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Remember a reply that was sent, as it was sent, so it may be sent again.
+	 * 
+	 * @param seq sequence number
+	 * @param command command code
+	 * @param reply encoded reply
+	 */
+	synchronized void reply(int seq, int command, ByteBuffer reply) {
+		var copy = ByteBuffer.allocate(reply.remaining());
+		copy.put(reply.duplicate());
+		copy.flip();
+		seq = Math.floorMod(seq, SEQUENCE_NUMBERS);
+		replies[seq] = copy;
+		replyCommands[seq] = command;
 	}
 
 	int nextDirHandle() {
 		if(dirHandles.size() >= MAX_HANDLES) {
-			throw new IllegalStateException("Exhausted dir handles.");
+			throw new TNFSException(ResultCode.MFILE, "Exhausted dir handles.");
 		}
 		var id = 0;
 		do {
@@ -208,7 +314,7 @@ public final class TNFSSession implements Closeable {
 
 	int nextFileHandle() {
 		if(fileHandles.size() >= MAX_HANDLES) {
-			throw new IllegalStateException("Exhausted file handles.");
+			throw new TNFSException(ResultCode.MFILE, "Exhausted file handles.");
 		}
 		var id = 0;
 		do {
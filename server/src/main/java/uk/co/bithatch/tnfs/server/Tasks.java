@@ -25,6 +25,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.BufferUnderflowException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileAlreadyExistsException;
@@ -65,6 +67,9 @@ public class Tasks {
 		} catch (BufferUnderflowException e) {
 			LOG.error("ENOBUFS. ", e);
 			return (T)func.apply(ResultCode.NOMEM);
+		} catch (NonReadableChannelException | NonWritableChannelException e) {
+			LOG.error("EBADF. ", e);
+			return (T)func.apply(ResultCode.BADF);
 		} catch (IllegalArgumentException e) {
 			LOG.error("EINVAL. ", e);
 			return (T)func.apply(ResultCode.INVAL);
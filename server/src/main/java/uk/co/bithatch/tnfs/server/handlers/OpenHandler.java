@@ -31,6 +31,7 @@ import uk.co.bithatch.tnfs.lib.Command.Open;
 import uk.co.bithatch.tnfs.lib.Command.Result;
 import uk.co.bithatch.tnfs.lib.Message;
 import uk.co.bithatch.tnfs.lib.ResultCode;
+import uk.co.bithatch.tnfs.lib.TNFSException;
 import uk.co.bithatch.tnfs.server.FileHandle;
 import uk.co.bithatch.tnfs.server.TNFSMessageHandler;
 import uk.co.bithatch.tnfs.server.Tasks;
@@ -60,7 +61,13 @@ public class OpenHandler implements TNFSMessageHandler {
 			
 			int key;
 			synchronized(context.fileHandles()) {
-				key = context.nextFileHandle();
+				try {
+					key = context.nextFileHandle();
+				}
+				catch(TNFSException tnfse) {
+					fh.close();
+					throw tnfse;
+				}
 				context.fileHandles().put(key, new FileHandle(fh, ByteBuffer.allocate(context.session().size())));
 			}
 